@@ -0,0 +1,61 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.jena.rdf.model.Model;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Convert stage: conversion of the synthetic code list, concept scheme and key family into Jena models, from the files and from a registry.
+ *
+ * @author Franck
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ConvertBenchmark {
+
+	private SDMXStructureRegistry registry = null;
+
+	@Setup(Level.Trial)
+	public void index(SyntheticInput input) throws XMLStreamException, IOException {
+		registry = SDMXStructureRegistry.load(input.files.getCodeListsFile(), input.files.getConceptsFile(), input.files.getKeyFamiliesFile());
+	}
+
+	@Benchmark
+	public Model convertCodeList(SyntheticInput input) throws XMLStreamException, IOException {
+		return new CodeListConverter(input.files.getCodeListsFile()).convertCodeList(SyntheticSDMX.CODE_LIST_ID);
+	}
+
+	@Benchmark
+	public Model convertCodeListFromRegistry() throws XMLStreamException, IOException {
+		return new CodeListConverter(registry).convertCodeList(SyntheticSDMX.CODE_LIST_ID);
+	}
+
+	@Benchmark
+	public Model convertConceptScheme(SyntheticInput input) throws XMLStreamException, IOException {
+		return new ConceptConverter(input.files.getConceptsFile()).convertConceptScheme(Configuration.CH_CONCEPT_SCHEME_ID);
+	}
+
+	@Benchmark
+	public Model convertDSD(SyntheticInput input) throws XMLStreamException, IOException {
+		return new DSDConverter(input.files.getKeyFamiliesFile(), input.files.getConceptsFile()).convertDSD(SyntheticSDMX.KEY_FAMILY_ID, new ArrayList<String>());
+	}
+}
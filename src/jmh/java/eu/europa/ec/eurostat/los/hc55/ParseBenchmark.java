@@ -0,0 +1,54 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.jena.rdf.model.Literal;
+import org.jdom2.Document;
+import org.jdom2.JDOMException;
+import org.jdom2.input.SAXBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parse stage: reading a SDMX code list file into a JDOM document, with the streaming reader, and into a registry.
+ *
+ * @author Franck
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ParseBenchmark {
+
+	@Benchmark
+	public Document jdomBuild(SyntheticInput input) throws JDOMException, IOException {
+		return new SAXBuilder().build(new File(input.files.getCodeListsFile()));
+	}
+
+	@Benchmark
+	public void streamingRead(SyntheticInput input, Blackhole blackhole) throws XMLStreamException, IOException {
+		new SDMXStructureReader().read(input.files.getCodeListsFile(), new SDMXStructureHandler() {
+			@Override
+			public void code(String codeListId, String codeValue, String parentCodeValue, List<Literal> descriptions) {
+				blackhole.consume(descriptions);
+			}
+		});
+	}
+
+	@Benchmark
+	public SDMXStructureRegistry registryLoad(SyntheticInput input) throws XMLStreamException, IOException {
+		return SDMXStructureRegistry.load(input.files.getCodeListsFile());
+	}
+}
@@ -0,0 +1,75 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.system.StreamOps;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Streaming output and reload of the converted synthetic code list for each file serialization (parameter <code>extension</code>, see <code>RDFStreamOutput</code>).
+ * The size of the file written is printed at the end of each trial.
+ *
+ * @author Franck
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReloadBenchmark {
+
+	@Param({".ttl", ".nt", ".rt", ".rt.gz"})
+	public String extension;
+
+	private Model model = null;
+	private File file = null;
+
+	@Setup(Level.Trial)
+	public void convert(SyntheticInput input) throws XMLStreamException, IOException {
+		model = new CodeListConverter(input.files.getCodeListsFile()).convertCodeList(SyntheticSDMX.CODE_LIST_ID);
+		file = File.createTempFile("reload", extension);
+		write();
+	}
+
+	@TearDown(Level.Trial)
+	public void delete() {
+		System.out.println("Size of " + extension + " file: " + file.length() + " bytes");
+		file.delete();
+	}
+
+	@Benchmark
+	public void write() throws IOException {
+		try (RDFStreamOutput output = new RDFStreamOutput(file.getPath())) {
+			StreamOps.sendGraphToStream(model.getGraph(), output.getStream());
+		}
+	}
+
+	@Benchmark
+	public Model reload() throws IOException {
+
+		if (extension.startsWith(".rt")) return ThriftLoader.loadModel(file.getPath());
+		Model reloaded = ModelFactory.createDefaultModel();
+		RDFDataMgr.read(reloaded, file.getPath());
+		return reloaded;
+	}
+}
@@ -0,0 +1,63 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.jdom2.filter.Filters;
+import org.jdom2.input.SAXBuilder;
+import org.jdom2.xpath.XPathExpression;
+import org.jdom2.xpath.XPathFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Select stage: finding a code list in an already parsed file, with the XPath expression formerly used by the converters and with the registry index.
+ * The selected list is the last one of the file, as for most lists in the real files.
+ *
+ * @author Franck
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SelectBenchmark {
+
+	private Document document = null;
+	private SDMXStructureRegistry registry = null;
+
+	@Setup(Level.Trial)
+	public void parse(SyntheticInput input) throws JDOMException, IOException, XMLStreamException {
+		document = new SAXBuilder().build(new File(input.files.getCodeListsFile()));
+		registry = SDMXStructureRegistry.load(input.files.getCodeListsFile());
+	}
+
+	@Benchmark
+	public List<Element> xpathSelection() {
+		String query = "//*[(local-name(.) = 'CodeList') and (@id= 'CL_SMALL')]";
+		XPathExpression<Element> expression = XPathFactory.instance().compile(query, Filters.element());
+		return expression.evaluate(document);
+	}
+
+	@Benchmark
+	public SDMXStructureRegistry.CodeList registryLookup() {
+		return registry.getCodeList("CL_SMALL");
+	}
+}
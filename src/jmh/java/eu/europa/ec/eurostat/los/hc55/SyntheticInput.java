@@ -0,0 +1,38 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import java.io.IOException;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * JMH state holding synthetic SDMX files whose size is given by the <code>codeCount</code> parameter.
+ * The concept scheme has one concept per hundred codes, so that concept conversion scales too.
+ * Runs with a million codes need a larger heap for the JDOM benchmarks, for example <code>-jvmArgs -Xmx4g</code>.
+ *
+ * @author Franck
+ */
+@State(Scope.Benchmark)
+public class SyntheticInput {
+
+	@Param({"100", "10000", "1000000"})
+	public int codeCount;
+
+	public SyntheticSDMX files = null;
+
+	@Setup(Level.Trial)
+	public void generate() throws IOException, XMLStreamException {
+		files = new SyntheticSDMX(codeCount, codeCount / 100);
+	}
+
+	@TearDown(Level.Trial)
+	public void delete() {
+		files.delete();
+	}
+}
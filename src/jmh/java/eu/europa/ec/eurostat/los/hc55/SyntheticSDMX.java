@@ -0,0 +1,167 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * The <code>SyntheticSDMX</code> class generates SDMX 2.0 structure files of arbitrary size for the benchmarks.
+ * The code list file contains a main list <code>CL_BENCH</code> with the requested number of codes organized in a hierarchy with ten children per code,
+ * followed by a small list <code>CL_SMALL</code>. The concept file contains a scheme <code>CENSUSHUB_CONCEPTS</code>, and the key family file
+ * a key family <code>BENCH</code> whose dimensions refer to the first concepts of the scheme.
+ *
+ * @author Franck
+ */
+public class SyntheticSDMX {
+
+	public static final String CODE_LIST_ID = "CL_BENCH";
+	public static final String KEY_FAMILY_ID = "BENCH";
+	public static final int DIMENSION_COUNT = 10;
+
+	private static final String MESSAGE_NS = "http://www.SDMX.org/resources/SDMXML/schemas/v2_0/message";
+	private static final String STRUCTURE_NS = Configuration.sdmxStructureNS.getURI();
+
+	private File directory = null;
+
+	/**
+	 * Creates the synthetic files in a new temporary directory.
+	 *
+	 * @param codeCount The number of codes of the main code list.
+	 * @param conceptCount The number of concepts of the concept scheme (at least <code>DIMENSION_COUNT</code>).
+	 */
+	public SyntheticSDMX(int codeCount, int conceptCount) throws IOException, XMLStreamException {
+
+		directory = File.createTempFile("sdmx-bench", "");
+		directory.delete();
+		directory.mkdirs();
+		writeCodeLists(codeCount);
+		writeConcepts(Math.max(conceptCount, DIMENSION_COUNT));
+		writeKeyFamilies();
+	}
+
+	public String getCodeListsFile() {
+		return new File(directory, "codelists.xml").getPath();
+	}
+
+	public String getConceptsFile() {
+		return new File(directory, "concepts.xml").getPath();
+	}
+
+	public String getKeyFamiliesFile() {
+		return new File(directory, "keyfamilies.xml").getPath();
+	}
+
+	/**
+	 * Deletes the generated files.
+	 */
+	public void delete() {
+
+		for (File file : directory.listFiles()) file.delete();
+		directory.delete();
+	}
+
+	private void writeCodeLists(int codeCount) throws IOException, XMLStreamException {
+
+		try (OutputStream output = new BufferedOutputStream(new FileOutputStream(getCodeListsFile()))) {
+			XMLStreamWriter xml = startMessage(output, "CodeLists");
+			writeCodeList(xml, CODE_LIST_ID, codeCount);
+			writeCodeList(xml, "CL_SMALL", 10);
+			endMessage(xml);
+		}
+	}
+
+	private void writeCodeList(XMLStreamWriter xml, String codeListId, int codeCount) throws XMLStreamException {
+
+		xml.writeStartElement(STRUCTURE_NS, "CodeList");
+		xml.writeAttribute("id", codeListId);
+		xml.writeAttribute("agencyID", "ESTAT");
+		writeName(xml, "Name", "Synthetic code list " + codeListId);
+		for (int index = 0; index < codeCount; index++) {
+			xml.writeStartElement(STRUCTURE_NS, "Code");
+			xml.writeAttribute("value", "C_" + index);
+			xml.writeAttribute("parentCode", (index == 0) ? "" : "C_" + ((index - 1) / 10));
+			writeName(xml, "Description", "Code number " + index);
+			xml.writeEndElement();
+		}
+		xml.writeEndElement();
+	}
+
+	private void writeConcepts(int conceptCount) throws IOException, XMLStreamException {
+
+		try (OutputStream output = new BufferedOutputStream(new FileOutputStream(getConceptsFile()))) {
+			XMLStreamWriter xml = startMessage(output, "Concepts");
+			xml.writeStartElement(STRUCTURE_NS, "ConceptScheme");
+			xml.writeAttribute("id", Configuration.CH_CONCEPT_SCHEME_ID);
+			writeName(xml, "Name", "Synthetic concepts");
+			for (int index = 0; index < conceptCount; index++) {
+				xml.writeStartElement(STRUCTURE_NS, "Concept");
+				xml.writeAttribute("id", "CONCEPT_" + index);
+				if (index % 2 == 0) xml.writeAttribute("coreRepresentation", (index == 0) ? CODE_LIST_ID : "CL_SMALL");
+				writeName(xml, "Name", "Concept number " + index);
+				xml.writeEndElement();
+			}
+			xml.writeEndElement();
+			endMessage(xml);
+		}
+	}
+
+	private void writeKeyFamilies() throws IOException, XMLStreamException {
+
+		try (OutputStream output = new BufferedOutputStream(new FileOutputStream(getKeyFamiliesFile()))) {
+			XMLStreamWriter xml = startMessage(output, "KeyFamilies");
+			xml.writeStartElement(STRUCTURE_NS, "KeyFamily");
+			xml.writeAttribute("id", KEY_FAMILY_ID);
+			writeName(xml, "Name", "Synthetic key family");
+			xml.writeStartElement(STRUCTURE_NS, "Components");
+			for (int index = 0; index < DIMENSION_COUNT - 1; index++) writeComponent(xml, "Dimension", "CONCEPT_" + index);
+			writeComponent(xml, "TimeDimension", "CONCEPT_" + (DIMENSION_COUNT - 1));
+			writeComponent(xml, "PrimaryMeasure", "OBS_VALUE");
+			writeComponent(xml, "Attribute", "OBS_STATUS");
+			xml.writeEndElement();
+			xml.writeEndElement();
+			endMessage(xml);
+		}
+	}
+
+	private void writeComponent(XMLStreamWriter xml, String type, String conceptRef) throws XMLStreamException {
+
+		xml.writeEmptyElement(STRUCTURE_NS, type);
+		xml.writeAttribute("conceptRef", conceptRef);
+	}
+
+	private void writeName(XMLStreamWriter xml, String elementName, String text) throws XMLStreamException {
+
+		xml.writeStartElement(STRUCTURE_NS, elementName);
+		xml.writeAttribute("xml", XMLConstants.XML_NS_URI, "lang", "en");
+		xml.writeCharacters(text);
+		xml.writeEndElement();
+	}
+
+	private XMLStreamWriter startMessage(OutputStream output, String containerName) throws XMLStreamException {
+
+		XMLStreamWriter xml = XMLOutputFactory.newInstance().createXMLStreamWriter(output, "UTF-8");
+		xml.writeStartDocument("UTF-8", "1.0");
+		xml.setDefaultNamespace(MESSAGE_NS);
+		xml.setPrefix("structure", STRUCTURE_NS);
+		xml.writeStartElement(MESSAGE_NS, "Structure");
+		xml.writeDefaultNamespace(MESSAGE_NS);
+		xml.writeNamespace("structure", STRUCTURE_NS);
+		xml.writeStartElement(MESSAGE_NS, containerName);
+		return xml;
+	}
+
+	private void endMessage(XMLStreamWriter xml) throws XMLStreamException {
+
+		xml.writeEndElement();
+		xml.writeEndElement();
+		xml.writeEndDocument();
+		xml.close();
+	}
+}
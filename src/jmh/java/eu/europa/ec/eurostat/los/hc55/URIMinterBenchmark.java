@@ -0,0 +1,82 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import java.beans.Introspector;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the URI minting of the <code>URIMinter</code> with the former string concatenation implementation.
+ * Each code URI is requested twice, as it is during a code list conversion (once for the code, once as parent of another code).
+ * Run with <code>-prof gc</code> to see the allocation rates.
+ *
+ * @author Franck
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class URIMinterBenchmark {
+
+	@Param({"1000", "100000"})
+	public int codeCount;
+
+	private String[] codes = null;
+	private URIMinter minter = null;
+	private URIMinter uncachedMinter = null;
+
+	@Setup
+	public void setup() {
+
+		codes = new String[codeCount];
+		for (int index = 0; index < codeCount; index++) codes[index] = "Y_" + (index % 100) + "_LT" + index;
+		minter = new URIMinter(2 * codeCount);
+		uncachedMinter = new URIMinter(0); // Caches are cleared at each insertion
+	}
+
+	@Benchmark
+	public void legacyConcatenation(Blackhole blackhole) {
+		for (int pass = 0; pass < 2; pass++) {
+			for (String code : codes) blackhole.consume(Configuration.BASE_URI + "codes/" + legacyComponentName("CL_AGE".toLowerCase()) + "/" + legacyComponentName(code.toLowerCase()));
+		}
+	}
+
+	@Benchmark
+	public void uncachedMinting(Blackhole blackhole) {
+		for (int pass = 0; pass < 2; pass++) {
+			for (String code : codes) blackhole.consume(uncachedMinter.codeURI("CL_AGE", code));
+		}
+	}
+
+	@Benchmark
+	public void cachedMinting(Blackhole blackhole) {
+		for (int pass = 0; pass < 2; pass++) {
+			for (String code : codes) blackhole.consume(minter.codeURI("CL_AGE", code));
+		}
+	}
+
+	/** The former implementation of <code>Configuration.componentName</code> */
+	private static String legacyComponentName(String sdmxConceptId) {
+
+		String[] terms = sdmxConceptId.split("_");
+		String name = "";
+		for (String term : terms) {
+			name += StringUtils.capitalize(term.toLowerCase());
+		}
+		return Introspector.decapitalize(name);
+	}
+}
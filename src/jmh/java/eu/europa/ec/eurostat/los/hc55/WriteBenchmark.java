@@ -0,0 +1,66 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFLanguages;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serialization stage: writing the converted synthetic code list with <code>RDFDataMgr.write</code> in each output language.
+ * Output goes to a stream that discards the bytes, so that only the serialization cost is measured.
+ *
+ * @author Franck
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WriteBenchmark {
+
+	@Param({"Turtle", "N-Triples", "RDF/XML", "JSON-LD", "RDF-THRIFT"})
+	public String language;
+
+	private Lang lang = null;
+	private Model model = null;
+
+	@Setup(Level.Trial)
+	public void convert(SyntheticInput input) throws XMLStreamException, IOException {
+		lang = RDFLanguages.nameToLang(language);
+		model = new CodeListConverter(input.files.getCodeListsFile()).convertCodeList(SyntheticSDMX.CODE_LIST_ID);
+	}
+
+	@Benchmark
+	public void write() {
+		RDFDataMgr.write(new NullOutputStream(), model, lang);
+	}
+
+	/** Output stream discarding all bytes */
+	private static class NullOutputStream extends OutputStream {
+
+		@Override
+		public void write(int b) {}
+
+		@Override
+		public void write(byte[] b, int off, int len) {}
+	}
+}
@@ -0,0 +1,182 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import eu.europa.ec.eurostat.los.hc55.BatchConverter.ArtifactType;
+
+/**
+ * The <code>ArtifactFingerprinter</code> class computes a content hash for each code list, concept scheme and key family of SDMX structure files.
+ * The hash is a SHA-256 digest of the canonical form of the artifact element: element and attribute names are qualified by their namespace URI,
+ * attributes are sorted, text is trimmed and whitespace-only text, comments and namespace prefixes are ignored. Two artifacts with the same
+ * fingerprint therefore produce the same RDF output.
+ * The output of a key family also depends on the concepts, so the fingerprint of a key family includes a digest of all the concepts read.
+ *
+ * @author Franck
+ */
+public class ArtifactFingerprinter {
+
+	/**
+	 * Computes the fingerprints of the artifacts contained in a list of SDMX structure files.
+	 * As in <code>SDMXStructureRegistry</code>, when several artifacts of the same type have the same identifier, only the first one is kept.
+	 *
+	 * @param fileNames The names of the SDMX files to read, remote files being given by their URI.
+	 * @return A map where keys are the artifact keys (see <code>getKey</code>) and values the hexadecimal fingerprints, in reading order.
+	 * @throws XMLStreamException In case of error while parsing the file content.
+	 * @throws IOException In case of problem reading the SDMX files.
+	 */
+	public Map<String, String> fingerprint(String... fileNames) throws XMLStreamException, IOException {
+
+		Map<String, String> fingerprints = new LinkedHashMap<String, String>();
+		List<String> conceptDigests = new ArrayList<String>();
+		for (String fileName : fileNames) {
+			try (InputStream input = new BufferedInputStream(new FileInputStream(SDMXSourceResolver.getShared().resolve(fileName)))) {
+				read(input, fingerprints, conceptDigests);
+			}
+		}
+
+		// Concept schemes are sorted so that the digest does not depend on the order of the files
+		for (Map.Entry<String, String> entry : fingerprints.entrySet()) {
+			if (entry.getKey().startsWith(ArtifactType.CONCEPT_SCHEME + ":")) conceptDigests.add(entry.getKey() + "=" + entry.getValue());
+		}
+		Collections.sort(conceptDigests);
+		MessageDigest digest = newDigest();
+		for (String conceptDigest : conceptDigests) update(digest, conceptDigest);
+		String conceptsFingerprint = toHex(digest.digest());
+
+		for (Map.Entry<String, String> entry : fingerprints.entrySet()) {
+			if (!entry.getKey().startsWith(ArtifactType.KEY_FAMILY + ":")) continue;
+			update(digest, entry.getValue());
+			update(digest, conceptsFingerprint);
+			entry.setValue(toHex(digest.digest()));
+		}
+		return fingerprints;
+	}
+
+	/**
+	 * Returns the key identifying an artifact in the fingerprint maps, for example <code>CODE_LIST:CL_AGE</code>.
+	 *
+	 * @param type The type of the artifact.
+	 * @param id The identifier of the artifact.
+	 * @return The artifact key.
+	 */
+	public static String getKey(ArtifactType type, String id) {
+		return type + ":" + id;
+	}
+
+	/**
+	 * Reads a SDMX structure message and adds the fingerprints of the artifacts it contains.
+	 * The digests of the concepts defined outside of concept schemes are added to a separate list.
+	 */
+	private void read(InputStream input, Map<String, String> fingerprints, List<String> conceptDigests) throws XMLStreamException {
+
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+
+		XMLStreamReader xml = factory.createXMLStreamReader(input);
+		try {
+			while (xml.hasNext()) {
+				if ((xml.next() != XMLStreamConstants.START_ELEMENT) || !Configuration.sdmxStructureNS.getURI().equals(xml.getNamespaceURI())) continue;
+				ArtifactType type = null;
+				switch (xml.getLocalName()) {
+				case "CodeList":
+					type = ArtifactType.CODE_LIST;
+					break;
+				case "ConceptScheme":
+					type = ArtifactType.CONCEPT_SCHEME;
+					break;
+				case "KeyFamily":
+					type = ArtifactType.KEY_FAMILY;
+					break;
+				case "Concept": // Concepts defined outside of a concept scheme
+					conceptDigests.add(digestElement(xml));
+					continue;
+				default:
+					continue;
+				}
+				String id = xml.getAttributeValue(null, "id");
+				String fingerprint = digestElement(xml);
+				fingerprints.putIfAbsent(getKey(type, id), fingerprint);
+			}
+		} finally {
+			xml.close();
+		}
+	}
+
+	/**
+	 * Computes the digest of the canonical form of an element, the reader being positioned on its start tag.
+	 * On return, the reader is positioned on the end tag of the element.
+	 */
+	private String digestElement(XMLStreamReader xml) throws XMLStreamException {
+
+		MessageDigest digest = newDigest();
+		int depth = 0;
+		do {
+			switch (xml.getEventType()) {
+			case XMLStreamConstants.START_ELEMENT:
+				depth++;
+				update(digest, "<" + xml.getNamespaceURI() + " " + xml.getLocalName());
+				List<String> attributes = new ArrayList<String>();
+				for (int index = 0; index < xml.getAttributeCount(); index++) {
+					attributes.add(xml.getAttributeNamespace(index) + " " + xml.getAttributeLocalName(index) + "=" + xml.getAttributeValue(index));
+				}
+				Collections.sort(attributes);
+				for (String attribute : attributes) update(digest, attribute);
+				break;
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+				String text = xml.getText().trim();
+				if (text.length() > 0) update(digest, text);
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				depth--;
+				update(digest, ">");
+				break;
+			default:
+				break;
+			}
+		} while ((depth > 0) && (xml.next() > 0));
+
+		return toHex(digest.digest());
+	}
+
+	private static MessageDigest newDigest() {
+
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e); // Cannot happen, SHA-256 is required on all Java platforms
+		}
+	}
+
+	/** Adds a token to a digest, tokens being separated by a zero byte so that their concatenation is not ambiguous. */
+	private static void update(MessageDigest digest, String token) {
+
+		digest.update(token.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+	}
+
+	private static String toHex(byte[] bytes) {
+
+		StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (byte value : bytes) hex.append(Character.forDigit((value >> 4) & 0xF, 16)).append(Character.forDigit(value & 0xF, 16));
+		return hex.toString();
+	}
+}
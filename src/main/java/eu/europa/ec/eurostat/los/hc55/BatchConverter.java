@@ -0,0 +1,388 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import eu.europa.ec.eurostat.los.hc55.ConversionMetrics.Stage;
+
+/**
+ * The <code>BatchConverter</code> class converts all the code lists, concept schemes and key families of the Census Hub SDMX files.
+ * Artifacts are independent, so they are converted in parallel on a bounded pool of threads, each conversion building its own Jena model.
+ *
+ * @author Franck
+ */
+public class BatchConverter {
+
+	private static Logger logger = LogManager.getLogger(BatchConverter.class);
+
+	/** Registry containing the artifacts to convert */
+	private SDMXStructureRegistry registry = null;
+
+	/** Maximum number of artifacts converted at the same time */
+	private int parallelism = 1;
+
+	/**
+	 * Converts all the Census Hub artifacts into Turtle files.
+	 * Arguments are the output directory (default <code>src/main/resources/data</code>) and optionally either the name of a TriG file
+	 * where all artifacts will also be merged, or a file extension (<code>.nt</code>, <code>.ttl.gz</code>, <code>.rt</code>...) selecting streaming output.
+	 */
+	public static void main(String[] args) throws Exception {
+
+		String outputDirectory = (args.length > 0) ? args[0] : "src/main/resources/data";
+		SDMXStructureRegistry registry = SDMXStructureRegistry.load(Configuration.NON_GEO_CODELISTS, Configuration.CONCEPTS, Configuration.KEY_FAMILIES);
+		BatchConverter converter = new BatchConverter(registry);
+		int failures = 0;
+		if ((args.length > 1) && !args[1].endsWith(".trig")) failures = converter.convertToStreams(new File(outputDirectory), args[1]);
+		else if (args.length > 1) failures = converter.convertToDataset(args[1], new File(outputDirectory));
+		else failures = converter.convertToFiles(new File(outputDirectory));
+		if (failures > 0) logger.error(failures + " artifact(s) could not be converted, see log for details");
+		logger.info(ConversionMetrics.getShared().getReport());
+	}
+
+	/**
+	 * Creates a batch converter using as many threads as there are available processors.
+	 *
+	 * @param registry The registry containing the artifacts to convert.
+	 */
+	public BatchConverter(SDMXStructureRegistry registry) {
+		this(registry, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates a batch converter using a given number of threads.
+	 *
+	 * @param registry The registry containing the artifacts to convert.
+	 * @param parallelism The maximum number of artifacts converted at the same time.
+	 */
+	public BatchConverter(SDMXStructureRegistry registry, int parallelism) {
+		this.registry = registry;
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	/**
+	 * Returns all the artifacts contained in the registry.
+	 *
+	 * @return The list of artifacts: code lists first, then concept schemes, then key families.
+	 */
+	public List<Artifact> listArtifacts() {
+
+		List<Artifact> artifacts = new ArrayList<Artifact>();
+		for (String id : registry.getCodeListIds()) artifacts.add(new Artifact(ArtifactType.CODE_LIST, id));
+		for (String id : registry.getConceptSchemeIds()) artifacts.add(new Artifact(ArtifactType.CONCEPT_SCHEME, id));
+		for (String id : registry.getKeyFamilyIds()) artifacts.add(new Artifact(ArtifactType.KEY_FAMILY, id));
+		return artifacts;
+	}
+
+	/**
+	 * Converts all artifacts and writes each one in its own Turtle file.
+	 *
+	 * @param outputDirectory The directory where the files are written, created if necessary.
+	 * @return The number of artifacts that could not be converted.
+	 */
+	public int convertToFiles(File outputDirectory) {
+		return convertToFiles(listArtifacts(), outputDirectory, null).size();
+	}
+
+	/**
+	 * Converts all artifacts and writes them in a single TriG file, with one named graph per artifact.
+	 *
+	 * @param fileName The name of the TriG file.
+	 * @return The number of artifacts that could not be converted.
+	 * @throws IOException In case of problem writing the file.
+	 */
+	public int convertToDataset(String fileName) throws IOException {
+		return convertToDataset(fileName, null);
+	}
+
+	/**
+	 * Converts all artifacts once and writes them both in a single TriG file, with one named graph per artifact, and each one in its own Turtle file.
+	 *
+	 * @param fileName The name of the TriG file.
+	 * @param outputDirectory The directory where the Turtle files are written, created if necessary, or <code>null</code> for the TriG file only.
+	 * @return The number of artifacts that could not be converted.
+	 * @throws IOException In case of problem writing the TriG file.
+	 */
+	public int convertToDataset(String fileName, File outputDirectory) throws IOException {
+
+		if (outputDirectory != null) outputDirectory.mkdirs();
+		Dataset dataset = DatasetFactory.create();
+		int failures = convertAll(listArtifacts(), (artifact, model) -> {
+			if (outputDirectory != null) {
+				try {
+					writeTurtle(artifact, model, outputDirectory);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+			synchronized (dataset) {
+				dataset.addNamedModel(artifact.getGraphURI(), model);
+				dataset.getDefaultModel().setNsPrefixes(model.getNsPrefixMap());
+			}
+		});
+		long start = System.nanoTime();
+		try (OutputStream output = new FileOutputStream(fileName)) {
+			RDFDataMgr.write(output, dataset, Lang.TRIG);
+		}
+		ConversionMetrics.getShared().record(Stage.WRITE, null, start);
+		return failures;
+	}
+
+	/**
+	 * Converts all artifacts and streams each one to its own file without building Jena models.
+	 *
+	 * @param outputDirectory The directory where the files are written, created if necessary.
+	 * @param extension The extension of the files, which determines the serialization (see <code>RDFStreamOutput</code>).
+	 * @return The number of artifacts that could not be converted.
+	 */
+	public int convertToStreams(File outputDirectory, String extension) {
+		return convertToFiles(listArtifacts(), outputDirectory, extension).size();
+	}
+
+	/**
+	 * Converts a list of artifacts and writes each one in its own file.
+	 *
+	 * @param artifacts The artifacts to convert.
+	 * @param outputDirectory The directory where the files are written, created if necessary.
+	 * @param extension <code>null</code> to write pretty Turtle files from Jena models, or the extension of the files for streaming output,
+	 * which determines the serialization (see <code>RDFStreamOutput</code>).
+	 * @return The artifacts that could not be converted.
+	 */
+	public List<Artifact> convertToFiles(List<Artifact> artifacts, File outputDirectory, String extension) {
+
+		outputDirectory.mkdirs();
+		if (extension == null) {
+			logger.info("Converting " + artifacts.size() + " artifacts with " + parallelism + " threads");
+			return runAll(artifacts, artifact -> {
+				Model model = artifact.convert(registry);
+				if (model == null) throw new IllegalStateException("No model produced for " + artifact);
+				writeTurtle(artifact, model, outputDirectory);
+				model.close();
+			});
+		}
+
+		RDFStreamOutput.getFormat(extension); // Fail early if the extension is not supported
+		logger.info("Streaming " + artifacts.size() + " artifacts with " + parallelism + " threads");
+		return runAll(artifacts, artifact -> {
+			boolean found = false;
+			RDFStreamOutput output = new RDFStreamOutput(new File(outputDirectory, artifact.getFileName(extension)).getPath());
+			try {
+				found = artifact.convert(registry, output.getStream());
+			} finally {
+				// Triples are written as they are built, only the final flush is recorded as write time
+				long start = System.nanoTime();
+				output.close();
+				ConversionMetrics.getShared().record(Stage.WRITE, artifact.toString(), start);
+			}
+			if (!found) throw new IllegalStateException("No output produced for " + artifact);
+		});
+	}
+
+	/**
+	 * Writes the model of an artifact in its Turtle file.
+	 */
+	private void writeTurtle(Artifact artifact, Model model, File outputDirectory) throws IOException {
+
+		long start = System.nanoTime();
+		try (OutputStream output = new FileOutputStream(new File(outputDirectory, artifact.getFileName(null)))) {
+			RDFDataMgr.write(output, model, Lang.TURTLE);
+		}
+		ConversionMetrics.getShared().record(Stage.WRITE, artifact.toString(), start);
+	}
+
+	/**
+	 * Converts a list of artifacts in parallel and hands each resulting model to a consumer.
+	 * The consumer is called from the conversion threads and must therefore be thread-safe.
+	 *
+	 * @param artifacts The artifacts to convert.
+	 * @param consumer The consumer of the converted models.
+	 * @return The number of artifacts that could not be converted.
+	 */
+	public int convertAll(List<Artifact> artifacts, BiConsumer<Artifact, Model> consumer) {
+
+		logger.info("Converting " + artifacts.size() + " artifacts with " + parallelism + " threads");
+		return runAll(artifacts, artifact -> {
+			Model model = artifact.convert(registry);
+			if (model == null) throw new IllegalStateException("No model produced for " + artifact);
+			consumer.accept(artifact, model);
+			model.close();
+		}).size();
+	}
+
+	/**
+	 * Runs a task for each artifact on the thread pool and waits for all of them to finish.
+	 *
+	 * @param artifacts The artifacts to process.
+	 * @param task The task to run for each artifact.
+	 * @return The artifacts for which the task failed.
+	 */
+	private List<Artifact> runAll(List<Artifact> artifacts, ArtifactTask task) {
+
+		// Remote concept files are revalidated once at the start of each run
+		ConceptCatalogue.revalidate();
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (Artifact artifact : artifacts) {
+			futures.add(executor.submit(() -> {
+				task.run(artifact);
+				return null;
+			}));
+		}
+		executor.shutdown();
+
+		List<Artifact> failures = new ArrayList<Artifact>();
+		for (int index = 0; index < artifacts.size(); index++) {
+			try {
+				futures.get(index).get();
+			} catch (ExecutionException e) {
+				logger.error("Conversion of " + artifacts.get(index) + " failed", e.getCause());
+				failures.add(artifacts.get(index));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				executor.shutdownNow();
+				logger.error("Batch conversion interrupted");
+				failures.addAll(artifacts.subList(index, artifacts.size()));
+				return failures;
+			}
+		}
+		logger.info("Batch conversion finished, " + (artifacts.size() - failures.size()) + " artifacts converted");
+		return failures;
+	}
+
+	/** A task processing an artifact. */
+	private interface ArtifactTask {
+		void run(Artifact artifact) throws Exception;
+	}
+
+	/** Types of SDMX artifacts handled by the batch converter. */
+	public enum ArtifactType {
+		CODE_LIST, CONCEPT_SCHEME, KEY_FAMILY
+	}
+
+	/** A SDMX artifact to convert. */
+	public static class Artifact {
+
+		private ArtifactType type = null;
+		private String id = null;
+
+		public Artifact(ArtifactType type, String id) {
+			this.type = type;
+			this.id = id;
+		}
+
+		public ArtifactType getType() {
+			return type;
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		/**
+		 * Converts the artifact with the converter corresponding to its type.
+		 *
+		 * @param registry The registry containing the artifact.
+		 * @return The converted artifact as a Jena model, <code>null</code> if the artifact was not found.
+		 */
+		public Model convert(SDMXStructureRegistry registry) throws XMLStreamException, IOException {
+
+			switch (type) {
+			case CODE_LIST:
+				return new CodeListConverter(registry).convertCodeList(id);
+			case CONCEPT_SCHEME:
+				return new ConceptConverter(registry).convertConceptScheme(id);
+			default:
+				return new DSDConverter(registry).convertDSD(id, new ArrayList<String>());
+			}
+		}
+
+		/**
+		 * Converts the artifact with the converter corresponding to its type and sends the triples to a stream.
+		 *
+		 * @param registry The registry containing the artifact.
+		 * @param output The stream receiving the triples.
+		 * @return <code>true</code> if the artifact was found, <code>false</code> otherwise.
+		 */
+		public boolean convert(SDMXStructureRegistry registry, StreamRDF output) throws XMLStreamException, IOException {
+
+			switch (type) {
+			case CODE_LIST:
+				return new CodeListConverter(registry).convertCodeList(id, output);
+			case CONCEPT_SCHEME:
+				return new ConceptConverter(registry).convertConceptScheme(id, output);
+			default:
+				return new DSDConverter(registry).convertDSD(id, new ArrayList<String>(), output);
+			}
+		}
+
+		/**
+		 * Returns the base name of the output files for the artifact, for example cl-age for code list CL_AGE or dsd-hc55 for key family HC55.
+		 *
+		 * @return The file name without extension.
+		 */
+		public String getBaseName() {
+
+			String baseName = id.toLowerCase().replace('_', '-');
+			switch (type) {
+			case CODE_LIST:
+				return baseName; // Code list identifiers already start with CL_
+			case CONCEPT_SCHEME:
+				return "cs-" + baseName;
+			default:
+				return "dsd-" + baseName;
+			}
+		}
+
+		/**
+		 * Returns the name of the output file for the artifact, for example cl-age.ttl for code list CL_AGE.
+		 *
+		 * @param extension The extension of the file, <code>null</code> for the default <code>.ttl</code>.
+		 * @return The file name.
+		 */
+		public String getFileName(String extension) {
+			return getBaseName() + ((extension == null) ? ".ttl" : extension);
+		}
+
+		/**
+		 * Returns the name of the graph containing the artifact in a merged dataset, which is the URI of the converted artifact.
+		 *
+		 * @return The graph URI.
+		 */
+		public String getGraphURI() {
+
+			switch (type) {
+			case CODE_LIST:
+				return Configuration.codeListURI(id, null);
+			case CONCEPT_SCHEME:
+				return Configuration.conceptSchemeURI(id, null);
+			default:
+				return Configuration.dsdURI(id);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return ConversionMetrics.artifactName(type, id);
+		}
+	}
+}
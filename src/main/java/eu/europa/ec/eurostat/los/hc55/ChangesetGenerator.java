@@ -0,0 +1,217 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.system.StreamOps;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import eu.europa.ec.eurostat.los.hc55.BatchConverter.Artifact;
+import eu.europa.ec.eurostat.los.hc55.BatchConverter.ArtifactType;
+import eu.europa.ec.eurostat.los.hc55.ConversionMetrics.Stage;
+
+/**
+ * The <code>ChangesetGenerator</code> class computes the changes between a previously published RDF file and a new conversion of the
+ * same artifact, so that stores can be updated with the difference instead of replacing the whole graph.
+ * Both versions are collected as sorted canonical triples (see <code>SortedTriples</code>) and merged in a single pass, so that only the
+ * current sorted runs are kept in memory. The changeset is written either in RDF Patch or as a SPARQL Update request.
+ *
+ * @author Franck
+ */
+public class ChangesetGenerator {
+
+	private static Logger logger = LogManager.getLogger(ChangesetGenerator.class);
+
+	/** Changeset formats. */
+	public enum Format {
+		/** RDF Patch, one <code>A</code> or <code>D</code> row per triple added or deleted, in a single transaction */
+		RDF_PATCH,
+		/** SPARQL 1.1 Update, consecutive additions and deletions grouped in <code>INSERT DATA</code> and <code>DELETE DATA</code> operations */
+		SPARQL_UPDATE
+	}
+
+	private final Format format;
+
+	/** URI of the graph to update, <code>null</code> for the default graph */
+	private final String graphURI;
+
+	/**
+	 * Computes the changeset of an artifact of the Census Hub SDMX files.
+	 * Arguments are the previously published RDF file, the artifact key (for example <code>CODE_LIST:CL_AGE</code>) and the changeset
+	 * file, written in SPARQL Update if its extension is <code>.ru</code> and in RDF Patch otherwise (<code>.rdfp</code>).
+	 * The changeset applies to the named graph of the artifact (see <code>TDB2Loader</code>), or to the graph given as fourth argument.
+	 */
+	public static void main(String[] args) throws Exception {
+
+		int separator = args[1].indexOf(':');
+		Artifact artifact = new Artifact(ArtifactType.valueOf(args[1].substring(0, separator)), args[1].substring(separator + 1));
+		String graphURI = (args.length > 3) ? args[3] : artifact.getGraphURI();
+		Format format = args[2].endsWith(".ru") ? Format.SPARQL_UPDATE : Format.RDF_PATCH;
+		SDMXStructureRegistry registry = SDMXStructureRegistry.load(Configuration.NON_GEO_CODELISTS, Configuration.CONCEPTS, Configuration.KEY_FAMILIES);
+		try (OutputStream output = new FileOutputStream(args[2])) {
+			System.out.println(new ChangesetGenerator(format, graphURI).write(args[0], artifact, registry, output) + " change(s) written to " + args[2]);
+		}
+	}
+
+	/**
+	 * Creates a changeset generator.
+	 *
+	 * @param format The format of the changesets.
+	 * @param graphURI The URI of the graph to update, <code>null</code> for the default graph.
+	 */
+	public ChangesetGenerator(Format format, String graphURI) {
+		this.format = format;
+		this.graphURI = graphURI;
+	}
+
+	/**
+	 * Writes the changes between a previously published file and a new conversion of an artifact.
+	 * The artifact is converted directly to the sorted triples, without building a model.
+	 *
+	 * @param previousFile The name of the RDF file containing the previous version, in any syntax known by Jena.
+	 * @param artifact The artifact to convert.
+	 * @param registry The registry containing the artifact.
+	 * @param output The stream where the changeset is written, which is not closed.
+	 * @return The number of triples added or deleted.
+	 * @throws XMLStreamException In case of error while parsing the SDMX files.
+	 * @throws IOException In case of problem reading the files or writing the changeset.
+	 */
+	public long write(String previousFile, Artifact artifact, SDMXStructureRegistry registry, OutputStream output) throws XMLStreamException, IOException {
+
+		try (SortedTriples current = new SortedTriples()) {
+			if (!artifact.convert(registry, current)) throw new IllegalArgumentException("Artifact " + artifact + " not found");
+			return write(previousFile, current, output);
+		}
+	}
+
+	/**
+	 * Writes the changes between a previously published file and a new version given as a model, for example a result of <code>convertCodeList</code>.
+	 *
+	 * @param previousFile The name of the RDF file containing the previous version, in any syntax known by Jena.
+	 * @param current The new version.
+	 * @param output The stream where the changeset is written, which is not closed.
+	 * @return The number of triples added or deleted.
+	 * @throws IOException In case of problem reading the file or writing the changeset.
+	 */
+	public long write(String previousFile, Model current, OutputStream output) throws IOException {
+
+		try (SortedTriples currentTriples = new SortedTriples()) {
+			StreamOps.sendGraphToStream(current.getGraph(), currentTriples);
+			return write(previousFile, currentTriples, output);
+		}
+	}
+
+	private long write(String previousFile, SortedTriples current, OutputStream output) throws IOException {
+
+		try (SortedTriples previous = new SortedTriples()) {
+			long start = System.nanoTime();
+			RDFDataMgr.parse(previous, previousFile);
+			ConversionMetrics.getShared().record(Stage.PARSE, null, start);
+			return write(previous, current, output);
+		}
+	}
+
+	/**
+	 * Writes the changes between two versions in one merge pass over their sorted triples.
+	 *
+	 * @param previous The triples of the previous version.
+	 * @param current The triples of the new version.
+	 * @param output The stream where the changeset is written, which is not closed.
+	 * @return The number of triples added or deleted.
+	 * @throws IOException In case of problem reading the sorted triples or writing the changeset.
+	 */
+	public long write(SortedTriples previous, SortedTriples current, OutputStream output) throws IOException {
+
+		long start = System.nanoTime();
+		Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), 1 << 16);
+		ChangesetWriter changeset = new ChangesetWriter(writer);
+		try (SortedTriples.LineIterator previousLines = previous.iterator(); SortedTriples.LineIterator currentLines = current.iterator()) {
+			String previousLine = previousLines.hasNext() ? previousLines.next() : null;
+			String currentLine = currentLines.hasNext() ? currentLines.next() : null;
+			while ((previousLine != null) || (currentLine != null)) {
+				int comparison = (previousLine == null) ? 1 : (currentLine == null) ? -1 : previousLine.compareTo(currentLine);
+				if (comparison < 0) changeset.change(false, previousLine);
+				if (comparison > 0) changeset.change(true, currentLine);
+				if (comparison <= 0) previousLine = previousLines.hasNext() ? previousLines.next() : null;
+				if (comparison >= 0) currentLine = currentLines.hasNext() ? currentLines.next() : null;
+			}
+		}
+		changeset.finish();
+		writer.flush();
+		ConversionMetrics.getShared().record(Stage.WRITE, null, start);
+		logger.info("Changeset contains " + changeset.additions + " addition(s) and " + changeset.deletions + " deletion(s)");
+		return changeset.additions + changeset.deletions;
+	}
+
+	/**
+	 * Writes the rows of a changeset in the requested format.
+	 */
+	private class ChangesetWriter {
+
+		private final Writer writer;
+		private final String graph = (graphURI == null) ? null : "<" + graphURI + ">";
+
+		private long additions = 0;
+		private long deletions = 0;
+		/** For SPARQL Update, whether the open operation is an addition, <code>null</code> if no operation is open */
+		private Boolean openAddition = null;
+
+		private ChangesetWriter(Writer writer) throws IOException {
+
+			this.writer = writer;
+			if (format == Format.RDF_PATCH) writer.write("TX .\n");
+		}
+
+		/**
+		 * Writes an addition or a deletion.
+		 *
+		 * @param addition <code>true</code> for an addition, <code>false</code> for a deletion.
+		 * @param line The triple, as a N-Triples line without the final dot.
+		 */
+		private void change(boolean addition, String line) throws IOException {
+
+			if (addition) additions++;
+			else deletions++;
+			if (format == Format.RDF_PATCH) {
+				writer.write(addition ? "A " : "D ");
+				writer.write(line);
+				if (graph != null) writer.write(" " + graph);
+				writer.write(" .\n");
+				return;
+			}
+			if ((openAddition == null) || (openAddition != addition)) {
+				// Consecutive operations are separated by semicolons
+				if (openAddition != null) closeOperation(" ;\n");
+				writer.write(addition ? "INSERT DATA {\n" : "DELETE DATA {\n");
+				if (graph != null) writer.write("  GRAPH " + graph + " {\n");
+				openAddition = addition;
+			}
+			writer.write((graph == null) ? "  " : "    ");
+			writer.write(line);
+			writer.write(" .\n");
+		}
+
+		private void finish() throws IOException {
+
+			if (format == Format.RDF_PATCH) writer.write("TC .\n");
+			else if (openAddition != null) closeOperation("\n");
+		}
+
+		private void closeOperation(String separator) throws IOException {
+
+			if (graph != null) writer.write("  }\n");
+			writer.write("}");
+			writer.write(separator);
+		}
+	}
+}
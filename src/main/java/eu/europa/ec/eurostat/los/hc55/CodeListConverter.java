@@ -1,140 +1,288 @@
 package eu.europa.ec.eurostat.los.hc55;
 
-import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Consumer;
 
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
 
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Literal;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
-import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.riot.Lang;
 import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.system.StreamOps;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFLib;
 import org.apache.jena.vocabulary.RDF;
 import org.apache.jena.vocabulary.SKOS;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.jdom2.Document;
-import org.jdom2.Element;
-import org.jdom2.JDOMException;
-import org.jdom2.filter.Filters;
-import org.jdom2.input.SAXBuilder;
-import org.jdom2.util.IteratorIterable;
-import org.jdom2.xpath.XPathExpression;
-import org.jdom2.xpath.XPathFactory;
-import org.xml.sax.SAXException;
+
+import eu.europa.ec.eurostat.los.hc55.BatchConverter.ArtifactType;
+import eu.europa.ec.eurostat.los.hc55.ConversionMetrics.Stage;
 
 /**
  * The <code>CodeListConverter</code> class allows to convert a SDMX code list into a SKOS concept scheme.
- * 
+ * Converters hold no conversion state and can be shared by concurrent threads.
+ *
  * @author Franck
  */
 public class CodeListConverter {
 
 	private static Logger logger = LogManager.getLogger(CodeListConverter.class);
 
-	private Document clDocument = null;
+	/** Name of the SDMX file containing the code lists */
+	private final String codeListsFile;
 
-	public static void main(String[] args) throws ParserConfigurationException, SAXException, IOException, JDOMException {
+	/** Registry containing the code lists, if they have already been indexed */
+	private final SDMXStructureRegistry registry;
+
+	/**
+	 * Converts the age code list. The optional argument is the output file, whose extension selects the serialization
+	 * (see <code>RDFStreamOutput</code>, for example <code>.rt</code> for RDF Thrift); the default is <code>cl-age.ttl</code> in Turtle.
+	 */
+	public static void main(String[] args) throws XMLStreamException, IOException {
 
 		CodeListConverter reader = new CodeListConverter();
-		reader.readDocument();
 		Model ageModel = reader.convertCodeList("CL_AGE");
-		RDFDataMgr.write(new FileOutputStream("src/main/resources/data/cl-age.ttl"), ageModel, Lang.TURTLE);
+		if (args.length > 0) {
+			try (RDFStreamOutput output = new RDFStreamOutput(args[0])) {
+				StreamOps.sendGraphToStream(ageModel.getGraph(), output.getStream());
+			}
+		} else RDFDataMgr.write(new FileOutputStream("src/main/resources/data/cl-age.ttl"), ageModel, Lang.TURTLE);
 	}
 
 	/**
-	 * Reads the SDMX file containing the code lists into a JDOM document.
-	 * 
-	 * @throws JDOMException In case of error while parsing the file content.
-	 * @throws IOException In case of problem reading the SDMX file.
+	 * Creates a converter for the code lists contained in the default SDMX file.
+	 */
+	public CodeListConverter() {
+		this(Configuration.NON_GEO_CODELISTS);
+	}
+
+	/**
+	 * Creates a converter for the code lists contained in a given SDMX file.
+	 *
+	 * @param codeListsFile The name of the SDMX file containing the code lists.
 	 */
-	private void readDocument() throws JDOMException, IOException {
+	public CodeListConverter(String codeListsFile) {
+		this.codeListsFile = codeListsFile;
+		this.registry = null;
+	}
 
-		SAXBuilder jdomBuilder = new SAXBuilder();
-		clDocument = jdomBuilder.build(new File(Configuration.NON_GEO_CODELISTS));
+	/**
+	 * Creates a converter for the code lists contained in a registry.
+	 * Code lists are then resolved from the registry indexes instead of being searched for in the SDMX file.
+	 *
+	 * @param registry The registry containing the code lists.
+	 */
+	public CodeListConverter(SDMXStructureRegistry registry) {
+		this.codeListsFile = null;
+		this.registry = registry;
 	}
 
 	/**
 	 * Translates a SDMX code list into a SKOS concept scheme and returns it as a Jena model.
-	 * 
+	 * The SDMX file is streamed, so that only the resulting model is kept in memory.
+	 *
 	 * @param codeListId The identifier of the code list in the input SDMX file.
 	 * @return The SKOS concept scheme as a Jena model.
+	 * @throws XMLStreamException In case of error while parsing the file content.
+	 * @throws IOException In case of problem reading the SDMX file.
 	 */
-	public Model convertCodeList(String codeListId) {
+	public Model convertCodeList(String codeListId) throws XMLStreamException, IOException {
 
-		// TODO Add concept corresponding to class
-
-		// Define and execute the XQuery expression that will select the code lists with the requested identifier
-		String query = "//*[(local-name(.) = 'CodeList') and (@id= '" + codeListId + "')]";
-		XPathExpression<Element> expression = XPathFactory.instance().compile(query, Filters.element());
-		List<Element> selectedLists = expression.evaluate(clDocument);
-		if (selectedLists.size() == 0) {
-			logger.warn("No code list found with identifier " + codeListId + ", returning null model");
+		Model clModel = ModelFactory.createDefaultModel();
+		if (!convertCodeList(codeListId, StreamRDFLib.graph(clModel.getGraph()))) {
+			clModel.close();
 			return null;
 		}
-		if (selectedLists.size() > 1) logger.warn("Several code lists have identifier "+ codeListId + ", returning model for first list found");
+		return clModel;
+	}
 
-		Model clModel = ModelFactory.createDefaultModel();
-		clModel.setNsPrefix("rdf", RDF.getURI());
-		clModel.setNsPrefix("skos", SKOS.getURI());
-
-		Element selectedList = selectedLists.get(0);
-		String clIdentifier = selectedList.getAttributeValue("id").trim();
-		Element clNameElement = selectedList.getChild("Name", Configuration.sdmxStructureNS); // Can there be several elements for different languages?
-
-		// Creation of the SKOS concept scheme
-		String schemeURI = Configuration.codeListURI(clIdentifier, clNameElement.getText().trim());
-		logger.info("Creating SKOS concept scheme for code list " + clNameElement.getText() + " with URI " + schemeURI);
-		Resource clResource = clModel.createResource(schemeURI, SKOS.ConceptScheme);
-		clResource.addProperty(SKOS.notation, clIdentifier);
-		clResource.addProperty(SKOS.prefLabel, Configuration.getLiteral(clNameElement));
-
-		// Filter out the Name child and loop through codes
-		List<Element> listOfCodes = selectedList.getContent(Filters.element("Code", Configuration.sdmxStructureNS));
-		for (Element code : listOfCodes) {
-			String codeValue = code.getAttributeValue("value").trim();
-			String parentCodeValue = code.getAttributeValue("parentCode").trim();
-			Element codeDescriptionElement = code.getChild("Description", Configuration.sdmxStructureNS);
-			logger.info("Creating SKOS concept for code " + codeValue + " (" + codeDescriptionElement.getText() + ")");
-			String codeURI = Configuration.codeURI(clIdentifier, codeValue);
-			Resource codeResource = clModel.createResource(codeURI, SKOS.Concept);
-			codeResource.addProperty(SKOS.notation, codeValue);
-			codeResource.addProperty(SKOS.prefLabel, Configuration.getLiteral(codeDescriptionElement));
-			codeResource.addProperty(SKOS.inScheme, clResource);
-			if (parentCodeValue.length() == 0) {
-				codeResource.addProperty(SKOS.topConceptOf, clResource);
-				clResource.addProperty(SKOS.hasTopConcept, codeResource);
-			} else {
-				Resource parentCodeResource = clModel.createResource(Configuration.codeURI(clIdentifier, parentCodeValue));
-				codeResource.addProperty(SKOS.broader, parentCodeResource);
-				parentCodeResource.addProperty(SKOS.narrower, codeResource);
-			}
+	/**
+	 * Translates a SDMX code list into a SKOS concept scheme and sends the resulting triples to a stream as they are produced.
+	 * The <code>start</code> and <code>finish</code> methods of the stream are not called.
+	 *
+	 * @param codeListId The identifier of the code list in the input SDMX file.
+	 * @param output The stream receiving the triples of the SKOS concept scheme.
+	 * @return <code>true</code> if the code list was found, <code>false</code> otherwise.
+	 * @throws XMLStreamException In case of error while parsing the file content.
+	 * @throws IOException In case of problem reading the SDMX file.
+	 */
+	public boolean convertCodeList(String codeListId, StreamRDF output) throws XMLStreamException, IOException {
+		return convertCodeList(codeListId, output, null);
+	}
+
+	/**
+	 * Translates a SDMX code list into a SKOS concept scheme and sends the resulting triples to a stream as they are produced.
+	 * If a hierarchy index is given, it is filled with the codes of the list and built, and the triples derived from the hierarchy
+	 * (<code>skos:broaderTransitive</code> closure, depths, <code>qb:HierarchicalCodeList</code>) are added to the stream at the end of the list.
+	 * The <code>start</code> and <code>finish</code> methods of the stream are not called.
+	 *
+	 * @param codeListId The identifier of the code list in the input SDMX file.
+	 * @param output The stream receiving the triples of the SKOS concept scheme.
+	 * @param hierarchy An empty hierarchy index for the code list, or <code>null</code> if the hierarchy closure is not required.
+	 * @return <code>true</code> if the code list was found, <code>false</code> otherwise.
+	 * @throws XMLStreamException In case of error while parsing the file content.
+	 * @throws IOException In case of problem reading the SDMX file.
+	 */
+	public boolean convertCodeList(String codeListId, StreamRDF output, HierarchyIndex hierarchy) throws XMLStreamException, IOException {
+
+		// TODO Add concept corresponding to class
+
+		ConversionMetrics metrics = ConversionMetrics.getShared();
+		String artifact = ConversionMetrics.artifactName(ArtifactType.CODE_LIST, codeListId);
+		CodeListHandler handler = new CodeListHandler(codeListId, output, hierarchy, metrics);
+		long start = System.nanoTime();
+		if (registry == null) {
+			new SDMXStructureReader().read(codeListsFile, handler);
+			metrics.record(Stage.PARSE, artifact, start);
+		} else {
+			registry.replayCodeList(codeListId, handler);
+			metrics.record(Stage.BUILD, artifact, start);
 		}
-		logger.info("Code list conversion to SKOS finished, returning resulting model");
-		return clModel;
+		if (handler.listsFound == 0) {
+			logger.warn("No code list found with identifier " + codeListId);
+			return false;
+		}
+		if (handler.listsFound > 1) logger.warn("Several code lists have identifier "+ codeListId + ", converting first list found");
+
+		metrics.countArtifact();
+		logger.info("Code list conversion to SKOS finished");
+		return true;
 	}
 
 	/**
 	 * Returns the list of the code lists defined in the current file.
-	 * 
+	 *
 	 * @return The list of the code list identifiers as a <code>List</code> of strings.
+	 * @throws XMLStreamException In case of error while parsing the file content.
+	 * @throws IOException In case of problem reading the SDMX file.
 	 */
-	public List<String> listCodeLists() {
+	public List<String> listCodeLists() throws XMLStreamException, IOException {
+
+		if (registry != null) return registry.getCodeListIds();
 
 		List<String> listOfLists = new ArrayList<String>();
-		Element root = clDocument.getRootElement();
-		IteratorIterable<Element> cl = root.getDescendants(Filters.element("CodeList", Configuration.sdmxStructureNS));
-		cl.forEach(new Consumer<Element>() {
+		new SDMXStructureReader().read(codeListsFile, new SDMXStructureHandler() {
 			@Override
-			public void accept(Element element) {
-				listOfLists.add(element.getAttributeValue("id"));
+			public void startCodeList(String codeListId, List<Literal> names) {
+				listOfLists.add(codeListId);
 			}
 		});
 		return listOfLists;
 	}
+
+	/**
+	 * Produces the triples describing the SKOS concept scheme of a code list.
+	 *
+	 * @param codeListId The identifier of the code list.
+	 * @param clName The name of the code list.
+	 * @param triples The consumer receiving the triples.
+	 * @return The node of the concept scheme.
+	 */
+	static Node schemeTriples(String codeListId, Literal clName, Consumer<Triple> triples) {
+
+		NodeInterner nodes = NodeInterner.getShared();
+		String schemeURI = Configuration.codeListURI(codeListId, clName.getLexicalForm().trim());
+		logger.info("Creating SKOS concept scheme for code list " + clName.getLexicalForm() + " with URI " + schemeURI);
+		Node clNode = nodes.uri(schemeURI);
+		triples.accept(Triple.create(clNode, RDF.type.asNode(), SKOS.ConceptScheme.asNode()));
+		triples.accept(Triple.create(clNode, SKOS.notation.asNode(), nodes.literal(codeListId)));
+		triples.accept(Triple.create(clNode, SKOS.prefLabel.asNode(), clName.asNode()));
+		return clNode;
+	}
+
+	/**
+	 * Produces the triples describing the SKOS concept of a code, including its links to the concept scheme and to its parent code.
+	 *
+	 * @param codeListId The identifier of the code list.
+	 * @param clNode The node of the concept scheme.
+	 * @param codeValue The code value.
+	 * @param parentCodeValue The value of the parent code, <code>null</code> for top concepts.
+	 * @param codeDescription The description of the code, used as label.
+	 * @param triples The consumer receiving the triples.
+	 */
+	static void codeTriples(String codeListId, Node clNode, String codeValue, String parentCodeValue, Literal codeDescription, Consumer<Triple> triples) {
+
+		if (logger.isDebugEnabled()) logger.debug("Creating SKOS concept for code " + codeValue + " (" + codeDescription.getLexicalForm() + ")");
+		ConversionMetrics.getShared().countCode();
+		NodeInterner nodes = NodeInterner.getShared();
+		Node codeNode = nodes.uri(Configuration.codeURI(codeListId, codeValue));
+		triples.accept(Triple.create(codeNode, RDF.type.asNode(), SKOS.Concept.asNode()));
+		triples.accept(Triple.create(codeNode, SKOS.notation.asNode(), nodes.literal(codeValue)));
+		triples.accept(Triple.create(codeNode, SKOS.prefLabel.asNode(), codeDescription.asNode()));
+		triples.accept(Triple.create(codeNode, SKOS.inScheme.asNode(), clNode));
+		if (parentCodeValue == null) {
+			triples.accept(Triple.create(codeNode, SKOS.topConceptOf.asNode(), clNode));
+			triples.accept(Triple.create(clNode, SKOS.hasTopConcept.asNode(), codeNode));
+		} else {
+			Node parentCodeNode = nodes.uri(Configuration.codeURI(codeListId, parentCodeValue));
+			triples.accept(Triple.create(codeNode, SKOS.broader.asNode(), parentCodeNode));
+			triples.accept(Triple.create(parentCodeNode, SKOS.narrower.asNode(), codeNode));
+		}
+	}
+
+	/**
+	 * Handler that produces the SKOS concept scheme for the first code list with the requested identifier.
+	 */
+	private static class CodeListHandler implements SDMXStructureHandler {
+
+		private String requestedId = null;
+		private StreamRDF output = null;
+		private HierarchyIndex hierarchy = null;
+		private ConversionMetrics metrics = null;
+		private int listsFound = 0;
+		private boolean inRequestedList = false;
+		private Node clNode = null;
+
+		public CodeListHandler(String requestedId, StreamRDF output, HierarchyIndex hierarchy, ConversionMetrics metrics) {
+			this.requestedId = requestedId;
+			this.output = output;
+			this.hierarchy = hierarchy;
+			this.metrics = metrics;
+		}
+
+		@Override
+		public void startCodeList(String codeListId, List<Literal> names) {
+
+			inRequestedList = requestedId.equals(codeListId) && (listsFound++ == 0);
+			if (!inRequestedList) return;
+
+			output.prefix("rdf", RDF.getURI());
+			output.prefix("skos", SKOS.getURI());
+
+			Literal clName = names.get(0); // Can there be several elements for different languages?
+			clNode = schemeTriples(codeListId, clName, this::triple);
+		}
+
+		@Override
+		public void code(String codeListId, String codeValue, String parentCodeValue, List<Literal> descriptions) {
+
+			if (!inRequestedList) return;
+
+			if (hierarchy != null) hierarchy.add(codeValue, parentCodeValue);
+			codeTriples(codeListId, clNode, codeValue, parentCodeValue, descriptions.get(0), this::triple);
+		}
+
+		@Override
+		public void endCodeList(String codeListId) {
+
+			if (inRequestedList && (hierarchy != null)) {
+				hierarchy.build();
+				hierarchy.closureTriples(this::triple);
+			}
+			inRequestedList = false;
+		}
+
+		private void triple(Triple triple) {
+			output.triple(triple);
+			metrics.countTriple();
+		}
+	}
 }
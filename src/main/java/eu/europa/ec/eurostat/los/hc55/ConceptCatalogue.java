@@ -0,0 +1,224 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.jena.rdf.model.Literal;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The <code>ConceptCatalogue</code> class gives direct access to the labels and code lists of the concepts of a SDMX file.
+ * Catalogues are loaded once and cached: a catalogue read from a file is reloaded only when the modification time of the file changes,
+ * and a catalogue read from a remote file only when the content retrieved by the <code>SDMXSourceResolver</code> changes. Remote files are
+ * revalidated at most once per interval given in seconds by the <code>hc55.revalidation</code> system property (default 300), or at the next
+ * access after a call to <code>revalidate</code>, which the batch and service entry points make.
+ * Catalogues are immutable once loaded and can be shared between threads.
+ *
+ * @author Franck
+ */
+public class ConceptCatalogue {
+
+	private static Logger logger = LogManager.getLogger(ConceptCatalogue.class);
+
+	/** System property giving the minimum interval between two revalidations of a remote file, in seconds */
+	public static final String REVALIDATION_PROPERTY = "hc55.revalidation";
+
+	private static final long REVALIDATION_NANOS = TimeUnit.SECONDS.toNanos(Long.getLong(REVALIDATION_PROPERTY, 300));
+
+	/** Remote catalogues checked before this time (from <code>System.nanoTime</code>) are revalidated at their next access */
+	private static volatile long revalidationTime = System.nanoTime();
+
+	/** Catalogues loaded from files, indexed by canonical file path or by URI for remote files */
+	private static final Map<String, ConceptCatalogue> fileCache = new ConcurrentHashMap<String, ConceptCatalogue>();
+	/** Catalogues built from registries */
+	private static final Map<SDMXStructureRegistry, ConceptCatalogue> registryCache = new WeakHashMap<SDMXStructureRegistry, ConceptCatalogue>();
+
+	/**
+	 * Version of the source file when the catalogue was loaded: its modification time for local files, the name of the cached content (which
+	 * is its digest) for remote files, <code>null</code> for catalogues built from a registry
+	 */
+	private String version = null;
+	/** Time of the last revalidation of a remote file, from <code>System.nanoTime</code> */
+	private volatile long checkTime = 0;
+	/** Labels of the concepts indexed by concept scheme, concept and language */
+	private Map<String, Map<String, Map<String, String>>> labels = new HashMap<String, Map<String, Map<String, String>>>();
+	/** Code list identifiers of the coded concepts, indexed by concept identifier */
+	private Map<String, String> codeLists = new HashMap<String, String>();
+
+	/**
+	 * Returns the catalogue of the concepts contained in a SDMX file, loading it if it is not cached or if the file has changed.
+	 * Remote files are retrieved with the shared <code>SDMXSourceResolver</code>.
+	 *
+	 * @param fileName The name of the SDMX file containing the concepts, or its URI if it is remote.
+	 * @return The concept catalogue.
+	 * @throws XMLStreamException In case of error while parsing the file content.
+	 * @throws IOException In case of problem reading the SDMX file.
+	 */
+	public static ConceptCatalogue get(String fileName) throws XMLStreamException, IOException {
+		return get(fileName, SDMXSourceResolver.getShared());
+	}
+
+	/**
+	 * Returns the catalogue of the concepts contained in a SDMX file, loading it if it is not cached or if the file has changed.
+	 * A cached catalogue of a remote file is returned without revalidation if it was revalidated less than the revalidation interval ago.
+	 *
+	 * @param fileName The name of the SDMX file containing the concepts, or its URI if it is remote.
+	 * @param resolver The resolver retrieving the remote files.
+	 * @return The concept catalogue.
+	 * @throws XMLStreamException In case of error while parsing the file content.
+	 * @throws IOException In case of problem reading the SDMX file.
+	 */
+	public static ConceptCatalogue get(String fileName, SDMXSourceResolver resolver) throws XMLStreamException, IOException {
+
+		boolean remote = SDMXSourceResolver.isRemote(fileName);
+		String key = remote ? fileName : new File(fileName).getCanonicalPath();
+		ConceptCatalogue catalogue = fileCache.get(key);
+		if (remote && (catalogue != null) && catalogue.isFresh()) return catalogue;
+
+		// A remote file is retrieved (or revalidated) first, and the catalogue is read from the cached content
+		long checkTime = System.nanoTime();
+		String localName = remote ? resolver.resolve(fileName) : fileName;
+		if ((catalogue != null) && catalogue.version.equals(version(localName, remote))) {
+			catalogue.checkTime = checkTime;
+			return catalogue;
+		}
+
+		synchronized (fileCache) {
+			catalogue = fileCache.get(key);
+			String version = version(localName, remote);
+			if ((catalogue == null) || !catalogue.version.equals(version)) {
+				logger.info(((catalogue == null) ? "Loading" : "Reloading") + " concept catalogue from file " + fileName);
+				catalogue = new ConceptCatalogue();
+				catalogue.version = version;
+				new SDMXStructureReader().read(localName, catalogue.new Loader());
+				fileCache.put(key, catalogue);
+			}
+			catalogue.checkTime = checkTime;
+		}
+		return catalogue;
+	}
+
+	/**
+	 * Requests the revalidation of the remote files of the cached catalogues at their next access, whatever the revalidation interval.
+	 */
+	public static void revalidate() {
+		revalidationTime = System.nanoTime();
+	}
+
+	/** Indicates if the catalogue was checked after the last call to <code>revalidate</code> and less than the revalidation interval ago. */
+	private boolean isFresh() {
+		return (checkTime - revalidationTime > 0) && (System.nanoTime() - checkTime < REVALIDATION_NANOS);
+	}
+
+	private static String version(String localName, boolean remote) {
+		return remote ? new File(localName).getName() : Long.toString(new File(localName).lastModified());
+	}
+
+	/**
+	 * Returns the catalogue of the concepts contained in a registry, building it on first access.
+	 *
+	 * @param registry The registry containing the concepts.
+	 * @return The concept catalogue.
+	 */
+	public static ConceptCatalogue get(SDMXStructureRegistry registry) {
+
+		synchronized (registryCache) {
+			ConceptCatalogue catalogue = registryCache.get(registry);
+			if (catalogue == null) {
+				catalogue = new ConceptCatalogue();
+				Loader loader = catalogue.new Loader();
+				for (String conceptSchemeId : registry.getConceptSchemeIds()) registry.replayConceptScheme(conceptSchemeId, loader);
+				// Concepts defined outside of schemes are only known by their core representation
+				catalogue.codeLists.putAll(registry.getCodedConcepts());
+				registryCache.put(registry, catalogue);
+			}
+			return catalogue;
+		}
+	}
+
+	/**
+	 * Empties the cache of catalogues.
+	 */
+	public static void clearCache() {
+
+		fileCache.clear();
+		synchronized (registryCache) {
+			registryCache.clear();
+		}
+	}
+
+	private ConceptCatalogue() {}
+
+	/**
+	 * Returns the label of a concept in a given language.
+	 *
+	 * @param conceptSchemeId The identifier of the concept scheme containing the concept.
+	 * @param conceptId The identifier of the concept.
+	 * @param language The language tag of the label.
+	 * @return The label, or <code>null</code> if the concept has no label in this language.
+	 */
+	public String getLabel(String conceptSchemeId, String conceptId, String language) {
+		return getLabels(conceptSchemeId, conceptId).get(language);
+	}
+
+	/**
+	 * Returns the labels of a concept in all languages.
+	 *
+	 * @param conceptSchemeId The identifier of the concept scheme containing the concept.
+	 * @param conceptId The identifier of the concept.
+	 * @return An unmodifiable map where keys are the language tags and values the labels, empty if the concept is unknown.
+	 */
+	public Map<String, String> getLabels(String conceptSchemeId, String conceptId) {
+
+		Map<String, Map<String, String>> schemeLabels = labels.get(conceptSchemeId);
+		if ((schemeLabels == null) || !schemeLabels.containsKey(conceptId)) return Collections.emptyMap();
+		return Collections.unmodifiableMap(schemeLabels.get(conceptId));
+	}
+
+	/**
+	 * Returns the identifier of the code list giving the core representation of a concept.
+	 * Concepts of all concept schemes are considered: if a concept has several code lists, the last one read is returned.
+	 *
+	 * @param conceptId The identifier of the concept.
+	 * @return The code list identifier, or <code>null</code> if the concept is not coded.
+	 */
+	public String getCodeList(String conceptId) {
+		return codeLists.get(conceptId);
+	}
+
+	/**
+	 * Returns the concepts that have a (coded) core representation, with the identifiers of the code lists.
+	 *
+	 * @return An unmodifiable map where keys are the concept identifiers and the values the code list identifiers.
+	 */
+	public Map<String, String> getCodedConcepts() {
+		return Collections.unmodifiableMap(codeLists);
+	}
+
+	/**
+	 * Handler filling the catalogue from the concept events.
+	 */
+	private class Loader implements SDMXStructureHandler {
+
+		@Override
+		public void concept(String conceptSchemeId, String conceptId, String coreRepresentation, List<Literal> names) {
+
+			if (coreRepresentation != null) codeLists.put(conceptId, coreRepresentation);
+			if (conceptSchemeId == null) return;
+			Map<String, String> conceptLabels = new LinkedHashMap<String, String>();
+			for (Literal name : names) conceptLabels.putIfAbsent(name.getLanguage(), name.getLexicalForm());
+			labels.computeIfAbsent(conceptSchemeId, id -> new HashMap<String, Map<String, String>>()).putIfAbsent(conceptId, conceptLabels);
+		}
+	}
+}
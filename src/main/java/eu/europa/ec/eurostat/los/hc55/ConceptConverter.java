@@ -1,38 +1,45 @@
 package eu.europa.ec.eurostat.los.hc55;
 
-import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Literal;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
-import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.riot.Lang;
 import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFLib;
 import org.apache.jena.vocabulary.RDF;
 import org.apache.jena.vocabulary.SKOS;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.jdom2.Document;
-import org.jdom2.Element;
-import org.jdom2.JDOMException;
-import org.jdom2.filter.Filters;
-import org.jdom2.input.SAXBuilder;
-import org.jdom2.xpath.XPathExpression;
-import org.jdom2.xpath.XPathFactory;
+
+import eu.europa.ec.eurostat.los.hc55.BatchConverter.ArtifactType;
+import eu.europa.ec.eurostat.los.hc55.ConversionMetrics.Stage;
 
 /**
  * The <code>ConceptConverter</code> class allows to convert a SDMX set of concepts into a SKOS concept scheme.
- * 
+ * Converters hold no conversion state and can be shared by concurrent threads.
+ *
  * @author Franck
  */
 public class ConceptConverter {
 
 	private static Logger logger = LogManager.getLogger(ConceptConverter.class);
 
+	/** Name of the SDMX file containing the concepts */
+	private final String conceptsFile;
+
+	/** Registry containing the concepts, if they have already been indexed */
+	private final SDMXStructureRegistry registry;
+
 	public static void main(String[] args) throws Exception {
 
 		ConceptConverter reader = new ConceptConverter();
@@ -40,81 +47,164 @@ public class ConceptConverter {
 		RDFDataMgr.write(new FileOutputStream("src/main/resources/data/cs-census-hub.ttl"), conceptModel, Lang.TURTLE);
 	}
 
+	/**
+	 * Creates a converter for the concepts contained in the default SDMX file.
+	 */
+	public ConceptConverter() {
+		this(Configuration.CONCEPTS);
+	}
+
+	/**
+	 * Creates a converter for the concepts contained in a given SDMX file.
+	 *
+	 * @param conceptsFile The name of the SDMX file containing the concepts.
+	 */
+	public ConceptConverter(String conceptsFile) {
+		this.conceptsFile = conceptsFile;
+		this.registry = null;
+	}
+
+	/**
+	 * Creates a converter for the concepts contained in a registry.
+	 * Concept schemes are then resolved from the registry indexes instead of being searched for in the SDMX file.
+	 *
+	 * @param registry The registry containing the concepts.
+	 */
+	public ConceptConverter(SDMXStructureRegistry registry) {
+		this.conceptsFile = null;
+		this.registry = registry;
+	}
+
 	/**
 	 * Translates a SDMX concepts scheme into a SKOS concept scheme and returns it as a Jena model.
-	 * 
+	 * The SDMX file is streamed, so that only the resulting model is kept in memory.
+	 *
 	 * @param conceptSchemeId The identifier of the concept scheme in the input SDMX file.
 	 * @return The SKOS concept scheme as a Jena model.
-	 * @throws IOException IOException In case of problem reading the SDMX file.
-	 * @throws JDOMException JDOMException In case of error while parsing the file content.
+	 * @throws XMLStreamException In case of error while parsing the file content.
+	 * @throws IOException In case of problem reading the SDMX file.
 	 */
-	public Model convertConceptScheme(String conceptSchemeId) throws JDOMException, IOException {
-
-		SAXBuilder jdomBuilder = new SAXBuilder();
-		Document csDocument = jdomBuilder.build(new File(Configuration.CONCEPTS));
+	public Model convertConceptScheme(String conceptSchemeId) throws XMLStreamException, IOException {
 
-		// Define and execute the XQuery expression that will select the code lists with the requested identifier
-		String query = "//*[(local-name(.) = 'ConceptScheme') and (@id= '" + conceptSchemeId + "')]";
-		XPathExpression<Element> expression = XPathFactory.instance().compile(query, Filters.element());
-		List<Element> selectedSchemes = expression.evaluate(csDocument);
-		if (selectedSchemes.size() == 0) {
-			logger.warn("No concept scheme found with identifier " + conceptSchemeId + ", returning null model");
+		Model csModel = ModelFactory.createDefaultModel();
+		if (!convertConceptScheme(conceptSchemeId, StreamRDFLib.graph(csModel.getGraph()))) {
+			csModel.close();
 			return null;
 		}
-		if (selectedSchemes.size() > 1) logger.warn("Several concept schemes have identifier "+ conceptSchemeId + ", returning model for first scheme found");
+		return csModel;
+	}
 
-		Model csModel = ModelFactory.createDefaultModel();
-		csModel.setNsPrefix("rdf", RDF.getURI());
-		csModel.setNsPrefix("skos", SKOS.getURI());
-
-		Element selectedScheme = selectedSchemes.get(0);
-		String csIdentifier = selectedScheme.getAttributeValue("id").trim();
-		Element csNameElement = selectedScheme.getChild("Name", Configuration.sdmxStructureNS); // Can there be several elements for different languages?
-
-		// Creation of the SKOS concept scheme
-		String schemeURI = Configuration.conceptSchemeURI(csIdentifier, csNameElement.getText().trim());
-		logger.info("Creating SKOS concept scheme for SDMX concept scheme " + csNameElement.getText() + " with URI " + schemeURI);
-		Resource csResource = csModel.createResource(schemeURI, SKOS.ConceptScheme);
-		csResource.addProperty(SKOS.notation, csIdentifier);
-		csResource.addProperty(SKOS.prefLabel, Configuration.getLiteral(csNameElement));
-
-		// Filter out the Name child and loop through concepts
-		List<Element> listOfConcepts = selectedScheme.getContent(Filters.element("Concept", Configuration.sdmxStructureNS));
-		for (Element concept : listOfConcepts) {
-			String conceptId = concept.getAttributeValue("id").trim(); // Ignoring coreRepresentation attribute for now
-			Element conceptNameElement = concept.getChild("Name", Configuration.sdmxStructureNS);
-			logger.info("Creating SKOS concept for concept " + conceptId + " (" + conceptNameElement.getText() + ")");
-			String conceptURI = Configuration.conceptURI(csIdentifier, conceptId);
-			Resource conceptResource = csModel.createResource(conceptURI, SKOS.Concept);
-			conceptResource.addProperty(SKOS.notation, conceptId);
-			conceptResource.addProperty(SKOS.prefLabel, Configuration.getLiteral(conceptNameElement));
-			conceptResource.addProperty(SKOS.inScheme, csResource);
+	/**
+	 * Translates a SDMX concepts scheme into a SKOS concept scheme and sends the resulting triples to a stream as they are produced.
+	 * The <code>start</code> and <code>finish</code> methods of the stream are not called.
+	 *
+	 * @param conceptSchemeId The identifier of the concept scheme in the input SDMX file.
+	 * @param output The stream receiving the triples of the SKOS concept scheme.
+	 * @return <code>true</code> if the concept scheme was found, <code>false</code> otherwise.
+	 * @throws XMLStreamException In case of error while parsing the file content.
+	 * @throws IOException In case of problem reading the SDMX file.
+	 */
+	public boolean convertConceptScheme(String conceptSchemeId, StreamRDF output) throws XMLStreamException, IOException {
+
+		ConversionMetrics metrics = ConversionMetrics.getShared();
+		String artifact = ConversionMetrics.artifactName(ArtifactType.CONCEPT_SCHEME, conceptSchemeId);
+		ConceptSchemeHandler handler = new ConceptSchemeHandler(conceptSchemeId, output, metrics);
+		long start = System.nanoTime();
+		if (registry == null) {
+			new SDMXStructureReader().read(conceptsFile, handler);
+			metrics.record(Stage.PARSE, artifact, start);
+		} else {
+			registry.replayConceptScheme(conceptSchemeId, handler);
+			metrics.record(Stage.BUILD, artifact, start);
 		}
-		logger.info("Concept scheme conversion to SKOS finished, returning resulting model");
-		return csModel;
+		if (handler.schemesFound == 0) {
+			logger.warn("No concept scheme found with identifier " + conceptSchemeId);
+			return false;
+		}
+		if (handler.schemesFound > 1) logger.warn("Several concept schemes have identifier "+ conceptSchemeId + ", converting first scheme found");
+
+		metrics.countArtifact();
+		logger.info("Concept scheme conversion to SKOS finished");
+		return true;
 	}
 
 	/**
 	 * Returns the list of concepts that have a (coded) core representation, with the names of the code lists.
-	 * 
+	 *
 	 * @return A map where keys are the concept identifiers and the values the code list identifiers.
-	 * @throws IOException IOException In case of problem reading the SDMX file.
-	 * @throws JDOMException JDOMException In case of error while parsing the file content.
+	 * @throws XMLStreamException In case of error while parsing the file content.
+	 * @throws IOException In case of problem reading the SDMX file.
 	 */
-	public Map<String, String> getCodedConcepts() throws JDOMException, IOException {
-
-		SAXBuilder jdomBuilder = new SAXBuilder();
-		Document csDocument = jdomBuilder.build(new File(Configuration.CONCEPTS));
+	public Map<String, String> getCodedConcepts() throws XMLStreamException, IOException {
 
-		// Define and execute the XQuery expression that will select the concepts which have a core coded representation
 		// NB: concepts from all concept schemes are selected: if a concept has several code list, the last is returned
-		String query = "//*[(local-name(.) = 'Concept') and (@coreRepresentation)]";
-		XPathExpression<Element> expression = XPathFactory.instance().compile(query, Filters.element());
-		List<Element> selectedConcepts = expression.evaluate(csDocument);
+		if (registry != null) return registry.getCodedConcepts();
+		return ConceptCatalogue.get(conceptsFile).getCodedConcepts();
+	}
+
+	/**
+	 * Handler that produces the SKOS concept scheme for the first SDMX concept scheme with the requested identifier.
+	 */
+	private static class ConceptSchemeHandler implements SDMXStructureHandler {
+
+		private String requestedId = null;
+		private StreamRDF output = null;
+		private ConversionMetrics metrics = null;
+		private NodeInterner nodes = NodeInterner.getShared();
+		private int schemesFound = 0;
+		private boolean inRequestedScheme = false;
+		private Node csNode = null;
+
+		public ConceptSchemeHandler(String requestedId, StreamRDF output, ConversionMetrics metrics) {
+			this.requestedId = requestedId;
+			this.output = output;
+			this.metrics = metrics;
+		}
+
+		@Override
+		public void startConceptScheme(String conceptSchemeId, List<Literal> names) {
 
-		Map<String, String> codedConcepts = new HashMap<String, String>();
-		for (Element concept : selectedConcepts) codedConcepts.put(concept.getAttributeValue("id"), concept.getAttributeValue("coreRepresentation"));
+			inRequestedScheme = requestedId.equals(conceptSchemeId) && (schemesFound++ == 0);
+			if (!inRequestedScheme) return;
 
-		return codedConcepts;
+			output.prefix("rdf", RDF.getURI());
+			output.prefix("skos", SKOS.getURI());
+
+			Literal csName = names.get(0); // Can there be several elements for different languages?
+
+			// Creation of the SKOS concept scheme
+			String schemeURI = Configuration.conceptSchemeURI(conceptSchemeId, csName.getLexicalForm().trim());
+			logger.info("Creating SKOS concept scheme for SDMX concept scheme " + csName.getLexicalForm() + " with URI " + schemeURI);
+			csNode = nodes.uri(schemeURI);
+			triple(csNode, RDF.type.asNode(), SKOS.ConceptScheme.asNode());
+			triple(csNode, SKOS.notation.asNode(), nodes.literal(conceptSchemeId));
+			triple(csNode, SKOS.prefLabel.asNode(), csName.asNode());
+		}
+
+		@Override
+		public void concept(String conceptSchemeId, String conceptId, String coreRepresentation, List<Literal> names) {
+
+			if (!inRequestedScheme) return;
+
+			// Ignoring coreRepresentation attribute for now
+			Literal conceptName = names.get(0);
+			if (logger.isDebugEnabled()) logger.debug("Creating SKOS concept for concept " + conceptId + " (" + conceptName.getLexicalForm() + ")");
+			metrics.countConcept();
+			Node conceptNode = nodes.uri(Configuration.conceptURI(conceptSchemeId, conceptId));
+			triple(conceptNode, RDF.type.asNode(), SKOS.Concept.asNode());
+			triple(conceptNode, SKOS.notation.asNode(), nodes.literal(conceptId));
+			triple(conceptNode, SKOS.prefLabel.asNode(), conceptName.asNode());
+			triple(conceptNode, SKOS.inScheme.asNode(), csNode);
+		}
+
+		@Override
+		public void endConceptScheme(String conceptSchemeId) {
+			inRequestedScheme = false;
+		}
+
+		private void triple(Node subject, Node predicate, Node object) {
+			output.triple(Triple.create(subject, predicate, object));
+			metrics.countTriple();
+		}
 	}
 }
@@ -7,14 +7,18 @@ import org.apache.jena.rdf.model.ResourceFactory;
 import org.jdom2.Element;
 import org.jdom2.Namespace;
 
-import com.sun.xml.internal.ws.util.StringUtils;
-
 public class Configuration {
 
 	/** URI of the SDMX file containing the code lists (except geographical) */
 	public final static URI NON_GEO_CODELISTS_URI = URI.create("https://circabc.europa.eu/sd/a/98c7429f-d350-4bdf-91c5-3fc3b42a286e/NonGeoCodeLists%252bESTAT%252b1.0(0).xml");
 	public final static String NON_GEO_CODELISTS = "src/main/resources/data/NonGeoCodeLists+ESTAT+1.0(0).xml";
 
+	/** Name of the SDMX file containing the geographical code lists (NUTS and LAU) */
+	public final static String GEO_CODELISTS = "src/main/resources/data/GeoCodeLists+ESTAT+1.0(0).xml";
+
+	/** Default directory of the cache of remote SDMX files (see <code>SDMXSourceResolver</code>) */
+	public final static String SOURCE_CACHE = "target/sdmx-cache";
+
 	/** Name of the file containing the Census Hub DSDs (or key families, since they are SDMX 2.0) */
 	public final static String KEY_FAMILIES = "src/main/resources/data/CENSUSHUB+ESTAT+KEYFAMILIES+1.0.xml";
 
@@ -25,15 +29,17 @@ public class Configuration {
 	public final static String CH_CONCEPT_SCHEME_ID = "CENSUSHUB_CONCEPTS";
 
 	public static final String BASE_URI = "http://linked-open-statistics.org/metadata/";
+	/** Property giving the depth of a code in the hierarchy of its code list, roots having depth 0 */
+	public static final String DEPTH_PROPERTY_URI = BASE_URI + "structure/depth";
 	public static Namespace sdmxStructureNS = Namespace.getNamespace("structure", "http://www.SDMX.org/resources/SDMXML/schemas/v2_0/structure");
 
-	/** Naming methods */
+	/** Naming methods, delegated to the shared URI minter */
 	public static String conceptSchemeURI(String conceptSchemeId, String conceptSchemeName) {
-		return BASE_URI + "concepts/" + componentName(conceptSchemeId.toLowerCase()) + "/scheme";	
+		return URIMinter.getShared().conceptSchemeURI(conceptSchemeId);
 	}
 
 	public static String conceptURI(String conceptSchemeId, String conceptId) {
-		return BASE_URI + "concepts/" + componentName(conceptSchemeId.toLowerCase()) + "/" + componentName(conceptId.toLowerCase());
+		return URIMinter.getShared().conceptURI(conceptSchemeId, conceptId);
 	}
 
 	public static String conceptURI(String conceptId) {
@@ -41,19 +47,35 @@ public class Configuration {
 	}
 
 	public static String codeListURI(String codeListId, String codeListName) {
-		return BASE_URI + "codes/" + componentName(codeListId.toLowerCase()) + "/list";	
+		return URIMinter.getShared().codeListURI(codeListId);
 	}
 
 	public static String codeURI(String codeListId, String codeId) {
-		return BASE_URI + "codes/" + componentName(codeListId.toLowerCase()) + "/" + componentName(codeId.toLowerCase());
+		return URIMinter.getShared().codeURI(codeListId, codeId);
 	}
 
 	public static String dsdURI(String dsdId) {
-		return BASE_URI + "structure/dsd/" + componentName(dsdId);
+		return URIMinter.getShared().dsdURI(dsdId);
 	}
 
 	public static String componentURI(String componentId, String componentType) {
-		return BASE_URI + "structure/" + componentName(componentType) + "/" + componentName(componentId);
+		return URIMinter.getShared().componentURI(componentId, componentType);
+	}
+
+	public static String componentSpecificationURI(String dsdURI, String componentPropertyURI) {
+		return URIMinter.getShared().componentSpecificationURI(dsdURI, componentPropertyURI);
+	}
+
+	public static String dataSetURI(String dataSetId) {
+		return URIMinter.getShared().dataSetURI(dataSetId);
+	}
+
+	public static String sliceKeyURI(String dsdId, String sliceKeyId) {
+		return URIMinter.getShared().sliceKeyURI(dsdId, sliceKeyId);
+	}
+
+	public static String sliceURI(String dataSetId, String sliceKeyId, String sliceId) {
+		return URIMinter.getShared().sliceURI(dataSetId, sliceKeyId, sliceId);
 	}
 
 	/**
@@ -64,13 +86,7 @@ public class Configuration {
 	 * @return The name of the DSD component property.
 	 */
 	public static String componentName(String sdmxConceptId) {
-
-		String[] terms = sdmxConceptId.split("_");
-		String name = "";
-		for (String term : terms) {
-			name += StringUtils.capitalize(term.toLowerCase());
-		}
-		return StringUtils.decapitalize(name);
+		return URIMinter.componentName(sdmxConceptId);
 	}
 
 	/**
@@ -84,6 +100,17 @@ public class Configuration {
 		return ResourceFactory.createLangLiteral(element.getText(), Configuration.getLanguage(element));
 	}
 
+	/**
+	 * Creates a language-tagged RDF literal from a text and a language tag.
+	 * 
+	 * @param text The content of the literal.
+	 * @param language The language tag, can be <code>null</code> for a literal without language.
+	 * @return The RDF literal as a Jena <code>Literal</code>.
+	 */
+	protected static Literal getLiteral(String text, String language) {
+		return ResourceFactory.createLangLiteral(text, (language == null) ? "" : NodeInterner.getShared().language(language));
+	}
+
 	/**
 	 * Gets the language tag of a JDOM element.
 	 * 
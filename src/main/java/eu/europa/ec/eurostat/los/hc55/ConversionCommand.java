@@ -0,0 +1,221 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.jena.riot.RDFFormat;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFWriter;
+
+import eu.europa.ec.eurostat.los.hc55.BatchConverter.Artifact;
+import eu.europa.ec.eurostat.los.hc55.BatchConverter.ArtifactType;
+import eu.europa.ec.eurostat.los.hc55.ChangesetGenerator.Format;
+
+/**
+ * The <code>ConversionCommand</code> class is the command line entry point of the shaded jar (see the <code>cli</code> profile of the POM).
+ * Unlike the <code>main</code> methods of the converters, it takes the artifacts and the SDMX files as arguments, the files defaulting to
+ * the <code>Configuration</code> constants. Single artifacts are converted by streaming the SDMX file straight to the RDF writer, without
+ * indexing the files or building a model, which keeps the classes loaded at startup to the StAX reader, the converter and one RIOT writer.
+ *
+ * @author Franck
+ */
+public class ConversionCommand {
+
+	private static final String USAGE = String.join("\n",
+			"Usage: java -jar hc55-cli.jar <command> <arguments> [options]",
+			"Commands:",
+			"  convert <CODE_LIST|CONCEPT_SCHEME|KEY_FAMILY> <id> [-o <file>] [--exclude <id,...>]",
+			"      Converts an artifact, to standard output in Turtle if no output file is given",
+			"  batch <directory> [<extension>]       Converts all artifacts into a directory",
+			"  update <directory> [<extension>]      Converts the artifacts that changed since the last update",
+			"  changeset <previous file> <TYPE:id> <changeset file> [<graph URI>]",
+			"      Writes the changes of an artifact as SPARQL Update (.ru) or RDF Patch",
+			"  export <SDMX file> <RDF file>...      Exports the code lists, concept schemes and DSDs of RDF files to SDMX",
+			"  geo <id> <directory> [<extension>]    Converts a geographical code list into one file per region",
+			"Options:",
+			"  --codelists <file>     SDMX file containing the code lists",
+			"  --concepts <file>      SDMX file containing the concepts",
+			"  --keyfamilies <file>   SDMX file containing the key families",
+			"  --geocodelists <file>  SDMX file containing the geographical code lists",
+			"SDMX files can be given by HTTP(S) URI, they are then cached in the directory given by -Dhc55.cache (default " + Configuration.SOURCE_CACHE + ")",
+			"The serialization of output files is chosen from their extension: .ttl, .nt, .rt, optionally followed by .gz");
+
+	private static final String LOG4J_JMX_PROPERTY = "log4j2.disable.jmx";
+
+	private String codeListsFile = Configuration.NON_GEO_CODELISTS;
+	private String conceptsFile = Configuration.CONCEPTS;
+	private String keyFamiliesFile = Configuration.KEY_FAMILIES;
+	private String geoCodeListsFile = Configuration.GEO_CODELISTS;
+	private String outputFile = null;
+	private List<String> excludedComponents = new ArrayList<String>();
+	private List<String> arguments = new ArrayList<String>();
+
+	public static void main(String[] args) throws Exception {
+
+		// A single run is too short to be monitored
+		if (System.getProperty(ConversionMetrics.JMX_PROPERTY) == null) System.setProperty(ConversionMetrics.JMX_PROPERTY, "false");
+		if (System.getProperty(LOG4J_JMX_PROPERTY) == null) System.setProperty(LOG4J_JMX_PROPERTY, "true");
+
+		ConversionCommand command = new ConversionCommand();
+		int status = 2;
+		try {
+			command.parse(args);
+			if (command.arguments.isEmpty()) System.err.println(USAGE);
+			else status = command.run();
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+		}
+		System.exit(status);
+	}
+
+	/**
+	 * Separates the options from the positional arguments.
+	 *
+	 * @param args The command line arguments.
+	 */
+	void parse(String[] args) {
+
+		for (int index = 0; index < args.length; index++) {
+			String arg = args[index];
+			if (!arg.startsWith("-") || arg.equals("-")) {
+				arguments.add(arg);
+				continue;
+			}
+			if (arg.equals("-h") || arg.equals("--help")) {
+				arguments.clear();
+				return;
+			}
+			if (index + 1 >= args.length) throw new IllegalArgumentException("Missing value for option " + arg);
+			String value = args[++index];
+			switch (arg) {
+			case "-o":
+			case "--output":
+				outputFile = value;
+				break;
+			case "--codelists":
+				codeListsFile = value;
+				break;
+			case "--concepts":
+				conceptsFile = value;
+				break;
+			case "--keyfamilies":
+				keyFamiliesFile = value;
+				break;
+			case "--geocodelists":
+				geoCodeListsFile = value;
+				break;
+			case "--exclude":
+				excludedComponents = Arrays.asList(value.split(","));
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + arg);
+			}
+		}
+	}
+
+	/**
+	 * Runs the command.
+	 *
+	 * @return The exit status: 0 if all the artifacts were converted, 1 otherwise, 2 for invalid arguments.
+	 */
+	int run() throws Exception {
+
+		String command = arguments.get(0);
+		List<String> commandArguments = arguments.subList(1, arguments.size());
+		switch (command) {
+		case "convert":
+			if (commandArguments.size() != 2) break;
+			return convert(ArtifactType.valueOf(commandArguments.get(0)), commandArguments.get(1)) ? 0 : 1;
+		case "batch":
+		case "update":
+			if (commandArguments.isEmpty() || (commandArguments.size() > 2)) break;
+			File directory = new File(commandArguments.get(0));
+			String extension = (commandArguments.size() > 1) ? commandArguments.get(1) : null;
+			int failures = command.equals("batch") ? batch(directory, extension) : new IncrementalConverter(directory, extension, getSourceFiles()).update();
+			System.out.println(ConversionMetrics.getShared().getReport());
+			return (failures == 0) ? 0 : 1;
+		case "changeset":
+			if ((commandArguments.size() < 3) || (commandArguments.size() > 4)) break;
+			return changeset(commandArguments);
+		case "export":
+			if (commandArguments.size() < 2) break;
+			SDMXExporter.main(commandArguments.toArray(new String[commandArguments.size()]));
+			return 0;
+		case "geo":
+			if ((commandArguments.size() < 2) || (commandArguments.size() > 3)) break;
+			String geoExtension = (commandArguments.size() > 2) ? commandArguments.get(2) : ".nt";
+			List<File> files = new GeoCodeListConverter(geoCodeListsFile).convertCodeList(commandArguments.get(0), new File(commandArguments.get(1)), geoExtension);
+			System.out.println(ConversionMetrics.getShared().getReport());
+			return (files == null) ? 1 : 0;
+		default:
+			System.err.println("Unknown command " + command);
+		}
+		System.err.println(USAGE);
+		return 2;
+	}
+
+	/**
+	 * Converts an artifact directly from the SDMX file.
+	 */
+	private boolean convert(ArtifactType type, String id) throws XMLStreamException, IOException {
+
+		if (outputFile != null) {
+			try (RDFStreamOutput output = new RDFStreamOutput(outputFile)) {
+				return convert(type, id, output.getStream());
+			}
+		}
+		StreamRDF stream = StreamRDFWriter.getWriterStream(System.out, RDFFormat.TURTLE_BLOCKS);
+		stream.start();
+		boolean found = convert(type, id, stream);
+		stream.finish();
+		System.out.flush();
+		return found;
+	}
+
+	private boolean convert(ArtifactType type, String id, StreamRDF output) throws XMLStreamException, IOException {
+
+		switch (type) {
+		case CODE_LIST:
+			return new CodeListConverter(codeListsFile).convertCodeList(id, output);
+		case CONCEPT_SCHEME:
+			return new ConceptConverter(conceptsFile).convertConceptScheme(id, output);
+		default:
+			return new DSDConverter(keyFamiliesFile, conceptsFile).convertDSD(id, excludedComponents, output);
+		}
+	}
+
+	private int batch(File directory, String extension) throws Exception {
+
+		BatchConverter converter = new BatchConverter(SDMXStructureRegistry.load(getSourceFiles()));
+		if (extension == null) return converter.convertToFiles(directory);
+		return converter.convertToStreams(directory, extension);
+	}
+
+	private int changeset(List<String> commandArguments) throws Exception {
+
+		String key = commandArguments.get(1);
+		int separator = key.indexOf(':');
+		if (separator < 0) throw new IllegalArgumentException("Artifact must be given as TYPE:id, for example CODE_LIST:CL_AGE");
+		Artifact artifact = new Artifact(ArtifactType.valueOf(key.substring(0, separator)), key.substring(separator + 1));
+		String changesetFile = commandArguments.get(2);
+		String graphURI = (commandArguments.size() > 3) ? commandArguments.get(3) : artifact.getGraphURI();
+		Format format = changesetFile.endsWith(".ru") ? Format.SPARQL_UPDATE : Format.RDF_PATCH;
+		try (OutputStream output = new FileOutputStream(changesetFile)) {
+			long changes = new ChangesetGenerator(format, graphURI).write(commandArguments.get(0), artifact, SDMXStructureRegistry.load(getSourceFiles()), output);
+			System.out.println(changes + " change(s) written to " + changesetFile);
+		}
+		return 0;
+	}
+
+	private String[] getSourceFiles() {
+		return new String[] {codeListsFile, conceptsFile, keyFamiliesFile};
+	}
+}
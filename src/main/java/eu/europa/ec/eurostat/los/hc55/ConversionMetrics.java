@@ -0,0 +1,267 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import eu.europa.ec.eurostat.los.hc55.BatchConverter.ArtifactType;
+
+/**
+ * The <code>ConversionMetrics</code> class collects counters and timers on the conversions.
+ * Counters are kept for the artifacts, codes, concepts, components, observations and triples produced, and timers for each stage of the conversion:
+ * parse (reading of the SDMX files), select (lookup of an artifact in the registry), build (production of the triples) and write (serialization
+ * or storage of the triples). Timers are totalled by stage and by artifact, the times of the fastest artifacts being dropped when too many
+ * artifacts are tracked, so that long-running services keep a bounded memory. When converting directly from a file, parsing and building happen
+ * in the same pass, which is then recorded as parse; when streaming, writing happens during the build and is recorded as build.
+ * Updates use <code>LongAdder</code> so that concurrent conversions do not contend. The shared instance is registered as a JMX MBean,
+ * unless the system property <code>hc55.jmx</code> is <code>false</code>.
+ *
+ * @author Franck
+ */
+public class ConversionMetrics implements ConversionMetricsMBean {
+
+	private static Logger logger = LogManager.getLogger(ConversionMetrics.class);
+
+	/** Name of the MBean of the shared instance */
+	public static final String OBJECT_NAME = "eu.europa.ec.eurostat.los.hc55:type=ConversionMetrics";
+
+	/** System property disabling the registration of the MBean, which starts the platform MBean server */
+	public static final String JMX_PROPERTY = "hc55.jmx";
+
+	/** Number of artifacts listed in the report */
+	private static final int REPORT_ARTIFACTS = 10;
+
+	/** Maximum number of artifacts whose times are kept, the fastest half being dropped when it is exceeded */
+	private static final int MAX_TRACKED_ARTIFACTS = 1000;
+
+	private static final ConversionMetrics shared = new ConversionMetrics();
+
+	static {
+		if (Boolean.parseBoolean(System.getProperty(JMX_PROPERTY, "true"))) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().registerMBean(shared, new ObjectName(OBJECT_NAME));
+			} catch (JMException e) {
+				logger.warn("Unable to register conversion metrics MBean " + OBJECT_NAME, e);
+			}
+		}
+	}
+
+	/** Stages of a conversion. */
+	public enum Stage {
+		PARSE, SELECT, BUILD, WRITE
+	}
+
+	private final LongAdder artifacts = new LongAdder();
+	private final LongAdder codes = new LongAdder();
+	private final LongAdder concepts = new LongAdder();
+	private final LongAdder components = new LongAdder();
+	private final LongAdder observations = new LongAdder();
+	private final LongAdder triples = new LongAdder();
+
+	/** Time spent in each stage, in nanoseconds, indexed by stage ordinal */
+	private final LongAdder[] stageNanos = new LongAdder[Stage.values().length];
+
+	/** Time spent in each stage for each artifact, in nanoseconds */
+	private final Map<String, LongAdder[]> artifactNanos = new ConcurrentHashMap<String, LongAdder[]>();
+
+	/**
+	 * Returns the metrics shared by the converters.
+	 *
+	 * @return The shared <code>ConversionMetrics</code> instance.
+	 */
+	public static ConversionMetrics getShared() {
+		return shared;
+	}
+
+	/**
+	 * Returns the name under which the metrics of an artifact are recorded, for example <code>CODE_LIST CL_AGE</code>.
+	 *
+	 * @param type The type of the artifact.
+	 * @param id The identifier of the artifact.
+	 * @return The artifact name.
+	 */
+	public static String artifactName(ArtifactType type, String id) {
+		return type + " " + id;
+	}
+
+	public ConversionMetrics() {
+		for (int index = 0; index < stageNanos.length; index++) stageNanos[index] = new LongAdder();
+	}
+
+	public void countArtifact() {
+		artifacts.increment();
+	}
+
+	public void countCode() {
+		codes.increment();
+	}
+
+	public void countConcept() {
+		concepts.increment();
+	}
+
+	public void countComponent() {
+		components.increment();
+	}
+
+	public void countObservation() {
+		observations.increment();
+	}
+
+	public void countTriple() {
+		triples.increment();
+	}
+
+	/**
+	 * Records the time spent in a stage since a given instant.
+	 *
+	 * @param stage The stage.
+	 * @param artifact The name of the artifact processed (see <code>artifactName</code>), or <code>null</code> if the time is not specific to an artifact.
+	 * @param startNanos The start of the stage, as given by <code>System.nanoTime</code>.
+	 */
+	public void record(Stage stage, String artifact, long startNanos) {
+
+		long nanos = System.nanoTime() - startNanos;
+		stageNanos[stage.ordinal()].add(nanos);
+		if (artifact == null) return;
+		artifactNanos.computeIfAbsent(artifact, name -> {
+			LongAdder[] adders = new LongAdder[Stage.values().length];
+			for (int index = 0; index < adders.length; index++) adders[index] = new LongAdder();
+			return adders;
+		})[stage.ordinal()].add(nanos);
+		if (artifactNanos.size() > MAX_TRACKED_ARTIFACTS) prune();
+	}
+
+	/**
+	 * Returns the time spent in a stage.
+	 *
+	 * @param stage The stage.
+	 * @return The total time, in milliseconds.
+	 */
+	public long getMillis(Stage stage) {
+		return TimeUnit.NANOSECONDS.toMillis(stageNanos[stage.ordinal()].sum());
+	}
+
+	@Override
+	public long getArtifacts() {
+		return artifacts.sum();
+	}
+
+	@Override
+	public long getCodes() {
+		return codes.sum();
+	}
+
+	@Override
+	public long getConcepts() {
+		return concepts.sum();
+	}
+
+	@Override
+	public long getComponents() {
+		return components.sum();
+	}
+
+	@Override
+	public long getObservations() {
+		return observations.sum();
+	}
+
+	@Override
+	public long getTriples() {
+		return triples.sum();
+	}
+
+	@Override
+	public long getParseMillis() {
+		return getMillis(Stage.PARSE);
+	}
+
+	@Override
+	public long getSelectMillis() {
+		return getMillis(Stage.SELECT);
+	}
+
+	@Override
+	public long getBuildMillis() {
+		return getMillis(Stage.BUILD);
+	}
+
+	@Override
+	public long getWriteMillis() {
+		return getMillis(Stage.WRITE);
+	}
+
+	/**
+	 * Returns a summary of the metrics: the counters, the time spent in each stage and the artifacts that took the longest to process.
+	 *
+	 * @return The report as a multi-line string.
+	 */
+	@Override
+	public String getReport() {
+
+		StringBuilder report = new StringBuilder("Conversion summary: ");
+		report.append(getArtifacts()).append(" artifacts, ").append(getCodes()).append(" codes, ").append(getConcepts()).append(" concepts, ");
+		report.append(getComponents()).append(" components, ").append(getObservations()).append(" observations, ").append(getTriples()).append(" triples").append(System.lineSeparator());
+		report.append(String.format("%-40s%10s%10s%10s%10s%n", "Time (ms)", "parse", "select", "build", "write"));
+		report.append(String.format("%-40s%10d%10d%10d%10d%n", "All", getParseMillis(), getSelectMillis(), getBuildMillis(), getWriteMillis()));
+
+		List<Map.Entry<String, LongAdder[]>> slowest = slowestArtifacts();
+		for (Map.Entry<String, LongAdder[]> entry : slowest.subList(0, Math.min(REPORT_ARTIFACTS, slowest.size()))) {
+			report.append(String.format("%-40s", entry.getKey()));
+			for (LongAdder adder : entry.getValue()) report.append(String.format("%10d", TimeUnit.NANOSECONDS.toMillis(adder.sum())));
+			report.append(System.lineSeparator());
+		}
+		return report.toString();
+	}
+
+	/**
+	 * Resets all counters and timers.
+	 */
+	@Override
+	public void reset() {
+
+		for (LongAdder adder : new LongAdder[] {artifacts, codes, concepts, components, observations, triples}) adder.reset();
+		for (LongAdder adder : stageNanos) adder.reset();
+		artifactNanos.clear();
+	}
+
+	/**
+	 * Drops the times of the fastest half of the artifacts tracked. Time recorded concurrently for a dropped artifact may be lost.
+	 */
+	private synchronized void prune() {
+
+		List<Map.Entry<String, LongAdder[]>> slowest = slowestArtifacts();
+		if (slowest.size() <= MAX_TRACKED_ARTIFACTS) return;
+		for (Map.Entry<String, LongAdder[]> entry : slowest.subList(MAX_TRACKED_ARTIFACTS / 2, slowest.size())) artifactNanos.remove(entry.getKey(), entry.getValue());
+	}
+
+	/** Returns the artifacts tracked with their times, by decreasing total time, the totals being taken once as times can be recorded meanwhile. */
+	private List<Map.Entry<String, LongAdder[]>> slowestArtifacts() {
+
+		Map<LongAdder[], Long> totals = new IdentityHashMap<LongAdder[], Long>();
+		for (LongAdder[] adders : artifactNanos.values()) totals.put(adders, total(adders));
+		List<Map.Entry<String, LongAdder[]>> slowest = new ArrayList<Map.Entry<String, LongAdder[]>>(artifactNanos.entrySet());
+		slowest.removeIf(entry -> !totals.containsKey(entry.getValue()));
+		slowest.sort((entry1, entry2) -> Long.compare(totals.get(entry2.getValue()), totals.get(entry1.getValue())));
+		return slowest;
+	}
+
+	private static long total(LongAdder[] adders) {
+
+		long total = 0;
+		for (LongAdder adder : adders) total += adder.sum();
+		return total;
+	}
+}
@@ -0,0 +1,33 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+/**
+ * Management interface of the conversion metrics, as exposed through JMX.
+ *
+ * @author Franck
+ */
+public interface ConversionMetricsMBean {
+
+	long getArtifacts();
+
+	long getCodes();
+
+	long getConcepts();
+
+	long getComponents();
+
+	long getObservations();
+
+	long getTriples();
+
+	long getParseMillis();
+
+	long getSelectMillis();
+
+	long getBuildMillis();
+
+	long getWriteMillis();
+
+	String getReport();
+
+	void reset();
+}
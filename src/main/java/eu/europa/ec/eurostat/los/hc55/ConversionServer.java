@@ -0,0 +1,179 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import eu.europa.ec.eurostat.los.hc55.BatchConverter.ArtifactType;
+
+/**
+ * The <code>ConversionServer</code> class is a small local HTTP front end for a <code>ConversionService</code>.
+ * Artifacts are served at <code>/codelist/{id}</code>, <code>/conceptscheme/{id}</code> and <code>/dsd/{id}</code>.
+ * The RDF syntax is given by the <code>format</code> query parameter as a file extension (<code>ttl</code>, <code>nt</code>, <code>rdf</code>,
+ * <code>jsonld</code>...), or else negotiated from the <code>Accept</code> header, Turtle being the default.
+ *
+ * @author Franck
+ */
+public class ConversionServer {
+
+	private static Logger logger = LogManager.getLogger(ConversionServer.class);
+
+	/** Default port of the server */
+	public static final int DEFAULT_PORT = 8055;
+
+	private final ConversionService service;
+	private final HttpServer server;
+	private final ExecutorService executor;
+
+	/**
+	 * Starts a server on the Census Hub SDMX files. Arguments are the port (default 8055) and the number of request threads (default the number of processors).
+	 */
+	public static void main(String[] args) throws Exception {
+
+		int port = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		int threads = (args.length > 1) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		ConversionServer server = new ConversionServer(ConversionService.create(), port, threads);
+		Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+		server.start();
+		System.out.println("Conversion server listening on port " + port);
+	}
+
+	/**
+	 * Creates a server bound to a local port.
+	 *
+	 * @param service The conversion service answering the requests.
+	 * @param port The port of the server, 0 for an ephemeral port.
+	 * @param threads The number of threads handling the requests.
+	 * @throws IOException In case of problem binding the port.
+	 */
+	public ConversionServer(ConversionService service, int port, int threads) throws IOException {
+
+		this.service = service;
+		this.server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+		this.executor = Executors.newFixedThreadPool(Math.max(1, threads));
+		server.setExecutor(executor);
+		server.createContext("/codelist/", exchange -> handle(exchange, ArtifactType.CODE_LIST));
+		server.createContext("/conceptscheme/", exchange -> handle(exchange, ArtifactType.CONCEPT_SCHEME));
+		server.createContext("/dsd/", exchange -> handle(exchange, ArtifactType.KEY_FAMILY));
+	}
+
+	public void start() {
+		server.start();
+		logger.info("Conversion server started on " + server.getAddress());
+	}
+
+	/**
+	 * Stops the server, waiting at most one second for the requests in progress.
+	 */
+	public void stop() {
+		server.stop(1);
+		executor.shutdown();
+		logger.info("Conversion server stopped");
+	}
+
+	/**
+	 * Returns the port on which the server listens, which is useful when the server was created on an ephemeral port.
+	 *
+	 * @return The port number.
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	private void handle(HttpExchange exchange, ArtifactType type) throws IOException {
+
+		try {
+			if (!"GET".equals(exchange.getRequestMethod()) && !"HEAD".equals(exchange.getRequestMethod())) {
+				exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+				sendError(exchange, 405, "Method not allowed");
+				return;
+			}
+			String path = exchange.getRequestURI().getRawPath();
+			String id = URLDecoder.decode(path.substring(exchange.getHttpContext().getPath().length()), "UTF-8");
+			if (id.isEmpty() || id.contains("/")) {
+				sendError(exchange, 404, "No artifact at " + path);
+				return;
+			}
+			Lang lang = getLang(exchange);
+			if (lang == null) {
+				sendError(exchange, 406, "Requested RDF syntax is not supported");
+				return;
+			}
+			Model model = null;
+			try {
+				model = service.getModel(type, id);
+			} catch (Exception e) {
+				logger.error("Conversion of " + id + " failed", e);
+				sendError(exchange, 500, "Conversion of " + id + " failed");
+				return;
+			}
+			if (model == null) {
+				sendError(exchange, 404, "No artifact found with identifier " + id);
+				return;
+			}
+			exchange.getResponseHeaders().set("Content-Type", lang.getContentType().getContentType() + "; charset=utf-8");
+			if ("HEAD".equals(exchange.getRequestMethod())) {
+				exchange.sendResponseHeaders(200, -1);
+				return;
+			}
+			exchange.sendResponseHeaders(200, 0);
+			try (OutputStream output = exchange.getResponseBody()) {
+				RDFDataMgr.write(output, model, lang);
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Returns the RDF syntax requested, from the <code>format</code> query parameter or the <code>Accept</code> header.
+	 *
+	 * @return The requested triple syntax, Turtle if none is requested, or <code>null</code> if no supported syntax is acceptable.
+	 */
+	private static Lang getLang(HttpExchange exchange) {
+
+		String query = exchange.getRequestURI().getQuery();
+		if (query != null) {
+			for (String parameter : query.split("&")) {
+				if (parameter.startsWith("format=")) return getTriplesLang(RDFLanguages.fileExtToLang(parameter.substring(7)));
+			}
+		}
+		String accept = exchange.getRequestHeaders().getFirst("Accept");
+		if ((accept == null) || accept.isEmpty()) return Lang.TURTLE;
+		for (String range : accept.split(",")) {
+			String mediaType = range.split(";")[0].trim();
+			if (mediaType.equals("*/*") || mediaType.equals("text/*")) return Lang.TURTLE;
+			Lang lang = getTriplesLang(RDFLanguages.contentTypeToLang(mediaType));
+			if (lang != null) return lang;
+		}
+		return null;
+	}
+
+	private static Lang getTriplesLang(Lang lang) {
+		return ((lang != null) && RDFLanguages.isTriples(lang)) ? lang : null;
+	}
+
+	private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+
+		byte[] body = (message + "\n").getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream output = exchange.getResponseBody()) {
+			output.write(body);
+		}
+	}
+}
@@ -0,0 +1,170 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import eu.europa.ec.eurostat.los.hc55.BatchConverter.Artifact;
+import eu.europa.ec.eurostat.los.hc55.BatchConverter.ArtifactType;
+
+/**
+ * The <code>ConversionService</code> class converts SDMX artifacts on demand from a registry that is loaded once and kept in memory.
+ * Converted models are kept in a LRU cache whose size is counted in triples: when the total size exceeds the maximum, the least recently
+ * used models are evicted.
+ * The service can be called from concurrent threads. The models returned are shared between callers and must not be modified.
+ *
+ * @author Franck
+ */
+public class ConversionService {
+
+	private static Logger logger = LogManager.getLogger(ConversionService.class);
+
+	/** Default maximum number of triples kept in the cache */
+	public static final long DEFAULT_CACHE_SIZE = 1000000;
+
+	private final SDMXStructureRegistry registry;
+	private final ModelCache cache;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Creates a service for the artifacts of the default Census Hub SDMX files, with a cache of default size.
+	 *
+	 * @return The conversion service.
+	 * @throws XMLStreamException In case of error while parsing a file content.
+	 * @throws IOException In case of problem reading a SDMX file.
+	 */
+	public static ConversionService create() throws XMLStreamException, IOException {
+		return new ConversionService(SDMXStructureRegistry.load(Configuration.NON_GEO_CODELISTS, Configuration.CONCEPTS, Configuration.KEY_FAMILIES), DEFAULT_CACHE_SIZE);
+	}
+
+	/**
+	 * Creates a service for the artifacts contained in a registry.
+	 * The registry must not be modified once the service is created.
+	 *
+	 * @param registry The registry containing the artifacts.
+	 * @param cacheSize The maximum number of triples kept in the cache of converted models.
+	 */
+	public ConversionService(SDMXStructureRegistry registry, long cacheSize) {
+		this.registry = registry;
+		this.cache = new ModelCache(cacheSize);
+	}
+
+	/**
+	 * Returns the converted model of an artifact, converting it if it is not in the cache.
+	 *
+	 * @param type The type of the artifact.
+	 * @param id The identifier of the artifact.
+	 * @return The converted artifact as a Jena model, which must not be modified, or <code>null</code> if the artifact was not found.
+	 * @throws XMLStreamException In case of error while converting the artifact.
+	 * @throws IOException In case of error while converting the artifact.
+	 */
+	public Model getModel(ArtifactType type, String id) throws XMLStreamException, IOException {
+
+		Artifact artifact = new Artifact(type, id);
+		String key = artifact.toString();
+		Model model = cache.get(key);
+		if (model != null) {
+			hits.incrementAndGet();
+			return model;
+		}
+		misses.incrementAndGet();
+		// Conversion is done outside of the cache lock: concurrent misses on the same artifact may both convert it, the first model cached wins
+		model = artifact.convert(registry);
+		if (model == null) return null;
+		return cache.put(key, model);
+	}
+
+	/**
+	 * Removes all the models from the cache, and requests the revalidation of the remote concept files.
+	 */
+	public void clear() {
+
+		cache.clear();
+		ConceptCatalogue.revalidate();
+	}
+
+	public SDMXStructureRegistry getRegistry() {
+		return registry;
+	}
+
+	/**
+	 * Returns the number of triples currently in the cache.
+	 *
+	 * @return The total size of the cached models.
+	 */
+	public long getCachedSize() {
+		return cache.getTotalSize();
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * LRU cache of models, bounded by the total number of triples.
+	 */
+	private static class ModelCache {
+
+		private final long maxSize;
+		private final LinkedHashMap<String, Model> models = new LinkedHashMap<String, Model>(16, 0.75f, true);
+		private long totalSize = 0;
+
+		public ModelCache(long maxSize) {
+			this.maxSize = maxSize;
+		}
+
+		public synchronized Model get(String key) {
+			return models.get(key);
+		}
+
+		/**
+		 * Adds a model to the cache unless another model was cached for the same key in the meantime, and evicts the least recently used models if needed.
+		 * Models larger than the cache are returned without being cached.
+		 *
+		 * @return The model cached for the key.
+		 */
+		public synchronized Model put(String key, Model model) {
+
+			Model previous = models.get(key);
+			if (previous != null) return previous;
+			long size = model.size();
+			if (size > maxSize) {
+				logger.info("Model of " + key + " (" + size + " triples) is larger than the cache and will not be cached");
+				return model;
+			}
+			models.put(key, model);
+			totalSize += size;
+			Iterator<Map.Entry<String, Model>> iterator = models.entrySet().iterator();
+			while (totalSize > maxSize) {
+				Map.Entry<String, Model> eldest = iterator.next();
+				// Evicted models are not closed since they may still be in use by a caller
+				totalSize -= eldest.getValue().size();
+				logger.debug("Evicting model of " + eldest.getKey() + " from the cache");
+				iterator.remove();
+			}
+			return model;
+		}
+
+		public synchronized void clear() {
+			models.clear();
+			totalSize = 0;
+		}
+
+		public synchronized long getTotalSize() {
+			return totalSize;
+		}
+	}
+}
@@ -0,0 +1,478 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import eu.europa.ec.eurostat.los.hc55.SDMXDataReader.Series;
+
+/**
+ * The <code>CubeStore</code> class keeps the observations of a data set in memory in a compact columnar form.
+ * The values of each dimension and attribute are dictionary-encoded to integers, and the dimension codes, attribute codes and measure
+ * values are stored in primitive columns allocated outside of the Java heap. Dimensions are in the key family order, which is the
+ * <code>qb:order</code> of the DSD. Measure values are kept as numbers, and their lexical form as given in the message is kept in a
+ * dictionary when it cannot be recovered from the number (<code>1.50</code>, large integers, non-numeric values like <code>:</code>).
+ * Observations can be looked up by full key through a hash index, and scanned by partial key through per-dimension inverted indexes which
+ * are built on first use. The store can be exported to RDF, producing the same triples as the <code>ObservationConverter</code> for the
+ * observations which have a value for each dimension, the others being skipped when the data is loaded.
+ * Instances are not thread-safe while observations are added.
+ *
+ * @author Franck
+ */
+public class CubeStore {
+
+	private static Logger logger = LogManager.getLogger(CubeStore.class);
+
+	/** Initial number of observations that the columns can contain */
+	private static final int INITIAL_CAPACITY = 1024;
+
+	/** Maximum number of observations, the largest direct buffer of measure values being limited to <code>Integer.MAX_VALUE</code> bytes */
+	public static final int MAX_ROWS = Integer.MAX_VALUE / Double.BYTES;
+
+	/** Code of a missing attribute value */
+	private static final int MISSING = -1;
+
+	/** Structure of the data set */
+	private DataStructure structure = null;
+
+	/** Dictionaries of the dimension and attribute values */
+	private Dictionary[] dimensionDictionaries = null;
+	private Dictionary[] attributeDictionaries = null;
+
+	/** Lexical forms of the measure values which differ from the formatted numeric value */
+	private Dictionary valueForms = new Dictionary();
+
+	/** Off-heap columns of the dimension codes, attribute codes, measure values and codes of their lexical forms (MISSING if formatted) */
+	private IntBuffer[] dimensionColumns = null;
+	private IntBuffer[] attributeColumns = null;
+	private DoubleBuffer values = null;
+	private IntBuffer valueFormColumn = null;
+
+	/** Number of observations that the columns can contain */
+	private int capacity = 0;
+
+	/** Number of observations in the store */
+	private int size = 0;
+
+	/** Open addressing hash table of the observations by full key, containing row numbers plus one (0 for empty slots) */
+	private int[] keyIndex = new int[2 * INITIAL_CAPACITY];
+
+	/** Inverted indexes of the dimensions, in compressed form: the rows having code c are rows[offsets[c]] to rows[offsets[c + 1] - 1] */
+	private int[][] postingOffsets = null;
+	private int[][] postingRows = null;
+
+	/**
+	 * Creates an empty store for the observations of a data set.
+	 *
+	 * @param structure The structure of the data set.
+	 */
+	public CubeStore(DataStructure structure) {
+
+		this.structure = structure;
+		int dimensionCount = structure.getDimensions().size();
+		int attributeCount = structure.getAttributes().size();
+		dimensionDictionaries = new Dictionary[dimensionCount];
+		for (int dimension = 0; dimension < dimensionCount; dimension++) dimensionDictionaries[dimension] = new Dictionary();
+		attributeDictionaries = new Dictionary[attributeCount];
+		for (int attribute = 0; attribute < attributeCount; attribute++) attributeDictionaries[attribute] = new Dictionary();
+		dimensionColumns = new IntBuffer[dimensionCount];
+		attributeColumns = new IntBuffer[attributeCount];
+		postingOffsets = new int[dimensionCount][];
+		postingRows = new int[dimensionCount][];
+		ensureCapacity(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Adds the observations of a SDMX data file to the store.
+	 * Observations lacking the value of a dimension cannot be indexed: they are skipped and counted in the log.
+	 *
+	 * @param dataFile The name of the SDMX data file, in Compact or Generic format.
+	 * @return The number of observations added.
+	 * @throws XMLStreamException In case of error while parsing the file content.
+	 * @throws IOException In case of problem reading the SDMX file.
+	 */
+	public int load(String dataFile) throws XMLStreamException, IOException {
+
+		logger.info("Loading observations from file " + dataFile);
+		int[] count = new int[2];
+		new SDMXDataReader().read(dataFile, new SDMXDataHandler() {
+			@Override
+			public void series(Series series) {
+				structure.readObservations(series, (dimensionValues, value, attributeValues) -> {
+					if (!structure.isComplete(dimensionValues)) {
+						count[1]++;
+						return;
+					}
+					add(dimensionValues, value, attributeValues);
+					count[0]++;
+				});
+			}
+		});
+		if (count[1] > 0) logger.warn(count[1] + " observations without value for some dimensions skipped");
+		logger.info(count[0] + " observations read, store contains " + size + " observations using " + (getOffHeapBytes() >> 10) + " KB off heap");
+		return count[0];
+	}
+
+	/**
+	 * Adds an observation to the store, or replaces the values of the observation with the same key.
+	 *
+	 * @param dimensionValues The values of the dimensions in the key family order.
+	 * @param value The value of the observation, <code>NaN</code> if it is missing.
+	 * @param attributeValues The values of the attributes, <code>null</code> for missing values.
+	 * @return The row of the observation.
+	 */
+	public int add(String[] dimensionValues, double value, String[] attributeValues) {
+		return add(dimensionValues, value, MISSING, attributeValues);
+	}
+
+	/**
+	 * Adds an observation to the store with the value as given in the SDMX message, or replaces the values of the observation with the same key.
+	 *
+	 * @param dimensionValues The values of the dimensions in the key family order.
+	 * @param value The value of the observation, <code>null</code> if it is missing.
+	 * @param attributeValues The values of the attributes, <code>null</code> for missing values.
+	 * @return The row of the observation.
+	 */
+	public int add(String[] dimensionValues, String value, String[] attributeValues) {
+
+		double number = parseValue(value);
+		boolean formatted = (value == null) || value.isEmpty() || value.equals(formatValue(number));
+		return add(dimensionValues, number, formatted ? MISSING : valueForms.encode(value), attributeValues);
+	}
+
+	private int add(String[] dimensionValues, double value, int valueForm, String[] attributeValues) {
+
+		if (dimensionValues.length != dimensionColumns.length) throw new IllegalArgumentException("Expected " + dimensionColumns.length + " dimension values");
+		int[] codes = new int[dimensionValues.length];
+		for (int dimension = 0; dimension < codes.length; dimension++) {
+			if (dimensionValues[dimension] == null) throw new IllegalArgumentException("Missing value for dimension " + structure.getDimensions().get(dimension).getConcept());
+			codes[dimension] = dimensionDictionaries[dimension].encode(dimensionValues[dimension]);
+		}
+
+		int slot = findSlot(codes);
+		int row = keyIndex[slot] - 1;
+		if (row < 0) {
+			ensureCapacity(size + 1);
+			row = size++;
+			for (int dimension = 0; dimension < codes.length; dimension++) dimensionColumns[dimension].put(row, codes[dimension]);
+			keyIndex[slot] = row + 1;
+			if (2 * size > keyIndex.length) rehash(2 * keyIndex.length);
+			Arrays.fill(postingOffsets, null);
+			Arrays.fill(postingRows, null);
+		}
+		values.put(row, value);
+		valueFormColumn.put(row, valueForm);
+		for (int attribute = 0; attribute < attributeColumns.length; attribute++) {
+			String attributeValue = (attribute < attributeValues.length) ? attributeValues[attribute] : null;
+			attributeColumns[attribute].put(row, (attributeValue == null) ? MISSING : attributeDictionaries[attribute].encode(attributeValue));
+		}
+		return row;
+	}
+
+	/**
+	 * Returns the number of observations in the store.
+	 *
+	 * @return The number of observations.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Finds an observation by its full key.
+	 *
+	 * @param dimensionValues The values of the dimensions in the key family order.
+	 * @return The row of the observation, -1 if there is no observation with this key.
+	 */
+	public int find(String... dimensionValues) {
+
+		if (dimensionValues.length != dimensionColumns.length) throw new IllegalArgumentException("Expected " + dimensionColumns.length + " dimension values");
+		int[] codes = new int[dimensionValues.length];
+		for (int dimension = 0; dimension < codes.length; dimension++) {
+			codes[dimension] = dimensionDictionaries[dimension].lookup(dimensionValues[dimension]);
+			if (codes[dimension] < 0) return -1;
+		}
+		return keyIndex[findSlot(codes)] - 1;
+	}
+
+	public double getValue(int row) {
+		return values.get(checkRow(row));
+	}
+
+	/**
+	 * Returns the value of an observation as given in the SDMX message.
+	 *
+	 * @param row The row of the observation.
+	 * @return The lexical form of the value, <code>null</code> if it is missing.
+	 */
+	public String getLexicalValue(int row) {
+
+		int code = valueFormColumn.get(checkRow(row));
+		return (code == MISSING) ? formatValue(values.get(row)) : valueForms.decode(code);
+	}
+
+	public String getDimensionValue(int row, int dimension) {
+		return dimensionDictionaries[dimension].decode(dimensionColumns[dimension].get(checkRow(row)));
+	}
+
+	/**
+	 * Returns the value of an attribute of an observation.
+	 *
+	 * @param row The row of the observation.
+	 * @param attribute The index of the attribute in the key family.
+	 * @return The attribute value, <code>null</code> if it is missing.
+	 */
+	public String getAttributeValue(int row, int attribute) {
+
+		int code = attributeColumns[attribute].get(checkRow(row));
+		return (code == MISSING) ? null : attributeDictionaries[attribute].decode(code);
+	}
+
+	/**
+	 * Finds the observations matching a partial key.
+	 * The candidate rows are taken from the inverted index of the most selective dimension of the key, then checked against the other dimensions.
+	 *
+	 * @param partialKey The values of the dimensions in the key family order, <code>null</code> for dimensions that can take any value.
+	 * @param consumer The consumer receiving the rows of the matching observations, in increasing order.
+	 * @return The number of matching observations.
+	 */
+	public int scan(String[] partialKey, IntConsumer consumer) {
+
+		if (partialKey.length != dimensionColumns.length) throw new IllegalArgumentException("Expected " + dimensionColumns.length + " dimension values");
+		int[] codes = new int[partialKey.length];
+		int selective = -1;
+		int candidates = size;
+		for (int dimension = 0; dimension < codes.length; dimension++) {
+			codes[dimension] = MISSING;
+			if (partialKey[dimension] == null) continue;
+			codes[dimension] = dimensionDictionaries[dimension].lookup(partialKey[dimension]);
+			if (codes[dimension] < 0) return 0;
+			int[] offsets = getPostingOffsets(dimension);
+			int count = offsets[codes[dimension] + 1] - offsets[codes[dimension]];
+			if (count < candidates) {
+				candidates = count;
+				selective = dimension;
+			}
+		}
+
+		int matches = 0;
+		if (selective < 0) {
+			for (int row = 0; row < size; row++) {
+				if (matches(row, codes)) {
+					consumer.accept(row);
+					matches++;
+				}
+			}
+			return matches;
+		}
+		int[] rows = postingRows[selective];
+		int end = postingOffsets[selective][codes[selective] + 1];
+		for (int position = postingOffsets[selective][codes[selective]]; position < end; position++) {
+			if (matches(rows[position], codes)) {
+				consumer.accept(rows[position]);
+				matches++;
+			}
+		}
+		return matches;
+	}
+
+	/**
+	 * Exports the data set and its observations to a stream.
+	 * Values are written with their lexical form in the SDMX message.
+	 * The <code>start</code> and <code>finish</code> methods of the stream are not called.
+	 *
+	 * @param output The stream receiving the triples.
+	 */
+	public void export(StreamRDF output) {
+
+		structure.startDataSet(output);
+		String[] dimensionValues = new String[dimensionColumns.length];
+		String[] attributeValues = new String[attributeColumns.length];
+		for (int row = 0; row < size; row++) {
+			for (int dimension = 0; dimension < dimensionValues.length; dimension++) dimensionValues[dimension] = getDimensionValue(row, dimension);
+			for (int attribute = 0; attribute < attributeValues.length; attribute++) attributeValues[attribute] = getAttributeValue(row, attribute);
+			structure.observationTriples(dimensionValues, getLexicalValue(row), attributeValues, output::triple);
+		}
+		logger.info(size + " observations exported");
+	}
+
+	/**
+	 * Returns the memory used by the columns outside of the Java heap.
+	 *
+	 * @return The size of the columns, in bytes.
+	 */
+	public long getOffHeapBytes() {
+		return (long) capacity * (Integer.BYTES * (dimensionColumns.length + attributeColumns.length + 1) + Double.BYTES);
+	}
+
+	/** Converts an observation value as given in the SDMX messages, missing or non-numeric values giving <code>NaN</code>. */
+	static double parseValue(String value) {
+
+		if ((value == null) || value.isEmpty()) return Double.NaN;
+		try {
+			return Double.parseDouble(value);
+		} catch (NumberFormatException e) {
+			return Double.NaN;
+		}
+	}
+
+	/** Formats an observation value for export, integral values being written without decimal part and infinities as in XSD. */
+	static String formatValue(double value) {
+
+		if (Double.isNaN(value)) return null;
+		if (Double.isInfinite(value)) return (value > 0) ? "INF" : "-INF";
+		if ((value == Math.rint(value)) && (Math.abs(value) < 1e15)) return Long.toString((long) value);
+		return Double.toString(value);
+	}
+
+	private boolean matches(int row, int[] codes) {
+
+		for (int dimension = 0; dimension < codes.length; dimension++) {
+			if ((codes[dimension] != MISSING) && (dimensionColumns[dimension].get(row) != codes[dimension])) return false;
+		}
+		return true;
+	}
+
+	private int checkRow(int row) {
+
+		if ((row < 0) || (row >= size)) throw new IndexOutOfBoundsException("No observation at row " + row);
+		return row;
+	}
+
+	/**
+	 * Returns the slot of the key index containing the row with given dimension codes, or the empty slot where it should be inserted.
+	 */
+	private int findSlot(int[] codes) {
+
+		int mask = keyIndex.length - 1;
+		int slot = hash(codes) & mask;
+		while (keyIndex[slot] != 0) {
+			int row = keyIndex[slot] - 1;
+			boolean found = true;
+			for (int dimension = 0; found && (dimension < codes.length); dimension++) found = (dimensionColumns[dimension].get(row) == codes[dimension]);
+			if (found) return slot;
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void rehash(int length) {
+
+		keyIndex = new int[length];
+		int mask = length - 1;
+		int[] codes = new int[dimensionColumns.length];
+		for (int row = 0; row < size; row++) {
+			for (int dimension = 0; dimension < codes.length; dimension++) codes[dimension] = dimensionColumns[dimension].get(row);
+			int slot = hash(codes) & mask;
+			while (keyIndex[slot] != 0) slot = (slot + 1) & mask;
+			keyIndex[slot] = row + 1;
+		}
+	}
+
+	private static int hash(int[] codes) {
+
+		int hash = 1;
+		for (int code : codes) hash = 31 * hash + code;
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * Returns the offsets of the inverted index of a dimension, building the index with a counting sort of the rows if necessary.
+	 */
+	private synchronized int[] getPostingOffsets(int dimension) {
+
+		if (postingOffsets[dimension] != null) return postingOffsets[dimension];
+		IntBuffer column = dimensionColumns[dimension];
+		int[] offsets = new int[dimensionDictionaries[dimension].size() + 1];
+		for (int row = 0; row < size; row++) offsets[column.get(row) + 1]++;
+		for (int code = 0; code < offsets.length - 1; code++) offsets[code + 1] += offsets[code];
+		int[] next = Arrays.copyOf(offsets, offsets.length);
+		int[] rows = new int[size];
+		for (int row = 0; row < size; row++) rows[next[column.get(row)]++] = row;
+		postingRows[dimension] = rows;
+		postingOffsets[dimension] = offsets;
+		return offsets;
+	}
+
+	private void ensureCapacity(int required) {
+
+		if (required <= capacity) return;
+		if (required > MAX_ROWS) throw new IllegalStateException("The store cannot contain more than " + MAX_ROWS + " observations");
+		long grownCapacity = Math.max(INITIAL_CAPACITY, capacity);
+		while (grownCapacity < required) grownCapacity *= 2;
+		int newCapacity = (int) Math.min(grownCapacity, MAX_ROWS);
+		for (int dimension = 0; dimension < dimensionColumns.length; dimension++) dimensionColumns[dimension] = grow(dimensionColumns[dimension], newCapacity);
+		for (int attribute = 0; attribute < attributeColumns.length; attribute++) attributeColumns[attribute] = grow(attributeColumns[attribute], newCapacity);
+		valueFormColumn = grow(valueFormColumn, newCapacity);
+		DoubleBuffer newValues = ByteBuffer.allocateDirect((int) ((long) newCapacity * Double.BYTES)).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+		if (values != null) {
+			DoubleBuffer source = values.duplicate();
+			((Buffer) source).clear().limit(size);
+			newValues.put(source);
+			((Buffer) newValues).clear();
+		}
+		values = newValues;
+		capacity = newCapacity;
+	}
+
+	/** Returns a copy of an off-heap column with a larger capacity, the columns being only accessed with absolute positions. */
+	private IntBuffer grow(IntBuffer column, int newCapacity) {
+
+		IntBuffer newColumn = ByteBuffer.allocateDirect((int) ((long) newCapacity * Integer.BYTES)).order(ByteOrder.nativeOrder()).asIntBuffer();
+		if (column != null) {
+			IntBuffer source = column.duplicate();
+			((Buffer) source).clear().limit(size);
+			newColumn.put(source);
+			((Buffer) newColumn).clear();
+		}
+		return newColumn;
+	}
+
+	/**
+	 * Dictionary encoding the values of a component to consecutive integers.
+	 */
+	private static class Dictionary {
+
+		private final Map<String, Integer> codes = new HashMap<String, Integer>();
+		private final List<String> values = new ArrayList<String>();
+
+		int encode(String value) {
+
+			Integer code = codes.get(value);
+			if (code != null) return code;
+			codes.put(value, values.size());
+			values.add(value);
+			return values.size() - 1;
+		}
+
+		int lookup(String value) {
+
+			Integer code = codes.get(value);
+			return (code == null) ? -1 : code;
+		}
+
+		String decode(int code) {
+			return values.get(code);
+		}
+
+		int size() {
+			return values.size();
+		}
+	}
+}
@@ -1,6 +1,5 @@
 package eu.europa.ec.eurostat.los.hc55;
 
-import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -8,31 +7,35 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Literal;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.rdf.model.Property;
 import org.apache.jena.rdf.model.Resource;
-import org.apache.jena.rdf.model.StmtIterator;
 import org.apache.jena.riot.Lang;
 import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.system.StreamOps;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFLib;
 import org.apache.jena.vocabulary.RDF;
 import org.apache.jena.vocabulary.RDFS;
 import org.apache.jena.vocabulary.SKOS;
 import org.apache.jena.vocabulary.XSD;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.jdom2.Document;
-import org.jdom2.Element;
-import org.jdom2.JDOMException;
-import org.jdom2.filter.Filters;
-import org.jdom2.input.SAXBuilder;
-import org.jdom2.xpath.XPathExpression;
-import org.jdom2.xpath.XPathFactory;
 
+import eu.europa.ec.eurostat.los.hc55.BatchConverter.ArtifactType;
+import eu.europa.ec.eurostat.los.hc55.ConversionMetrics.Stage;
 import eu.europa.ec.eurostat.los.utils.DataCube;
 
 /**
  * The <code>DSDConverter</code> class allows to convert a SDMX Key Family (name of the DSD in SDMX 2.0) into a Data Cube DSD.
+ * Converters hold no conversion state and can be shared by concurrent threads.
  * 
  * @author Franck
  */
@@ -57,103 +60,224 @@ public class DSDConverter {
 		componentPropertyMappings.put("Attribute", DataCube.attribute);
 	}
 
+	/** Name of the SDMX file containing the key families */
+	private final String keyFamiliesFile;
+
+	/** Name of the SDMX file containing the concepts */
+	private final String conceptsFile;
+
+	/** Registry containing the key families and concepts, if they have already been indexed */
+	private final SDMXStructureRegistry registry;
+
+	/**
+	 * Converts the HC55 key family. The optional argument is the output file, whose extension selects the serialization
+	 * (see <code>RDFStreamOutput</code>, for example <code>.rt</code> for RDF Thrift); the default is <code>dsd-hc55.ttl</code> in Turtle.
+	 */
 	public static void main(String[] args) throws Exception {
 
 		DSDConverter dsdConverter = new DSDConverter();
 		Model hc55DSDModel = dsdConverter.convertDSD("HC55", new ArrayList<String>());
-		RDFDataMgr.write(new FileOutputStream("src/main/resources/data/dsd-hc55.ttl"), hc55DSDModel, Lang.TURTLE);
+		if (args.length > 0) {
+			try (RDFStreamOutput output = new RDFStreamOutput(args[0])) {
+				StreamOps.sendGraphToStream(hc55DSDModel.getGraph(), output.getStream());
+			}
+		} else RDFDataMgr.write(new FileOutputStream("src/main/resources/data/dsd-hc55.ttl"), hc55DSDModel, Lang.TURTLE);
+	}
+
+	/**
+	 * Creates a converter for the key families and concepts contained in the default SDMX files.
+	 */
+	public DSDConverter() {
+		this(Configuration.KEY_FAMILIES, Configuration.CONCEPTS);
+	}
+
+	/**
+	 * Creates a converter for the key families and concepts contained in given SDMX files.
+	 *
+	 * @param keyFamiliesFile The name of the SDMX file containing the key families.
+	 * @param conceptsFile The name of the SDMX file containing the concepts referenced by the key families.
+	 */
+	public DSDConverter(String keyFamiliesFile, String conceptsFile) {
+		this.keyFamiliesFile = keyFamiliesFile;
+		this.conceptsFile = conceptsFile;
+		this.registry = null;
+	}
+
+	/**
+	 * Creates a converter for the key families and concepts contained in a registry.
+	 * Key families and concepts are then resolved from the registry indexes instead of being searched for in the SDMX files.
+	 *
+	 * @param registry The registry containing the key families and the concepts they reference.
+	 */
+	public DSDConverter(SDMXStructureRegistry registry) {
+		this.keyFamiliesFile = null;
+		this.conceptsFile = null;
+		this.registry = registry;
 	}
 
 	/**
 	 * Converts a SDMX key family into a Data Cube data structure definition.
+	 * The SDMX file is streamed, so that only the resulting model is kept in memory.
 	 * 
 	 * @param dsdId The identifier of the key family in the input SDMX file.
 	 * @param excludedComponents List of identifiers of components that will not be included in the DSD.
 	 * @return The Data Cube data structure definition as a Jena model.
+	 * @throws XMLStreamException In case of error while parsing the file content.
+	 * @throws IOException In case of problem reading the SDMX file.
+	 */
+	public Model convertDSD(String dsdId, List<String> excludedComponents) throws XMLStreamException, IOException {
+
+		Model dsdModel = ModelFactory.createDefaultModel();
+		if (!convertDSD(dsdId, excludedComponents, StreamRDFLib.graph(dsdModel.getGraph()))) {
+			dsdModel.close();
+			return null;
+		}
+		return dsdModel;
+	}
+
+	/**
+	 * Converts a SDMX key family into a Data Cube data structure definition and sends the resulting triples to a stream as they are produced.
+	 * The <code>start</code> and <code>finish</code> methods of the stream are not called.
+	 * 
+	 * @param dsdId The identifier of the key family in the input SDMX file.
+	 * @param excludedComponents List of identifiers of components that will not be included in the DSD.
+	 * @param output The stream receiving the triples of the data structure definition.
+	 * @return <code>true</code> if the key family was found, <code>false</code> otherwise.
+	 * @throws XMLStreamException In case of error while parsing the file content.
 	 * @throws IOException In case of problem reading the SDMX file.
-	 * @throws JDOMException In case of error while parsing the file content.
 	 */
-	public Model convertDSD(String dsdId, List<String> excludedComponents) throws JDOMException, IOException {
+	public boolean convertDSD(String dsdId, List<String> excludedComponents, StreamRDF output) throws XMLStreamException, IOException {
 
-		SAXBuilder jdomBuilder = new SAXBuilder();
-		Document dsdDocument = jdomBuilder.build(new File(Configuration.KEY_FAMILIES));
+		// We will need the Census Hub concepts in order to link components to concepts and give them better names, and to know which concepts are coded
+		ConceptCatalogue concepts = (registry == null) ? ConceptCatalogue.get(conceptsFile) : ConceptCatalogue.get(registry);
+
+		ConversionMetrics metrics = ConversionMetrics.getShared();
+		String artifact = ConversionMetrics.artifactName(ArtifactType.KEY_FAMILY, dsdId);
+		KeyFamilyHandler handler = new KeyFamilyHandler(dsdId, excludedComponents, concepts, output, metrics);
+		long start = System.nanoTime();
+		if (registry == null) {
+			new SDMXStructureReader().read(keyFamiliesFile, handler);
+			metrics.record(Stage.PARSE, artifact, start);
+		} else {
+			registry.replayKeyFamily(dsdId, handler);
+			metrics.record(Stage.BUILD, artifact, start);
+		}
 
-		// We will need the Census Hub concepts in order to link components to concepts and give them better names
-		ConceptConverter conceptConverter = new ConceptConverter();
-		Model conceptModel = conceptConverter.convertConceptScheme(Configuration.CH_CONCEPT_SCHEME_ID);
-		// And we will also need the list of concepts which are coded
-		Map<String, String> codedConcepts = conceptConverter.getCodedConcepts();
+		if (handler.keyFamiliesFound == 0) {
+			logger.warn("No key family found with identifier " + dsdId);
+			return false;
+		}
+		if (handler.keyFamiliesFound > 1) logger.warn("Several key families have identifier " + dsdId + ", converting first key family found");
 
-		// Define and execute the XQuery expression that will select the code lists with the requested identifier
-		String query = "//*[(local-name(.) = 'KeyFamily') and (@id= '" + dsdId + "')]";
-		XPathExpression<Element> expression = XPathFactory.instance().compile(query, Filters.element());
+		metrics.countArtifact();
+		return true;
+	}
 
-		List<Element> selectedDSDs = expression.evaluate(dsdDocument);
-		if (selectedDSDs.size() == 0) {
-			logger.warn("No key family found with identifier " + dsdId + ", returning null model");
-			//return null;
+	/**
+	 * Handler that produces the Data Cube DSD for the first key family with the requested identifier.
+	 */
+	private static class KeyFamilyHandler implements SDMXStructureHandler {
+
+		private String requestedId = null;
+		private List<String> excludedComponents = null;
+		private ConceptCatalogue concepts = null;
+		private StreamRDF output = null;
+		private ConversionMetrics metrics = null;
+		private NodeInterner nodes = NodeInterner.getShared();
+
+		private int keyFamiliesFound = 0;
+		private boolean inRequestedKeyFamily = false;
+		private Node dsdNode = null;
+		private int dimensionOrder = 1;
+
+		public KeyFamilyHandler(String requestedId, List<String> excludedComponents, ConceptCatalogue concepts, StreamRDF output, ConversionMetrics metrics) {
+			this.requestedId = requestedId;
+			this.excludedComponents = excludedComponents;
+			this.concepts = concepts;
+			this.output = output;
+			this.metrics = metrics;
 		}
-		if (selectedDSDs.size() > 1) logger.warn("Several key families have identifier " + dsdId + ", returning model for first key family found");
 
-		Model dsdModel = ModelFactory.createDefaultModel();
-		dsdModel.setNsPrefix("rdf", RDF.getURI());
-		dsdModel.setNsPrefix("rdfs", RDFS.getURI());
-		dsdModel.setNsPrefix("xs", XSD.getURI());
-		dsdModel.setNsPrefix("qb", DataCube.getURI());
-
-		Element selectedDSD = selectedDSDs.get(0);
-		String dsdIdentifier = selectedDSD.getAttributeValue("id").trim();
-		Element dsdNameElement = selectedDSD.getChild("Name", Configuration.sdmxStructureNS);
-
-		// Creation of the DSD
-		String dsdURI = Configuration.dsdURI(dsdIdentifier);
-		logger.info("Creating DSD " + dsdNameElement.getText() + " with URI " + dsdURI);
-		Resource dsdResource = dsdModel.createResource(dsdURI, DataCube.DataStructureDefinition);
-		dsdResource.addProperty(RDFS.label, Configuration.getLiteral(dsdNameElement));
-
-		// List SDMX components, create corresponding DC components and attach them to the DSD
-		List<Element> components = selectedDSD.getChild("Components", Configuration.sdmxStructureNS).getChildren();
-		int dimensionOrder = 1;
-		for (Element component : components) {
-			String componentType = component.getName();
-			String conceptIdentifier = component.getAttributeValue("conceptRef");
-			logger.debug("Found SDMX component of type " + componentType + " referring to concept " + conceptIdentifier);
+		@Override
+		public void startKeyFamily(String keyFamilyId, List<Literal> names) {
+
+			inRequestedKeyFamily = requestedId.equals(keyFamilyId) && (keyFamiliesFound++ == 0);
+			if (!inRequestedKeyFamily) return;
+
+			output.prefix("rdf", RDF.getURI());
+			output.prefix("rdfs", RDFS.getURI());
+			output.prefix("xs", XSD.getURI());
+			output.prefix("qb", DataCube.getURI());
+
+			Literal dsdName = names.get(0);
+
+			// Creation of the DSD
+			String dsdURI = Configuration.dsdURI(keyFamilyId);
+			logger.info("Creating DSD " + dsdName.getLexicalForm() + " with URI " + dsdURI);
+			dsdNode = nodes.uri(dsdURI);
+			triple(dsdNode, RDF.type.asNode(), DataCube.DataStructureDefinition.asNode());
+			triple(dsdNode, RDFS.label.asNode(), dsdName.asNode());
+		}
+
+		@Override
+		public void component(String keyFamilyId, String componentType, String conceptIdentifier, String codeListId) {
+
+			if (!inRequestedKeyFamily) return;
+
+			// Create the DC component corresponding to the SDMX component and attach it to the DSD
+			if (logger.isDebugEnabled()) logger.debug("Found SDMX component of type " + componentType + " referring to concept " + conceptIdentifier);
 			if (excludedComponents.contains(conceptIdentifier)) {
-				logger.debug("This component is excluded from the Data Cube DSD");
-				continue;
+				if (logger.isDebugEnabled()) logger.debug("Component referring to concept " + conceptIdentifier + " is excluded from the Data Cube DSD");
+				return;
+			}
+			if (!componentClassMappings.containsKey(componentType)) {
+				logger.warn("Components of type " + componentType + " are not supported, ignoring component referring to concept " + conceptIdentifier);
+				return;
 			}
 			// Create the property corresponding to the SDMX component
-			String propertyURI = Configuration.componentURI(conceptIdentifier, componentType);
-			Resource componentPropertyClass = dsdModel.createResource(propertyURI, componentClassMappings.get(componentType));
-			componentPropertyClass.addProperty(RDF.type, RDF.Property);
+			Node propertyNode = nodes.uri(Configuration.componentURI(conceptIdentifier, componentType));
+			triple(propertyNode, RDF.type.asNode(), componentClassMappings.get(componentType).asNode());
+			triple(propertyNode, RDF.type.asNode(), RDF.Property.asNode());
+			boolean coded = false;
 			if ((conceptIdentifier != null) && (conceptIdentifier.length() > 0)) {
-				String conceptURI = Configuration.conceptURI(conceptIdentifier);
-				Resource conceptResource = conceptModel.createResource(conceptURI);
-				componentPropertyClass.addProperty(DataCube.concept, conceptResource);
-				StmtIterator conceptLabels = conceptModel.listStatements(conceptResource, SKOS.prefLabel, null, "en");
-				if (conceptLabels.hasNext()) {
-					String conceptLabel = conceptLabels.next().getString();
-					componentPropertyClass.addProperty(RDFS.label, dsdModel.createLiteral(conceptLabel, "en"));
-				}
-				conceptLabels.close(); // TODO Deal with the case where there are labels in different languages
+				triple(propertyNode, DataCube.concept.asNode(), nodes.uri(Configuration.conceptURI(conceptIdentifier)));
+				String conceptLabel = concepts.getLabel(Configuration.CH_CONCEPT_SCHEME_ID, conceptIdentifier, "en");
+				if (conceptLabel != null) triple(propertyNode, RDFS.label.asNode(), nodes.literal(conceptLabel, "en")); // TODO Deal with the case where there are labels in different languages
 				// If the concept has a coded core representation, the component property is also a coded property
-				if (codedConcepts.containsKey(conceptIdentifier)) {
-					componentPropertyClass.addProperty(RDF.type, DataCube.CodedProperty);
-					componentPropertyClass.addProperty(DataCube.codeList, dsdModel.createResource(Configuration.codeListURI(codedConcepts.get(conceptIdentifier), null)));
+				String coreRepresentation = concepts.getCodeList(conceptIdentifier);
+				if (coreRepresentation != null) {
+					coded = true;
+					triple(propertyNode, RDF.type.asNode(), DataCube.CodedProperty.asNode());
+					triple(propertyNode, DataCube.codeList.asNode(), nodes.uri(Configuration.codeListURI(coreRepresentation, null)));
 				}
 			}
 
-			// Attach the property to the DSD via an anonymous ComponentSpecification node
-			Resource blankCS = dsdModel.createResource(DataCube.ComponentSpecification).addProperty(componentPropertyMappings.get(componentType), componentPropertyClass);
+			// Dimensions must have a range (IC-4): concepts for coded dimensions, as recommended by the Data Cube vocabulary, literals otherwise
+			if (componentClassMappings.get(componentType).equals(DataCube.DimensionProperty)) {
+				triple(propertyNode, RDFS.range.asNode(), coded ? SKOS.Concept.asNode() : RDFS.Literal.asNode());
+			}
+
+			// Attach the property to the DSD via a ComponentSpecification node, whose skolem IRI is the same in every conversion
+			Node specificationNode = nodes.uri(Configuration.componentSpecificationURI(dsdNode.getURI(), propertyNode.getURI()));
+			triple(specificationNode, RDF.type.asNode(), DataCube.ComponentSpecification.asNode());
+			triple(specificationNode, componentPropertyMappings.get(componentType).asNode(), propertyNode);
 			// For dimensions, add the order attribute
 			if (componentClassMappings.get(componentType).equals(DataCube.DimensionProperty)) {
-				blankCS.addProperty(DataCube.order, dsdModel.createTypedLiteral(dimensionOrder));
+				triple(specificationNode, DataCube.order.asNode(), nodes.literal(Integer.toString(dimensionOrder), XSDDatatype.XSDint));
 				dimensionOrder++;
 			}
-			dsdResource.addProperty(DataCube.component, blankCS);
+			triple(dsdNode, DataCube.component.asNode(), specificationNode);
+			metrics.countComponent();
 		}
 
-		conceptModel.close();
-		return dsdModel;
+		@Override
+		public void endKeyFamily(String keyFamilyId) {
+			inRequestedKeyFamily = false;
+		}
+
+		private void triple(Node subject, Node predicate, Node object) {
+			output.triple(Triple.create(subject, predicate, object));
+			metrics.countTriple();
+		}
 	}
 }
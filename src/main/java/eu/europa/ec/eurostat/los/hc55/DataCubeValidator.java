@@ -0,0 +1,610 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.vocabulary.OWL;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+import org.apache.jena.vocabulary.SKOS;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import eu.europa.ec.eurostat.los.utils.DataCube;
+
+/**
+ * The <code>DataCubeValidator</code> class checks converted data against the integrity constraints of the W3C Data Cube Recommendation
+ * without running the SPARQL queries which define them.
+ * The DSDs, code lists and slice keys are read once from a structure graph and indexed in hash tables: components by DSD, members by code
+ * list. Observations, slices and data sets are then validated as they are streamed, each resource being checked when its last triple has been
+ * received, and violations are reported to a listener as soon as they are found. Duplicate observations are detected with a set of 64-bit
+ * fingerprints of the observation keys, so that memory use stays low on large data sets.
+ * The constraints checked are IC-2 to IC-8 on the structure, and IC-1, IC-2, IC-9 to IC-14 and IC-18 to IC-21 on the streamed resources.
+ * Constraints on measure dimensions (IC-15 to IC-17) are not checked, since the converted DSDs do not use them.
+ * IC-18 (observations of a slice belong to the data set of the slice) is checked when the stream is finished, since slices, data sets and
+ * observations can come in any order: the validator keeps a fingerprint of each observation with its data set, and the fingerprints of the
+ * observations of each slice. IC-20 and IC-21 (values of dimensions with a hierarchical code list are reachable from the roots of the list
+ * through the parent-child property, or through its inverse) use a <code>HierarchyIndex</code> of the codes reachable from the roots.
+ * The triples of each streamed resource must be contiguous, as in the output of the converters or in N-Triples files sorted by subject.
+ *
+ * @author Franck
+ */
+public class DataCubeValidator {
+
+	private static Logger logger = LogManager.getLogger(DataCubeValidator.class);
+
+	/** Structure graph containing the DSDs, component properties, code lists and slice keys */
+	private Graph structure = null;
+
+	/** Listener receiving the violations */
+	private Consumer<Violation> listener = null;
+
+	/** Indexed DSDs, and DSD of each data set known so far */
+	private Map<Node, DSDIndex> dsds = new HashMap<Node, DSDIndex>();
+	private Map<Node, Node> dataSetStructures = new HashMap<Node, Node>();
+
+	/** Members of each code list, and hierarchies of each hierarchical code list, computed on first use */
+	private Map<Node, Set<Node>> codeListMembers = new HashMap<Node, Set<Node>>();
+	private Map<Node, List<CodeHierarchy>> codeListHierarchies = new HashMap<Node, List<CodeHierarchy>>();
+
+	/** Data set of each slice, given by the <code>qb:slice</code> links of the data sets */
+	private Map<Node, Node> sliceDataSets = new HashMap<Node, Node>();
+
+	/** Component properties of each slice key */
+	private Map<Node, List<Node>> sliceKeys = new HashMap<Node, List<Node>>();
+
+	/** Number of violations by constraint */
+	private Map<String, Long> violationCounts = new TreeMap<String, Long>();
+
+	/**
+	 * Validates converted data.
+	 * Arguments are the RDF file containing the observations (and possibly data sets and slices), followed by the RDF files containing the DSDs
+	 * and code lists.
+	 */
+	public static void main(String[] args) {
+
+		Model structureModel = ModelFactory.createDefaultModel();
+		for (int index = 1; index < args.length; index++) RDFDataMgr.read(structureModel, args[index]);
+		DataCubeValidator validator = new DataCubeValidator(structureModel.getGraph());
+		validator.validateStructure();
+		RDFDataMgr.parse(validator.stream(), args[0]);
+		System.out.println("Violations by constraint: " + validator.getViolationCounts());
+	}
+
+	/**
+	 * Creates a validator which logs the violations found.
+	 *
+	 * @param structure The graph containing the DSDs, component properties, code lists and slice keys.
+	 */
+	public DataCubeValidator(Graph structure) {
+		this(structure, violation -> logger.warn(violation));
+	}
+
+	/**
+	 * Creates a validator.
+	 *
+	 * @param structure The graph containing the DSDs, component properties, code lists and slice keys.
+	 * @param listener The listener receiving the violations as they are found.
+	 */
+	public DataCubeValidator(Graph structure, Consumer<Violation> listener) {
+
+		this.structure = structure;
+		this.listener = listener;
+		for (Node dsd : subjects(RDF.type.asNode(), DataCube.DataStructureDefinition.asNode())) dsds.put(dsd, new DSDIndex(dsd));
+		for (Node sliceKey : subjects(RDF.type.asNode(), DataCube.SliceKey.asNode())) sliceKeys.put(sliceKey, objects(sliceKey, DataCube.componentProperty.asNode()));
+		for (Triple triple : find(null, DataCube.structure.asNode(), null)) dataSetStructures.putIfAbsent(triple.getSubject(), triple.getObject());
+		for (Triple triple : find(null, DataCube.slice.asNode(), null)) sliceDataSets.putIfAbsent(triple.getObject(), triple.getSubject());
+		logger.info(dsds.size() + " DSDs and " + sliceKeys.size() + " slice keys indexed");
+	}
+
+	/**
+	 * Checks the constraints on the structure graph: IC-2 (unique DSD), IC-3 (DSD includes a measure), IC-4 (dimensions have a range), IC-5
+	 * (concept dimensions have a code list), IC-6 (only attributes may be optional), IC-7 (slice keys must be declared) and IC-8 (slice keys
+	 * are consistent with the DSD).
+	 *
+	 * @return The number of violations found.
+	 */
+	public long validateStructure() {
+
+		long before = getViolationCount();
+		for (Node dataSet : subjects(RDF.type.asNode(), DataCube.DataSet.asNode())) {
+			int structures = objects(dataSet, DataCube.structure.asNode()).size();
+			if (structures != 1) report("IC-2", dataSet, "Data set has " + structures + " structures");
+		}
+		for (DSDIndex dsd : dsds.values()) {
+			if (dsd.measures.length == 0) report("IC-3", dsd.dsd, "DSD has no measure");
+			for (Node dimension : dsd.dimensions) {
+				List<Node> ranges = objects(dimension, RDFS.range.asNode());
+				if (ranges.isEmpty()) report("IC-4", dimension, "Dimension has no declared range");
+				if (ranges.contains(SKOS.Concept.asNode()) && objects(dimension, DataCube.codeList.asNode()).isEmpty()) report("IC-5", dimension, "Concept dimension has no code list");
+			}
+			for (Node optional : dsd.optionalComponents) {
+				if (!dsd.attributeSet.contains(optional)) report("IC-6", optional, "Component is optional but is not an attribute in DSD " + dsd.dsd);
+			}
+		}
+		for (Map.Entry<Node, List<Node>> sliceKey : sliceKeys.entrySet()) {
+			List<Node> keyDSDs = new ArrayList<Node>();
+			for (Triple triple : find(null, DataCube.sliceKey.asNode(), sliceKey.getKey())) keyDSDs.add(triple.getSubject());
+			if (keyDSDs.isEmpty()) report("IC-7", sliceKey.getKey(), "Slice key is not associated with a DSD");
+			for (Node dsdNode : keyDSDs) {
+				DSDIndex dsd = dsds.get(dsdNode);
+				if (dsd == null) continue;
+				for (Node property : sliceKey.getValue()) {
+					if (!dsd.dimensionIndexes.containsKey(property)) report("IC-8", sliceKey.getKey(), "Component " + property + " of slice key is not a dimension of DSD " + dsdNode);
+				}
+			}
+		}
+		return getViolationCount() - before;
+	}
+
+	/**
+	 * Returns a stream validating the resources it receives. Observations, slices, data sets and slice keys are recognized by their type
+	 * or by their characteristic properties, other resources are ignored.
+	 * Calling <code>finish</code> on the stream validates the last resource and logs a summary.
+	 *
+	 * @return The validating stream.
+	 */
+	public StreamRDF stream() {
+		return new ValidatingStream();
+	}
+
+	/**
+	 * Returns the number of violations found for each constraint.
+	 *
+	 * @return The number of violations indexed by constraint name (for example <code>IC-12</code>).
+	 */
+	public Map<String, Long> getViolationCounts() {
+		return new TreeMap<String, Long>(violationCounts);
+	}
+
+	public long getViolationCount() {
+
+		long total = 0;
+		for (long count : violationCounts.values()) total += count;
+		return total;
+	}
+
+	private void report(String constraint, Node resource, String message) {
+
+		violationCounts.merge(constraint, 1L, Long::sum);
+		listener.accept(new Violation(constraint, resource, message));
+	}
+
+	/**
+	 * Returns the members of a code list checked by IC-19: the concepts in the scheme or in the collection.
+	 *
+	 * @return The members of the code list, or <code>null</code> if the code list is only a hierarchical code list, which IC-19 does not cover.
+	 */
+	private Set<Node> getMembers(Node codeList) {
+
+		if (codeListMembers.containsKey(codeList)) return codeListMembers.get(codeList);
+		List<Node> types = objects(codeList, RDF.type.asNode());
+		Set<Node> members = null;
+		if (types.contains(SKOS.ConceptScheme.asNode()) || types.contains(SKOS.Collection.asNode()) || getHierarchies(codeList).isEmpty()) {
+			members = new HashSet<Node>(subjects(SKOS.inScheme.asNode(), codeList));
+			members.addAll(objects(codeList, SKOS.member.asNode()));
+		}
+		codeListMembers.put(codeList, members);
+		return members;
+	}
+
+	/**
+	 * Returns the hierarchies of a hierarchical code list, one for each parent-child property, each containing the codes reachable from the roots
+	 * of the list. A property which is a blank node declared as the <code>owl:inverseOf</code> another property links the child to its parent.
+	 */
+	private List<CodeHierarchy> getHierarchies(Node codeList) {
+
+		List<CodeHierarchy> hierarchies = codeListHierarchies.get(codeList);
+		if (hierarchies != null) return hierarchies;
+		hierarchies = new ArrayList<CodeHierarchy>();
+		List<Node> roots = objects(codeList, DataCube.hierarchyRoot.asNode());
+		for (Node property : objects(codeList, DataCube.parentChildProperty.asNode())) {
+			Node inverse = null;
+			if (property.isBlank()) {
+				List<Node> inverses = objects(property, OWL.inverseOf.asNode());
+				if (inverses.isEmpty()) continue;
+				inverse = inverses.get(0);
+			}
+			HierarchyIndex index = new HierarchyIndex(codeList.toString());
+			Deque<Node> toVisit = new ArrayDeque<Node>();
+			Set<Node> visited = new HashSet<Node>();
+			for (Node root : roots) {
+				if (!visited.add(root)) continue;
+				index.add(root.toString(), null);
+				toVisit.add(root);
+			}
+			while (!toVisit.isEmpty()) {
+				Node code = toVisit.pop();
+				List<Node> children = (inverse == null) ? objects(code, property) : subjects(inverse, code);
+				for (Node child : children) {
+					if (!visited.add(child)) continue;
+					index.add(child.toString(), code.toString());
+					toVisit.add(child);
+				}
+			}
+			index.build();
+			hierarchies.add(new CodeHierarchy((inverse == null) ? "IC-20" : "IC-21", (inverse == null) ? property : inverse, index));
+		}
+		codeListHierarchies.put(codeList, hierarchies);
+		return hierarchies;
+	}
+
+	private List<Triple> find(Node subject, Node predicate, Node object) {
+
+		ExtendedIterator<Triple> iterator = structure.find(subject, predicate, object);
+		try {
+			return iterator.toList();
+		} finally {
+			iterator.close();
+		}
+	}
+
+	private List<Node> subjects(Node predicate, Node object) {
+
+		List<Node> subjects = new ArrayList<Node>();
+		for (Triple triple : find(null, predicate, object)) subjects.add(triple.getSubject());
+		return subjects;
+	}
+
+	private List<Node> objects(Node subject, Node predicate) {
+
+		List<Node> objects = new ArrayList<Node>();
+		for (Triple triple : find(subject, predicate, null)) objects.add(triple.getObject());
+		return objects;
+	}
+
+	/** A violation of an integrity constraint. */
+	public static class Violation {
+
+		/** Name of the constraint, for example <code>IC-12</code> */
+		public final String constraint;
+		/** Resource which violates the constraint */
+		public final Node resource;
+		public final String message;
+
+		Violation(String constraint, Node resource, String message) {
+			this.constraint = constraint;
+			this.resource = resource;
+			this.message = message;
+		}
+
+		@Override
+		public String toString() {
+			return constraint + " violated by " + resource + ": " + message;
+		}
+	}
+
+	/**
+	 * Codes reachable from the roots of a hierarchical code list through a parent-child property, with the constraint which checks them.
+	 */
+	private static class CodeHierarchy {
+
+		/** <code>IC-20</code> for a parent-child property, <code>IC-21</code> for the inverse of a child-parent property */
+		final String constraint;
+		final Node property;
+		final HierarchyIndex index;
+
+		CodeHierarchy(String constraint, Node property, HierarchyIndex index) {
+			this.constraint = constraint;
+			this.property = property;
+			this.index = index;
+		}
+	}
+
+	/**
+	 * Components of a DSD, with the code list of each coded component.
+	 */
+	private class DSDIndex {
+
+		final Node dsd;
+		final Node[] dimensions;
+		final Map<Node, Integer> dimensionIndexes = new HashMap<Node, Integer>();
+		final Node[] measures;
+		final Node[] requiredAttributes;
+		final Set<Node> attributeSet = new HashSet<Node>();
+		final Set<Node> optionalComponents = new LinkedHashSet<Node>();
+		final Map<Node, Node> codeLists = new HashMap<Node, Node>();
+
+		DSDIndex(Node dsd) {
+
+			this.dsd = dsd;
+			List<Node> dimensionList = new ArrayList<Node>();
+			List<Node> measureList = new ArrayList<Node>();
+			List<Node> requiredList = new ArrayList<Node>();
+			for (Node specification : objects(dsd, DataCube.component.asNode())) {
+				boolean required = objects(specification, DataCube.componentRequired.asNode()).stream().anyMatch(node -> "true".equals(node.getLiteralLexicalForm()));
+				boolean optional = objects(specification, DataCube.componentRequired.asNode()).stream().anyMatch(node -> "false".equals(node.getLiteralLexicalForm()));
+				for (Node dimension : objects(specification, DataCube.dimension.asNode())) {
+					dimensionIndexes.put(dimension, dimensionList.size());
+					dimensionList.add(dimension);
+					if (optional) optionalComponents.add(dimension);
+				}
+				for (Node measure : objects(specification, DataCube.measure.asNode())) {
+					measureList.add(measure);
+					if (optional) optionalComponents.add(measure);
+				}
+				for (Node attribute : objects(specification, DataCube.attribute.asNode())) {
+					attributeSet.add(attribute);
+					if (required) requiredList.add(attribute);
+				}
+			}
+			this.dimensions = dimensionList.toArray(new Node[0]);
+			this.measures = measureList.toArray(new Node[0]);
+			this.requiredAttributes = requiredList.toArray(new Node[0]);
+			for (Node property : dimensionIndexes.keySet()) recordCodeList(property);
+			for (Node property : measures) recordCodeList(property);
+			for (Node property : attributeSet) recordCodeList(property);
+		}
+
+		private void recordCodeList(Node property) {
+
+			List<Node> propertyCodeLists = objects(property, DataCube.codeList.asNode());
+			if (!propertyCodeLists.isEmpty()) codeLists.put(property, propertyCodeLists.get(0));
+		}
+	}
+
+	/**
+	 * Stream grouping the triples by subject and validating each resource when the subject changes.
+	 */
+	private class ValidatingStream implements StreamRDF {
+
+		private Node subject = null;
+		private List<Triple> triples = new ArrayList<Triple>();
+		private LongSet observationKeys = new LongSet();
+		/** Fingerprints of the observations with their data set, and of the observations of each slice without their data set, for IC-18 */
+		private LongSet observationDataSets = new LongSet();
+		private Map<Node, long[]> sliceObservations = new HashMap<Node, long[]>();
+		private long observations = 0;
+		private long slices = 0;
+		private Map<Node, Long> unchecked = new HashMap<Node, Long>();
+
+		@Override
+		public void start() {}
+
+		@Override
+		public void triple(Triple triple) {
+
+			if (!triple.getSubject().equals(subject)) {
+				validate();
+				subject = triple.getSubject();
+			}
+			triples.add(triple);
+		}
+
+		@Override
+		public void quad(Quad quad) {
+			triple(quad.asTriple());
+		}
+
+		@Override
+		public void base(String base) {}
+
+		@Override
+		public void prefix(String prefix, String iri) {}
+
+		@Override
+		public void finish() {
+
+			validate();
+			validateSliceObservations();
+			for (Map.Entry<Node, Long> entry : unchecked.entrySet()) {
+				logger.warn(entry.getValue() + " observations of data set " + entry.getKey() + " not checked, the structure of the data set is unknown");
+			}
+			logger.info(observations + " observations and " + slices + " slices validated, violations by constraint: " + violationCounts);
+		}
+
+		/**
+		 * Validates the resource whose triples have been collected.
+		 */
+		private void validate() {
+
+			if (triples.isEmpty()) return;
+			Map<Node, List<Node>> values = new HashMap<Node, List<Node>>();
+			for (Triple triple : triples) values.computeIfAbsent(triple.getPredicate(), predicate -> new ArrayList<Node>()).add(triple.getObject());
+			triples.clear();
+			List<Node> types = values.getOrDefault(RDF.type.asNode(), new ArrayList<Node>());
+
+			if (types.contains(DataCube.DataSet.asNode()) || values.containsKey(DataCube.structure.asNode())) validateDataSet(values);
+			for (Node slice : values.getOrDefault(DataCube.slice.asNode(), new ArrayList<Node>())) sliceDataSets.putIfAbsent(slice, subject);
+			if (types.contains(DataCube.SliceKey.asNode())) sliceKeys.put(subject, values.getOrDefault(DataCube.componentProperty.asNode(), new ArrayList<Node>()));
+			if (types.contains(DataCube.Slice.asNode())) validateSlice(values);
+			if (values.containsKey(DataCube.observation.asNode())) recordSliceObservations(values.get(DataCube.observation.asNode()));
+			if (types.contains(DataCube.Observation.asNode()) || values.containsKey(DataCube.dataSet.asNode())) validateObservation(values);
+		}
+
+		private void validateDataSet(Map<Node, List<Node>> values) {
+
+			List<Node> structures = values.getOrDefault(DataCube.structure.asNode(), new ArrayList<Node>());
+			if (structures.size() != 1) report("IC-2", subject, "Data set has " + structures.size() + " structures");
+			if (!structures.isEmpty()) dataSetStructures.putIfAbsent(subject, structures.get(0));
+		}
+
+		private void validateSlice(Map<Node, List<Node>> values) {
+
+			slices++;
+			List<Node> structures = values.getOrDefault(DataCube.sliceStructure.asNode(), new ArrayList<Node>());
+			if (structures.size() != 1) report("IC-9", subject, "Slice has " + structures.size() + " slice structures");
+			for (Node sliceKey : structures) {
+				List<Node> properties = sliceKeys.get(sliceKey);
+				if (properties == null) continue;
+				for (Node property : properties) {
+					if (!values.containsKey(property)) report("IC-10", subject, "Slice has no value for dimension " + property + " of its slice key");
+				}
+			}
+		}
+
+		/**
+		 * Records the observations of a slice, IC-18 being checked at the end of the stream once the data sets of the slices and of the
+		 * observations are known.
+		 */
+		private void recordSliceObservations(List<Node> sliceMembers) {
+
+			long[] previous = sliceObservations.getOrDefault(subject, new long[0]);
+			long[] fingerprints = Arrays.copyOf(previous, previous.length + sliceMembers.size());
+			for (int index = 0; index < sliceMembers.size(); index++) fingerprints[previous.length + index] = fingerprint(SEED, sliceMembers.get(index));
+			sliceObservations.put(subject, fingerprints);
+		}
+
+		/**
+		 * Checks IC-18: the observations of a slice belong to the data set which has the slice.
+		 */
+		private void validateSliceObservations() {
+
+			for (Map.Entry<Node, long[]> entry : sliceObservations.entrySet()) {
+				Node dataSet = sliceDataSets.get(entry.getKey());
+				if (dataSet == null) continue;
+				long missing = 0;
+				for (long observation : entry.getValue()) if (!observationDataSets.contains(fingerprint(observation, dataSet))) missing++;
+				if (missing > 0) report("IC-18", entry.getKey(), missing + " observation(s) of the slice do not belong to data set " + dataSet);
+			}
+		}
+
+		private void validateObservation(Map<Node, List<Node>> values) {
+
+			observations++;
+			List<Node> dataSets = values.getOrDefault(DataCube.dataSet.asNode(), new ArrayList<Node>());
+			if (dataSets.size() != 1) {
+				report("IC-1", subject, "Observation has " + dataSets.size() + " data sets");
+				if (dataSets.isEmpty()) return;
+			}
+			long observationFingerprint = fingerprint(SEED, subject);
+			for (Node dataSet : dataSets) observationDataSets.add(fingerprint(observationFingerprint, dataSet));
+			Node structureNode = dataSetStructures.get(dataSets.get(0));
+			DSDIndex dsd = (structureNode == null) ? null : dsds.get(structureNode);
+			if (dsd == null) {
+				unchecked.merge(dataSets.get(0), 1L, Long::sum);
+				return;
+			}
+
+			// IC-11 and IC-12: all dimensions have a value, and no other observation of the data set has the same values
+			long key = fingerprint(SEED, dataSets.get(0));
+			boolean complete = true;
+			for (Node dimension : dsd.dimensions) {
+				List<Node> dimensionValues = values.get(dimension);
+				if (dimensionValues == null) {
+					report("IC-11", subject, "Observation has no value for dimension " + dimension);
+					complete = false;
+				} else key = fingerprint(key, dimensionValues.get(0));
+			}
+			if (complete && !observationKeys.add(key)) report("IC-12", subject, "Observation has the same dimension values as a previous observation of the data set");
+
+			// IC-13 and IC-14: required attributes and all measures have a value
+			for (Node attribute : dsd.requiredAttributes) {
+				if (!values.containsKey(attribute)) report("IC-13", subject, "Observation has no value for required attribute " + attribute);
+			}
+			for (Node measure : dsd.measures) {
+				if (!values.containsKey(measure)) report("IC-14", subject, "Observation has no value for measure " + measure);
+			}
+
+			// IC-19: values of coded components are in the code list
+			for (Map.Entry<Node, Node> codeList : dsd.codeLists.entrySet()) {
+				List<Node> codedValues = values.get(codeList.getKey());
+				if (codedValues == null) continue;
+				Set<Node> members = getMembers(codeList.getValue());
+				for (Node value : codedValues) {
+					if ((members != null) && !members.contains(value)) report("IC-19", subject, "Value " + value + " of component " + codeList.getKey() + " is not in code list " + codeList.getValue());
+				}
+				// IC-20 and IC-21: values of dimensions with a hierarchical code list are reachable from its roots
+				if (!dsd.dimensionIndexes.containsKey(codeList.getKey())) continue;
+				for (CodeHierarchy hierarchy : getHierarchies(codeList.getValue())) {
+					for (Node value : codedValues) {
+						if (hierarchy.index.getId(value.toString()) < 0) report(hierarchy.constraint, subject, "Value " + value + " of dimension " + codeList.getKey() + " is not reachable from the roots of code list " + codeList.getValue() + " through " + hierarchy.property);
+					}
+				}
+			}
+		}
+	}
+
+	/** Initial value of the fingerprints, which is the FNV-1a offset basis */
+	private static final long SEED = 0xcbf29ce484222325L;
+
+	/**
+	 * Combines a 64-bit FNV-1a hash with the string form of a node.
+	 */
+	private static long fingerprint(long hash, Node node) {
+
+		String string = node.toString();
+		for (int index = 0; index < string.length(); index++) {
+			hash ^= string.charAt(index);
+			hash *= 0x100000001b3L;
+		}
+		// Separator, so that the concatenation of the values is not ambiguous
+		hash ^= 0xff;
+		return hash * 0x100000001b3L;
+	}
+
+	/**
+	 * Open addressing hash set of long values.
+	 */
+	private static class LongSet {
+
+		/** Value stored in place of 0, which marks the empty slots */
+		private static final long ZERO = 0x9E3779B97F4A7C15L;
+
+		private long[] table = new long[1 << 16];
+		private int size = 0;
+
+		/**
+		 * Adds a value to the set.
+		 *
+		 * @return <code>true</code> if the value was added, <code>false</code> if it was already in the set.
+		 */
+		boolean add(long value) {
+
+			if (value == 0) value = ZERO;
+			int mask = table.length - 1;
+			int slot = (int) (value ^ (value >>> 32)) & mask;
+			while (table[slot] != 0) {
+				if (table[slot] == value) return false;
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = value;
+			if (2 * ++size > table.length) rehash();
+			return true;
+		}
+
+		boolean contains(long value) {
+
+			if (value == 0) value = ZERO;
+			int mask = table.length - 1;
+			int slot = (int) (value ^ (value >>> 32)) & mask;
+			while (table[slot] != 0) {
+				if (table[slot] == value) return true;
+				slot = (slot + 1) & mask;
+			}
+			return false;
+		}
+
+		private void rehash() {
+
+			long[] oldTable = table;
+			table = new long[2 * oldTable.length];
+			int mask = table.length - 1;
+			for (long value : oldTable) {
+				if (value == 0) continue;
+				int slot = (int) (value ^ (value >>> 32)) & mask;
+				while (table[slot] != 0) slot = (slot + 1) & mask;
+				table[slot] = value;
+			}
+		}
+	}
+}
@@ -0,0 +1,343 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.XSD;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import eu.europa.ec.eurostat.los.hc55.SDMXDataReader.Observation;
+import eu.europa.ec.eurostat.los.hc55.SDMXDataReader.Series;
+import eu.europa.ec.eurostat.los.utils.DataCube;
+
+/**
+ * The <code>DataStructure</code> class describes the components of a key family as they are used to produce Data Cube observations.
+ * Dimensions are kept in the key family order, which is the <code>qb:order</code> given by the <code>DSDConverter</code>, the time dimension included.
+ * The component properties and the codes of the coded components are the ones produced by the <code>DSDConverter</code> and the
+ * <code>CodeListConverter</code>. Instances are immutable once created and can be shared between threads.
+ *
+ * @author Franck
+ */
+public class DataStructure {
+
+	private static Logger logger = LogManager.getLogger(DataStructure.class);
+
+	/** Identifier of the key family */
+	private String dsdId = null;
+
+	/** Data set node */
+	private Node dataSetNode = null;
+
+	/** Dimensions of the key family in the key family order, including the time dimension */
+	private List<DataComponent> dimensions = new ArrayList<DataComponent>();
+
+	/** Index of the time dimension in the list of dimensions, -1 if there is none */
+	private int timeIndex = -1;
+
+	/** Primary measure of the key family */
+	private DataComponent measure = null;
+
+	/** Attributes of the key family */
+	private List<DataComponent> attributes = new ArrayList<DataComponent>();
+
+	/**
+	 * Creates the data structure corresponding to a key family.
+	 *
+	 * @param registry The registry containing the key family and the concepts it references.
+	 * @param dsdId The identifier of the key family.
+	 */
+	public DataStructure(SDMXStructureRegistry registry, String dsdId) {
+
+		SDMXStructureRegistry.KeyFamily keyFamily = registry.getKeyFamily(dsdId);
+		if (keyFamily == null) throw new IllegalArgumentException("No key family found with identifier " + dsdId);
+		this.dsdId = dsdId;
+		this.dataSetNode = NodeInterner.getShared().uri(Configuration.dataSetURI(dsdId));
+
+		// Code lists are taken from the concepts as in the DSD conversion, then from the key family
+		ConceptCatalogue concepts = ConceptCatalogue.get(registry);
+		for (SDMXStructureRegistry.Component component : keyFamily.components) {
+			String codeListId = concepts.getCodeList(component.conceptRef);
+			if (codeListId == null) codeListId = component.codeListId;
+			DataComponent dataComponent = new DataComponent(component.conceptRef, Configuration.componentURI(component.conceptRef, component.type), codeListId);
+			switch (component.type) {
+			case "TimeDimension":
+				timeIndex = dimensions.size();
+				dimensions.add(dataComponent);
+				break;
+			case "Dimension":
+				dimensions.add(dataComponent);
+				break;
+			case "PrimaryMeasure":
+				measure = dataComponent;
+				break;
+			case "Attribute":
+				attributes.add(dataComponent);
+				break;
+			default:
+				logger.warn("Components of type " + component.type + " are not supported, ignoring component referring to concept " + component.conceptRef);
+			}
+		}
+		if (measure == null) throw new IllegalArgumentException("Key family " + dsdId + " has no primary measure");
+	}
+
+	public String getDsdId() {
+		return dsdId;
+	}
+
+	public Node getDataSetNode() {
+		return dataSetNode;
+	}
+
+	/**
+	 * Returns the dimensions in the key family order.
+	 *
+	 * @return An unmodifiable list of the dimensions, including the time dimension.
+	 */
+	public List<DataComponent> getDimensions() {
+		return Collections.unmodifiableList(dimensions);
+	}
+
+	/**
+	 * Returns the position of a dimension.
+	 *
+	 * @param concept The identifier of the concept of the dimension.
+	 * @return The index of the dimension in the list of dimensions, -1 if the key family has no such dimension.
+	 */
+	public int getDimensionIndex(String concept) {
+
+		for (int index = 0; index < dimensions.size(); index++) {
+			if (dimensions.get(index).concept.equals(concept)) return index;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the position of the time dimension.
+	 *
+	 * @return The index of the time dimension in the list of dimensions, -1 if the key family has no time dimension.
+	 */
+	public int getTimeIndex() {
+		return timeIndex;
+	}
+
+	public DataComponent getMeasure() {
+		return measure;
+	}
+
+	public List<DataComponent> getAttributes() {
+		return Collections.unmodifiableList(attributes);
+	}
+
+	/**
+	 * Sends the prefixes and the triples describing the data set to a stream.
+	 *
+	 * @param output The stream receiving the triples.
+	 */
+	public void startDataSet(StreamRDF output) {
+
+		output.prefix("rdf", RDF.getURI());
+		output.prefix("xs", XSD.getURI());
+		output.prefix("qb", DataCube.getURI());
+		output.triple(Triple.create(dataSetNode, RDF.type.asNode(), DataCube.DataSet.asNode()));
+		output.triple(Triple.create(dataSetNode, DataCube.structure.asNode(), NodeInterner.getShared().uri(Configuration.dsdURI(dsdId))));
+	}
+
+	/**
+	 * Extracts the values of the observations of a series, in the order of the components of the key family.
+	 * Dimension values are normally in the series key, but Compact messages can also give them on the observations;
+	 * attribute values are taken from the observation, then from the series.
+	 *
+	 * @param series The series read by the <code>SDMXDataReader</code>.
+	 * @param consumer The consumer receiving the values of each observation, in new arrays for each observation.
+	 */
+	public void readObservations(Series series, ObservationValues consumer) {
+
+		String[] seriesValues = new String[dimensions.size()];
+		for (int index = 0; index < seriesValues.length; index++) seriesValues[index] = series.values.get(dimensions.get(index).concept);
+
+		for (Observation observation : series.observations) {
+			String[] dimensionValues = new String[seriesValues.length];
+			for (int index = 0; index < dimensionValues.length; index++) {
+				dimensionValues[index] = (seriesValues[index] != null) ? seriesValues[index] : observation.values.get(dimensions.get(index).concept);
+			}
+			if ((timeIndex >= 0) && (observation.time != null)) dimensionValues[timeIndex] = observation.time;
+			String value = (observation.value != null) ? observation.value : observation.values.get(measure.concept);
+			String[] attributeValues = new String[attributes.size()];
+			for (int index = 0; index < attributeValues.length; index++) {
+				attributeValues[index] = observation.values.get(attributes.get(index).concept);
+				if (attributeValues[index] == null) attributeValues[index] = series.values.get(attributes.get(index).concept);
+			}
+			consumer.accept(dimensionValues, value, attributeValues);
+		}
+	}
+
+	/**
+	 * Indicates if all the dimensions of an observation have a value. Incomplete observations are not converted, since their URI would not
+	 * identify them.
+	 *
+	 * @param dimensionValues The values of the dimensions in the key family order, <code>null</code> for missing values.
+	 * @return <code>true</code> if no dimension value is missing, <code>false</code> otherwise.
+	 */
+	public boolean isComplete(String[] dimensionValues) {
+
+		for (String dimensionValue : dimensionValues) if (dimensionValue == null) return false;
+		return true;
+	}
+
+	/**
+	 * Returns the URI of an observation, made of the data set URI followed by the values of the dimensions in the key family order,
+	 * the time dimension last, separated by dots. Values are percent-encoded with <code>URIMinter.appendEncoded</code>.
+	 *
+	 * @param dimensionValues The values of the dimensions in the key family order, <code>null</code> for missing values.
+	 * @return The URI of the observation.
+	 */
+	public String observationURI(String[] dimensionValues) {
+
+		String dataSetURI = dataSetNode.getURI();
+		StringBuilder uri = new StringBuilder(dataSetURI.length() + 64).append(dataSetURI).append('/');
+		boolean first = true;
+		for (int index = 0; index < dimensionValues.length; index++) {
+			if (index == timeIndex) continue;
+			if (!first) uri.append('.');
+			if (dimensionValues[index] != null) URIMinter.appendEncoded(uri, dimensionValues[index]);
+			first = false;
+		}
+		if ((timeIndex >= 0) && (dimensionValues[timeIndex] != null)) URIMinter.appendEncoded(uri.append('.'), dimensionValues[timeIndex]);
+		return uri.toString();
+	}
+
+	/**
+	 * Produces the triples of an observation, whose URI is given by <code>observationURI</code>.
+	 *
+	 * @param dimensionValues The values of the dimensions in the key family order, <code>null</code> for missing values.
+	 * @param value The value of the observation, <code>null</code> or <code>NaN</code> if it is missing.
+	 * @param attributeValues The values of the attributes, <code>null</code> for missing values.
+	 * @param triples The consumer receiving the triples.
+	 */
+	public void observationTriples(String[] dimensionValues, String value, String[] attributeValues, Consumer<Triple> triples) {
+
+		Node observationNode = NodeFactory.createURI(observationURI(dimensionValues));
+		triples.accept(Triple.create(observationNode, RDF.type.asNode(), DataCube.Observation.asNode()));
+		triples.accept(Triple.create(observationNode, DataCube.dataSet.asNode(), dataSetNode));
+		for (int index = 0; index < dimensionValues.length; index++) {
+			DataComponent dimension = dimensions.get(index);
+			if (dimensionValues[index] != null) triples.accept(Triple.create(observationNode, dimension.property, dimension.getNode(dimensionValues[index])));
+		}
+		if ((value != null) && !value.isEmpty() && !"NaN".equals(value)) triples.accept(Triple.create(observationNode, measure.property, valueLiteral(value)));
+		for (int index = 0; index < attributeValues.length; index++) {
+			DataComponent attribute = attributes.get(index);
+			if (attributeValues[index] != null) triples.accept(Triple.create(observationNode, attribute.property, attribute.getNode(attributeValues[index])));
+		}
+	}
+
+	/**
+	 * Returns the literal corresponding to an observation value, following the lexical grammar of the XSD numeric types: integers are typed
+	 * as <code>xsd:integer</code>, decimal numbers as <code>xsd:decimal</code> and numbers with an exponent or infinite values as
+	 * <code>xsd:double</code> (<code>Infinity</code> being written <code>INF</code>). Other values, including Java forms like <code>1f</code>
+	 * or <code>0x1p3</code>, are returned as plain literals.
+	 */
+	static Node valueLiteral(String value) {
+
+		int length = value.length();
+		boolean signed = (length > 0) && ((value.charAt(0) == '-') || (value.charAt(0) == '+'));
+		int index = signed ? 1 : 0;
+
+		// Mantissa: digits with at most one decimal point, at least one digit being required
+		int digits = 0;
+		boolean point = false;
+		for (; index < length; index++) {
+			char character = value.charAt(index);
+			if ((character >= '0') && (character <= '9')) digits++;
+			else if ((character == '.') && !point) point = true;
+			else break;
+		}
+		if (digits == 0) {
+			String magnitude = value.substring(signed ? 1 : 0);
+			if (!magnitude.equals("INF") && !magnitude.equals("Infinity")) return NodeFactory.createLiteral(value);
+			return NodeFactory.createLiteral((value.charAt(0) == '-') ? "-INF" : "INF", XSDDatatype.XSDdouble);
+		}
+		if (index == length) return NodeFactory.createLiteral(value, point ? XSDDatatype.XSDdecimal : XSDDatatype.XSDinteger);
+
+		// Exponent: optional sign followed by at least one digit
+		char character = value.charAt(index++);
+		if ((character != 'e') && (character != 'E')) return NodeFactory.createLiteral(value);
+		if ((index < length) && ((value.charAt(index) == '-') || (value.charAt(index) == '+'))) index++;
+		int exponentDigits = 0;
+		for (; (index < length) && (value.charAt(index) >= '0') && (value.charAt(index) <= '9'); index++) exponentDigits++;
+		if ((exponentDigits == 0) || (index < length)) return NodeFactory.createLiteral(value);
+		return NodeFactory.createLiteral(value, XSDDatatype.XSDdouble);
+	}
+
+	/** Receives the values of an observation. */
+	public interface ObservationValues {
+
+		/**
+		 * Called for each observation.
+		 *
+		 * @param dimensionValues The values of the dimensions in the key family order, <code>null</code> for missing values.
+		 * @param value The value of the observation, <code>null</code> if it is missing.
+		 * @param attributeValues The values of the attributes, <code>null</code> for missing values.
+		 */
+		void accept(String[] dimensionValues, String value, String[] attributeValues);
+	}
+
+	/**
+	 * A component of the key family with the nodes of its values, which are created once and shared by all threads.
+	 */
+	public static class DataComponent {
+
+		private final String concept;
+		private final Node property;
+		private final String codeListId;
+		private final Map<String, Node> nodes = new ConcurrentHashMap<String, Node>();
+
+		DataComponent(String concept, String propertyURI, String codeListId) {
+			this.concept = concept;
+			this.property = NodeInterner.getShared().uri(propertyURI);
+			this.codeListId = codeListId;
+		}
+
+		public String getConcept() {
+			return concept;
+		}
+
+		public Node getProperty() {
+			return property;
+		}
+
+		/**
+		 * Returns the code list of the component.
+		 *
+		 * @return The code list identifier, <code>null</code> if the component is not coded.
+		 */
+		public String getCodeListId() {
+			return codeListId;
+		}
+
+		/**
+		 * Returns the node corresponding to a value of the component.
+		 *
+		 * @param value The value, as given in the SDMX messages.
+		 * @return The code for a coded component, a plain literal for other components.
+		 */
+		public Node getNode(String value) {
+
+			Node node = nodes.get(value);
+			if (node != null) return node;
+			node = (codeListId == null) ? NodeInterner.getShared().literal(value) : NodeInterner.getShared().uri(Configuration.codeURI(codeListId, value));
+			nodes.putIfAbsent(value, node);
+			return node;
+		}
+	}
+}
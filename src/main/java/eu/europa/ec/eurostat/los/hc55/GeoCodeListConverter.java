@@ -0,0 +1,488 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Literal;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.SKOS;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import eu.europa.ec.eurostat.los.hc55.BatchConverter.Artifact;
+import eu.europa.ec.eurostat.los.hc55.BatchConverter.ArtifactType;
+import eu.europa.ec.eurostat.los.hc55.ConversionMetrics.Stage;
+
+/**
+ * The <code>GeoCodeListConverter</code> class converts the geographical code lists (NUTS, LAU) into SKOS concept schemes, with the same
+ * triples as the <code>CodeListConverter</code> plus the hierarchy closure given by the <code>HierarchyIndex</code>.
+ * These lists are too large to be held in a registry or a model, so the SDMX file is streamed twice: the first pass only indexes the codes
+ * and their parents, which resolves the parents given after their children, and the second pass produces the triples of each code as soon
+ * as it is read, together with its depth and its ancestors taken from the index. Descriptions are never kept, so the memory used is the
+ * index (the code values and primitive arrays) plus the codes waiting in the queues.
+ * For large lists, the codes can be distributed by top-level region (the roots of the list, the root holding most of the codes being
+ * replaced by its children) to worker threads, each region being written to its own file by the worker in charge of it.
+ *
+ * @author Franck
+ */
+public class GeoCodeListConverter {
+
+	private static Logger logger = LogManager.getLogger(GeoCodeListConverter.class);
+
+	/** Number of codes waiting in the queue of each worker thread */
+	private static final int QUEUE_CODES_PER_THREAD = 1024;
+
+	/** Maximum number of region files, regions being grouped in part files beyond */
+	public static final int MAX_REGION_FILES = 256;
+
+	/** Code marking the end of the queue */
+	private static final RegionCode END_OF_LIST = new RegionCode(-1, null, null, null, -1);
+
+	/** Name of the SDMX file containing the geographical code lists */
+	private final String codeListsFile;
+
+	/** Number of worker threads */
+	private final int parallelism;
+
+	/**
+	 * Converts a geographical code list into one file per region.
+	 * Arguments are the code list identifier, the output directory and optionally the extension of the files, which selects the
+	 * serialization (see <code>RDFStreamOutput</code>, default <code>.nt</code>), and the SDMX file containing the list.
+	 */
+	public static void main(String[] args) throws XMLStreamException, IOException {
+
+		String extension = (args.length > 2) ? args[2] : ".nt";
+		String codeListsFile = (args.length > 3) ? args[3] : Configuration.GEO_CODELISTS;
+		List<File> files = new GeoCodeListConverter(codeListsFile).convertCodeList(args[0], new File(args[1]), extension);
+		if (files == null) System.exit(1);
+		logger.info(ConversionMetrics.getShared().getReport());
+	}
+
+	/**
+	 * Creates a converter for the code lists contained in the default SDMX file of geographical code lists.
+	 */
+	public GeoCodeListConverter() {
+		this(Configuration.GEO_CODELISTS);
+	}
+
+	/**
+	 * Creates a converter for the geographical code lists contained in a given SDMX file, using as many threads as there are available processors.
+	 *
+	 * @param codeListsFile The name of the SDMX file containing the code lists.
+	 */
+	public GeoCodeListConverter(String codeListsFile) {
+		this(codeListsFile, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates a converter for the geographical code lists contained in a given SDMX file.
+	 *
+	 * @param codeListsFile The name of the SDMX file containing the code lists.
+	 * @param parallelism The maximum number of threads writing the regions.
+	 */
+	public GeoCodeListConverter(String codeListsFile, int parallelism) {
+		this.codeListsFile = codeListsFile;
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	/**
+	 * Builds the hierarchy index of a code list by streaming the SDMX file, keeping only the code values and their parents.
+	 *
+	 * @param codeListId The identifier of the code list.
+	 * @return The index, built, or <code>null</code> if there is no such code list in the file.
+	 * @throws XMLStreamException In case of error while parsing the file content.
+	 * @throws IOException In case of problem reading the SDMX file.
+	 */
+	public HierarchyIndex indexCodeList(String codeListId) throws XMLStreamException, IOException {
+
+		long start = System.nanoTime();
+		HierarchyIndex hierarchy = new HierarchyIndex(codeListId);
+		RequestedListHandler handler = new RequestedListHandler(codeListId) {
+			@Override
+			void requestedCode(String codeValue, String parentCodeValue, List<Literal> descriptions) {
+				hierarchy.add(codeValue, parentCodeValue);
+			}
+		};
+		new SDMXStructureReader().read(codeListsFile, handler);
+		ConversionMetrics.getShared().record(Stage.PARSE, ConversionMetrics.artifactName(ArtifactType.CODE_LIST, codeListId), start);
+		if (handler.listsFound == 0) {
+			logger.warn("No code list found with identifier " + codeListId);
+			return null;
+		}
+		if (handler.listsFound > 1) logger.warn("Several code lists have identifier "+ codeListId + ", converting first list found");
+		hierarchy.build();
+		return hierarchy;
+	}
+
+	/**
+	 * Translates a geographical code list into a SKOS concept scheme and sends the resulting triples to a stream, in a single thread.
+	 * The <code>start</code> and <code>finish</code> methods of the stream are not called.
+	 *
+	 * @param codeListId The identifier of the code list in the input SDMX file.
+	 * @param output The stream receiving the triples of the SKOS concept scheme.
+	 * @return <code>true</code> if the code list was found, <code>false</code> otherwise.
+	 * @throws XMLStreamException In case of error while parsing the file content.
+	 * @throws IOException In case of problem reading the SDMX file.
+	 */
+	public boolean convertCodeList(String codeListId, StreamRDF output) throws XMLStreamException, IOException {
+
+		HierarchyIndex hierarchy = indexCodeList(codeListId);
+		if (hierarchy == null) return false;
+
+		ConversionMetrics metrics = ConversionMetrics.getShared();
+		Consumer<Triple> triples = triple -> {
+			output.triple(triple);
+			metrics.countTriple();
+		};
+		BitSet closed = new BitSet();
+		long start = System.nanoTime();
+		new SDMXStructureReader().read(codeListsFile, new RequestedListHandler(codeListId) {
+			private Node clNode = null;
+			@Override
+			void requestedList(List<Literal> names) {
+				output.prefix("rdf", RDF.getURI());
+				output.prefix("skos", SKOS.getURI());
+				clNode = CodeListConverter.schemeTriples(codeListId, names.get(0), triples);
+			}
+			@Override
+			void requestedCode(String codeValue, String parentCodeValue, List<Literal> descriptions) {
+				CodeListConverter.codeTriples(codeListId, clNode, codeValue, parentCodeValue, descriptions.get(0), triples);
+				closureTriples(hierarchy, closed, codeValue, triples);
+			}
+		});
+		hierarchy.codeListTriples(triples);
+		metrics.record(Stage.BUILD, ConversionMetrics.artifactName(ArtifactType.CODE_LIST, codeListId), start);
+		metrics.countArtifact();
+		logger.info("Geographical code list conversion to SKOS finished");
+		return true;
+	}
+
+	/**
+	 * Translates a geographical code list into a SKOS concept scheme written in several files: the description of the concept scheme
+	 * and the codes above the regions go to the file named after the code list (for example <code>cl-geo.nt</code>), and each region
+	 * goes to a file suffixed with the region code (<code>cl-geo-be.nt</code>), or to a part file if there are more than
+	 * <code>MAX_REGION_FILES</code> regions. Region codes which give the same suffix once cleaned are told apart by the region index.
+	 * The files of the regions are written in parallel by the worker threads.
+	 *
+	 * @param codeListId The identifier of the code list in the input SDMX file.
+	 * @param outputDirectory The directory where the files are written, which is created if needed.
+	 * @param extension The extension of the files, which selects the serialization (see <code>RDFStreamOutput</code>).
+	 * @return The list of the files written, or <code>null</code> if the code list was not found.
+	 * @throws XMLStreamException In case of error while parsing the file content.
+	 * @throws IOException In case of problem reading the SDMX file or writing the files.
+	 */
+	public List<File> convertCodeList(String codeListId, File outputDirectory, String extension) throws XMLStreamException, IOException {
+
+		RDFStreamOutput.getFormat(extension); // Fail early if the extension is not supported
+		HierarchyIndex hierarchy = indexCodeList(codeListId);
+		if (hierarchy == null) return null;
+		outputDirectory.mkdirs();
+
+		// Regions are the roots, except that the root holding most of the codes is replaced by its children
+		List<String> regions = new ArrayList<String>();
+		String largestRoot = null;
+		int largestSize = -1;
+		for (String root : hierarchy.getRoots()) {
+			int rootSize = hierarchy.descendantIds(hierarchy.getId(root)).length;
+			if (rootSize > largestSize) {
+				largestRoot = root;
+				largestSize = rootSize;
+			}
+		}
+		boolean splitLargestRoot = (2 * largestSize > hierarchy.size());
+		for (String root : hierarchy.getRoots()) {
+			if (!splitLargestRoot || !root.equals(largestRoot)) regions.add(root);
+		}
+		if (splitLargestRoot) {
+			for (String code : hierarchy.descendantsOf(largestRoot)) if (hierarchy.ancestorIds(hierarchy.getId(code)).length == 1) regions.add(code);
+		}
+		Map<Integer, Integer> regionIndexes = new HashMap<Integer, Integer>();
+		for (String region : regions) regionIndexes.put(hierarchy.getId(region), regionIndexes.size());
+
+		// Region files, each file being written by a single worker; a suffix already used after cleaning is followed by the region index
+		Artifact artifact = new Artifact(ArtifactType.CODE_LIST, codeListId);
+		int fileCount = Math.min(regions.size(), MAX_REGION_FILES);
+		List<File> regionFiles = new ArrayList<File>(fileCount);
+		Set<String> suffixes = new HashSet<String>();
+		for (int index = 0; index < fileCount; index++) {
+			String suffix = (regions.size() <= MAX_REGION_FILES) ? regions.get(index).toLowerCase().replaceAll("[^a-z0-9_-]", "_") : "part" + index;
+			while (!suffixes.add(suffix)) suffix += "_" + index;
+			regionFiles.add(new File(outputDirectory, artifact.getBaseName() + "-" + suffix + extension));
+		}
+		logger.info("Converting code list " + codeListId + " (" + hierarchy.size() + " codes) into " + regions.size() + " regions" + (splitLargestRoot ? ", root " + largestRoot + " being split" : ""));
+
+		int workerCount = Math.min(parallelism, fileCount);
+		List<BlockingQueue<RegionCode>> queues = new ArrayList<BlockingQueue<RegionCode>>(workerCount);
+		AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+		List<File> files = Collections.synchronizedList(new ArrayList<File>());
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, workerCount));
+		File mainFile = new File(outputDirectory, artifact.getFileName(extension));
+		files.add(mainFile);
+
+		long start = System.nanoTime();
+		ConversionMetrics metrics = ConversionMetrics.getShared();
+		try (RDFStreamOutput mainOutput = new RDFStreamOutput(mainFile.getPath())) {
+			StreamRDF main = mainOutput.getStream();
+			Consumer<Triple> mainTriples = triple -> {
+				main.triple(triple);
+				metrics.countTriple();
+			};
+			BitSet closed = new BitSet();
+			Conversion context = new Conversion(codeListId, hierarchy);
+			for (int worker = 0; worker < workerCount; worker++) {
+				queues.add(new ArrayBlockingQueue<RegionCode>(QUEUE_CODES_PER_THREAD));
+				executor.execute(new Worker(context, queues.get(worker), regionFiles, failure, files));
+			}
+			try {
+				new SDMXStructureReader().read(codeListsFile, new RequestedListHandler(codeListId) {
+					@Override
+					void requestedList(List<Literal> names) {
+						main.prefix("rdf", RDF.getURI());
+						main.prefix("skos", SKOS.getURI());
+						context.clNode = CodeListConverter.schemeTriples(codeListId, names.get(0), mainTriples);
+					}
+					@Override
+					void requestedCode(String codeValue, String parentCodeValue, List<Literal> descriptions) {
+						// Stop reading as soon as a worker has failed
+						if (failure.get() != null) throw failure.get();
+						int id = hierarchy.getId(codeValue);
+						int region = regionOf(hierarchy, regionIndexes, id);
+						if (region < 0) {
+							CodeListConverter.codeTriples(codeListId, context.clNode, codeValue, parentCodeValue, descriptions.get(0), mainTriples);
+							closureTriples(hierarchy, closed, codeValue, mainTriples);
+							return;
+						}
+						int file = regionIndexes.get(region) % fileCount;
+						boolean first = !closed.get(id);
+						closed.set(id);
+						try {
+							queues.get(file % workerCount).put(new RegionCode(first ? id : -1, codeValue, parentCodeValue, descriptions.get(0), file));
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							throw new IllegalStateException("Conversion of code list " + codeListId + " interrupted", e);
+						}
+					}
+				});
+				hierarchy.codeListTriples(mainTriples);
+			} finally {
+				// Workers stop after processing the codes already queued
+				try {
+					for (BlockingQueue<RegionCode> queue : queues) queue.put(END_OF_LIST);
+					executor.shutdown();
+					executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					executor.shutdownNow();
+					throw new InterruptedIOException("Conversion of code list " + codeListId + " interrupted");
+				}
+			}
+		}
+		if (failure.get() != null) throw failure.get();
+
+		metrics.record(Stage.BUILD, artifact.toString(), start);
+		metrics.countArtifact();
+		logger.info("Geographical code list conversion to SKOS finished, " + files.size() + " files written");
+		return files;
+	}
+
+	/**
+	 * Returns the region of a code: the code itself if it is a region, otherwise its nearest ancestor which is a region.
+	 *
+	 * @return The identifier of the region, or -1 if the code is above the regions.
+	 */
+	private static int regionOf(HierarchyIndex hierarchy, Map<Integer, Integer> regionIndexes, int id) {
+
+		if (regionIndexes.containsKey(id)) return id;
+		for (int ancestor : hierarchy.ancestorIds(id)) if (regionIndexes.containsKey(ancestor)) return ancestor;
+		return -1;
+	}
+
+	/**
+	 * Produces the depth and ancestor triples of a code, unless they were already produced for a previous occurrence of the code.
+	 */
+	private static void closureTriples(HierarchyIndex hierarchy, BitSet closed, String codeValue, Consumer<Triple> triples) {
+
+		int id = hierarchy.getId(codeValue);
+		if (closed.get(id)) return;
+		closed.set(id);
+		hierarchy.codeClosureTriples(id, triples);
+	}
+
+	/**
+	 * Handler receiving the codes of the first code list with the requested identifier.
+	 */
+	private static abstract class RequestedListHandler implements SDMXStructureHandler {
+
+		private final String requestedId;
+		private boolean inRequestedList = false;
+		int listsFound = 0;
+
+		RequestedListHandler(String requestedId) {
+			this.requestedId = requestedId;
+		}
+
+		@Override
+		public void startCodeList(String codeListId, List<Literal> names) {
+
+			inRequestedList = requestedId.equals(codeListId) && (listsFound++ == 0);
+			if (inRequestedList) requestedList(names);
+		}
+
+		@Override
+		public void code(String codeListId, String codeValue, String parentCodeValue, List<Literal> descriptions) {
+			if (inRequestedList) requestedCode(codeValue, parentCodeValue, descriptions);
+		}
+
+		@Override
+		public void endCodeList(String codeListId) {
+			inRequestedList = false;
+		}
+
+		void requestedList(List<Literal> names) {}
+
+		abstract void requestedCode(String codeValue, String parentCodeValue, List<Literal> descriptions);
+	}
+
+	/**
+	 * Code handed over to a worker, with the index of the file of its region.
+	 */
+	private static class RegionCode {
+
+		/** Identifier of the code in the index if its closure must be produced, -1 otherwise */
+		private final int id;
+		private final String value;
+		private final String parentValue;
+		private final Literal description;
+		private final int file;
+
+		RegionCode(int id, String value, String parentValue, Literal description, int file) {
+			this.id = id;
+			this.value = value;
+			this.parentValue = parentValue;
+			this.description = description;
+			this.file = file;
+		}
+	}
+
+	/**
+	 * State of a conversion shared by the workers. The node of the concept scheme is set before the first code is queued.
+	 */
+	private static class Conversion {
+
+		private final String codeListId;
+		private final HierarchyIndex hierarchy;
+		private Node clNode = null;
+
+		Conversion(String codeListId, HierarchyIndex hierarchy) {
+			this.codeListId = codeListId;
+			this.hierarchy = hierarchy;
+		}
+	}
+
+	/**
+	 * Worker thread producing the triples of the codes taken from its queue, and writing them to the files of its regions.
+	 * Files are opened when their first code is received and closed at the end of the list.
+	 */
+	private static class Worker implements Runnable {
+
+		private final Conversion context;
+		private final BlockingQueue<RegionCode> queue;
+		private final List<File> regionFiles;
+		private final AtomicReference<RuntimeException> failure;
+		private final List<File> files;
+		private final ConversionMetrics metrics = ConversionMetrics.getShared();
+		private final Map<Integer, RDFStreamOutput> outputs = new LinkedHashMap<Integer, RDFStreamOutput>();
+
+		Worker(Conversion context, BlockingQueue<RegionCode> queue, List<File> regionFiles, AtomicReference<RuntimeException> failure, List<File> files) {
+			this.context = context;
+			this.queue = queue;
+			this.regionFiles = regionFiles;
+			this.failure = failure;
+			this.files = files;
+		}
+
+		@Override
+		public void run() {
+
+			try {
+				while (true) {
+					RegionCode code = null;
+					try {
+						code = queue.take();
+					} catch (InterruptedException e) {
+						failure.compareAndSet(null, new IllegalStateException("Conversion of code list " + context.codeListId + " interrupted", e));
+						return;
+					}
+					if (code == END_OF_LIST) return;
+					if (failure.get() != null) continue; // Drain the queue so that the reader is not blocked
+
+					try {
+						StreamRDF output = getOutput(code.file).getStream();
+						Consumer<Triple> triples = triple -> {
+							output.triple(triple);
+							metrics.countTriple();
+						};
+						CodeListConverter.codeTriples(context.codeListId, context.clNode, code.value, code.parentValue, code.description, triples);
+						if (code.id >= 0) context.hierarchy.codeClosureTriples(code.id, triples);
+					} catch (IOException e) {
+						failure.compareAndSet(null, new IllegalStateException("Unable to write file " + regionFiles.get(code.file), e));
+					} catch (RuntimeException e) {
+						failure.compareAndSet(null, e);
+					} catch (Throwable e) {
+						// Errors are recorded too: the worker must keep draining its queue, otherwise the reader would block
+						failure.compareAndSet(null, new IllegalStateException("Unable to convert code list " + context.codeListId, e));
+					}
+				}
+			} finally {
+				close();
+			}
+		}
+
+		private RDFStreamOutput getOutput(int file) throws IOException {
+
+			RDFStreamOutput output = outputs.get(file);
+			if (output != null) return output;
+			output = new RDFStreamOutput(regionFiles.get(file).getPath());
+			output.getStream().prefix("rdf", RDF.getURI());
+			output.getStream().prefix("skos", SKOS.getURI());
+			outputs.put(file, output);
+			files.add(regionFiles.get(file));
+			return output;
+		}
+
+		private void close() {
+
+			long start = System.nanoTime();
+			for (Map.Entry<Integer, RDFStreamOutput> output : outputs.entrySet()) {
+				try {
+					output.getValue().close();
+				} catch (IOException e) {
+					failure.compareAndSet(null, new IllegalStateException("Unable to write file " + regionFiles.get(output.getKey()), e));
+				}
+			}
+			metrics.record(Stage.WRITE, null, start);
+		}
+	}
+}
@@ -0,0 +1,404 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.SKOS;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import eu.europa.ec.eurostat.los.utils.DataCube;
+
+/**
+ * The <code>HierarchyIndex</code> class indexes the hierarchy of the codes of a code list, as given by the parent codes.
+ * Codes are mapped to consecutive integer identifiers, and the ancestors and descendants of each code are precomputed in primitive arrays
+ * in compressed form, so that roll-up and aggregation do not need to follow the parent links.
+ * Codes are added in any order, parents being possibly added after their children. When the index is built, parents which are not codes of
+ * the list (dangling parents) are reported and the corresponding codes are considered as roots, and cycles are reported and broken by
+ * considering the last code reached in the cycle as a root.
+ * The index can produce the <code>skos:broaderTransitive</code> closure, the depth of the codes and the <code>qb:HierarchicalCodeList</code>
+ * description of the code list. Instances can be shared between threads once built.
+ *
+ * @author Franck
+ */
+public class HierarchyIndex {
+
+	private static Logger logger = LogManager.getLogger(HierarchyIndex.class);
+
+	/** Parent identifier of the roots */
+	private static final int NO_PARENT = -1;
+
+	/** Identifier of the code list */
+	private String codeListId = null;
+
+	/** Identifiers of the codes and parent codes, and codes by identifier */
+	private Map<String, Integer> ids = new HashMap<String, Integer>();
+	private List<String> codes = new ArrayList<String>();
+
+	/** Parent identifier of each code, NO_PARENT for roots */
+	private int[] parents = new int[64];
+
+	/** Identifiers of the codes added, as opposed to the parent codes only referenced */
+	private BitSet declared = new BitSet();
+
+	/** Depth of each code, 0 for roots and -1 for parent codes only referenced */
+	private int[] depths = null;
+
+	/** Ancestors of code i, nearest first, are ancestors[ancestorOffsets[i]] to ancestors[ancestorOffsets[i + 1] - 1] */
+	private int[] ancestorOffsets = null;
+	private int[] ancestors = null;
+
+	/** Descendants of code i, in increasing identifier order, are descendants[descendantOffsets[i]] to descendants[descendantOffsets[i + 1] - 1] */
+	private int[] descendantOffsets = null;
+	private int[] descendants = null;
+
+	/** Dangling parents by code, and codes of each cycle found */
+	private Map<String, String> danglingParents = new LinkedHashMap<String, String>();
+	private List<List<String>> cycles = new ArrayList<List<String>>();
+
+	/**
+	 * Creates an empty index for a code list.
+	 *
+	 * @param codeListId The identifier of the code list.
+	 */
+	public HierarchyIndex(String codeListId) {
+		this.codeListId = codeListId;
+	}
+
+	/**
+	 * Builds the hierarchy index of a code list contained in a registry.
+	 *
+	 * @param registry The registry containing the code list.
+	 * @param codeListId The identifier of the code list.
+	 * @return The index, built, or <code>null</code> if there is no such code list in the registry.
+	 */
+	public static HierarchyIndex load(SDMXStructureRegistry registry, String codeListId) {
+
+		SDMXStructureRegistry.CodeList codeList = registry.getCodeList(codeListId);
+		if (codeList == null) return null;
+		HierarchyIndex index = new HierarchyIndex(codeListId);
+		for (SDMXStructureRegistry.Code code : codeList.codes.values()) index.add(code.value, code.parentValue);
+		index.build();
+		return index;
+	}
+
+	public String getCodeListId() {
+		return codeListId;
+	}
+
+	/**
+	 * Adds a code to the index. A code added several times keeps its first parent.
+	 *
+	 * @param code The code value.
+	 * @param parentCode The value of the parent code, <code>null</code> if the code has no parent.
+	 */
+	public void add(String code, String parentCode) {
+
+		if (ancestors != null) throw new IllegalStateException("Hierarchy index of code list " + codeListId + " is already built");
+		int id = getOrCreateId(code);
+		if (declared.get(id)) {
+			logger.warn("Code " + code + " appears several times in code list " + codeListId + ", keeping first occurrence");
+			return;
+		}
+		declared.set(id);
+		int parent = (parentCode == null) ? NO_PARENT : getOrCreateId(parentCode); // Computed first, as it can reallocate the array
+		parents[id] = parent;
+	}
+
+	/**
+	 * Checks the hierarchy and computes the depths and closures. No code can be added once the index is built.
+	 */
+	public void build() {
+
+		if (ancestors != null) return;
+		int size = codes.size();
+
+		// Parents which are not codes of the list are reported and ignored
+		for (int id = declared.nextSetBit(0); id >= 0; id = declared.nextSetBit(id + 1)) {
+			if ((parents[id] != NO_PARENT) && !declared.get(parents[id])) {
+				danglingParents.put(codes.get(id), codes.get(parents[id]));
+				parents[id] = NO_PARENT;
+			}
+		}
+		if (!danglingParents.isEmpty()) logger.warn("Code list " + codeListId + " has codes with unknown parents: " + danglingParents);
+
+		// Depths are computed by walking up from each code to a code of known depth, cycles being detected on the walk
+		depths = new int[size];
+		Arrays.fill(depths, -1);
+		int[] path = new int[size];
+		int[] pathPositions = new int[size];
+		int[] pathStamps = new int[size];
+		for (int start = declared.nextSetBit(0); start >= 0; start = declared.nextSetBit(start + 1)) {
+			int length = 0;
+			for (int id = start; (id != NO_PARENT) && (depths[id] < 0); id = parents[id]) {
+				if (pathStamps[id] == start + 1) {
+					List<String> cycle = new ArrayList<String>();
+					for (int position = pathPositions[id]; position < length; position++) cycle.add(codes.get(path[position]));
+					cycles.add(cycle);
+					logger.error("Cycle found in code list " + codeListId + ": " + cycle + ", code " + codes.get(path[length - 1]) + " considered as a root");
+					parents[path[length - 1]] = NO_PARENT;
+					break;
+				}
+				pathStamps[id] = start + 1;
+				pathPositions[id] = length;
+				path[length++] = id;
+			}
+			for (int position = length - 1; position >= 0; position--) {
+				int parent = parents[path[position]];
+				depths[path[position]] = (parent == NO_PARENT) ? 0 : depths[parent] + 1;
+			}
+		}
+
+		// Ancestor closure: the ancestors of a code are its parent followed by the ancestors of its parent
+		ancestorOffsets = new int[size + 1];
+		for (int id = 0; id < size; id++) ancestorOffsets[id + 1] = Math.addExact(ancestorOffsets[id], Math.max(0, depths[id]));
+		ancestors = new int[ancestorOffsets[size]];
+		for (int id = 0; id < size; id++) {
+			int position = ancestorOffsets[id];
+			for (int ancestor = (depths[id] > 0) ? parents[id] : NO_PARENT; ancestor != NO_PARENT; ancestor = parents[ancestor]) ancestors[position++] = ancestor;
+		}
+
+		// Descendant closure, by inverting the ancestor closure with a counting sort
+		descendantOffsets = new int[size + 1];
+		for (int ancestor : ancestors) descendantOffsets[ancestor + 1]++;
+		for (int id = 0; id < size; id++) descendantOffsets[id + 1] += descendantOffsets[id];
+		descendants = new int[ancestors.length];
+		int[] next = Arrays.copyOf(descendantOffsets, size);
+		for (int id = 0; id < size; id++) {
+			for (int position = ancestorOffsets[id]; position < ancestorOffsets[id + 1]; position++) descendants[next[ancestors[position]]++] = id;
+		}
+		logger.info("Hierarchy of code list " + codeListId + " indexed: " + declared.cardinality() + " codes, " + ancestors.length + " ancestor links");
+	}
+
+	/**
+	 * Returns the number of codes in the index.
+	 *
+	 * @return The number of codes added, not counting the dangling parents.
+	 */
+	public int size() {
+		return declared.cardinality();
+	}
+
+	/**
+	 * Returns the identifier of a code in the index.
+	 *
+	 * @param code The code value.
+	 * @return The identifier of the code, -1 if the code was not added to the index.
+	 */
+	public int getId(String code) {
+
+		Integer id = ids.get(code);
+		return ((id == null) || !declared.get(id)) ? -1 : id;
+	}
+
+	public String getCode(int id) {
+		return codes.get(id);
+	}
+
+	/**
+	 * Returns the depth of a code in the hierarchy.
+	 *
+	 * @param code The code value.
+	 * @return The depth of the code, 0 for roots, -1 if the code is not in the index.
+	 */
+	public int getDepth(String code) {
+
+		int id = getId(code);
+		return (id < 0) ? -1 : built().depths[id];
+	}
+
+	/**
+	 * Returns the codes which have no parent, including the codes whose parent is dangling or which were chosen to break a cycle.
+	 *
+	 * @return The list of the root codes.
+	 */
+	public List<String> getRoots() {
+
+		List<String> roots = new ArrayList<String>();
+		for (int id = declared.nextSetBit(0); id >= 0; id = declared.nextSetBit(id + 1)) {
+			if (built().depths[id] == 0) roots.add(codes.get(id));
+		}
+		return roots;
+	}
+
+	/**
+	 * Indicates if the code list is hierarchical, i.e. if at least one code has a parent.
+	 *
+	 * @return <code>true</code> if some codes are not roots, <code>false</code> otherwise.
+	 */
+	public boolean isHierarchical() {
+		return built().ancestors.length > 0;
+	}
+
+	/**
+	 * Returns the identifiers of the ancestors of a code.
+	 *
+	 * @param id The identifier of the code.
+	 * @return A new array containing the identifiers of the ancestors, nearest first.
+	 */
+	public int[] ancestorIds(int id) {
+		return Arrays.copyOfRange(built().ancestors, ancestorOffsets[id], ancestorOffsets[id + 1]);
+	}
+
+	/**
+	 * Returns the identifiers of the descendants of a code.
+	 *
+	 * @param id The identifier of the code.
+	 * @return A new array containing the identifiers of the descendants, in increasing order.
+	 */
+	public int[] descendantIds(int id) {
+		return Arrays.copyOfRange(built().descendants, descendantOffsets[id], descendantOffsets[id + 1]);
+	}
+
+	/**
+	 * Returns the ancestors of a code.
+	 *
+	 * @param code The code value.
+	 * @return The ancestors of the code, nearest first, or an empty list if the code is not in the index.
+	 */
+	public List<String> ancestorsOf(String code) {
+
+		int id = getId(code);
+		return (id < 0) ? Collections.<String>emptyList() : toCodes(ancestorIds(id));
+	}
+
+	/**
+	 * Returns the descendants of a code, at all levels.
+	 *
+	 * @param code The code value.
+	 * @return The descendants of the code, or an empty list if the code is not in the index.
+	 */
+	public List<String> descendantsOf(String code) {
+
+		int id = getId(code);
+		return (id < 0) ? Collections.<String>emptyList() : toCodes(descendantIds(id));
+	}
+
+	/**
+	 * Indicates if a code is an ancestor of another code.
+	 *
+	 * @param ancestor The value of the possible ancestor.
+	 * @param code The code value.
+	 * @return <code>true</code> if <code>ancestor</code> is a strict ancestor of <code>code</code>, <code>false</code> otherwise.
+	 */
+	public boolean isAncestor(String ancestor, String code) {
+
+		int ancestorId = getId(ancestor);
+		int id = getId(code);
+		if ((ancestorId < 0) || (id < 0)) return false;
+		int depth = built().depths[ancestorId];
+		if (depth >= depths[id]) return false;
+		// The ancestor at depth d is at position depth(code) - 1 - d in the list of ancestors
+		return ancestors[ancestorOffsets[id] + depths[id] - 1 - depth] == ancestorId;
+	}
+
+	/**
+	 * Returns the dangling parents found when building the index.
+	 *
+	 * @return The parent codes which are not codes of the list, indexed by the codes which refer to them.
+	 */
+	public Map<String, String> getDanglingParents() {
+		return Collections.unmodifiableMap(danglingParents);
+	}
+
+	/**
+	 * Returns the cycles found when building the index.
+	 *
+	 * @return The list of the cycles, each cycle being given as the list of its codes, from child to parent.
+	 */
+	public List<List<String>> getCycles() {
+		return Collections.unmodifiableList(cycles);
+	}
+
+	/**
+	 * Produces the triples derived from the hierarchy: the <code>skos:broaderTransitive</code> links from each code to its ancestors, the depth
+	 * of each code and, for hierarchical code lists, the <code>qb:HierarchicalCodeList</code> type with the roots and the parent-child property.
+	 *
+	 * @param triples The consumer receiving the triples.
+	 */
+	public void closureTriples(Consumer<Triple> triples) {
+
+		built();
+		NodeInterner interner = NodeInterner.getShared();
+		Node[] nodes = new Node[codes.size()];
+		for (int id = declared.nextSetBit(0); id >= 0; id = declared.nextSetBit(id + 1)) nodes[id] = interner.uri(Configuration.codeURI(codeListId, codes.get(id)));
+		Node depthNode = interner.uri(Configuration.DEPTH_PROPERTY_URI);
+		for (int id = declared.nextSetBit(0); id >= 0; id = declared.nextSetBit(id + 1)) {
+			triples.accept(Triple.create(nodes[id], depthNode, interner.literal(Integer.toString(depths[id]), XSDDatatype.XSDint)));
+			for (int position = ancestorOffsets[id]; position < ancestorOffsets[id + 1]; position++) {
+				triples.accept(Triple.create(nodes[id], SKOS.broaderTransitive.asNode(), nodes[ancestors[position]]));
+			}
+		}
+		codeListTriples(triples);
+	}
+
+	/**
+	 * Produces the triples derived from the hierarchy for one code: its depth and its <code>skos:broaderTransitive</code> links to its ancestors.
+	 * Used with <code>codeListTriples</code>, it allows to emit the closure code by code instead of all at once.
+	 *
+	 * @param id The identifier of the code.
+	 * @param triples The consumer receiving the triples.
+	 */
+	public void codeClosureTriples(int id, Consumer<Triple> triples) {
+
+		NodeInterner interner = NodeInterner.getShared();
+		Node node = interner.uri(Configuration.codeURI(codeListId, codes.get(id)));
+		triples.accept(Triple.create(node, interner.uri(Configuration.DEPTH_PROPERTY_URI), interner.literal(Integer.toString(built().depths[id]), XSDDatatype.XSDint)));
+		for (int position = ancestorOffsets[id]; position < ancestorOffsets[id + 1]; position++) {
+			triples.accept(Triple.create(node, SKOS.broaderTransitive.asNode(), interner.uri(Configuration.codeURI(codeListId, codes.get(ancestors[position])))));
+		}
+	}
+
+	/**
+	 * Produces, for hierarchical code lists, the <code>qb:HierarchicalCodeList</code> type of the code list with its roots and parent-child property.
+	 *
+	 * @param triples The consumer receiving the triples.
+	 */
+	public void codeListTriples(Consumer<Triple> triples) {
+
+		if (!isHierarchical()) return;
+		NodeInterner interner = NodeInterner.getShared();
+		Node clNode = interner.uri(Configuration.codeListURI(codeListId, null));
+		triples.accept(Triple.create(clNode, RDF.type.asNode(), DataCube.HierarchicalCodeList.asNode()));
+		triples.accept(Triple.create(clNode, DataCube.parentChildProperty.asNode(), SKOS.narrower.asNode()));
+		for (int id = declared.nextSetBit(0); id >= 0; id = declared.nextSetBit(id + 1)) {
+			if (depths[id] == 0) triples.accept(Triple.create(clNode, DataCube.hierarchyRoot.asNode(), interner.uri(Configuration.codeURI(codeListId, codes.get(id)))));
+		}
+	}
+
+	private int getOrCreateId(String code) {
+
+		Integer id = ids.get(code);
+		if (id != null) return id;
+		id = codes.size();
+		ids.put(code, id);
+		codes.add(code);
+		if (id == parents.length) parents = Arrays.copyOf(parents, 2 * parents.length);
+		parents[id] = NO_PARENT;
+		return id;
+	}
+
+	private List<String> toCodes(int[] idArray) {
+
+		List<String> result = new ArrayList<String>(idArray.length);
+		for (int id : idArray) result.add(codes.get(id));
+		return result;
+	}
+
+	private HierarchyIndex built() {
+
+		if (ancestors == null) throw new IllegalStateException("Hierarchy index of code list " + codeListId + " is not built");
+		return this;
+	}
+}
@@ -0,0 +1,155 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import eu.europa.ec.eurostat.los.hc55.BatchConverter.Artifact;
+import eu.europa.ec.eurostat.los.hc55.BatchConverter.ArtifactType;
+
+/**
+ * The <code>IncrementalConverter</code> class updates the RDF files of a previous conversion, regenerating only the artifacts that changed.
+ * The fingerprint of each artifact (see <code>ArtifactFingerprinter</code>) is recorded in a manifest file in the output directory:
+ * an artifact is converted again only if its fingerprint differs from the one in the manifest or if its output file is missing,
+ * and the output files of the artifacts that disappeared from the SDMX files are deleted.
+ *
+ * @author Franck
+ */
+public class IncrementalConverter {
+
+	private static Logger logger = LogManager.getLogger(IncrementalConverter.class);
+
+	/** Name of the manifest file in the output directory */
+	public static final String MANIFEST_FILE = "conversion-manifest.properties";
+
+	/** Names of the SDMX files containing the artifacts */
+	private String[] sourceFiles = null;
+
+	/** Directory containing the output files and the manifest */
+	private File outputDirectory = null;
+
+	/** Extension of the output files for streaming output, <code>null</code> for pretty Turtle */
+	private String extension = null;
+
+	/**
+	 * Updates the conversion of the Census Hub artifacts.
+	 * Arguments are the output directory (default <code>src/main/resources/data</code>) and optionally a file extension
+	 * (<code>.nt</code>, <code>.ttl.gz</code>...) selecting streaming output.
+	 */
+	public static void main(String[] args) throws Exception {
+
+		String outputDirectory = (args.length > 0) ? args[0] : "src/main/resources/data";
+		String extension = (args.length > 1) ? args[1] : null;
+		IncrementalConverter converter = new IncrementalConverter(new File(outputDirectory), extension, Configuration.NON_GEO_CODELISTS, Configuration.CONCEPTS, Configuration.KEY_FAMILIES);
+		int failures = converter.update();
+		if (failures > 0) logger.error(failures + " artifact(s) could not be converted, see log for details");
+		logger.info(ConversionMetrics.getShared().getReport());
+	}
+
+	/**
+	 * Creates an incremental converter.
+	 *
+	 * @param outputDirectory The directory containing the output files and the manifest, created if necessary.
+	 * @param extension <code>null</code> to write pretty Turtle files, or the extension of the files for streaming output.
+	 * @param sourceFiles The names of the SDMX files containing the artifacts.
+	 */
+	public IncrementalConverter(File outputDirectory, String extension, String... sourceFiles) {
+		this.outputDirectory = outputDirectory;
+		this.extension = extension;
+		this.sourceFiles = sourceFiles;
+	}
+
+	/**
+	 * Converts the artifacts that changed since the last update and removes the output of the artifacts that no longer exist.
+	 * The SDMX files are only fully indexed if at least one artifact has to be converted.
+	 *
+	 * @return The number of artifacts that could not be converted, which will be converted again on next update.
+	 * @throws XMLStreamException In case of error while parsing the SDMX files.
+	 * @throws IOException In case of problem reading the SDMX files or reading or writing the manifest.
+	 */
+	public int update() throws XMLStreamException, IOException {
+
+		Map<String, String> fingerprints = new ArtifactFingerprinter().fingerprint(sourceFiles);
+		Properties manifest = loadManifest();
+
+		List<Artifact> changed = new ArrayList<Artifact>();
+		for (Map.Entry<String, String> entry : fingerprints.entrySet()) {
+			Artifact artifact = getArtifact(entry.getKey());
+			boolean outputExists = new File(outputDirectory, artifact.getFileName(extension)).exists();
+			if (outputExists && entry.getValue().equals(manifest.getProperty(entry.getKey()))) continue;
+			if (logger.isDebugEnabled()) logger.debug("Artifact " + artifact + (outputExists ? " changed" : " has no output file"));
+			changed.add(artifact);
+		}
+
+		int removed = 0;
+		for (String key : manifest.stringPropertyNames()) {
+			if (fingerprints.containsKey(key)) continue;
+			Artifact artifact = getArtifact(key);
+			logger.info("Artifact " + artifact + " no longer exists, deleting its output");
+			new File(outputDirectory, artifact.getFileName(extension)).delete();
+			manifest.remove(key);
+			removed++;
+		}
+
+		logger.info(changed.size() + " artifact(s) to convert, " + (fingerprints.size() - changed.size()) + " unchanged, " + removed + " removed");
+		List<Artifact> failures = new ArrayList<Artifact>();
+		if (!changed.isEmpty()) {
+			SDMXStructureRegistry registry = SDMXStructureRegistry.load(sourceFiles);
+			failures = new BatchConverter(registry).convertToFiles(changed, outputDirectory, extension);
+			for (Artifact artifact : changed) {
+				String key = ArtifactFingerprinter.getKey(artifact.getType(), artifact.getId());
+				// Failed artifacts are removed from the manifest so that they are converted again on next update
+				if (failures.contains(artifact)) manifest.remove(key);
+				else manifest.setProperty(key, fingerprints.get(key));
+			}
+		}
+		if (!changed.isEmpty() || (removed > 0)) saveManifest(manifest);
+
+		return failures.size();
+	}
+
+	private Artifact getArtifact(String key) {
+
+		int separator = key.indexOf(':');
+		return new Artifact(ArtifactType.valueOf(key.substring(0, separator)), key.substring(separator + 1));
+	}
+
+	private Properties loadManifest() throws IOException {
+
+		Properties manifest = new Properties();
+		File manifestFile = new File(outputDirectory, MANIFEST_FILE);
+		if (!manifestFile.exists()) return manifest;
+		try (InputStream input = new FileInputStream(manifestFile)) {
+			manifest.load(input);
+		}
+		return manifest;
+	}
+
+	/**
+	 * Writes the manifest in a temporary file which then replaces the previous manifest, so that an interrupted update leaves a usable manifest.
+	 */
+	private void saveManifest(Properties manifest) throws IOException {
+
+		outputDirectory.mkdirs();
+		File manifestFile = new File(outputDirectory, MANIFEST_FILE);
+		File temporaryFile = new File(outputDirectory, MANIFEST_FILE + ".tmp");
+		try (OutputStream output = new FileOutputStream(temporaryFile)) {
+			manifest.store(output, "Fingerprints of the converted SDMX artifacts");
+		}
+		if (!temporaryFile.renameTo(manifestFile) && !(manifestFile.delete() && temporaryFile.renameTo(manifestFile))) {
+			throw new IOException("Unable to replace manifest file " + manifestFile);
+		}
+	}
+}
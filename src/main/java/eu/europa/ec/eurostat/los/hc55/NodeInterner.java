@@ -0,0 +1,155 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jena.datatypes.RDFDatatype;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+
+/**
+ * The <code>NodeInterner</code> class returns canonical Jena nodes for IRIs and literals, so that the nodes which are produced several times
+ * during the conversions (code list and code IRIs referenced as parents or in <code>skos:inScheme</code>, component properties, <code>qb:order</code>
+ * values, language tags...) are created once and shared.
+ * Nodes are kept in bounded caches: when the number of cached nodes exceeds the maximum size, the caches are cleared, as in the
+ * <code>URIMinter</code>. Nodes that are unique by nature, like the IRIs of observations, should be created directly.
+ * A single shared instance is used by the converters and is safe for use by concurrent conversions.
+ *
+ * @author Franck
+ */
+public class NodeInterner {
+
+	/** Default maximum number of nodes kept in the caches */
+	public static final int DEFAULT_CACHE_SIZE = 100000;
+
+	/** Key of the plain literals in the literal caches */
+	private static final String PLAIN = "";
+
+	private static final NodeInterner shared = new NodeInterner(DEFAULT_CACHE_SIZE);
+
+	private final int maxSize;
+	private final AtomicInteger size = new AtomicInteger();
+	private final ConcurrentHashMap<String, Node> uris = new ConcurrentHashMap<String, Node>();
+
+	/** Literals indexed by language tag (or PLAIN) or by datatype, then by lexical form */
+	private final ConcurrentHashMap<Object, ConcurrentHashMap<String, Node>> literals = new ConcurrentHashMap<Object, ConcurrentHashMap<String, Node>>();
+
+	/** Canonical language tags, which are not counted in the cache size since there are few of them */
+	private final ConcurrentHashMap<String, String> languages = new ConcurrentHashMap<String, String>();
+
+	/**
+	 * Returns the interner shared by the converters.
+	 *
+	 * @return The shared <code>NodeInterner</code> instance.
+	 */
+	public static NodeInterner getShared() {
+		return shared;
+	}
+
+	/**
+	 * Creates an interner with caches of a given size.
+	 *
+	 * @param cacheSize The maximum number of nodes kept in the caches.
+	 */
+	public NodeInterner(int cacheSize) {
+		this.maxSize = cacheSize;
+	}
+
+	/**
+	 * Returns the node of an IRI.
+	 *
+	 * @param uri The IRI.
+	 * @return The canonical node.
+	 */
+	public Node uri(String uri) {
+
+		Node node = uris.get(uri);
+		if (node != null) return node;
+		return intern(uris, uri, NodeFactory.createURI(uri));
+	}
+
+	/**
+	 * Returns the node of a plain literal.
+	 *
+	 * @param lexicalForm The lexical form of the literal.
+	 * @return The canonical node.
+	 */
+	public Node literal(String lexicalForm) {
+		return literal(PLAIN, lexicalForm, null, null);
+	}
+
+	/**
+	 * Returns the node of a language-tagged literal.
+	 *
+	 * @param lexicalForm The lexical form of the literal.
+	 * @param language The language tag, <code>null</code> or empty for a plain literal.
+	 * @return The canonical node.
+	 */
+	public Node literal(String lexicalForm, String language) {
+
+		if ((language == null) || language.isEmpty()) return literal(lexicalForm);
+		return literal(language(language), lexicalForm, language, null);
+	}
+
+	/**
+	 * Returns the node of a typed literal.
+	 *
+	 * @param lexicalForm The lexical form of the literal.
+	 * @param datatype The datatype of the literal.
+	 * @return The canonical node.
+	 */
+	public Node literal(String lexicalForm, RDFDatatype datatype) {
+		return literal(datatype, lexicalForm, null, datatype);
+	}
+
+	/**
+	 * Returns the canonical instance of a language tag, so that the literals read from the SDMX files share their language tags.
+	 *
+	 * @param language The language tag.
+	 * @return The canonical instance of the tag, <code>null</code> if the tag is <code>null</code>.
+	 */
+	public String language(String language) {
+
+		if (language == null) return null;
+		String canonical = languages.putIfAbsent(language, language);
+		return (canonical == null) ? language : canonical;
+	}
+
+	/**
+	 * Returns the number of nodes currently cached.
+	 *
+	 * @return The number of nodes.
+	 */
+	public int size() {
+		return size.get();
+	}
+
+	private Node literal(Object key, String lexicalForm, String language, RDFDatatype datatype) {
+
+		ConcurrentHashMap<String, Node> cache = literals.get(key);
+		if (cache == null) {
+			cache = new ConcurrentHashMap<String, Node>();
+			ConcurrentHashMap<String, Node> previous = literals.putIfAbsent(key, cache);
+			if (previous != null) cache = previous;
+		}
+		Node node = cache.get(lexicalForm);
+		if (node != null) return node;
+		if (datatype != null) node = NodeFactory.createLiteral(lexicalForm, datatype);
+		else node = NodeFactory.createLiteral(lexicalForm, (language == null) ? "" : (String) key);
+		return intern(cache, lexicalForm, node);
+	}
+
+	private Node intern(ConcurrentHashMap<String, Node> cache, String key, Node node) {
+
+		if (size.incrementAndGet() > maxSize) clear();
+		Node previous = cache.putIfAbsent(key, node);
+		return (previous == null) ? node : previous;
+	}
+
+	private void clear() {
+
+		uris.clear();
+		literals.clear();
+		size.set(0);
+	}
+}
@@ -0,0 +1,243 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import eu.europa.ec.eurostat.los.hc55.ConversionMetrics.Stage;
+import eu.europa.ec.eurostat.los.hc55.SDMXDataReader.Series;
+
+/**
+ * The <code>ObservationConverter</code> class converts a SDMX data message into Data Cube observations of the data set described by the DSD
+ * produced by the <code>DSDConverter</code> for the same key family.
+ * The message is streamed: the reading thread hands each series over to a pool of worker threads through a bounded queue, and the workers
+ * build the observations and send them to the output stream. Only the series waiting in the queue are kept in memory.
+ * Observations are produced as described by the <code>DataStructure</code> of the key family.
+ *
+ * @author Franck
+ */
+public class ObservationConverter {
+
+	private static Logger logger = LogManager.getLogger(ObservationConverter.class);
+
+	/** Number of series waiting in the queue for each worker thread */
+	private static final int QUEUE_SERIES_PER_THREAD = 4;
+
+	/** Series marking the end of the queue */
+	private static final Series END_OF_DATA = new Series();
+
+	/** Structure of the data set */
+	private DataStructure structure = null;
+
+	/** Number of worker threads */
+	private int parallelism = 1;
+
+	/**
+	 * Converts a SDMX data file into Data Cube observations.
+	 * Arguments are the data file, the output file, whose extension selects the serialization (see <code>RDFStreamOutput</code>),
+	 * and optionally the key family identifier (default HC55).
+	 */
+	public static void main(String[] args) throws Exception {
+
+		String dsdId = (args.length > 2) ? args[2] : "HC55";
+		SDMXStructureRegistry registry = SDMXStructureRegistry.load(Configuration.CONCEPTS, Configuration.KEY_FAMILIES);
+		ObservationConverter converter = new ObservationConverter(registry, dsdId);
+		try (RDFStreamOutput output = new RDFStreamOutput(args[1])) {
+			converter.convert(args[0], output.getStream());
+		}
+		logger.info(ConversionMetrics.getShared().getReport());
+	}
+
+	/**
+	 * Creates a converter for the data of a key family using as many threads as there are available processors.
+	 *
+	 * @param registry The registry containing the key family and the concepts it references.
+	 * @param dsdId The identifier of the key family.
+	 */
+	public ObservationConverter(SDMXStructureRegistry registry, String dsdId) {
+		this(registry, dsdId, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates a converter for the data of a key family.
+	 *
+	 * @param registry The registry containing the key family and the concepts it references.
+	 * @param dsdId The identifier of the key family.
+	 * @param parallelism The number of threads building the observations.
+	 */
+	public ObservationConverter(SDMXStructureRegistry registry, String dsdId, int parallelism) {
+
+		this.structure = new DataStructure(registry, dsdId);
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	/**
+	 * Converts the observations of a SDMX data file and sends the resulting triples to a stream.
+	 * The <code>start</code> and <code>finish</code> methods of the stream are not called.
+	 *
+	 * @param dataFile The name of the SDMX data file, in Compact or Generic format.
+	 * @param output The stream receiving the triples, which is only called by one thread at a time.
+	 * @return The number of observations converted.
+	 * @throws XMLStreamException In case of error while parsing the file content.
+	 * @throws IOException In case of problem reading the SDMX file.
+	 */
+	public long convert(String dataFile, StreamRDF output) throws XMLStreamException, IOException {
+
+		logger.info("Converting observations from file " + dataFile);
+		try (InputStream input = new BufferedInputStream(new FileInputStream(dataFile), 1 << 16)) {
+			return convert(input, output);
+		}
+	}
+
+	/**
+	 * Converts the observations of a SDMX data message and sends the resulting triples to a stream.
+	 * The <code>start</code> and <code>finish</code> methods of the stream are not called.
+	 *
+	 * @param input The stream containing the SDMX data message, in Compact or Generic format.
+	 * @param output The stream receiving the triples, which is only called by one thread at a time.
+	 * @return The number of observations converted.
+	 * @throws XMLStreamException In case of error while parsing the stream content.
+	 * @throws IOException If the conversion is interrupted.
+	 */
+	public long convert(InputStream input, StreamRDF output) throws XMLStreamException, IOException {
+
+		long start = System.nanoTime();
+		structure.startDataSet(output);
+
+		BlockingQueue<Series> queue = new ArrayBlockingQueue<Series>(QUEUE_SERIES_PER_THREAD * parallelism);
+		AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+		LongAdder observationCount = new LongAdder();
+		LongAdder skippedCount = new LongAdder();
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+		for (int thread = 0; thread < parallelism; thread++) executor.execute(new Worker(queue, output, failure, observationCount, skippedCount));
+
+		try {
+			new SDMXDataReader().read(input, new SDMXDataHandler() {
+				@Override
+				public void startDataSet(String keyFamilyId) {
+					if ((keyFamilyId != null) && !keyFamilyId.equals(structure.getDsdId())) {
+						logger.warn("Data set refers to key family " + keyFamilyId + ", converting it with key family " + structure.getDsdId());
+					}
+				}
+				@Override
+				public void series(Series series) {
+					// Stop reading as soon as a worker has failed
+					if (failure.get() != null) throw failure.get();
+					try {
+						queue.put(series);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new IllegalStateException("Conversion of observations interrupted", e);
+					}
+				}
+			});
+		} finally {
+			// Workers stop after processing the series already queued
+			try {
+				for (int thread = 0; thread < parallelism; thread++) queue.put(END_OF_DATA);
+				executor.shutdown();
+				executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				executor.shutdownNow();
+				throw new InterruptedIOException("Conversion of observations interrupted");
+			}
+		}
+		if (failure.get() != null) throw failure.get();
+
+		long observations = observationCount.sum();
+		if (skippedCount.sum() > 0) logger.warn(skippedCount.sum() + " observations without value for some dimensions skipped");
+		long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		logger.info(observations + " observations converted in " + millis + " ms (" + (observations * 1000 / millis) + " observations/s)");
+		return observations;
+	}
+
+	/**
+	 * Worker thread building the observations of the series taken from the queue.
+	 * The triples of a series are built in a local buffer and sent to the output in one synchronized block.
+	 */
+	private class Worker implements Runnable {
+
+		private BlockingQueue<Series> queue = null;
+		private StreamRDF output = null;
+		private AtomicReference<RuntimeException> failure = null;
+		private LongAdder observationCount = null;
+		private LongAdder skippedCount = null;
+		private ConversionMetrics metrics = ConversionMetrics.getShared();
+		private List<Triple> triples = new ArrayList<Triple>();
+
+		Worker(BlockingQueue<Series> queue, StreamRDF output, AtomicReference<RuntimeException> failure, LongAdder observationCount, LongAdder skippedCount) {
+			this.queue = queue;
+			this.output = output;
+			this.failure = failure;
+			this.observationCount = observationCount;
+			this.skippedCount = skippedCount;
+		}
+
+		@Override
+		public void run() {
+
+			while (true) {
+				Series series = null;
+				try {
+					series = queue.take();
+				} catch (InterruptedException e) {
+					failure.compareAndSet(null, new IllegalStateException("Conversion of observations interrupted", e));
+					return;
+				}
+				if (series == END_OF_DATA) return;
+				if (failure.get() != null) continue; // Drain the queue so that the reader is not blocked
+
+				try {
+					long start = System.nanoTime();
+					triples.clear();
+					build(series);
+					metrics.record(Stage.BUILD, null, start);
+					start = System.nanoTime();
+					synchronized (output) {
+						for (Triple triple : triples) output.triple(triple);
+					}
+					metrics.record(Stage.WRITE, null, start);
+				} catch (RuntimeException e) {
+					failure.compareAndSet(null, e);
+				}
+			}
+		}
+
+		private void build(Series series) {
+
+			structure.readObservations(series, (dimensionValues, value, attributeValues) -> {
+				if (!structure.isComplete(dimensionValues)) {
+					skippedCount.increment();
+					return;
+				}
+				structure.observationTriples(dimensionValues, value, attributeValues, this::triple);
+				observationCount.increment();
+				metrics.countObservation();
+			});
+		}
+
+		private void triple(Triple triple) {
+			triples.add(triple);
+			metrics.countTriple();
+		}
+	}
+}
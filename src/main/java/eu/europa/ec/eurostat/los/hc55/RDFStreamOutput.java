@@ -0,0 +1,90 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.jena.riot.RDFFormat;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFWriter;
+
+/**
+ * The <code>RDFStreamOutput</code> class writes the triples sent to a <code>StreamRDF</code> directly to a file, without materializing a Jena model.
+ * The serialization is chosen from the file extension: N-Triples for <code>.nt</code>, streaming Turtle blocks for <code>.ttl</code>,
+ * binary RDF Thrift for <code>.rt</code> or <code>.trdf</code>, each of them optionally followed by <code>.gz</code> for gzip compression.
+ * RDF Thrift files are larger than Turtle but much faster to read back, see <code>ThriftLoader</code>.
+ *
+ * @author Franck
+ */
+public class RDFStreamOutput implements AutoCloseable {
+
+	private OutputStream outputStream = null;
+	private StreamRDF stream = null;
+
+	/**
+	 * Opens a streaming output on a file, the serialization being chosen from the file extension.
+	 *
+	 * @param fileName The name of the output file.
+	 * @throws IOException In case of problem opening the file.
+	 */
+	public RDFStreamOutput(String fileName) throws IOException {
+		this(fileName, getFormat(fileName));
+	}
+
+	/**
+	 * Opens a streaming output on a file with a given serialization.
+	 * The output is compressed with gzip if the file name ends with <code>.gz</code>.
+	 *
+	 * @param fileName The name of the output file.
+	 * @param format The RDF serialization, which must have a streaming writer.
+	 * @throws IOException In case of problem opening the file.
+	 */
+	public RDFStreamOutput(String fileName, RDFFormat format) throws IOException {
+
+		if (!StreamRDFWriter.registered(format)) throw new IllegalArgumentException("No streaming writer for format " + format);
+		outputStream = new BufferedOutputStream(new FileOutputStream(fileName), 1 << 16);
+		if (fileName.endsWith(".gz")) outputStream = new GZIPOutputStream(outputStream, 1 << 16);
+		stream = StreamRDFWriter.getWriterStream(outputStream, format);
+		stream.start();
+	}
+
+	/**
+	 * Returns the stream to which triples must be sent.
+	 *
+	 * @return The stream as a Jena <code>StreamRDF</code>.
+	 */
+	public StreamRDF getStream() {
+		return stream;
+	}
+
+	/**
+	 * Finishes the stream and closes the underlying file.
+	 */
+	@Override
+	public void close() throws IOException {
+
+		try {
+			stream.finish();
+		} finally {
+			outputStream.close();
+		}
+	}
+
+	/**
+	 * Returns the streaming serialization corresponding to the extension of a file name (a final <code>.gz</code> is ignored).
+	 *
+	 * @param fileName The file name.
+	 * @return N-Triples for <code>.nt</code> files, Turtle blocks for <code>.ttl</code> files, RDF Thrift for <code>.rt</code> and <code>.trdf</code> files.
+	 */
+	public static RDFFormat getFormat(String fileName) {
+
+		String name = fileName.endsWith(".gz") ? fileName.substring(0, fileName.length() - 3) : fileName;
+		if (name.endsWith(".nt")) return RDFFormat.NTRIPLES;
+		if (name.endsWith(".ttl")) return RDFFormat.TURTLE_BLOCKS;
+		// Literals are written with their lexical forms (not as values) so that the files read back are identical to the converted models
+		if (name.endsWith(".rt") || name.endsWith(".trdf")) return RDFFormat.RDF_THRIFT;
+		throw new IllegalArgumentException("No streaming serialization known for file " + fileName);
+	}
+}
@@ -0,0 +1,32 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+/**
+ * The <code>SDMXDataHandler</code> interface receives the events produced by the <code>SDMXDataReader</code>.
+ * All methods have an empty default implementation, so that handlers only have to override the events they need.
+ *
+ * @author Franck
+ */
+public interface SDMXDataHandler {
+
+	/**
+	 * Called at the start of a data set.
+	 *
+	 * @param keyFamilyId The identifier of the key family of the data set, or <code>null</code> if the message does not give it.
+	 */
+	default void startDataSet(String keyFamilyId) {}
+
+	/**
+	 * Called for each series of the current data set, once all its observations have been read.
+	 * The series is not used by the reader after this call, so it can be handed over to another thread.
+	 *
+	 * @param series The series with its observations.
+	 */
+	default void series(SDMXDataReader.Series series) {}
+
+	/**
+	 * Called at the end of a data set.
+	 *
+	 * @param keyFamilyId The identifier of the key family of the data set, or <code>null</code> if the message does not give it.
+	 */
+	default void endDataSet(String keyFamilyId) {}
+}
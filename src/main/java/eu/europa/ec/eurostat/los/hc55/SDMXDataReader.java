@@ -0,0 +1,213 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * The <code>SDMXDataReader</code> class reads a SDMX 2.0 data message in Compact or Generic format with a StAX parser and reports
+ * its series to a <code>SDMXDataHandler</code> as soon as they are read.
+ * Only the series being read is kept in memory, so that memory use does not depend on the size of the input file.
+ * The reader does not need the key family: values are reported by concept identifier, and in Compact messages the time period and
+ * the observation value are reported among the other values of the observation, under the concept identifiers used in the message.
+ *
+ * @author Franck
+ */
+public class SDMXDataReader {
+
+	/** Namespace of the SDMX 2.0 Generic data messages */
+	public static final String GENERIC_NS = "http://www.SDMX.org/resources/SDMXML/schemas/v2_0/generic";
+	/** Name of the root element of the Generic data messages, <code>CompactData</code> for Compact messages */
+	public static final String GENERIC_ROOT = "GenericData";
+
+	/**
+	 * Reads a SDMX data file and sends the corresponding events to a handler.
+	 *
+	 * @param fileName The name of the SDMX file to read.
+	 * @param handler The handler that will receive the events.
+	 * @throws XMLStreamException In case of error while parsing the file content.
+	 * @throws IOException In case of problem reading the SDMX file.
+	 */
+	public void read(String fileName, SDMXDataHandler handler) throws XMLStreamException, IOException {
+
+		try (InputStream input = new BufferedInputStream(new FileInputStream(fileName), 1 << 16)) {
+			read(input, handler);
+		}
+	}
+
+	/**
+	 * Reads a SDMX data message from a stream and sends the corresponding events to a handler.
+	 *
+	 * @param input The stream containing the SDMX message.
+	 * @param handler The handler that will receive the events.
+	 * @throws XMLStreamException In case of error while parsing the stream content.
+	 */
+	public void read(InputStream input, SDMXDataHandler handler) throws XMLStreamException {
+
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+
+		XMLStreamReader xml = factory.createXMLStreamReader(input);
+		try {
+			// The DataSet element is in the message namespace in both formats, the format is given by the root element
+			String rootName = null;
+			while (xml.hasNext()) {
+				if (xml.next() != XMLStreamConstants.START_ELEMENT) continue;
+				if (rootName == null) rootName = xml.getLocalName();
+				if (!"DataSet".equals(xml.getLocalName())) continue;
+				if (GENERIC_ROOT.equals(rootName) || GENERIC_NS.equals(xml.getNamespaceURI())) readGenericDataSet(xml, handler);
+				else readCompactDataSet(xml, handler);
+			}
+		} finally {
+			xml.close();
+		}
+	}
+
+	/**
+	 * Reads a Generic DataSet element, the reader being positioned on its start tag.
+	 */
+	private void readGenericDataSet(XMLStreamReader xml, SDMXDataHandler handler) throws XMLStreamException {
+
+		String keyFamilyId = null;
+		boolean started = false;
+		while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			if (isGenericElement(xml, "KeyFamilyRef")) keyFamilyId = xml.getElementText().trim();
+			else if (isGenericElement(xml, "Series")) {
+				if (!started) {
+					handler.startDataSet(keyFamilyId);
+					started = true;
+				}
+				handler.series(readGenericSeries(xml));
+			}
+			else skipElement(xml);
+		}
+		if (!started) handler.startDataSet(keyFamilyId);
+		handler.endDataSet(keyFamilyId);
+	}
+
+	/**
+	 * Reads a Generic Series element, the reader being positioned on its start tag.
+	 */
+	private Series readGenericSeries(XMLStreamReader xml) throws XMLStreamException {
+
+		Series series = new Series();
+		while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			if (isGenericElement(xml, "SeriesKey") || isGenericElement(xml, "Attributes")) readGenericValues(xml, series.values);
+			else if (isGenericElement(xml, "Obs")) {
+				Observation observation = new Observation();
+				while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+					if (isGenericElement(xml, "Time")) observation.time = xml.getElementText().trim();
+					else if (isGenericElement(xml, "ObsValue")) {
+						observation.value = xml.getAttributeValue(null, "value");
+						skipElement(xml);
+					}
+					else if (isGenericElement(xml, "Attributes")) readGenericValues(xml, observation.values);
+					else skipElement(xml);
+				}
+				series.observations.add(observation);
+			}
+			else skipElement(xml);
+		}
+		return series;
+	}
+
+	/**
+	 * Reads the Value children of the current Generic element into a map.
+	 */
+	private void readGenericValues(XMLStreamReader xml, Map<String, String> values) throws XMLStreamException {
+
+		while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			if (isGenericElement(xml, "Value")) values.put(xml.getAttributeValue(null, "concept"), xml.getAttributeValue(null, "value"));
+			skipElement(xml);
+		}
+	}
+
+	/**
+	 * Reads a Compact DataSet element, the reader being positioned on its start tag.
+	 * In Compact messages, the elements are in the namespace of the key family and the values are given as attributes.
+	 */
+	private void readCompactDataSet(XMLStreamReader xml, SDMXDataHandler handler) throws XMLStreamException {
+
+		handler.startDataSet(null);
+		while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			if (!"Series".equals(xml.getLocalName())) {
+				skipElement(xml);
+				continue;
+			}
+			Series series = new Series();
+			readCompactValues(xml, series.values);
+			while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+				if ("Obs".equals(xml.getLocalName())) {
+					Observation observation = new Observation();
+					readCompactValues(xml, observation.values);
+					series.observations.add(observation);
+				}
+				skipElement(xml);
+			}
+			handler.series(series);
+		}
+		handler.endDataSet(null);
+	}
+
+	/**
+	 * Reads the attributes of the current Compact element into a map, ignoring the attributes in a namespace (<code>xsi:type</code> for example).
+	 */
+	private void readCompactValues(XMLStreamReader xml, Map<String, String> values) {
+
+		for (int index = 0; index < xml.getAttributeCount(); index++) {
+			String namespace = xml.getAttributeNamespace(index);
+			if ((namespace == null) || namespace.isEmpty()) values.put(xml.getAttributeLocalName(index), xml.getAttributeValue(index));
+		}
+	}
+
+	/**
+	 * Skips the current element and its descendants, leaving the reader positioned on its end tag.
+	 */
+	private void skipElement(XMLStreamReader xml) throws XMLStreamException {
+
+		int depth = 1;
+		while (depth > 0) {
+			int event = xml.next();
+			if (event == XMLStreamConstants.START_ELEMENT) depth++;
+			else if (event == XMLStreamConstants.END_ELEMENT) depth--;
+		}
+	}
+
+	private static boolean isGenericElement(XMLStreamReader xml, String localName) {
+		return GENERIC_NS.equals(xml.getNamespaceURI()) && localName.equals(xml.getLocalName());
+	}
+
+	/* Data read from the messages */
+
+	/** A SDMX series. */
+	public static class Series {
+
+		/** Values of the series key and of the series attributes, indexed by concept identifier */
+		public final Map<String, String> values = new LinkedHashMap<String, String>();
+		public final List<Observation> observations = new ArrayList<Observation>();
+	}
+
+	/** A SDMX observation. */
+	public static class Observation {
+
+		/** Time period of the observation, <code>null</code> in Compact messages where it is one of the values */
+		public String time = null;
+		/** Value of the observation, <code>null</code> in Compact messages where it is one of the values */
+		public String value = null;
+		/** Other values of the observation, indexed by concept identifier */
+		public final Map<String, String> values = new HashMap<String, String>();
+	}
+}
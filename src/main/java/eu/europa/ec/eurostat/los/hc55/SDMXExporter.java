@@ -0,0 +1,362 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Literal;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+import org.apache.jena.vocabulary.SKOS;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import eu.europa.ec.eurostat.los.utils.DataCube;
+
+/**
+ * The <code>SDMXExporter</code> class converts SKOS concept schemes and Data Cube DSDs back to SDMX artifacts: it is the counterpart of
+ * <code>CodeListConverter</code>, <code>ConceptConverter</code> and <code>DSDConverter</code>. The graph is walked with indexed
+ * <code>find</code> lookups and the artifacts are sent to a <code>SDMXStructureHandler</code>, usually a <code>SDMXStructureWriter</code>,
+ * one code or concept at a time, so that apart from the graph itself memory use does not depend on the size of the code lists.
+ * The graph can therefore be a TDB2 graph, in which case the caller is responsible for the read transaction.
+ * SDMX identifiers are taken from the <code>skos:notation</code> of the resources; if there is none, they are derived from the last segment
+ * of the URI by reversing <code>URIMinter.componentName</code> (for example clAge gives CL_AGE).
+ *
+ * @author Franck
+ */
+public class SDMXExporter {
+
+	private static Logger logger = LogManager.getLogger(SDMXExporter.class);
+
+	private static final String CODE_LISTS_URI = Configuration.BASE_URI + "codes/";
+	private static final String STRUCTURE_URI = Configuration.BASE_URI + "structure/";
+
+	/** Component types in the order of the SDMX 2.0 schema */
+	private static final List<String> componentTypes = Arrays.asList("Dimension", "TimeDimension", "PrimaryMeasure", "Attribute");
+
+	/** Component types corresponding to the Data Cube properties linking a component specification to its component property */
+	private static final Map<Node, String> componentTypeMappings = new LinkedHashMap<Node, String>();
+	static {
+		componentTypeMappings.put(DataCube.dimension.asNode(), "Dimension");
+		componentTypeMappings.put(DataCube.measure.asNode(), "PrimaryMeasure");
+		componentTypeMappings.put(DataCube.attribute.asNode(), "Attribute");
+	}
+
+	private final Graph graph;
+
+	/**
+	 * Exports all the code lists, concept schemes and DSDs contained in RDF files.
+	 * Arguments are the SDMX file to write, followed by the RDF files, in any syntax known by Jena.
+	 */
+	public static void main(String[] args) throws Exception {
+
+		Graph graph = GraphFactory.createDefaultGraph();
+		for (int index = 1; index < args.length; index++) RDFDataMgr.read(graph, args[index]);
+		try (OutputStream output = new BufferedOutputStream(new FileOutputStream(args[0]), 1 << 16)) {
+			System.out.println(new SDMXExporter(graph).exportAll(output) + " artifact(s) written to " + args[0]);
+		}
+	}
+
+	/**
+	 * Creates an exporter for the artifacts contained in a graph.
+	 *
+	 * @param graph The graph containing the SKOS concept schemes and the DSDs, and preferably the concepts and code lists referenced by the DSDs.
+	 */
+	public SDMXExporter(Graph graph) {
+		this.graph = graph;
+	}
+
+	/**
+	 * Writes a structure message containing all the code lists, concept schemes and DSDs of the graph.
+	 * SKOS concept schemes whose URI is under the code list base URI (see <code>URIMinter</code>) are exported as code lists, the others
+	 * as concept schemes.
+	 *
+	 * @param output The stream where the message is written, which is not closed.
+	 * @return The number of artifacts written.
+	 * @throws XMLStreamException In case of problem writing the message.
+	 */
+	public int exportAll(OutputStream output) throws XMLStreamException {
+
+		int artifacts = 0;
+		try (SDMXStructureWriter writer = new SDMXStructureWriter(output, "HC55_EXPORT", "ESTAT")) {
+			List<Node> conceptSchemes = new ArrayList<Node>();
+			for (Node scheme : subjects(RDF.type.asNode(), SKOS.ConceptScheme.asNode())) {
+				if (!scheme.isURI() || !scheme.getURI().startsWith(CODE_LISTS_URI)) conceptSchemes.add(scheme);
+				else {
+					exportCodeList(scheme, writer);
+					artifacts++;
+				}
+			}
+			for (Node scheme : conceptSchemes) exportConceptScheme(scheme, writer);
+			artifacts += conceptSchemes.size();
+			for (Node dsd : subjects(RDF.type.asNode(), DataCube.DataStructureDefinition.asNode())) {
+				exportDSD(dsd, writer);
+				artifacts++;
+			}
+		}
+		return artifacts;
+	}
+
+	/**
+	 * Exports a SKOS concept scheme as a SDMX code list.
+	 *
+	 * @param codeListId The identifier of the code list, i.e. the notation of the concept scheme.
+	 * @param handler The handler receiving the code list.
+	 * @return <code>true</code> if the code list was found, <code>false</code> otherwise.
+	 */
+	public boolean exportCodeList(String codeListId, SDMXStructureHandler handler) {
+
+		Node scheme = findScheme(Configuration.codeListURI(codeListId, null), codeListId);
+		if (scheme == null) {
+			logger.warn("No SKOS concept scheme found for code list " + codeListId);
+			return false;
+		}
+		exportCodeList(scheme, handler);
+		return true;
+	}
+
+	/**
+	 * Exports a SKOS concept scheme as a SDMX concept scheme.
+	 *
+	 * @param conceptSchemeId The identifier of the concept scheme, i.e. the notation of the SKOS concept scheme.
+	 * @param handler The handler receiving the concept scheme.
+	 * @return <code>true</code> if the concept scheme was found, <code>false</code> otherwise.
+	 */
+	public boolean exportConceptScheme(String conceptSchemeId, SDMXStructureHandler handler) {
+
+		Node scheme = findScheme(Configuration.conceptSchemeURI(conceptSchemeId, null), conceptSchemeId);
+		if (scheme == null) {
+			logger.warn("No SKOS concept scheme found for concept scheme " + conceptSchemeId);
+			return false;
+		}
+		exportConceptScheme(scheme, handler);
+		return true;
+	}
+
+	/**
+	 * Exports a Data Cube DSD as a SDMX key family.
+	 *
+	 * @param dsdId The identifier of the key family the DSD was converted from.
+	 * @param handler The handler receiving the key family.
+	 * @return <code>true</code> if the DSD was found, <code>false</code> otherwise.
+	 */
+	public boolean exportDSD(String dsdId, SDMXStructureHandler handler) {
+
+		Node dsd = NodeFactory.createURI(Configuration.dsdURI(dsdId));
+		if (!graph.contains(dsd, RDF.type.asNode(), DataCube.DataStructureDefinition.asNode())) {
+			logger.warn("No DSD found with URI " + dsd.getURI());
+			return false;
+		}
+		exportDSD(dsd, handler);
+		return true;
+	}
+
+	private void exportCodeList(Node scheme, SDMXStructureHandler handler) {
+
+		String codeListId = getIdentifier(scheme);
+		logger.info("Exporting code list " + codeListId + " from concept scheme " + scheme);
+		handler.startCodeList(codeListId, getLiterals(scheme, SKOS.prefLabel.asNode(), codeListId));
+		long codes = 0;
+		ExtendedIterator<Triple> members = graph.find(Node.ANY, SKOS.inScheme.asNode(), scheme);
+		try {
+			while (members.hasNext()) {
+				Node code = members.next().getSubject();
+				String codeValue = getIdentifier(code);
+				Node parent = getObject(code, SKOS.broader.asNode());
+				handler.code(codeListId, codeValue, (parent == null) ? null : getIdentifier(parent), getLiterals(code, SKOS.prefLabel.asNode(), codeValue));
+				codes++;
+			}
+		} finally {
+			members.close();
+		}
+		handler.endCodeList(codeListId);
+		logger.info(codes + " codes exported for code list " + codeListId);
+	}
+
+	private void exportConceptScheme(Node scheme, SDMXStructureHandler handler) {
+
+		String conceptSchemeId = getIdentifier(scheme);
+		logger.info("Exporting concept scheme " + conceptSchemeId + " from concept scheme " + scheme);
+		handler.startConceptScheme(conceptSchemeId, getLiterals(scheme, SKOS.prefLabel.asNode(), conceptSchemeId));
+		ExtendedIterator<Triple> members = graph.find(Node.ANY, SKOS.inScheme.asNode(), scheme);
+		try {
+			while (members.hasNext()) {
+				Node concept = members.next().getSubject();
+				String conceptId = getIdentifier(concept);
+				handler.concept(conceptSchemeId, conceptId, getCoreRepresentation(concept), getLiterals(concept, SKOS.prefLabel.asNode(), conceptId));
+			}
+		} finally {
+			members.close();
+		}
+		handler.endConceptScheme(conceptSchemeId);
+	}
+
+	private void exportDSD(Node dsd, SDMXStructureHandler handler) {
+
+		String keyFamilyId = getIdentifier(dsd);
+		logger.info("Exporting key family " + keyFamilyId + " from DSD " + dsd);
+		handler.startKeyFamily(keyFamilyId, getLiterals(dsd, RDFS.label.asNode(), keyFamilyId));
+
+		// Key families have a few tens of components at most, which are sorted in the order of the SDMX schema and dimensions by qb:order
+		List<Component> components = new ArrayList<Component>();
+		for (Node specification : objects(dsd, DataCube.component.asNode())) {
+			Component component = getComponent(specification);
+			if (component == null) logger.warn("Component specification " + specification + " of DSD " + dsd + " has no component property");
+			else components.add(component);
+		}
+		components.sort(Comparator.comparingInt((Component component) -> componentTypes.indexOf(component.type)).thenComparingInt(component -> component.order));
+		for (Component component : components) {
+			Node concept = getObject(component.property, DataCube.concept.asNode());
+			String conceptRef = getIdentifier((concept == null) ? component.property : concept);
+			Node codeList = getObject(component.property, DataCube.codeList.asNode());
+			handler.component(keyFamilyId, component.type, conceptRef, (codeList == null) ? null : getIdentifier(codeList));
+		}
+		handler.endKeyFamily(keyFamilyId);
+	}
+
+	/**
+	 * Returns the component attached to the DSD by a component specification, or <code>null</code> if there is none.
+	 * The type of the component is read from the URI of the component property (see <code>URIMinter.componentURI</code>), which distinguishes
+	 * time dimensions, and otherwise deduced from the property linking the specification to the component property or from the class of the latter.
+	 */
+	private Component getComponent(Node specification) {
+
+		Node property = null;
+		String type = null;
+		for (Map.Entry<Node, String> mapping : componentTypeMappings.entrySet()) {
+			property = getObject(specification, mapping.getKey());
+			if (property == null) continue;
+			type = mapping.getValue();
+			break;
+		}
+		if (property == null) {
+			property = getObject(specification, DataCube.componentProperty.asNode());
+			if (property == null) return null;
+			if (graph.contains(property, RDF.type.asNode(), DataCube.DimensionProperty.asNode())) type = "Dimension";
+			else if (graph.contains(property, RDF.type.asNode(), DataCube.MeasureProperty.asNode())) type = "PrimaryMeasure";
+			else type = "Attribute";
+		}
+		if (property.isURI() && property.getURI().startsWith(STRUCTURE_URI)) {
+			// The segment is the component name of the type, for example timedimension
+			String segment = property.getURI().substring(STRUCTURE_URI.length());
+			segment = segment.substring(0, Math.max(segment.indexOf('/'), 0));
+			for (String componentType : componentTypes) if (componentType.equalsIgnoreCase(segment)) type = componentType;
+		}
+		Node order = getObject(specification, DataCube.order.asNode());
+		int orderValue = ((order != null) && order.isLiteral()) ? Integer.parseInt(order.getLiteralLexicalForm().trim()) : Integer.MAX_VALUE;
+		return new Component(type, property, orderValue);
+	}
+
+	/**
+	 * Returns the identifier of the code list representing a concept, found through the coded component properties of the DSDs of the graph.
+	 */
+	private String getCoreRepresentation(Node concept) {
+
+		for (Node property : subjects(DataCube.concept.asNode(), concept)) {
+			Node codeList = getObject(property, DataCube.codeList.asNode());
+			if (codeList != null) return getIdentifier(codeList);
+		}
+		return null;
+	}
+
+	private Node findScheme(String uri, String notation) {
+
+		Node scheme = NodeFactory.createURI(uri);
+		if (graph.contains(scheme, RDF.type.asNode(), SKOS.ConceptScheme.asNode())) return scheme;
+		for (Node candidate : subjects(SKOS.notation.asNode(), NodeFactory.createLiteral(notation))) {
+			if (graph.contains(candidate, RDF.type.asNode(), SKOS.ConceptScheme.asNode())) return candidate;
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the SDMX identifier of a resource: its notation, or the identifier corresponding to the end of its URI.
+	 */
+	private String getIdentifier(Node resource) {
+
+		Node notation = getObject(resource, SKOS.notation.asNode());
+		if ((notation != null) && notation.isLiteral()) return notation.getLiteralLexicalForm();
+		String uri = resource.isURI() ? resource.getURI() : resource.toString();
+		if (uri.endsWith("/list") || uri.endsWith("/scheme")) uri = uri.substring(0, uri.lastIndexOf('/'));
+		return sdmxIdentifier(uri.substring(Math.max(uri.lastIndexOf('/'), uri.lastIndexOf('#')) + 1));
+	}
+
+	/**
+	 * Reverses <code>URIMinter.componentName</code>: capitals start new terms, which are upper-cased and separated by underscores.
+	 * For example: obsStatus -> OBS_STATUS
+	 *
+	 * @param name The name used in the URI.
+	 * @return The corresponding SDMX identifier.
+	 */
+	static String sdmxIdentifier(String name) {
+
+		StringBuilder identifier = new StringBuilder(name.length() + 4);
+		for (int index = 0; index < name.length(); index++) {
+			char character = name.charAt(index);
+			if ((index > 0) && Character.isUpperCase(character) && Character.isLowerCase(name.charAt(index - 1))) identifier.append('_');
+			identifier.append(Character.toUpperCase(character));
+		}
+		return identifier.toString();
+	}
+
+	/**
+	 * Returns the literal values of a property of a resource as language-tagged literals, or the identifier if there is none.
+	 */
+	private List<Literal> getLiterals(Node subject, Node predicate, String defaultValue) {
+
+		List<Literal> literals = new ArrayList<Literal>();
+		for (Node object : objects(subject, predicate)) {
+			if (object.isLiteral()) literals.add(ResourceFactory.createLangLiteral(object.getLiteralLexicalForm(), object.getLiteralLanguage()));
+		}
+		if (literals.isEmpty()) literals.add(ResourceFactory.createPlainLiteral(defaultValue));
+		return literals;
+	}
+
+	private Node getObject(Node subject, Node predicate) {
+
+		ExtendedIterator<Triple> triples = graph.find(subject, predicate, Node.ANY);
+		try {
+			return triples.hasNext() ? triples.next().getObject() : null;
+		} finally {
+			triples.close();
+		}
+	}
+
+	private List<Node> objects(Node subject, Node predicate) {
+		return graph.find(subject, predicate, Node.ANY).mapWith(Triple::getObject).toList();
+	}
+
+	private List<Node> subjects(Node predicate, Node object) {
+		return graph.find(Node.ANY, predicate, object).mapWith(Triple::getSubject).toList();
+	}
+
+	/** A component of a DSD. */
+	private static class Component {
+
+		private final String type;
+		private final Node property;
+		private final int order;
+
+		private Component(String type, Node property, int order) {
+			this.type = type;
+			this.property = property;
+			this.order = order;
+		}
+	}
+}
@@ -0,0 +1,314 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The <code>SDMXSourceResolver</code> class retrieves remote SDMX files (for example <code>Configuration.NON_GEO_CODELISTS_URI</code>) into a
+ * local cache. Contents are stored under the SHA-256 digest of their bytes, and a small reference file per URI records the digest of the
+ * last content retrieved with its <code>ETag</code> and <code>Last-Modified</code> headers, which are sent back as conditional request headers:
+ * when the server answers 304 (not modified), the cached content is used without downloading it again. If the server cannot be reached, the
+ * cached content is used as well.
+ * When the file is read with a <code>SDMXStructureHandler</code>, the response is parsed while it is downloaded: the bytes consumed by the
+ * parser are copied to the cache as they go, and the content only replaces the cached version once it has been entirely read and parsed.
+ * The cache directory is given by the <code>hc55.cache</code> system property, the default being <code>Configuration.SOURCE_CACHE</code>.
+ *
+ * @author Franck
+ */
+public class SDMXSourceResolver {
+
+	private static Logger logger = LogManager.getLogger(SDMXSourceResolver.class);
+
+	/** System property giving the cache directory */
+	public static final String CACHE_PROPERTY = "hc55.cache";
+
+	/** Connection and read timeout */
+	private static final int TIMEOUT_MILLIS = 60000;
+
+	private static SDMXSourceResolver shared = null;
+
+	/** Directory of the contents, named after their digest, and directory of the references, named after the digest of the URI */
+	private final File contentDirectory;
+	private final File referenceDirectory;
+
+	/**
+	 * Retrieves SDMX files into the cache and prints the names of the cached files.
+	 * Arguments are the URIs of the files, the default being the file of the code lists.
+	 */
+	public static void main(String[] args) throws IOException {
+
+		if (args.length == 0) args = new String[] {Configuration.NON_GEO_CODELISTS_URI.toString()};
+		for (String uri : args) System.out.println(getShared().resolve(URI.create(uri)));
+	}
+
+	/**
+	 * Returns the resolver shared by the readers, which uses the cache directory given by the <code>hc55.cache</code> system property.
+	 *
+	 * @return The shared <code>SDMXSourceResolver</code> instance.
+	 */
+	public static synchronized SDMXSourceResolver getShared() {
+
+		if (shared == null) shared = new SDMXSourceResolver(new File(System.getProperty(CACHE_PROPERTY, Configuration.SOURCE_CACHE)));
+		return shared;
+	}
+
+	/**
+	 * Indicates if a SDMX source is a remote file, as opposed to a local file name.
+	 *
+	 * @param source The name or URI of the source.
+	 * @return <code>true</code> if the source is a HTTP or HTTPS URI, <code>false</code> otherwise.
+	 */
+	public static boolean isRemote(String source) {
+		return source.startsWith("http://") || source.startsWith("https://");
+	}
+
+	/**
+	 * Creates a resolver using a given cache directory.
+	 *
+	 * @param cacheDirectory The cache directory, which is created if needed.
+	 */
+	public SDMXSourceResolver(File cacheDirectory) {
+
+		this.contentDirectory = new File(cacheDirectory, "content");
+		this.referenceDirectory = new File(cacheDirectory, "references");
+	}
+
+	/**
+	 * Returns a local file name for a SDMX source, retrieving the source into the cache if it is remote.
+	 *
+	 * @param source The name of a local file or the URI of a remote file.
+	 * @return The name of the local file or of the cached copy.
+	 * @throws IOException In case of problem retrieving the file.
+	 */
+	public String resolve(String source) throws IOException {
+		return isRemote(source) ? resolve(URI.create(source)).getPath() : source;
+	}
+
+	/**
+	 * Retrieves a remote file into the cache, unless the cached copy is up to date.
+	 *
+	 * @param uri The URI of the file.
+	 * @return The cached copy of the file.
+	 * @throws IOException In case of problem retrieving the file, if there is no cached copy.
+	 */
+	public File resolve(URI uri) throws IOException {
+
+		try {
+			return retrieve(uri, null);
+		} catch (XMLStreamException e) {
+			throw new IllegalStateException(e); // Cannot happen, the content is not parsed
+		}
+	}
+
+	/**
+	 * Reads a remote SDMX structure message and sends the corresponding events to a handler. The message is parsed while it is downloaded,
+	 * or read from the cache if it has not changed.
+	 *
+	 * @param uri The URI of the SDMX file.
+	 * @param handler The handler that will receive the events.
+	 * @return The cached copy of the file.
+	 * @throws XMLStreamException In case of error while parsing the file content.
+	 * @throws IOException In case of problem retrieving the file, if there is no cached copy.
+	 */
+	public File read(URI uri, SDMXStructureHandler handler) throws XMLStreamException, IOException {
+		return retrieve(uri, handler);
+	}
+
+	private File retrieve(URI uri, SDMXStructureHandler handler) throws XMLStreamException, IOException {
+
+		File referenceFile = new File(referenceDirectory, digest(uri.toString().getBytes(StandardCharsets.UTF_8)) + ".properties");
+		Properties reference = new Properties();
+		if (referenceFile.exists()) {
+			try (InputStream input = new FileInputStream(referenceFile)) {
+				reference.load(input);
+			}
+		}
+		File cachedFile = reference.containsKey("content") ? new File(contentDirectory, reference.getProperty("content") + ".xml") : null;
+		if ((cachedFile != null) && !cachedFile.exists()) cachedFile = null;
+
+		HttpURLConnection connection = (HttpURLConnection) uri.toURL().openConnection();
+		connection.setConnectTimeout(TIMEOUT_MILLIS);
+		connection.setReadTimeout(TIMEOUT_MILLIS);
+		connection.setRequestProperty("Accept-Encoding", "gzip");
+		if (cachedFile != null) {
+			if (reference.containsKey("etag")) connection.setRequestProperty("If-None-Match", reference.getProperty("etag"));
+			if (reference.containsKey("lastModified")) connection.setRequestProperty("If-Modified-Since", reference.getProperty("lastModified"));
+		}
+		int status = 0;
+		try {
+			status = connection.getResponseCode();
+		} catch (IOException e) {
+			if (cachedFile == null) throw e;
+			logger.warn("Unable to reach " + uri + " (" + e.getMessage() + "), using cached copy " + cachedFile);
+			return readCached(cachedFile, handler);
+		}
+		if ((status == HttpURLConnection.HTTP_NOT_MODIFIED) && (cachedFile != null)) {
+			logger.info("SDMX file " + uri + " not modified, using cached copy " + cachedFile);
+			connection.disconnect();
+			return readCached(cachedFile, handler);
+		}
+		if (status != HttpURLConnection.HTTP_OK) {
+			connection.disconnect();
+			if ((status < 500) || (cachedFile == null)) throw new IOException("Unable to retrieve " + uri + ": HTTP status " + status);
+			logger.warn("Server error " + status + " for " + uri + ", using cached copy " + cachedFile);
+			return readCached(cachedFile, handler);
+		}
+
+		// The content is copied to a temporary file as it is read, and moved to its digest name once complete
+		logger.info("Retrieving SDMX file " + uri);
+		long start = System.nanoTime();
+		contentDirectory.mkdirs();
+		File temporaryFile = File.createTempFile("download", ".tmp", contentDirectory);
+		MessageDigest digest = newDigest();
+		long size = 0;
+		try {
+			boolean gzip = "gzip".equalsIgnoreCase(connection.getContentEncoding());
+			try (InputStream body = gzip ? new GZIPInputStream(connection.getInputStream(), 1 << 16) : connection.getInputStream();
+					OutputStream copy = new DigestOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile), 1 << 16), digest)) {
+				CopyingInputStream input = new CopyingInputStream(body, copy);
+				if (handler != null) new SDMXStructureReader().read(new BufferedInputStream(input, 1 << 16), handler);
+				// The parser can stop before the end of the stream, which is still needed in the cache
+				byte[] buffer = new byte[1 << 16];
+				while (input.read(buffer) >= 0) continue;
+				size = input.count;
+			}
+		} catch (XMLStreamException | IOException | RuntimeException e) {
+			temporaryFile.delete();
+			throw e;
+		} finally {
+			connection.disconnect();
+		}
+
+		String contentDigest = toHex(digest.digest());
+		File contentFile = new File(contentDirectory, contentDigest + ".xml");
+		if (contentFile.exists()) temporaryFile.delete();
+		else if (!temporaryFile.renameTo(contentFile)) throw new IOException("Unable to store " + uri + " in cache file " + contentFile);
+
+		reference.clear();
+		reference.setProperty("uri", uri.toString());
+		reference.setProperty("content", contentDigest);
+		if (connection.getHeaderField("ETag") != null) reference.setProperty("etag", connection.getHeaderField("ETag"));
+		if (connection.getHeaderField("Last-Modified") != null) reference.setProperty("lastModified", connection.getHeaderField("Last-Modified"));
+		saveReference(referenceFile, reference);
+		long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		logger.info(size + " bytes retrieved from " + uri + " in " + millis + " ms" + ((handler == null) ? "" : " while parsing") + ", cached as " + contentFile);
+		return contentFile;
+	}
+
+	private File readCached(File cachedFile, SDMXStructureHandler handler) throws XMLStreamException, IOException {
+
+		if (handler != null) new SDMXStructureReader().read(cachedFile.getPath(), handler);
+		return cachedFile;
+	}
+
+	/**
+	 * Writes the reference in a temporary file which then replaces the previous reference, so that a reference always designates a complete content.
+	 */
+	private void saveReference(File referenceFile, Properties reference) throws IOException {
+
+		referenceDirectory.mkdirs();
+		File temporaryFile = new File(referenceDirectory, referenceFile.getName() + ".tmp");
+		try (OutputStream output = new FileOutputStream(temporaryFile)) {
+			reference.store(output, "Cached SDMX file");
+		}
+		if (!temporaryFile.renameTo(referenceFile) && !(referenceFile.delete() && temporaryFile.renameTo(referenceFile))) {
+			throw new IOException("Unable to replace reference file " + referenceFile);
+		}
+	}
+
+	private static String digest(byte[] bytes) {
+		return toHex(newDigest().digest(bytes));
+	}
+
+	private static MessageDigest newDigest() {
+
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e); // Cannot happen, SHA-256 is required on all Java platforms
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+
+		StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (byte value : bytes) hex.append(Character.forDigit((value >> 4) & 0xF, 16)).append(Character.forDigit(value & 0xF, 16));
+		return hex.toString();
+	}
+
+	/**
+	 * Input stream copying the bytes read to an output stream. Closing it does not close the underlying stream.
+	 */
+	private static class CopyingInputStream extends FilterInputStream {
+
+		private final OutputStream copy;
+		private long count = 0;
+
+		CopyingInputStream(InputStream input, OutputStream copy) {
+			super(input);
+			this.copy = copy;
+		}
+
+		@Override
+		public int read() throws IOException {
+
+			int value = super.read();
+			if (value >= 0) {
+				copy.write(value);
+				count++;
+			}
+			return value;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+
+			int read = super.read(buffer, offset, length);
+			if (read > 0) {
+				copy.write(buffer, offset, read);
+				count += read;
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(long length) throws IOException {
+
+			// Skipped bytes must be copied as well
+			byte[] buffer = new byte[(int) Math.min(length, 1 << 13)];
+			int read = read(buffer, 0, buffer.length);
+			return Math.max(0, read);
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+		@Override
+		public void close() {
+			// The parser closes its input at the end of the document, before the rest of the stream is copied
+		}
+	}
+}
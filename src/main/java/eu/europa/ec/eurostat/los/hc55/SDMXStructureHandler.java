@@ -0,0 +1,89 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import java.util.List;
+
+import org.apache.jena.rdf.model.Literal;
+
+/**
+ * The <code>SDMXStructureHandler</code> interface receives the events produced by the <code>SDMXStructureReader</code>.
+ * All methods have an empty default implementation, so that handlers only have to override the events they need.
+ *
+ * @author Franck
+ */
+public interface SDMXStructureHandler {
+
+	/**
+	 * Called at the start of a code list, once its names have been read.
+	 *
+	 * @param codeListId The identifier of the code list.
+	 * @param names The names of the code list as language-tagged literals.
+	 */
+	default void startCodeList(String codeListId, List<Literal> names) {}
+
+	/**
+	 * Called for each code of the current code list.
+	 *
+	 * @param codeListId The identifier of the code list containing the code.
+	 * @param codeValue The value of the code.
+	 * @param parentCodeValue The value of the parent code, or <code>null</code> if the code has no parent.
+	 * @param descriptions The descriptions of the code as language-tagged literals.
+	 */
+	default void code(String codeListId, String codeValue, String parentCodeValue, List<Literal> descriptions) {}
+
+	/**
+	 * Called at the end of a code list.
+	 *
+	 * @param codeListId The identifier of the code list.
+	 */
+	default void endCodeList(String codeListId) {}
+
+	/**
+	 * Called at the start of a concept scheme, once its names have been read.
+	 *
+	 * @param conceptSchemeId The identifier of the concept scheme.
+	 * @param names The names of the concept scheme as language-tagged literals.
+	 */
+	default void startConceptScheme(String conceptSchemeId, List<Literal> names) {}
+
+	/**
+	 * Called for each concept.
+	 *
+	 * @param conceptSchemeId The identifier of the concept scheme containing the concept, or <code>null</code> for concepts defined outside of a scheme.
+	 * @param conceptId The identifier of the concept.
+	 * @param coreRepresentation The identifier of the code list giving the core representation of the concept, or <code>null</code> if there is none.
+	 * @param names The names of the concept as language-tagged literals.
+	 */
+	default void concept(String conceptSchemeId, String conceptId, String coreRepresentation, List<Literal> names) {}
+
+	/**
+	 * Called at the end of a concept scheme.
+	 *
+	 * @param conceptSchemeId The identifier of the concept scheme.
+	 */
+	default void endConceptScheme(String conceptSchemeId) {}
+
+	/**
+	 * Called at the start of a key family, once its names have been read.
+	 *
+	 * @param keyFamilyId The identifier of the key family.
+	 * @param names The names of the key family as language-tagged literals.
+	 */
+	default void startKeyFamily(String keyFamilyId, List<Literal> names) {}
+
+	/**
+	 * Called for each component of the current key family, in document order.
+	 *
+	 * @param keyFamilyId The identifier of the key family containing the component.
+	 * @param componentType The type of the component, i.e. the local name of the SDMX element (Dimension, TimeDimension, PrimaryMeasure, Attribute...).
+	 * @param conceptRef The identifier of the concept referenced by the component.
+	 * @param codeListId The identifier of the code list representing the component, or <code>null</code> if there is none.
+	 */
+	default void component(String keyFamilyId, String componentType, String conceptRef, String codeListId) {}
+
+	/**
+	 * Called at the end of a key family.
+	 *
+	 * @param keyFamilyId The identifier of the key family.
+	 */
+	default void endKeyFamily(String keyFamilyId) {}
+}
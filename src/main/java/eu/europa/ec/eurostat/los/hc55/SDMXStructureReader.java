@@ -0,0 +1,223 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.jena.rdf.model.Literal;
+
+/**
+ * The <code>SDMXStructureReader</code> class reads a SDMX 2.0 structure message with a StAX parser and reports the code lists,
+ * concept schemes and key families it contains to a <code>SDMXStructureHandler</code> as soon as they are read.
+ * Only the element being read is kept in memory, so that memory use does not depend on the size of the input file.
+ *
+ * @author Franck
+ */
+public class SDMXStructureReader {
+
+	/**
+	 * Reads a SDMX structure file and sends the corresponding events to a handler.
+	 * Remote files, given by a HTTP or HTTPS URI, are parsed while they are retrieved into the cache of the shared <code>SDMXSourceResolver</code>.
+	 *
+	 * @param fileName The name of the SDMX file to read, or its URI.
+	 * @param handler The handler that will receive the events.
+	 * @throws XMLStreamException In case of error while parsing the file content.
+	 * @throws IOException In case of problem reading the SDMX file.
+	 */
+	public void read(String fileName, SDMXStructureHandler handler) throws XMLStreamException, IOException {
+
+		if (SDMXSourceResolver.isRemote(fileName)) {
+			SDMXSourceResolver.getShared().read(URI.create(fileName), handler);
+			return;
+		}
+		try (InputStream input = new BufferedInputStream(new FileInputStream(fileName))) {
+			read(input, handler);
+		}
+	}
+
+	/**
+	 * Reads a SDMX structure message from a stream and sends the corresponding events to a handler.
+	 *
+	 * @param input The stream containing the SDMX message.
+	 * @param handler The handler that will receive the events.
+	 * @throws XMLStreamException In case of error while parsing the stream content.
+	 */
+	public void read(InputStream input, SDMXStructureHandler handler) throws XMLStreamException {
+
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+
+		XMLStreamReader xml = factory.createXMLStreamReader(input);
+		try {
+			while (xml.hasNext()) {
+				if ((xml.next() != XMLStreamConstants.START_ELEMENT) || !isStructureElement(xml)) continue;
+				switch (xml.getLocalName()) {
+				case "CodeList":
+					readCodeList(xml, handler);
+					break;
+				case "ConceptScheme":
+					readConceptScheme(xml, handler);
+					break;
+				case "Concept": // Concepts defined outside of a concept scheme
+					readConcept(xml, null, handler);
+					break;
+				case "KeyFamily":
+					readKeyFamily(xml, handler);
+					break;
+				default:
+					break;
+				}
+			}
+		} finally {
+			xml.close();
+		}
+	}
+
+	/**
+	 * Reads a CodeList element, the reader being positioned on its start tag.
+	 */
+	private void readCodeList(XMLStreamReader xml, SDMXStructureHandler handler) throws XMLStreamException {
+
+		String codeListId = getAttribute(xml, "id");
+		List<Literal> names = new ArrayList<Literal>();
+		boolean started = false;
+		while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			if (isStructureElement(xml, "Name")) names.add(readLiteral(xml));
+			else if (isStructureElement(xml, "Code")) {
+				if (!started) {
+					handler.startCodeList(codeListId, names);
+					started = true;
+				}
+				String codeValue = getAttribute(xml, "value");
+				String parentCodeValue = getAttribute(xml, "parentCode");
+				if ((parentCodeValue != null) && (parentCodeValue.length() == 0)) parentCodeValue = null;
+				handler.code(codeListId, codeValue, parentCodeValue, readChildLiterals(xml, "Description"));
+			}
+			else skipElement(xml);
+		}
+		if (!started) handler.startCodeList(codeListId, names);
+		handler.endCodeList(codeListId);
+	}
+
+	/**
+	 * Reads a ConceptScheme element, the reader being positioned on its start tag.
+	 */
+	private void readConceptScheme(XMLStreamReader xml, SDMXStructureHandler handler) throws XMLStreamException {
+
+		String conceptSchemeId = getAttribute(xml, "id");
+		List<Literal> names = new ArrayList<Literal>();
+		boolean started = false;
+		while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			if (isStructureElement(xml, "Name")) names.add(readLiteral(xml));
+			else if (isStructureElement(xml, "Concept")) {
+				if (!started) {
+					handler.startConceptScheme(conceptSchemeId, names);
+					started = true;
+				}
+				readConcept(xml, conceptSchemeId, handler);
+			}
+			else skipElement(xml);
+		}
+		if (!started) handler.startConceptScheme(conceptSchemeId, names);
+		handler.endConceptScheme(conceptSchemeId);
+	}
+
+	/**
+	 * Reads a Concept element, the reader being positioned on its start tag.
+	 */
+	private void readConcept(XMLStreamReader xml, String conceptSchemeId, SDMXStructureHandler handler) throws XMLStreamException {
+
+		String conceptId = getAttribute(xml, "id");
+		String coreRepresentation = getAttribute(xml, "coreRepresentation");
+		handler.concept(conceptSchemeId, conceptId, coreRepresentation, readChildLiterals(xml, "Name"));
+	}
+
+	/**
+	 * Reads a KeyFamily element, the reader being positioned on its start tag.
+	 */
+	private void readKeyFamily(XMLStreamReader xml, SDMXStructureHandler handler) throws XMLStreamException {
+
+		String keyFamilyId = getAttribute(xml, "id");
+		List<Literal> names = new ArrayList<Literal>();
+		boolean started = false;
+		while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			if (isStructureElement(xml, "Name")) names.add(readLiteral(xml));
+			else if (isStructureElement(xml, "Components")) {
+				if (!started) {
+					handler.startKeyFamily(keyFamilyId, names);
+					started = true;
+				}
+				while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+					handler.component(keyFamilyId, xml.getLocalName(), getAttribute(xml, "conceptRef"), getAttribute(xml, "codelist"));
+					skipElement(xml);
+				}
+			}
+			else skipElement(xml);
+		}
+		if (!started) handler.startKeyFamily(keyFamilyId, names);
+		handler.endKeyFamily(keyFamilyId);
+	}
+
+	/**
+	 * Reads the children of the current element with a given name as literals and skips the other children.
+	 * On return, the reader is positioned on the end tag of the current element.
+	 */
+	private List<Literal> readChildLiterals(XMLStreamReader xml, String childName) throws XMLStreamException {
+
+		List<Literal> literals = new ArrayList<Literal>();
+		while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			if (isStructureElement(xml, childName)) literals.add(readLiteral(xml));
+			else skipElement(xml);
+		}
+		return literals;
+	}
+
+	/**
+	 * Creates a language-tagged literal from the current element and positions the reader on its end tag.
+	 */
+	private Literal readLiteral(XMLStreamReader xml) throws XMLStreamException {
+
+		String language = xml.getAttributeValue(XMLConstants.XML_NS_URI, "lang");
+		return Configuration.getLiteral(xml.getElementText(), language);
+	}
+
+	/**
+	 * Skips the current element and its descendants, leaving the reader positioned on its end tag.
+	 */
+	private void skipElement(XMLStreamReader xml) throws XMLStreamException {
+
+		int depth = 1;
+		while (depth > 0) {
+			int event = xml.next();
+			if (event == XMLStreamConstants.START_ELEMENT) depth++;
+			else if (event == XMLStreamConstants.END_ELEMENT) depth--;
+		}
+	}
+
+	/** Returns the trimmed value of an attribute of the current element, or <code>null</code> if the attribute is absent. */
+	private static String getAttribute(XMLStreamReader xml, String name) {
+
+		String value = xml.getAttributeValue(null, name);
+		return (value == null) ? null : value.trim();
+	}
+
+	private static boolean isStructureElement(XMLStreamReader xml) {
+		return Configuration.sdmxStructureNS.getURI().equals(xml.getNamespaceURI());
+	}
+
+	private static boolean isStructureElement(XMLStreamReader xml, String localName) {
+		return isStructureElement(xml) && localName.equals(xml.getLocalName());
+	}
+}
@@ -0,0 +1,344 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.jena.rdf.model.Literal;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import eu.europa.ec.eurostat.los.hc55.BatchConverter.ArtifactType;
+import eu.europa.ec.eurostat.los.hc55.ConversionMetrics.Stage;
+
+/**
+ * The <code>SDMXStructureRegistry</code> class holds the code lists, concept schemes and key families of one or several SDMX files.
+ * Each file is parsed only once, and the artifacts are indexed by identifier so that converters can resolve them without scanning the files again.
+ * If several artifacts of the same type have the same identifier, the first one read is kept.
+ *
+ * @author Franck
+ */
+public class SDMXStructureRegistry implements SDMXStructureHandler {
+
+	private static Logger logger = LogManager.getLogger(SDMXStructureRegistry.class);
+
+	/** Code lists indexed by identifier, in document order */
+	private Map<String, CodeList> codeLists = new LinkedHashMap<String, CodeList>();
+	/** Concept schemes indexed by identifier, in document order */
+	private Map<String, ConceptScheme> conceptSchemes = new LinkedHashMap<String, ConceptScheme>();
+	/** Key families indexed by identifier, in document order */
+	private Map<String, KeyFamily> keyFamilies = new LinkedHashMap<String, KeyFamily>();
+	/** Code list identifiers of the concepts which have a coded core representation, indexed by concept identifier */
+	private Map<String, String> coreRepresentations = new HashMap<String, String>();
+
+	// Artifacts being read
+	private CodeList currentCodeList = null;
+	private ConceptScheme currentConceptScheme = null;
+	private KeyFamily currentKeyFamily = null;
+
+	/**
+	 * Creates a registry containing the artifacts of the given SDMX files.
+	 *
+	 * @param fileNames The names of the SDMX files to read.
+	 * @return The registry.
+	 * @throws XMLStreamException In case of error while parsing a file content.
+	 * @throws IOException In case of problem reading a SDMX file.
+	 */
+	public static SDMXStructureRegistry load(String... fileNames) throws XMLStreamException, IOException {
+
+		SDMXStructureRegistry registry = new SDMXStructureRegistry();
+		for (String fileName : fileNames) registry.add(fileName);
+		return registry;
+	}
+
+	/**
+	 * Adds the artifacts of a SDMX file to the registry.
+	 *
+	 * @param fileName The name of the SDMX file to read.
+	 * @throws XMLStreamException In case of error while parsing the file content.
+	 * @throws IOException In case of problem reading the SDMX file.
+	 */
+	public void add(String fileName) throws XMLStreamException, IOException {
+
+		logger.info("Indexing SDMX structures from file " + fileName);
+		long start = System.nanoTime();
+		new SDMXStructureReader().read(fileName, this);
+		ConversionMetrics.getShared().record(Stage.PARSE, null, start);
+		logger.info("Registry now contains " + codeLists.size() + " code lists, " + conceptSchemes.size() + " concept schemes and " + keyFamilies.size() + " key families");
+	}
+
+	/* Index access */
+
+	public List<String> getCodeListIds() {
+		return new ArrayList<String>(codeLists.keySet());
+	}
+
+	public List<String> getConceptSchemeIds() {
+		return new ArrayList<String>(conceptSchemes.keySet());
+	}
+
+	public List<String> getKeyFamilyIds() {
+		return new ArrayList<String>(keyFamilies.keySet());
+	}
+
+	public CodeList getCodeList(String codeListId) {
+		return codeLists.get(codeListId);
+	}
+
+	public Code getCode(String codeListId, String codeValue) {
+		CodeList codeList = codeLists.get(codeListId);
+		return (codeList == null) ? null : codeList.codes.get(codeValue);
+	}
+
+	public ConceptScheme getConceptScheme(String conceptSchemeId) {
+		return conceptSchemes.get(conceptSchemeId);
+	}
+
+	public Concept getConcept(String conceptSchemeId, String conceptId) {
+		ConceptScheme conceptScheme = conceptSchemes.get(conceptSchemeId);
+		return (conceptScheme == null) ? null : conceptScheme.concepts.get(conceptId);
+	}
+
+	public KeyFamily getKeyFamily(String keyFamilyId) {
+		return keyFamilies.get(keyFamilyId);
+	}
+
+	/**
+	 * Returns the identifier of the code list giving the core representation of a concept.
+	 * Concepts of all concept schemes are considered: if a concept has several code lists, the last one read is returned.
+	 *
+	 * @param conceptId The identifier of the concept.
+	 * @return The identifier of the code list, or <code>null</code> if the concept is not coded.
+	 */
+	public String getCoreRepresentation(String conceptId) {
+		return coreRepresentations.get(conceptId);
+	}
+
+	/**
+	 * Returns the concepts that have a (coded) core representation, with the identifiers of the code lists.
+	 *
+	 * @return An unmodifiable map where keys are the concept identifiers and the values the code list identifiers.
+	 */
+	public Map<String, String> getCodedConcepts() {
+		return Collections.unmodifiableMap(coreRepresentations);
+	}
+
+	/* Replay of the indexed artifacts */
+
+	/**
+	 * Sends the events corresponding to a code list to a handler, as the <code>SDMXStructureReader</code> would.
+	 *
+	 * @param codeListId The identifier of the code list.
+	 * @param handler The handler that will receive the events.
+	 * @return <code>true</code> if the code list was found, <code>false</code> otherwise.
+	 */
+	public boolean replayCodeList(String codeListId, SDMXStructureHandler handler) {
+
+		long start = System.nanoTime();
+		CodeList codeList = codeLists.get(codeListId);
+		ConversionMetrics.getShared().record(Stage.SELECT, ConversionMetrics.artifactName(ArtifactType.CODE_LIST, codeListId), start);
+		if (codeList == null) return false;
+		handler.startCodeList(codeList.id, codeList.names);
+		for (Code code : codeList.codes.values()) handler.code(codeList.id, code.value, code.parentValue, code.descriptions);
+		handler.endCodeList(codeList.id);
+		return true;
+	}
+
+	/**
+	 * Sends the events corresponding to a concept scheme to a handler, as the <code>SDMXStructureReader</code> would.
+	 *
+	 * @param conceptSchemeId The identifier of the concept scheme.
+	 * @param handler The handler that will receive the events.
+	 * @return <code>true</code> if the concept scheme was found, <code>false</code> otherwise.
+	 */
+	public boolean replayConceptScheme(String conceptSchemeId, SDMXStructureHandler handler) {
+
+		long start = System.nanoTime();
+		ConceptScheme conceptScheme = conceptSchemes.get(conceptSchemeId);
+		ConversionMetrics.getShared().record(Stage.SELECT, ConversionMetrics.artifactName(ArtifactType.CONCEPT_SCHEME, conceptSchemeId), start);
+		if (conceptScheme == null) return false;
+		handler.startConceptScheme(conceptScheme.id, conceptScheme.names);
+		for (Concept concept : conceptScheme.concepts.values()) handler.concept(conceptScheme.id, concept.id, concept.coreRepresentation, concept.names);
+		handler.endConceptScheme(conceptScheme.id);
+		return true;
+	}
+
+	/**
+	 * Sends the events corresponding to a key family to a handler, as the <code>SDMXStructureReader</code> would.
+	 *
+	 * @param keyFamilyId The identifier of the key family.
+	 * @param handler The handler that will receive the events.
+	 * @return <code>true</code> if the key family was found, <code>false</code> otherwise.
+	 */
+	public boolean replayKeyFamily(String keyFamilyId, SDMXStructureHandler handler) {
+
+		long start = System.nanoTime();
+		KeyFamily keyFamily = keyFamilies.get(keyFamilyId);
+		ConversionMetrics.getShared().record(Stage.SELECT, ConversionMetrics.artifactName(ArtifactType.KEY_FAMILY, keyFamilyId), start);
+		if (keyFamily == null) return false;
+		handler.startKeyFamily(keyFamily.id, keyFamily.names);
+		for (Component component : keyFamily.components) handler.component(keyFamily.id, component.type, component.conceptRef, component.codeListId);
+		handler.endKeyFamily(keyFamily.id);
+		return true;
+	}
+
+	/* Construction of the indexes from the reader events */
+
+	@Override
+	public void startCodeList(String codeListId, List<Literal> names) {
+
+		if (codeLists.containsKey(codeListId)) {
+			logger.warn("Several code lists have identifier " + codeListId + ", keeping first list found");
+			return;
+		}
+		currentCodeList = new CodeList(codeListId, names);
+		codeLists.put(codeListId, currentCodeList);
+	}
+
+	@Override
+	public void code(String codeListId, String codeValue, String parentCodeValue, List<Literal> descriptions) {
+		if (currentCodeList != null) currentCodeList.codes.put(codeValue, new Code(codeValue, parentCodeValue, descriptions));
+	}
+
+	@Override
+	public void endCodeList(String codeListId) {
+		currentCodeList = null;
+	}
+
+	@Override
+	public void startConceptScheme(String conceptSchemeId, List<Literal> names) {
+
+		if (conceptSchemes.containsKey(conceptSchemeId)) {
+			logger.warn("Several concept schemes have identifier " + conceptSchemeId + ", keeping first scheme found");
+			return;
+		}
+		currentConceptScheme = new ConceptScheme(conceptSchemeId, names);
+		conceptSchemes.put(conceptSchemeId, currentConceptScheme);
+	}
+
+	@Override
+	public void concept(String conceptSchemeId, String conceptId, String coreRepresentation, List<Literal> names) {
+
+		if (coreRepresentation != null) coreRepresentations.put(conceptId, coreRepresentation);
+		if ((conceptSchemeId != null) && (currentConceptScheme != null)) currentConceptScheme.concepts.put(conceptId, new Concept(conceptId, coreRepresentation, names));
+	}
+
+	@Override
+	public void endConceptScheme(String conceptSchemeId) {
+		currentConceptScheme = null;
+	}
+
+	@Override
+	public void startKeyFamily(String keyFamilyId, List<Literal> names) {
+
+		if (keyFamilies.containsKey(keyFamilyId)) {
+			logger.warn("Several key families have identifier " + keyFamilyId + ", keeping first key family found");
+			return;
+		}
+		currentKeyFamily = new KeyFamily(keyFamilyId, names);
+		keyFamilies.put(keyFamilyId, currentKeyFamily);
+	}
+
+	@Override
+	public void component(String keyFamilyId, String componentType, String conceptRef, String codeListId) {
+		if (currentKeyFamily != null) currentKeyFamily.components.add(new Component(componentType, conceptRef, codeListId));
+	}
+
+	@Override
+	public void endKeyFamily(String keyFamilyId) {
+		currentKeyFamily = null;
+	}
+
+	/* Indexed artifacts */
+
+	/** A SDMX code list, with its codes indexed by value. */
+	public static class CodeList {
+
+		public final String id;
+		public final List<Literal> names;
+		public final Map<String, Code> codes = new LinkedHashMap<String, Code>();
+
+		CodeList(String id, List<Literal> names) {
+			this.id = id;
+			this.names = names;
+		}
+	}
+
+	/** A SDMX code. */
+	public static class Code {
+
+		public final String value;
+		/** Value of the parent code, <code>null</code> if the code has no parent */
+		public final String parentValue;
+		public final List<Literal> descriptions;
+
+		Code(String value, String parentValue, List<Literal> descriptions) {
+			this.value = value;
+			this.parentValue = parentValue;
+			this.descriptions = descriptions;
+		}
+	}
+
+	/** A SDMX concept scheme, with its concepts indexed by identifier. */
+	public static class ConceptScheme {
+
+		public final String id;
+		public final List<Literal> names;
+		public final Map<String, Concept> concepts = new LinkedHashMap<String, Concept>();
+
+		ConceptScheme(String id, List<Literal> names) {
+			this.id = id;
+			this.names = names;
+		}
+	}
+
+	/** A SDMX concept. */
+	public static class Concept {
+
+		public final String id;
+		/** Identifier of the code list giving the core representation, <code>null</code> if the concept is not coded */
+		public final String coreRepresentation;
+		public final List<Literal> names;
+
+		Concept(String id, String coreRepresentation, List<Literal> names) {
+			this.id = id;
+			this.coreRepresentation = coreRepresentation;
+			this.names = names;
+		}
+	}
+
+	/** A SDMX key family, with its components in document order. */
+	public static class KeyFamily {
+
+		public final String id;
+		public final List<Literal> names;
+		public final List<Component> components = new ArrayList<Component>();
+
+		KeyFamily(String id, List<Literal> names) {
+			this.id = id;
+			this.names = names;
+		}
+	}
+
+	/** A component of a SDMX key family. */
+	public static class Component {
+
+		/** Type of the component (Dimension, TimeDimension, PrimaryMeasure, Attribute...) */
+		public final String type;
+		public final String conceptRef;
+		/** Identifier of the code list representing the component, <code>null</code> if there is none */
+		public final String codeListId;
+
+		Component(String type, String conceptRef, String codeListId) {
+			this.type = type;
+			this.conceptRef = conceptRef;
+			this.codeListId = codeListId;
+		}
+	}
+}
@@ -0,0 +1,221 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.jena.rdf.model.Literal;
+
+/**
+ * The <code>SDMXStructureWriter</code> class is the counterpart of <code>SDMXStructureReader</code>: it receives the events of a
+ * <code>SDMXStructureHandler</code> and writes the corresponding SDMX 2.0 structure message with a StAX writer, each element being written
+ * as soon as its event is received. Artifacts must be sent grouped by type, in the order of the message schema: code lists, then concept
+ * schemes, then key families.
+ * Handler methods cannot throw checked exceptions, so XML errors are reported as <code>IllegalStateException</code>s.
+ *
+ * @author Franck
+ */
+public class SDMXStructureWriter implements SDMXStructureHandler, AutoCloseable {
+
+	private static final String MESSAGE_NS = "http://www.SDMX.org/resources/SDMXML/schemas/v2_0/message";
+	private static final String STRUCTURE_NS = Configuration.sdmxStructureNS.getURI();
+
+	/** Containers of the artifacts in the message, in schema order */
+	private static final String[] CONTAINERS = {"CodeLists", "Concepts", "KeyFamilies"};
+
+	private final XMLStreamWriter xml;
+	private final String agencyId;
+
+	/** Index in <code>CONTAINERS</code> of the open container, -1 if none */
+	private int container = -1;
+	private boolean inComponents = false;
+
+	/**
+	 * Starts a structure message on a stream, with a minimal header.
+	 *
+	 * @param output The stream where the message is written, which is not closed.
+	 * @param messageId The identifier of the message.
+	 * @param agencyId The identifier of the agency maintaining the artifacts, also used as sender of the message.
+	 * @throws XMLStreamException In case of problem writing the message.
+	 */
+	public SDMXStructureWriter(OutputStream output, String messageId, String agencyId) throws XMLStreamException {
+
+		this.agencyId = agencyId;
+		xml = XMLOutputFactory.newInstance().createXMLStreamWriter(output, "UTF-8");
+		xml.writeStartDocument("UTF-8", "1.0");
+		xml.setDefaultNamespace(MESSAGE_NS);
+		xml.setPrefix("structure", STRUCTURE_NS);
+		xml.writeStartElement(MESSAGE_NS, "Structure");
+		xml.writeDefaultNamespace(MESSAGE_NS);
+		xml.writeNamespace("structure", STRUCTURE_NS);
+
+		xml.writeStartElement(MESSAGE_NS, "Header");
+		writeText(MESSAGE_NS, "ID", messageId);
+		writeText(MESSAGE_NS, "Test", "false");
+		writeText(MESSAGE_NS, "Prepared", LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS).format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+		xml.writeEmptyElement(MESSAGE_NS, "Sender");
+		xml.writeAttribute("id", agencyId);
+		xml.writeEndElement();
+	}
+
+	@Override
+	public void startCodeList(String codeListId, List<Literal> names) {
+
+		try {
+			openContainer(0);
+			startArtifact("CodeList", codeListId);
+			writeLiterals("Name", names);
+		} catch (XMLStreamException e) {
+			throw new IllegalStateException("Unable to write code list " + codeListId, e);
+		}
+	}
+
+	@Override
+	public void code(String codeListId, String codeValue, String parentCodeValue, List<Literal> descriptions) {
+
+		try {
+			xml.writeStartElement(STRUCTURE_NS, "Code");
+			xml.writeAttribute("value", codeValue);
+			if (parentCodeValue != null) xml.writeAttribute("parentCode", parentCodeValue);
+			writeLiterals("Description", descriptions);
+			xml.writeEndElement();
+		} catch (XMLStreamException e) {
+			throw new IllegalStateException("Unable to write code " + codeValue, e);
+		}
+	}
+
+	@Override
+	public void endCodeList(String codeListId) {
+		endElement();
+	}
+
+	@Override
+	public void startConceptScheme(String conceptSchemeId, List<Literal> names) {
+
+		try {
+			openContainer(1);
+			startArtifact("ConceptScheme", conceptSchemeId);
+			writeLiterals("Name", names);
+		} catch (XMLStreamException e) {
+			throw new IllegalStateException("Unable to write concept scheme " + conceptSchemeId, e);
+		}
+	}
+
+	@Override
+	public void concept(String conceptSchemeId, String conceptId, String coreRepresentation, List<Literal> names) {
+
+		try {
+			if (conceptSchemeId == null) openContainer(1);
+			xml.writeStartElement(STRUCTURE_NS, "Concept");
+			xml.writeAttribute("id", conceptId);
+			if (conceptSchemeId == null) xml.writeAttribute("agencyID", agencyId);
+			if (coreRepresentation != null) xml.writeAttribute("coreRepresentation", coreRepresentation);
+			writeLiterals("Name", names);
+			xml.writeEndElement();
+		} catch (XMLStreamException e) {
+			throw new IllegalStateException("Unable to write concept " + conceptId, e);
+		}
+	}
+
+	@Override
+	public void endConceptScheme(String conceptSchemeId) {
+		endElement();
+	}
+
+	@Override
+	public void startKeyFamily(String keyFamilyId, List<Literal> names) {
+
+		try {
+			openContainer(2);
+			startArtifact("KeyFamily", keyFamilyId);
+			writeLiterals("Name", names);
+		} catch (XMLStreamException e) {
+			throw new IllegalStateException("Unable to write key family " + keyFamilyId, e);
+		}
+	}
+
+	@Override
+	public void component(String keyFamilyId, String componentType, String conceptRef, String codeListId) {
+
+		try {
+			if (!inComponents) xml.writeStartElement(STRUCTURE_NS, "Components");
+			inComponents = true;
+			xml.writeEmptyElement(STRUCTURE_NS, componentType);
+			xml.writeAttribute("conceptRef", conceptRef);
+			if (codeListId != null) xml.writeAttribute("codelist", codeListId);
+		} catch (XMLStreamException e) {
+			throw new IllegalStateException("Unable to write component " + conceptRef, e);
+		}
+	}
+
+	@Override
+	public void endKeyFamily(String keyFamilyId) {
+
+		if (inComponents) endElement();
+		inComponents = false;
+		endElement();
+	}
+
+	/**
+	 * Ends the message and flushes the writer.
+	 *
+	 * @throws XMLStreamException In case of problem writing the message.
+	 */
+	@Override
+	public void close() throws XMLStreamException {
+
+		if (container >= 0) xml.writeEndElement();
+		xml.writeEndElement();
+		xml.writeEndDocument();
+		xml.close();
+	}
+
+	private void openContainer(int index) throws XMLStreamException {
+
+		if (index == container) return;
+		if (index < container) throw new IllegalStateException(CONTAINERS[index] + " must be written before " + CONTAINERS[container]);
+		if (container >= 0) xml.writeEndElement();
+		xml.writeStartElement(MESSAGE_NS, CONTAINERS[index]);
+		container = index;
+	}
+
+	private void startArtifact(String elementName, String id) throws XMLStreamException {
+
+		xml.writeStartElement(STRUCTURE_NS, elementName);
+		xml.writeAttribute("id", id);
+		xml.writeAttribute("agencyID", agencyId);
+	}
+
+	private void writeLiterals(String elementName, List<Literal> literals) throws XMLStreamException {
+
+		for (Literal literal : literals) {
+			xml.writeStartElement(STRUCTURE_NS, elementName);
+			if (!literal.getLanguage().isEmpty()) xml.writeAttribute("xml", XMLConstants.XML_NS_URI, "lang", literal.getLanguage());
+			xml.writeCharacters(literal.getLexicalForm());
+			xml.writeEndElement();
+		}
+	}
+
+	private void writeText(String namespace, String elementName, String text) throws XMLStreamException {
+
+		xml.writeStartElement(namespace, elementName);
+		xml.writeCharacters(text);
+		xml.writeEndElement();
+	}
+
+	private void endElement() {
+
+		try {
+			xml.writeEndElement();
+		} catch (XMLStreamException e) {
+			throw new IllegalStateException("Unable to write SDMX message", e);
+		}
+	}
+}
@@ -0,0 +1,347 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import eu.europa.ec.eurostat.los.hc55.ConversionMetrics.Stage;
+import eu.europa.ec.eurostat.los.hc55.SDMXDataReader.Series;
+import eu.europa.ec.eurostat.los.utils.DataCube;
+
+/**
+ * The <code>SliceGenerator</code> class groups the observations of a data set into Data Cube slices along a set of fixed dimensions.
+ * It produces the <code>qb:SliceKey</code> attached to the DSD produced by the <code>DSDConverter</code>, and one <code>qb:Slice</code> for
+ * each combination of values of the fixed dimensions found in the data, linked to its observations as produced by the <code>ObservationConverter</code>.
+ * Observations are grouped in a single pass over the SDMX data message with a hash table. When the number of observations held in the table
+ * exceeds a limit, the groups are spilled to partition files on disk according to the hash of their key, and each partition is grouped in
+ * turn at the end of the pass, so that data sets larger than the heap can be processed as long as one partition fits in memory.
+ *
+ * @author Franck
+ */
+public class SliceGenerator {
+
+	private static Logger logger = LogManager.getLogger(SliceGenerator.class);
+
+	/** Default maximum number of observations held in memory before spilling to disk */
+	public static final int DEFAULT_MAX_BUFFERED_OBSERVATIONS = 500000;
+
+	/** Default number of partition files */
+	public static final int DEFAULT_PARTITIONS = 64;
+
+	/** Structure of the data set */
+	private DataStructure structure = null;
+
+	/** Positions of the fixed dimensions in the key family */
+	private int[] fixedIndexes = null;
+
+	/** Identifier of the slice key, made of the concepts of the fixed dimensions separated by underscores */
+	private String sliceKeyId = null;
+
+	private Node sliceKeyNode = null;
+
+	private int maxBufferedObservations = DEFAULT_MAX_BUFFERED_OBSERVATIONS;
+
+	private int partitions = DEFAULT_PARTITIONS;
+
+	/** Directory where partition files are created, <code>null</code> for the default temporary directory */
+	private File workDirectory = null;
+
+	private ConversionMetrics metrics = ConversionMetrics.getShared();
+
+	/**
+	 * Generates the slices of a SDMX data file.
+	 * Arguments are the data file, the output file, whose extension selects the serialization (see <code>RDFStreamOutput</code>),
+	 * the fixed dimensions separated by commas and optionally the key family identifier (default HC55).
+	 */
+	public static void main(String[] args) throws Exception {
+
+		String dsdId = (args.length > 3) ? args[3] : "HC55";
+		SDMXStructureRegistry registry = SDMXStructureRegistry.load(Configuration.CONCEPTS, Configuration.KEY_FAMILIES);
+		SliceGenerator generator = new SliceGenerator(new DataStructure(registry, dsdId), Arrays.asList(args[2].split(",")));
+		try (RDFStreamOutput output = new RDFStreamOutput(args[1])) {
+			generator.generate(args[0], output.getStream());
+		}
+	}
+
+	/**
+	 * Creates a slice generator with the default memory limit and number of partitions.
+	 *
+	 * @param structure The structure of the data set.
+	 * @param fixedDimensions The concepts of the dimensions fixed in each slice.
+	 */
+	public SliceGenerator(DataStructure structure, List<String> fixedDimensions) {
+		this(structure, fixedDimensions, DEFAULT_MAX_BUFFERED_OBSERVATIONS, DEFAULT_PARTITIONS, null);
+	}
+
+	/**
+	 * Creates a slice generator.
+	 *
+	 * @param structure The structure of the data set.
+	 * @param fixedDimensions The concepts of the dimensions fixed in each slice.
+	 * @param maxBufferedObservations The maximum number of observations held in memory before spilling to disk.
+	 * @param partitions The number of partition files used when spilling, chosen so that one partition fits in memory.
+	 * @param workDirectory The directory where partition files are created, <code>null</code> for the default temporary directory.
+	 */
+	public SliceGenerator(DataStructure structure, List<String> fixedDimensions, int maxBufferedObservations, int partitions, File workDirectory) {
+
+		if (fixedDimensions.isEmpty()) throw new IllegalArgumentException("At least one fixed dimension is required");
+		this.structure = structure;
+		this.fixedIndexes = new int[fixedDimensions.size()];
+		for (int index = 0; index < fixedIndexes.length; index++) {
+			fixedIndexes[index] = structure.getDimensionIndex(fixedDimensions.get(index));
+			if (fixedIndexes[index] < 0) throw new IllegalArgumentException("Key family " + structure.getDsdId() + " has no dimension " + fixedDimensions.get(index));
+		}
+		this.sliceKeyId = String.join("_", fixedDimensions);
+		this.sliceKeyNode = NodeInterner.getShared().uri(Configuration.sliceKeyURI(structure.getDsdId(), sliceKeyId));
+		this.maxBufferedObservations = Math.max(1, maxBufferedObservations);
+		this.partitions = Math.max(1, partitions);
+		this.workDirectory = workDirectory;
+	}
+
+	/**
+	 * Sends the triples describing the slice key to a stream: the slice key with its component properties, and its link from the DSD.
+	 *
+	 * @param output The stream receiving the triples.
+	 */
+	public void sliceKeyTriples(StreamRDF output) {
+
+		output.prefix("qb", DataCube.getURI());
+		triple(output, sliceKeyNode, RDF.type.asNode(), DataCube.SliceKey.asNode());
+		for (int fixedIndex : fixedIndexes) triple(output, sliceKeyNode, DataCube.componentProperty.asNode(), structure.getDimensions().get(fixedIndex).getProperty());
+		triple(output, NodeInterner.getShared().uri(Configuration.dsdURI(structure.getDsdId())), DataCube.sliceKey.asNode(), sliceKeyNode);
+	}
+
+	/**
+	 * Generates the slice key and the slices of the observations of a SDMX data file, and sends the resulting triples to a stream.
+	 * The <code>start</code> and <code>finish</code> methods of the stream are not called.
+	 *
+	 * @param dataFile The name of the SDMX data file, in Compact or Generic format.
+	 * @param output The stream receiving the triples.
+	 * @return The number of slices generated.
+	 * @throws XMLStreamException In case of error while parsing the file content.
+	 * @throws IOException In case of problem reading the SDMX file or writing the partition files.
+	 */
+	public long generate(String dataFile, StreamRDF output) throws XMLStreamException, IOException {
+
+		logger.info("Generating slices with key " + sliceKeyId + " from file " + dataFile);
+		long start = System.nanoTime();
+		sliceKeyTriples(output);
+		Grouping grouping = new Grouping(output);
+		try {
+			new SDMXDataReader().read(dataFile, new SDMXDataHandler() {
+				@Override
+				public void series(Series series) {
+					structure.readObservations(series, (dimensionValues, value, attributeValues) -> grouping.add(dimensionValues));
+				}
+			});
+			return grouping.finish();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			grouping.close();
+			metrics.record(Stage.BUILD, null, start);
+		}
+	}
+
+	/**
+	 * Returns the identifier of a slice in its URI: the values of the fixed dimensions separated by dots, percent-encoded as in the
+	 * observation URIs (see <code>URIMinter.appendEncoded</code>) so that values containing dots give distinct identifiers.
+	 *
+	 * @param values The values of the fixed dimensions.
+	 * @return The identifier of the slice.
+	 */
+	static String sliceId(String[] values) {
+
+		StringBuilder sliceId = new StringBuilder();
+		for (int index = 0; index < values.length; index++) {
+			if (index > 0) sliceId.append('.');
+			URIMinter.appendEncoded(sliceId, values[index]);
+		}
+		return sliceId.toString();
+	}
+
+	private void triple(StreamRDF output, Node subject, Node predicate, Node object) {
+
+		output.triple(Triple.create(subject, predicate, object));
+		metrics.countTriple();
+	}
+
+	/**
+	 * Observations sharing the same values of the fixed dimensions.
+	 */
+	private static class Group {
+
+		final String[] values;
+		final List<String> observations = new ArrayList<String>();
+
+		Group(String[] values) {
+			this.values = values;
+		}
+	}
+
+	/**
+	 * Hash grouping of the observations of one generation, spilling to partition files when the memory limit is reached.
+	 */
+	private class Grouping {
+
+		private StreamRDF output = null;
+		private Map<List<String>, Group> groups = new LinkedHashMap<List<String>, Group>();
+		private int buffered = 0;
+		private long slices = 0;
+		private long skipped = 0;
+
+		/** Partition files and their streams, <code>null</code> as long as nothing was spilled */
+		private File spillDirectory = null;
+		private File[] spillFiles = null;
+		private DataOutputStream[] spills = null;
+
+		Grouping(StreamRDF output) {
+			this.output = output;
+		}
+
+		void add(String[] dimensionValues) {
+
+			// Incomplete observations are not converted, so they cannot be in a slice
+			if (!structure.isComplete(dimensionValues)) {
+				skipped++;
+				return;
+			}
+			String[] values = new String[fixedIndexes.length];
+			for (int index = 0; index < values.length; index++) values[index] = dimensionValues[fixedIndexes[index]];
+			groups.computeIfAbsent(Arrays.asList(values), key -> new Group(values)).observations.add(structure.observationURI(dimensionValues));
+			if (++buffered >= maxBufferedObservations) {
+				try {
+					spill();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		}
+
+		/**
+		 * Emits the remaining groups, or the groups of each partition if some groups were spilled.
+		 *
+		 * @return The number of slices generated.
+		 */
+		long finish() throws IOException {
+
+			if (skipped > 0) logger.warn(skipped + " observations without value for some dimensions ignored");
+			if (spills == null) {
+				emit();
+				logger.info(slices + " slices generated in memory");
+				return slices;
+			}
+			spill();
+			for (DataOutputStream spill : spills) spill.close();
+			for (int partition = 0; partition < partitions; partition++) {
+				read(spillFiles[partition]);
+				emit();
+				Files.delete(spillFiles[partition].toPath());
+			}
+			logger.info(slices + " slices generated using " + partitions + " partitions");
+			return slices;
+		}
+
+		/**
+		 * Writes the groups held in memory to the partition files: for each group, the values of the fixed dimensions, the number
+		 * of observations and the observation URIs.
+		 */
+		private void spill() throws IOException {
+
+			if (spills == null) {
+				spillDirectory = (workDirectory == null) ? Files.createTempDirectory("slices").toFile() : Files.createTempDirectory(workDirectory.toPath(), "slices").toFile();
+				logger.info("More than " + maxBufferedObservations + " observations to group, spilling to " + spillDirectory);
+				spillFiles = new File[partitions];
+				spills = new DataOutputStream[partitions];
+				for (int partition = 0; partition < partitions; partition++) {
+					spillFiles[partition] = new File(spillDirectory, "partition-" + partition);
+					spills[partition] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spillFiles[partition]), 1 << 16));
+				}
+			}
+			for (Map.Entry<List<String>, Group> entry : groups.entrySet()) {
+				DataOutputStream spill = spills[(entry.getKey().hashCode() & Integer.MAX_VALUE) % partitions];
+				for (String value : entry.getValue().values) spill.writeUTF(value);
+				spill.writeInt(entry.getValue().observations.size());
+				for (String observation : entry.getValue().observations) spill.writeUTF(observation);
+			}
+			groups.clear();
+			buffered = 0;
+		}
+
+		/**
+		 * Reads the groups of a partition file into memory, merging the groups spilled several times.
+		 */
+		private void read(File spillFile) throws IOException {
+
+			try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(spillFile), 1 << 16))) {
+				while (true) {
+					String[] values = new String[fixedIndexes.length];
+					try {
+						values[0] = input.readUTF();
+					} catch (EOFException e) {
+						return;
+					}
+					for (int index = 1; index < values.length; index++) values[index] = input.readUTF();
+					Group group = groups.computeIfAbsent(Arrays.asList(values), key -> new Group(values));
+					int count = input.readInt();
+					for (int observation = 0; observation < count; observation++) group.observations.add(input.readUTF());
+				}
+			}
+		}
+
+		/**
+		 * Sends the slices of the groups held in memory to the output and clears them.
+		 */
+		private void emit() {
+
+			Node dataSetNode = structure.getDataSetNode();
+			for (Map.Entry<List<String>, Group> entry : groups.entrySet()) {
+				Node sliceNode = NodeFactory.createURI(Configuration.sliceURI(structure.getDsdId(), sliceKeyId, sliceId(entry.getValue().values)));
+				triple(output, dataSetNode, DataCube.slice.asNode(), sliceNode);
+				triple(output, sliceNode, RDF.type.asNode(), DataCube.Slice.asNode());
+				triple(output, sliceNode, DataCube.sliceStructure.asNode(), sliceKeyNode);
+				for (int index = 0; index < fixedIndexes.length; index++) {
+					DataStructure.DataComponent dimension = structure.getDimensions().get(fixedIndexes[index]);
+					triple(output, sliceNode, dimension.getProperty(), dimension.getNode(entry.getValue().values[index]));
+				}
+				for (String observation : entry.getValue().observations) triple(output, sliceNode, DataCube.observation.asNode(), NodeFactory.createURI(observation));
+				slices++;
+			}
+			groups.clear();
+		}
+
+		/**
+		 * Closes and deletes the partition files that remain, after a failure for example.
+		 */
+		void close() throws IOException {
+
+			if (spills == null) return;
+			for (DataOutputStream spill : spills) spill.close();
+			for (File spillFile : spillFiles) Files.deleteIfExists(spillFile.toPath());
+			Files.deleteIfExists(spillDirectory.toPath());
+		}
+	}
+}
@@ -0,0 +1,328 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+
+import org.apache.jena.atlas.io.IndentedLineBuffer;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.out.NodeFormatter;
+import org.apache.jena.riot.out.NodeFormatterNT;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import eu.europa.ec.eurostat.los.utils.DataCube;
+
+/**
+ * The <code>SortedTriples</code> class is a <code>StreamRDF</code> that collects triples as canonical N-Triples lines and returns them
+ * sorted and without duplicates. Lines are sorted in memory by runs of a given size, and full runs are spilled to temporary files which
+ * are merged when the lines are read, so that graphs bigger than the memory can be sorted.
+ * Blank nodes are replaced by skolem IRIs which do not depend on their labels: the IRI of a Data Cube component specification is
+ * derived from the resource referencing it and from its component property with <code>URIMinter.componentSpecificationURI</code>, which
+ * is the IRI that the <code>DSDConverter</code> mints, so that graphs from other tools compare with the converted and loaded structures.
+ * Triples involving blank nodes are kept in memory until the lines are read, which is fine since the converters produce no blank nodes.
+ *
+ * @author Franck
+ */
+public class SortedTriples extends StreamRDFBase implements Closeable {
+
+	private static Logger logger = LogManager.getLogger(SortedTriples.class);
+
+	/** Default maximum number of lines sorted in memory */
+	public static final int DEFAULT_RUN_SIZE = 1000000;
+
+	/** Prefix of the skolem IRIs, see RDF 1.1 Concepts section 3.5 */
+	public static final String SKOLEM_PREFIX = URIMinter.SKOLEM_PREFIX;
+
+	/** Properties linking a component specification to its component property */
+	private static final List<Node> componentPredicates = new ArrayList<Node>();
+	static {
+		componentPredicates.add(DataCube.componentProperty.asNode());
+		componentPredicates.add(DataCube.dimension.asNode());
+		componentPredicates.add(DataCube.measure.asNode());
+		componentPredicates.add(DataCube.attribute.asNode());
+	}
+
+	private final int runSize;
+	private final File temporaryDirectory;
+	private final NodeFormatter formatter = new NodeFormatterNT();
+
+	private List<String> lines = new ArrayList<String>();
+	private List<File> runs = new ArrayList<File>();
+	private List<Triple> blankTriples = new ArrayList<Triple>();
+	private boolean sorted = false;
+
+	/**
+	 * Creates a collection sorting at most <code>DEFAULT_RUN_SIZE</code> lines in memory, with runs spilled to the default temporary directory.
+	 */
+	public SortedTriples() {
+		this(DEFAULT_RUN_SIZE, null);
+	}
+
+	/**
+	 * Creates a collection with a given run size.
+	 *
+	 * @param runSize The maximum number of lines sorted in memory.
+	 * @param temporaryDirectory The directory where the runs are spilled, <code>null</code> for the default temporary directory.
+	 */
+	public SortedTriples(int runSize, File temporaryDirectory) {
+		this.runSize = runSize;
+		this.temporaryDirectory = temporaryDirectory;
+	}
+
+	@Override
+	public void triple(Triple triple) {
+
+		if (sorted) throw new IllegalStateException("Triples cannot be added once sorted");
+		if (triple.getSubject().isBlank() || triple.getObject().isBlank()) {
+			blankTriples.add(triple);
+			return;
+		}
+		add(format(triple, null));
+	}
+
+	/**
+	 * Returns the sorted lines, each line being a triple in N-Triples syntax without the final dot.
+	 * No triple can be added afterwards, and the lines can only be read once.
+	 *
+	 * @return An iterator over the sorted lines, which must be closed in order to release the temporary files.
+	 * @throws IOException In case of problem reading or writing the temporary files.
+	 */
+	public LineIterator iterator() throws IOException {
+
+		if (sorted) throw new IllegalStateException("Sorted lines can only be read once");
+		skolemize();
+		sorted = true;
+		Collections.sort(lines);
+		List<Iterator<String>> sources = new ArrayList<Iterator<String>>();
+		sources.add(lines.iterator());
+		try {
+			for (File run : runs) sources.add(new RunReader(run));
+		} catch (IOException e) {
+			for (Iterator<String> source : sources) if (source instanceof Closeable) ((Closeable) source).close();
+			throw e;
+		}
+		if (!runs.isEmpty()) logger.info("Merging " + runs.size() + " sorted run(s) and " + lines.size() + " lines in memory");
+		return new LineIterator(sources);
+	}
+
+	/**
+	 * Deletes the temporary files.
+	 */
+	@Override
+	public void close() {
+
+		for (File run : runs) run.delete();
+		runs.clear();
+		lines = new ArrayList<String>();
+	}
+
+	private void add(String line) {
+
+		lines.add(line);
+		if (lines.size() >= runSize) spill();
+	}
+
+	private void spill() {
+
+		Collections.sort(lines);
+		try {
+			File run = File.createTempFile("triples", ".nt", temporaryDirectory);
+			runs.add(run);
+			try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(run), StandardCharsets.UTF_8), 1 << 16)) {
+				String previous = null;
+				for (String line : lines) {
+					if (line.equals(previous)) continue;
+					writer.write(line);
+					writer.write('\n');
+					previous = line;
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to write sorted run", e);
+		}
+		if (logger.isDebugEnabled()) logger.debug("Sorted run of " + lines.size() + " lines written to " + runs.get(runs.size() - 1));
+		lines.clear();
+	}
+
+	/**
+	 * Replaces the blank nodes of the buffered triples by skolem IRIs and adds the triples to the lines.
+	 * The IRI of a blank node is computed from the first IRI referencing it and from its component property, or if it has none from
+	 * its sorted outgoing triples whose object is not blank.
+	 */
+	private void skolemize() {
+
+		Map<Node, String> parents = new HashMap<Node, String>();
+		Map<Node, String> anchors = new HashMap<Node, String>();
+		Map<Node, TreeSet<String>> descriptions = new HashMap<Node, TreeSet<String>>();
+		for (Triple triple : blankTriples) {
+			Node subject = triple.getSubject();
+			Node object = triple.getObject();
+			if (object.isBlank() && subject.isURI()) parents.putIfAbsent(object, subject.getURI());
+			if (!subject.isBlank()) continue;
+			if (object.isURI() && componentPredicates.contains(triple.getPredicate())) anchors.putIfAbsent(subject, object.getURI());
+			if (!object.isBlank()) descriptions.computeIfAbsent(subject, key -> new TreeSet<String>()).add(format(triple.getPredicate()) + " " + format(object));
+		}
+
+		Map<Node, Node> skolems = new HashMap<Node, Node>();
+		for (Triple triple : blankTriples) {
+			for (Node node : new Node[] {triple.getSubject(), triple.getObject()}) {
+				if (!node.isBlank() || skolems.containsKey(node)) continue;
+				String parent = parents.getOrDefault(node, "");
+				String uri = null;
+				if (anchors.containsKey(node)) uri = URIMinter.getShared().componentSpecificationURI(parent, anchors.get(node));
+				else uri = URIMinter.skolemURI(parent + " " + (descriptions.containsKey(node) ? String.join("\n", descriptions.get(node)) : ""));
+				skolems.put(node, NodeFactory.createURI(uri));
+			}
+		}
+		for (Triple triple : blankTriples) add(format(triple, skolems));
+		if (!blankTriples.isEmpty()) logger.info(skolems.size() + " blank node(s) replaced by skolem IRIs");
+		blankTriples = new ArrayList<Triple>();
+	}
+
+	private String format(Triple triple, Map<Node, Node> skolems) {
+
+		IndentedLineBuffer buffer = new IndentedLineBuffer();
+		formatter.format(buffer, skolemize(triple.getSubject(), skolems));
+		buffer.print(' ');
+		formatter.format(buffer, triple.getPredicate());
+		buffer.print(' ');
+		formatter.format(buffer, skolemize(triple.getObject(), skolems));
+		return buffer.asString();
+	}
+
+	private String format(Node node) {
+
+		IndentedLineBuffer buffer = new IndentedLineBuffer();
+		formatter.format(buffer, node);
+		return buffer.asString();
+	}
+
+	private static Node skolemize(Node node, Map<Node, Node> skolems) {
+		return (node.isBlank() && (skolems != null)) ? skolems.get(node) : node;
+	}
+
+	/**
+	 * Iterator over the sorted lines, merging the runs and removing duplicates.
+	 */
+	public static class LineIterator implements Iterator<String>, Closeable {
+
+		private final List<Iterator<String>> sources;
+		private final PriorityQueue<Head> heads = new PriorityQueue<Head>();
+		private String last = null;
+
+		private LineIterator(List<Iterator<String>> sources) {
+
+			this.sources = sources;
+			for (Iterator<String> source : sources) advance(source);
+		}
+
+		@Override
+		public boolean hasNext() {
+			return !heads.isEmpty();
+		}
+
+		@Override
+		public String next() {
+
+			if (heads.isEmpty()) throw new NoSuchElementException();
+			Head head = heads.poll();
+			advance(head.source);
+			last = head.line;
+			// Skip the same line coming from other runs
+			while (!heads.isEmpty() && heads.peek().line.equals(last)) advance(heads.poll().source);
+			return last;
+		}
+
+		@Override
+		public void close() throws IOException {
+			for (Iterator<String> source : sources) if (source instanceof Closeable) ((Closeable) source).close();
+		}
+
+		private void advance(Iterator<String> source) {
+
+			while (source.hasNext()) {
+				String line = source.next();
+				// Lines sorted in memory are not deduplicated
+				if (line.equals(last)) continue;
+				heads.add(new Head(line, source));
+				return;
+			}
+		}
+	}
+
+	private static class Head implements Comparable<Head> {
+
+		private final String line;
+		private final Iterator<String> source;
+
+		private Head(String line, Iterator<String> source) {
+			this.line = line;
+			this.source = source;
+		}
+
+		@Override
+		public int compareTo(Head other) {
+			return line.compareTo(other.line);
+		}
+	}
+
+	/**
+	 * Reads the lines of a run spilled to a temporary file.
+	 */
+	private static class RunReader implements Iterator<String>, Closeable {
+
+		private final BufferedReader reader;
+		private String next = null;
+
+		private RunReader(File run) throws IOException {
+
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(run), StandardCharsets.UTF_8), 1 << 16);
+			next = reader.readLine();
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		@Override
+		public String next() {
+
+			if (next == null) throw new NoSuchElementException();
+			String line = next;
+			try {
+				next = reader.readLine();
+			} catch (IOException e) {
+				throw new UncheckedIOException("Unable to read sorted run", e);
+			}
+			return line;
+		}
+
+		@Override
+		public void close() throws IOException {
+			reader.close();
+		}
+	}
+}
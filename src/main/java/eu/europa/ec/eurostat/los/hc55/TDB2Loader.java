@@ -0,0 +1,197 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.apache.jena.tdb2.TDB2Factory;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import eu.europa.ec.eurostat.los.hc55.BatchConverter.Artifact;
+import eu.europa.ec.eurostat.los.hc55.ConversionMetrics.Stage;
+
+/**
+ * The <code>TDB2Loader</code> class loads converted artifacts into a Jena TDB2 dataset, each artifact in the named graph given by its URI.
+ * Artifacts are written in batched write transactions: a transaction is committed once it contains a given number of triples,
+ * always at an artifact boundary so that the replacement of a graph is atomic. When an artifact is converted again, its named graph
+ * is emptied and filled in the same transaction, so that SPARQL queries on the dataset see either the old or the new version.
+ * Graphs can also be loaded from RDF Thrift files written by the converters.
+ *
+ * @author Franck
+ */
+public class TDB2Loader implements AutoCloseable {
+
+	private static Logger logger = LogManager.getLogger(TDB2Loader.class);
+
+	/** Default number of triples written before a transaction is committed */
+	public static final int DEFAULT_BATCH_SIZE = 100000;
+
+	/** Registry containing the artifacts to load */
+	private SDMXStructureRegistry registry = null;
+
+	/** The TDB2 dataset */
+	private Dataset dataset = null;
+
+	/** Number of triples after which the current transaction is committed */
+	private int batchSize = DEFAULT_BATCH_SIZE;
+
+	/**
+	 * Loads all the Census Hub artifacts into a TDB2 dataset.
+	 * The argument is the directory of the TDB2 database (default <code>target/tdb2</code>), which is created if necessary.
+	 */
+	public static void main(String[] args) throws Exception {
+
+		String location = (args.length > 0) ? args[0] : "target/tdb2";
+		SDMXStructureRegistry registry = SDMXStructureRegistry.load(Configuration.NON_GEO_CODELISTS, Configuration.CONCEPTS, Configuration.KEY_FAMILIES);
+		try (TDB2Loader loader = new TDB2Loader(registry, location)) {
+			int failures = loader.load(new BatchConverter(registry).listArtifacts());
+			if (failures > 0) logger.error(failures + " artifact(s) could not be loaded, see log for details");
+		}
+		logger.info(ConversionMetrics.getShared().getReport());
+	}
+
+	/**
+	 * Creates a loader writing into a TDB2 database with the default batch size.
+	 *
+	 * @param registry The registry containing the artifacts to load.
+	 * @param location The directory of the TDB2 database, created if necessary.
+	 */
+	public TDB2Loader(SDMXStructureRegistry registry, String location) {
+		this(registry, location, DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * Creates a loader writing into a TDB2 database.
+	 *
+	 * @param registry The registry containing the artifacts to load.
+	 * @param location The directory of the TDB2 database, created if necessary.
+	 * @param batchSize The number of triples after which a transaction is committed.
+	 */
+	public TDB2Loader(SDMXStructureRegistry registry, String location, int batchSize) {
+		this.registry = registry;
+		this.dataset = TDB2Factory.connectDataset(location);
+		this.batchSize = Math.max(1, batchSize);
+	}
+
+	/**
+	 * Converts artifacts and loads each of them into its named graph, replacing the previous content of the graph.
+	 * An artifact which cannot be converted is skipped and its graph is left unchanged.
+	 *
+	 * @param artifacts The artifacts to load.
+	 * @return The number of artifacts that could not be converted.
+	 */
+	public int load(List<Artifact> artifacts) {
+
+		logger.info("Loading " + artifacts.size() + " artifacts into TDB2 dataset");
+		DatasetGraph datasetGraph = dataset.asDatasetGraph();
+		ConversionMetrics metrics = ConversionMetrics.getShared();
+		int failures = 0;
+		long pendingTriples = 0;
+		long totalTriples = 0;
+
+		dataset.begin(ReadWrite.WRITE);
+		try {
+			for (Artifact artifact : artifacts) {
+				// The artifact is converted before touching the dataset, so that a conversion error does not leave a partial graph
+				Graph graph = GraphFactory.createDefaultGraph();
+				try {
+					if (!artifact.convert(registry, StreamRDFLib.graph(graph))) throw new IllegalStateException("No output produced for " + artifact);
+				} catch (Exception e) {
+					logger.error("Conversion of " + artifact + " failed", e);
+					failures++;
+					continue;
+				}
+
+				long start = System.nanoTime();
+				Node graphName = NodeFactory.createURI(artifact.getGraphURI());
+				datasetGraph.deleteAny(graphName, Node.ANY, Node.ANY, Node.ANY);
+				ExtendedIterator<Triple> triples = graph.find(Node.ANY, Node.ANY, Node.ANY);
+				while (triples.hasNext()) {
+					Triple triple = triples.next();
+					datasetGraph.add(graphName, triple.getSubject(), triple.getPredicate(), triple.getObject());
+				}
+				datasetGraph.getDefaultGraph().getPrefixMapping().setNsPrefixes(graph.getPrefixMapping());
+				metrics.record(Stage.WRITE, artifact.toString(), start);
+				if (logger.isDebugEnabled()) logger.debug(graph.size() + " triples loaded in graph " + graphName.getURI());
+
+				pendingTriples += graph.size();
+				if (pendingTriples >= batchSize) {
+					start = System.nanoTime();
+					dataset.commit();
+					metrics.record(Stage.WRITE, null, start);
+					totalTriples += pendingTriples;
+					logger.info(totalTriples + " triples committed");
+					pendingTriples = 0;
+					dataset.begin(ReadWrite.WRITE);
+				}
+			}
+			long start = System.nanoTime();
+			dataset.commit();
+			metrics.record(Stage.WRITE, null, start);
+			totalTriples += pendingTriples;
+		} finally {
+			if (dataset.isInTransaction()) dataset.abort();
+		}
+		logger.info("Load into TDB2 dataset finished, " + totalTriples + " triples in " + (artifacts.size() - failures) + " graphs");
+		return failures;
+	}
+
+	/**
+	 * Loads a RDF Thrift file written by the converters into a named graph, replacing the previous content of the graph in a single transaction.
+	 * The file is streamed into the dataset without building an intermediate model.
+	 *
+	 * @param fileName The name of the RDF Thrift file, compressed with gzip if the name ends with <code>.gz</code>.
+	 * @param graphURI The URI of the named graph.
+	 * @return The number of triples loaded.
+	 * @throws IOException In case of problem reading the file.
+	 */
+	public long loadFile(String fileName, String graphURI) throws IOException {
+
+		DatasetGraph datasetGraph = dataset.asDatasetGraph();
+		Node graphName = NodeFactory.createURI(graphURI);
+		long[] count = new long[1];
+
+		dataset.begin(ReadWrite.WRITE);
+		try {
+			datasetGraph.deleteAny(graphName, Node.ANY, Node.ANY, Node.ANY);
+			ThriftLoader.load(fileName, new StreamRDFBase() {
+				@Override
+				public void triple(Triple triple) {
+					datasetGraph.add(graphName, triple.getSubject(), triple.getPredicate(), triple.getObject());
+					count[0]++;
+				}
+
+				@Override
+				public void prefix(String prefix, String iri) {
+					datasetGraph.getDefaultGraph().getPrefixMapping().setNsPrefix(prefix, iri);
+				}
+			});
+			long start = System.nanoTime();
+			dataset.commit();
+			ConversionMetrics.getShared().record(Stage.WRITE, null, start);
+		} finally {
+			if (dataset.isInTransaction()) dataset.abort();
+		}
+		logger.info(count[0] + " triples loaded from " + fileName + " in graph " + graphURI);
+		return count[0];
+	}
+
+	/**
+	 * Releases the TDB2 dataset.
+	 */
+	@Override
+	public void close() {
+		dataset.close();
+	}
+}
@@ -0,0 +1,80 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.apache.jena.riot.thrift.BinRDF;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import eu.europa.ec.eurostat.los.hc55.ConversionMetrics.Stage;
+
+/**
+ * The <code>ThriftLoader</code> class reads back the RDF Thrift files written by the converters (see <code>RDFStreamOutput</code>).
+ * The binary encoding avoids the tokenization and IRI resolution done by the Turtle and N-Triples parsers, so models and stores are
+ * rebuilt several times faster than from the text serializations.
+ *
+ * @author Franck
+ */
+public class ThriftLoader {
+
+	private static Logger logger = LogManager.getLogger(ThriftLoader.class);
+
+	/**
+	 * Reads a RDF Thrift file. Arguments are the file name and optionally the location of a TDB2 database and the URI of the graph
+	 * where the triples are loaded; without them, the file is only read into a model.
+	 */
+	public static void main(String[] args) throws Exception {
+
+		long start = System.nanoTime();
+		if (args.length > 2) {
+			try (TDB2Loader loader = new TDB2Loader(null, args[1])) {
+				System.out.println(loader.loadFile(args[0], args[2]) + " triples loaded into graph " + args[2]);
+			}
+		} else System.out.println(loadModel(args[0]).size() + " triples read");
+		System.out.println("Load time: " + (System.nanoTime() - start) / 1000000 + " ms");
+	}
+
+	/**
+	 * Reads a RDF Thrift file into a new model.
+	 *
+	 * @param fileName The name of the file, compressed with gzip if the name ends with <code>.gz</code>.
+	 * @return The model containing the triples and prefixes of the file.
+	 * @throws IOException In case of problem reading the file.
+	 */
+	public static Model loadModel(String fileName) throws IOException {
+
+		Model model = ModelFactory.createDefaultModel();
+		load(fileName, StreamRDFLib.graph(model.getGraph()));
+		return model;
+	}
+
+	/**
+	 * Reads a RDF Thrift file and sends its content to a stream.
+	 * Unlike the converters, the loader calls the <code>start</code> and <code>finish</code> methods of the stream.
+	 *
+	 * @param fileName The name of the file, compressed with gzip if the name ends with <code>.gz</code>.
+	 * @param output The stream receiving the triples and prefixes.
+	 * @throws IOException In case of problem reading the file.
+	 */
+	public static void load(String fileName, StreamRDF output) throws IOException {
+
+		logger.info("Loading RDF Thrift file " + fileName);
+		long start = System.nanoTime();
+		InputStream input = new BufferedInputStream(new FileInputStream(fileName), 1 << 16);
+		try {
+			if (fileName.endsWith(".gz")) input = new GZIPInputStream(input, 1 << 16);
+			BinRDF.inputStreamToStream(input, output);
+		} finally {
+			input.close();
+		}
+		ConversionMetrics.getShared().record(Stage.PARSE, null, start);
+	}
+}
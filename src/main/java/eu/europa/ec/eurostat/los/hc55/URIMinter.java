@@ -0,0 +1,236 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The <code>URIMinter</code> class computes the URIs of the converted resources.
+ * URIs of codes, concepts and components are memoized in bounded caches indexed by (parent identifier, identifier), so that the URIs
+ * of codes which are referenced several times (as code and as parent code for example) are computed only once.
+ * A single shared instance is used by the <code>Configuration</code> naming methods and is safe for use by concurrent conversions.
+ * Resources which have no identifier of their own, like the Data Cube component specifications, get skolem IRIs derived from a key, so
+ * that every conversion and every load of the same structure gives them the same IRI.
+ *
+ * @author Franck
+ */
+public class URIMinter {
+
+	/** Default maximum number of URIs kept in each cache */
+	public static final int DEFAULT_CACHE_SIZE = 100000;
+
+	/** Prefix of the skolem IRIs, see RDF 1.1 Concepts section 3.5 */
+	public static final String SKOLEM_PREFIX = URI.create(Configuration.BASE_URI).resolve("/.well-known/genid/").toString();
+
+	private static final URIMinter shared = new URIMinter(DEFAULT_CACHE_SIZE);
+
+	private final PairCache codeURIs;
+	private final PairCache conceptURIs;
+	private final PairCache componentURIs;
+
+	/**
+	 * Returns the minter shared by the converters.
+	 *
+	 * @return The shared <code>URIMinter</code> instance.
+	 */
+	public static URIMinter getShared() {
+		return shared;
+	}
+
+	/**
+	 * Creates a minter with caches of a given size.
+	 *
+	 * @param cacheSize The maximum number of URIs kept in each cache.
+	 */
+	public URIMinter(int cacheSize) {
+		codeURIs = new PairCache(Configuration.BASE_URI + "codes/", cacheSize);
+		conceptURIs = new PairCache(Configuration.BASE_URI + "concepts/", cacheSize);
+		componentURIs = new PairCache(Configuration.BASE_URI + "structure/", cacheSize);
+	}
+
+	public String codeURI(String codeListId, String codeId) {
+		return codeURIs.get(codeListId, codeId);
+	}
+
+	public String conceptURI(String conceptSchemeId, String conceptId) {
+		return conceptURIs.get(conceptSchemeId, conceptId);
+	}
+
+	public String componentURI(String componentId, String componentType) {
+		return componentURIs.get(componentType, componentId);
+	}
+
+	public String codeListURI(String codeListId) {
+		return codeURIs.getPrefix(codeListId) + "list";
+	}
+
+	public String conceptSchemeURI(String conceptSchemeId) {
+		return conceptURIs.getPrefix(conceptSchemeId) + "scheme";
+	}
+
+	public String dsdURI(String dsdId) {
+		return componentURIs.getPrefix("dsd") + componentName(dsdId);
+	}
+
+	public String dataSetURI(String dataSetId) {
+		return Configuration.BASE_URI + "data/" + componentName(dataSetId);
+	}
+
+	public String sliceKeyURI(String dsdId, String sliceKeyId) {
+		return dsdURI(dsdId) + "/" + componentName(sliceKeyId);
+	}
+
+	public String sliceURI(String dataSetId, String sliceKeyId, String sliceId) {
+		return dataSetURI(dataSetId) + "/" + componentName(sliceKeyId) + "/" + sliceId;
+	}
+
+	/**
+	 * Returns the IRI of a component specification, derived from its DSD and from its component property.
+	 *
+	 * @param dsdURI The URI of the DSD referencing the component specification.
+	 * @param componentPropertyURI The URI of the component property of the specification.
+	 * @return The skolem IRI of the component specification.
+	 */
+	public String componentSpecificationURI(String dsdURI, String componentPropertyURI) {
+		return skolemURI(dsdURI + " " + componentPropertyURI);
+	}
+
+	/**
+	 * Returns the skolem IRI corresponding to a key: the prefix followed by the name-based UUID of the key.
+	 *
+	 * @param key The key identifying the resource.
+	 * @return The skolem IRI.
+	 */
+	public static String skolemURI(String key) {
+		return SKOLEM_PREFIX + UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Appends a value to a URI being built, the characters other than letters, digits, <code>-</code>, <code>_</code> and <code>~</code>
+	 * being percent-encoded, so that the URI is valid and that values containing the separators (dots or slashes) give distinct URIs.
+	 *
+	 * @param uri The URI being built.
+	 * @param value The value to append.
+	 * @return The URI being built.
+	 */
+	public static StringBuilder appendEncoded(StringBuilder uri, String value) {
+
+		for (byte character : value.getBytes(StandardCharsets.UTF_8)) {
+			if (((character >= 'a') && (character <= 'z')) || ((character >= 'A') && (character <= 'Z')) || ((character >= '0') && (character <= '9'))
+					|| (character == '-') || (character == '_') || (character == '~')) uri.append((char) character);
+			else uri.append('%').append(Character.toUpperCase(Character.forDigit((character >> 4) & 0xF, 16))).append(Character.toUpperCase(Character.forDigit(character & 0xF, 16)));
+		}
+		return uri;
+	}
+
+	/**
+	 * Computes the name of a DSD component property from the name of the associated SDMX concept.
+	 * For example: OBS_STATUS -> obsStatus
+	 * The terms separated by underscores are lower-cased and capitalized, then the first letter is lower-cased unless the first two letters are upper case.
+	 *
+	 * @param sdmxConceptId The name of the SDMX concept associated to the component.
+	 * @return The name of the DSD component property.
+	 */
+	public static String componentName(String sdmxConceptId) {
+
+		char[] name = new char[sdmxConceptId.length()];
+		int length = appendComponentName(sdmxConceptId, name, 0);
+		return new String(name, 0, length);
+	}
+
+	/**
+	 * Writes the component name corresponding to an SDMX identifier into a character array.
+	 *
+	 * @param sdmxId The SDMX identifier.
+	 * @param buffer The array receiving the name, with at least <code>sdmxId.length()</code> free characters after <code>offset</code>.
+	 * @param offset The position where the name starts in the array.
+	 * @return The position following the last character of the name.
+	 */
+	static int appendComponentName(String sdmxId, char[] buffer, int offset) {
+
+		int position = offset;
+		boolean termStart = true;
+		for (int index = 0; index < sdmxId.length(); index++) {
+			char character = sdmxId.charAt(index);
+			if (character == '_') {
+				termStart = true;
+				continue;
+			}
+			buffer[position++] = termStart ? Character.toUpperCase(character) : Character.toLowerCase(character);
+			termStart = false;
+		}
+		// Same rule as java.beans.Introspector.decapitalize: names starting with two capitals (like YLt15) are left unchanged
+		int length = position - offset;
+		if ((length > 0) && !((length > 1) && Character.isUpperCase(buffer[offset]) && Character.isUpperCase(buffer[offset + 1]))) {
+			buffer[offset] = Character.toLowerCase(buffer[offset]);
+		}
+		return position;
+	}
+
+	/**
+	 * Two-level cache of URIs of the form base + componentName(parent) + "/" + componentName(id).
+	 * When the number of cached URIs exceeds the maximum size, the whole cache is cleared: this keeps memory bounded without the cost
+	 * of maintaining an access order on every lookup.
+	 */
+	private static class PairCache {
+
+		private final String base;
+		private final int maxSize;
+		private final AtomicInteger size = new AtomicInteger();
+		private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+		PairCache(String base, int maxSize) {
+			this.base = base;
+			this.maxSize = maxSize;
+		}
+
+		String getPrefix(String parentId) {
+			return getEntry(parentId).prefix;
+		}
+
+		String get(String parentId, String id) {
+
+			Entry entry = getEntry(parentId);
+			String uri = entry.uris.get(id);
+			if (uri != null) return uri;
+
+			char[] buffer = new char[entry.prefix.length() + id.length()];
+			entry.prefix.getChars(0, entry.prefix.length(), buffer, 0);
+			uri = new String(buffer, 0, appendComponentName(id, buffer, entry.prefix.length()));
+			if (size.incrementAndGet() > maxSize) clear();
+			String previous = entry.uris.putIfAbsent(id, uri);
+			return (previous == null) ? uri : previous;
+		}
+
+		private Entry getEntry(String parentId) {
+
+			Entry entry = entries.get(parentId);
+			if (entry != null) return entry;
+			char[] buffer = new char[base.length() + parentId.length() + 1];
+			base.getChars(0, base.length(), buffer, 0);
+			int length = appendComponentName(parentId, buffer, base.length());
+			buffer[length++] = '/';
+			entry = new Entry(new String(buffer, 0, length));
+			Entry previous = entries.putIfAbsent(parentId, entry);
+			return (previous == null) ? entry : previous;
+		}
+
+		private void clear() {
+			entries.clear();
+			size.set(0);
+		}
+	}
+
+	/** URIs sharing the same parent, with their common prefix. */
+	private static class Entry {
+
+		final String prefix;
+		final ConcurrentHashMap<String, String> uris = new ConcurrentHashMap<String, String>();
+
+		Entry(String prefix) {
+			this.prefix = prefix;
+		}
+	}
+}
@@ -1,19 +1,17 @@
 package eu.europa.ec.eurostat.los.utils;
 
-import org.apache.jena.rdf.model.Model ;
-import org.apache.jena.rdf.model.ModelFactory ;
 import org.apache.jena.rdf.model.Property ;
 import org.apache.jena.rdf.model.Resource ;
+import org.apache.jena.rdf.model.ResourceFactory ;
 
 /**
  * Vocabulary definition for the 
  * <a href="https://www.w3.org/TR/vocab-data-cube/">W3C Data Cube Recommendation</a>.
  */
 public class DataCube {
-	/**
-	 * The RDF model that holds the Data Cube entities
+	/*
+	 * Terms are created with ResourceFactory rather than in a Model, so that loading the vocabulary does not initialize the whole of Jena
 	 */
-	private static final Model m = ModelFactory.createDefaultModel();
 	/**
 	 * The namespace of the Data Cube vocabulary as a string
 	 */
@@ -28,50 +26,50 @@ public class DataCube {
 	/**
 	 * The namespace of the Data Cube vocabulary
 	 */
-	public static final Resource NAMESPACE = m.createResource(uri);
+	public static final Resource NAMESPACE = ResourceFactory.createResource(uri);
 	/* ##########################################################
 	 * Defines Data Cube Classes
 	   ########################################################## */
-	public static final Resource Attachable = m.createResource(uri + "Attachable");
-	public static final Resource AttributeProperty = m.createResource(uri + "AttributeProperty");
-	public static final Resource CodedProperty = m.createResource(uri + "CodedProperty");
-	public static final Resource ComponentProperty = m.createResource(uri + "ComponentProperty");
-	public static final Resource ComponentSet = m.createResource(uri + "ComponentSet");
-	public static final Resource ComponentSpecification = m.createResource(uri + "ComponentSpecification");
-	public static final Resource DataSet = m.createResource(uri + "DataSet");
-	public static final Resource DataStructureDefinition = m.createResource(uri + "DataStructureDefinition");
-	public static final Resource DimensionProperty = m.createResource(uri + "DimensionProperty");
-	public static final Resource HierarchicalCodeList = m.createResource(uri + "HierarchicalCodeList");
-	public static final Resource MeasureProperty = m.createResource(uri + "MeasureProperty");
-	public static final Resource Observation = m.createResource(uri + "Observation");
-	public static final Resource Slice = m.createResource(uri + "Slice");
-	public static final Resource ObservationGroup = m.createResource(uri + "ObservationGroup");
-	public static final Resource SliceKey = m.createResource(uri + "SliceKey");
+	public static final Resource Attachable = ResourceFactory.createResource(uri + "Attachable");
+	public static final Resource AttributeProperty = ResourceFactory.createResource(uri + "AttributeProperty");
+	public static final Resource CodedProperty = ResourceFactory.createResource(uri + "CodedProperty");
+	public static final Resource ComponentProperty = ResourceFactory.createResource(uri + "ComponentProperty");
+	public static final Resource ComponentSet = ResourceFactory.createResource(uri + "ComponentSet");
+	public static final Resource ComponentSpecification = ResourceFactory.createResource(uri + "ComponentSpecification");
+	public static final Resource DataSet = ResourceFactory.createResource(uri + "DataSet");
+	public static final Resource DataStructureDefinition = ResourceFactory.createResource(uri + "DataStructureDefinition");
+	public static final Resource DimensionProperty = ResourceFactory.createResource(uri + "DimensionProperty");
+	public static final Resource HierarchicalCodeList = ResourceFactory.createResource(uri + "HierarchicalCodeList");
+	public static final Resource MeasureProperty = ResourceFactory.createResource(uri + "MeasureProperty");
+	public static final Resource Observation = ResourceFactory.createResource(uri + "Observation");
+	public static final Resource Slice = ResourceFactory.createResource(uri + "Slice");
+	public static final Resource ObservationGroup = ResourceFactory.createResource(uri + "ObservationGroup");
+	public static final Resource SliceKey = ResourceFactory.createResource(uri + "SliceKey");
 	/* ##########################################################
 	 * Defines Data Cube Properties
 	   ########################################################## */
 
 	// Data properties
-	public static final Property componentRequired = m.createProperty(uri + "componentRequired");
-	public static final Property order = m.createProperty(uri + "order");
+	public static final Property componentRequired = ResourceFactory.createProperty(uri + "componentRequired");
+	public static final Property order = ResourceFactory.createProperty(uri + "order");
 	// Object properties
-	public static final Property attribute = m.createProperty(uri + "attribute");
-	public static final Property codeList = m.createProperty(uri + "codeList");
-	public static final Property component = m.createProperty(uri + "component");
-	public static final Property componentAttachment = m.createProperty(uri + "componentAttachment");
-	public static final Property componentProperty = m.createProperty(uri + "componentProperty");
-	public static final Property concept = m.createProperty(uri + "concept");
-	public static final Property dataSet = m.createProperty(uri + "dataSet");
-	public static final Property dimension = m.createProperty(uri + "dimension");
-	public static final Property hierarchyRoot = m.createProperty(uri + "hierarchyRoot");
-	public static final Property measure = m.createProperty(uri + "measure");
-	public static final Property measureDimension = m.createProperty(uri + "measureDimension");
-	public static final Property measureType = m.createProperty(uri + "measureType");
-	public static final Property observation = m.createProperty(uri + "observation");
-	public static final Property observationGroup = m.createProperty(uri + "observationGroup");
-	public static final Property parentChildProperty = m.createProperty(uri + "parentChildProperty");
-	public static final Property slice = m.createProperty(uri + "slice");
-	public static final Property sliceKey = m.createProperty(uri + "sliceKey");
-	public static final Property sliceStructure = m.createProperty(uri + "sliceStructure");
-	public static final Property structure = m.createProperty(uri + "structure");
+	public static final Property attribute = ResourceFactory.createProperty(uri + "attribute");
+	public static final Property codeList = ResourceFactory.createProperty(uri + "codeList");
+	public static final Property component = ResourceFactory.createProperty(uri + "component");
+	public static final Property componentAttachment = ResourceFactory.createProperty(uri + "componentAttachment");
+	public static final Property componentProperty = ResourceFactory.createProperty(uri + "componentProperty");
+	public static final Property concept = ResourceFactory.createProperty(uri + "concept");
+	public static final Property dataSet = ResourceFactory.createProperty(uri + "dataSet");
+	public static final Property dimension = ResourceFactory.createProperty(uri + "dimension");
+	public static final Property hierarchyRoot = ResourceFactory.createProperty(uri + "hierarchyRoot");
+	public static final Property measure = ResourceFactory.createProperty(uri + "measure");
+	public static final Property measureDimension = ResourceFactory.createProperty(uri + "measureDimension");
+	public static final Property measureType = ResourceFactory.createProperty(uri + "measureType");
+	public static final Property observation = ResourceFactory.createProperty(uri + "observation");
+	public static final Property observationGroup = ResourceFactory.createProperty(uri + "observationGroup");
+	public static final Property parentChildProperty = ResourceFactory.createProperty(uri + "parentChildProperty");
+	public static final Property slice = ResourceFactory.createProperty(uri + "slice");
+	public static final Property sliceKey = ResourceFactory.createProperty(uri + "sliceKey");
+	public static final Property sliceStructure = ResourceFactory.createProperty(uri + "sliceStructure");
+	public static final Property structure = ResourceFactory.createProperty(uri + "structure");
 }
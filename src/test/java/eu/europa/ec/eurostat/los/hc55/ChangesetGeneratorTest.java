@@ -0,0 +1,90 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import static eu.europa.ec.eurostat.los.hc55.SortedTriplesTest.triple;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import eu.europa.ec.eurostat.los.hc55.ChangesetGenerator.Format;
+
+/**
+ * Tests the changesets computed by the <code>ChangesetGenerator</code> from sorted triples spilled in several runs.
+ *
+ * @author Franck
+ */
+public class ChangesetGeneratorTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void testRDFPatch() throws Exception {
+
+		String expected = "TX .\n"
+				+ "D <http://example.org/a> <http://example.org/p> <http://example.org/o> .\n"
+				+ "A <http://example.org/c> <http://example.org/p> <http://example.org/o> .\n"
+				+ "A <http://example.org/d> <http://example.org/p> <http://example.org/o> .\n"
+				+ "D <http://example.org/f> <http://example.org/p> <http://example.org/o> .\n"
+				+ "TC .\n";
+		assertEquals(expected, changeset(Format.RDF_PATCH, null, 4));
+	}
+
+	@Test
+	public void testSPARQLUpdate() throws Exception {
+
+		String expected = "DELETE DATA {\n"
+				+ "  GRAPH <http://example.org/graph> {\n"
+				+ "    <http://example.org/a> <http://example.org/p> <http://example.org/o> .\n"
+				+ "  }\n"
+				+ "} ;\n"
+				+ "INSERT DATA {\n"
+				+ "  GRAPH <http://example.org/graph> {\n"
+				+ "    <http://example.org/c> <http://example.org/p> <http://example.org/o> .\n"
+				+ "    <http://example.org/d> <http://example.org/p> <http://example.org/o> .\n"
+				+ "  }\n"
+				+ "} ;\n"
+				+ "DELETE DATA {\n"
+				+ "  GRAPH <http://example.org/graph> {\n"
+				+ "    <http://example.org/f> <http://example.org/p> <http://example.org/o> .\n"
+				+ "  }\n"
+				+ "}\n";
+		assertEquals(expected, changeset(Format.SPARQL_UPDATE, "http://example.org/graph", 4));
+	}
+
+	@Test
+	public void testNoChange() throws Exception {
+		assertEquals("TX .\nTC .\n", changeset(Format.RDF_PATCH, null, 0));
+	}
+
+	/**
+	 * Computes the changeset from {a, b, e, f} to {b, c, d, e} plus a number of unchanged triples, the triples being added in reverse
+	 * order and twice, with runs of two lines.
+	 */
+	private String changeset(Format format, String graphURI, int expectedChanges) throws Exception {
+
+		File directory = temporaryFolder.newFolder();
+		SortedTriples previous = new SortedTriples(2, directory);
+		SortedTriples current = new SortedTriples(2, directory);
+		String[] previousSubjects = (expectedChanges == 0) ? new String[] {"b", "e"} : new String[] {"f", "e", "b", "a"};
+		String[] currentSubjects = (expectedChanges == 0) ? new String[] {"e", "b"} : new String[] {"e", "d", "c", "b"};
+		for (int pass = 0; pass < 2; pass++) {
+			for (String subject : previousSubjects) previous.triple(triple(subject, "p", "o"));
+			for (String subject : currentSubjects) current.triple(triple(subject, "p", "o"));
+		}
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try {
+			assertEquals(expectedChanges, new ChangesetGenerator(format, graphURI).write(previous, current, output));
+		} finally {
+			previous.close();
+			current.close();
+		}
+		return new String(output.toByteArray(), StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,115 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the lookups, scans and export of the <code>CubeStore</code> on the training key family.
+ *
+ * @author Franck
+ */
+public class CubeStoreTest {
+
+	/** Compact message with a third series, a value whose lexical form differs from the number and an observation without sex */
+	private static final String MESSAGE = SDMXDataReaderTest.COMPACT_MESSAGE.replace("</training:DataSet>",
+			"<training:Series SEX=\"T\"><training:Obs TIME=\"2011\" OBS_VALUE=\"23.50\"/><training:Obs TIME=\"2012\" OBS_VALUE=\":\"/></training:Series>\n"
+			+ "<training:Series><training:Obs TIME=\"2011\" OBS_VALUE=\"1\"/></training:Series>\n"
+			+ "</training:DataSet>");
+
+	private static SDMXStructureRegistry registry = null;
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private CubeStore store = null;
+
+	@BeforeClass
+	public static void loadRegistry() throws Exception {
+		registry = SDMXStructureRegistry.load("src/cli/codelists.xml", "src/cli/concepts.xml", "src/cli/keyfamilies.xml");
+	}
+
+	@Before
+	public void loadStore() throws Exception {
+
+		File dataFile = temporaryFolder.newFile("data.xml");
+		Files.write(dataFile.toPath(), MESSAGE.getBytes(StandardCharsets.UTF_8));
+		store = new CubeStore(new DataStructure(registry, "TRAINING"));
+		assertEquals(5, store.load(dataFile.getPath()));
+	}
+
+	@Test
+	public void testFind() {
+
+		assertEquals(5, store.size());
+		int row = store.find("F", "2012");
+		assertEquals("F", store.getDimensionValue(row, 0));
+		assertEquals("2012", store.getDimensionValue(row, 1));
+		assertEquals(13.0, store.getValue(row), 0.0);
+		assertEquals("13", store.getLexicalValue(row));
+		assertEquals("23.50", store.getLexicalValue(store.find("T", "2011")));
+		assertEquals(":", store.getLexicalValue(store.find("T", "2012")));
+		assertTrue(Double.isNaN(store.getValue(store.find("T", "2012"))));
+		assertEquals(-1, store.find("M", "2012"));
+		assertEquals(-1, store.find("X", "2011"));
+	}
+
+	@Test
+	public void testReplace() {
+
+		int row = store.find("M", "2011");
+		assertEquals(row, store.add(new String[] {"M", "2011"}, "11.0", new String[0]));
+		assertEquals(5, store.size());
+		assertEquals("11.0", store.getLexicalValue(row));
+		int added = store.add(new String[] {"M", "2012"}, 12, new String[0]);
+		assertEquals(6, store.size());
+		assertEquals(added, store.find("M", "2012"));
+		assertArrayEquals(new int[] {added}, scan("M", "2012"));
+	}
+
+	@Test
+	public void testScan() {
+
+		assertArrayEquals(new int[] {store.find("F", "2011"), store.find("M", "2011"), store.find("T", "2011")}, scan(null, "2011"));
+		assertArrayEquals(new int[] {store.find("F", "2011"), store.find("F", "2012")}, scan("F", null));
+		assertArrayEquals(new int[] {store.find("T", "2012")}, scan("T", "2012"));
+		assertEquals(5, scan(null, null).length);
+		assertEquals(0, scan("M", "2012").length);
+		assertEquals(0, scan("X", null).length);
+	}
+
+	@Test
+	public void testExport() throws Exception {
+
+		Graph exported = GraphFactory.createDefaultGraph();
+		store.export(StreamRDFLib.graph(exported));
+		Graph converted = GraphFactory.createDefaultGraph();
+		new ObservationConverter(registry, "TRAINING", 2).convert(new ByteArrayInputStream(MESSAGE.getBytes(StandardCharsets.UTF_8)), StreamRDFLib.graph(converted));
+		assertEquals(converted.size(), exported.size());
+		assertTrue(converted.isIsomorphicWith(exported));
+	}
+
+	private int[] scan(String... partialKey) {
+
+		List<Integer> rows = new ArrayList<Integer>();
+		int count = store.scan(partialKey, rows::add);
+		assertEquals(rows.size(), count);
+		return rows.stream().mapToInt(Integer::intValue).toArray();
+	}
+}
@@ -0,0 +1,256 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the <code>DataCubeValidator</code> on converted data, and on a small fixture which satisfies all the constraints and is modified
+ * to violate each constraint in turn.
+ *
+ * @author Franck
+ */
+public class DataCubeValidatorTest {
+
+	private static final String PREFIXES = "@prefix qb: <http://purl.org/linked-data/cube#> .\n"
+			+ "@prefix skos: <http://www.w3.org/2004/02/skos/core#> .\n"
+			+ "@prefix owl: <http://www.w3.org/2002/07/owl#> .\n"
+			+ "@prefix rdfs: <http://www.w3.org/2000/01/rdf-schema#> .\n"
+			+ "@prefix ex: <http://example.org/> .\n";
+
+	/** Structure of the fixture, one statement per line so that each line can be modified */
+	private static final String STRUCTURE = PREFIXES
+			+ "ex:dsd a qb:DataStructureDefinition ; qb:sliceKey ex:key .\n"
+			+ "ex:dsd qb:component ex:geoSpec, ex:timeSpec, ex:attributeSpec .\n"
+			+ "ex:dsd qb:component ex:measureSpec .\n"
+			+ "ex:geoSpec qb:dimension ex:geo .\n"
+			+ "ex:timeSpec qb:dimension ex:time .\n"
+			+ "ex:measureSpec qb:measure ex:value .\n"
+			+ "ex:attributeSpec qb:attribute ex:status ; qb:componentRequired true .\n"
+			+ "ex:geo a qb:DimensionProperty, qb:CodedProperty ; rdfs:range skos:Concept .\n"
+			+ "ex:geo qb:codeList ex:geoList .\n"
+			+ "ex:time a qb:DimensionProperty ; rdfs:range rdfs:Literal .\n"
+			+ "ex:value a qb:MeasureProperty .\n"
+			+ "ex:status a qb:AttributeProperty .\n"
+			+ "ex:key a qb:SliceKey ; qb:componentProperty ex:geo .\n"
+			+ "ex:geoList a skos:ConceptScheme, qb:HierarchicalCodeList ; qb:hierarchyRoot ex:EU .\n"
+			+ "ex:geoList qb:parentChildProperty skos:narrower .\n"
+			+ "ex:EU skos:inScheme ex:geoList .\n"
+			+ "ex:EU skos:narrower ex:BE .\n"
+			+ "ex:BE skos:inScheme ex:geoList ; skos:broader ex:EU .\n"
+			+ "ex:FR skos:inScheme ex:geoList .\n";
+
+	/** Data of the fixture: a data set with two observations in one slice, and another data set with an observation of the same key */
+	private static final String DATA = PREFIXES
+			+ "ex:ds a qb:DataSet ; qb:structure ex:dsd .\n"
+			+ "ex:ds qb:slice ex:slice .\n"
+			+ "ex:ds2 a qb:DataSet ; qb:structure ex:dsd .\n"
+			+ "ex:slice a qb:Slice ; qb:observation ex:o1, ex:o2 .\n"
+			+ "ex:slice qb:sliceStructure ex:key .\n"
+			+ "ex:slice ex:geo ex:BE .\n"
+			+ "ex:o1 a qb:Observation ; ex:geo ex:BE ; ex:time \"2011\" ; ex:value 1 .\n"
+			+ "ex:o1 qb:dataSet ex:ds .\n"
+			+ "ex:o1 ex:status \"A\" .\n"
+			+ "ex:o2 a qb:Observation ; qb:dataSet ex:ds ; ex:geo ex:BE ; ex:value 2 ; ex:status \"A\" .\n"
+			+ "ex:o2 ex:time \"2012\" .\n"
+			+ "ex:o3 a qb:Observation ; qb:dataSet ex:ds2 ; ex:geo ex:BE ; ex:time \"2011\" ; ex:value 3 ; ex:status \"A\" .\n";
+
+	private static SDMXStructureRegistry registry = null;
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@BeforeClass
+	public static void loadRegistry() throws Exception {
+		registry = SDMXStructureRegistry.load("src/cli/codelists.xml", "src/cli/concepts.xml", "src/cli/keyfamilies.xml");
+	}
+
+	/**
+	 * The DSD, code list, observations and slices produced by the converters satisfy all the constraints.
+	 */
+	@Test
+	public void testConvertedData() throws Exception {
+
+		Graph structure = GraphFactory.createDefaultGraph();
+		StreamRDF structureStream = StreamRDFLib.graph(structure);
+		new DSDConverter(registry).convertDSD("TRAINING", new ArrayList<String>(), structureStream);
+		new CodeListConverter(registry).convertCodeList("CL_SEX", structureStream, new HierarchyIndex("CL_SEX"));
+
+		Graph data = GraphFactory.createDefaultGraph();
+		byte[] message = SDMXDataReaderTest.GENERIC_MESSAGE.getBytes(StandardCharsets.UTF_8);
+		new ObservationConverter(registry, "TRAINING", 2).convert(new ByteArrayInputStream(message), StreamRDFLib.graph(data));
+		File dataFile = temporaryFolder.newFile("data.xml");
+		Files.write(dataFile.toPath(), message);
+		new SliceGenerator(new DataStructure(registry, "TRAINING"), Arrays.asList("SEX")).generate(dataFile.getPath(), StreamRDFLib.graph(data));
+
+		DataCubeValidator validator = new DataCubeValidator(structure, violation -> {});
+		assertEquals(0, validator.validateStructure());
+		stream(validator, data);
+		assertEquals("{}", validator.getViolationCounts().toString());
+	}
+
+	@Test
+	public void testFixture() {
+		assertEquals("{}", validate(STRUCTURE, DATA).toString());
+	}
+
+	@Test
+	public void testIC1() {
+		// ex:o3 is not in a slice, which would violate IC-18 as well
+		assertViolation("IC-1", STRUCTURE, DATA.replace("ex:o3 a qb:Observation ; qb:dataSet ex:ds2 ;", "ex:o3 a qb:Observation ; qb:dataSet ex:ds2, ex:other ;"));
+		assertViolation("IC-1", STRUCTURE, DATA.replace("ex:o3 a qb:Observation ; qb:dataSet ex:ds2 ;", "ex:o3 a qb:Observation ;"));
+	}
+
+	@Test
+	public void testIC2() {
+		assertViolation("IC-2", STRUCTURE, DATA.replace("ex:ds qb:slice ex:slice .", "ex:ds qb:slice ex:slice ; qb:structure ex:other ."));
+	}
+
+	@Test
+	public void testIC3() {
+		assertViolation("IC-3", STRUCTURE.replace("ex:dsd qb:component ex:measureSpec .", ""), DATA);
+	}
+
+	@Test
+	public void testIC4() {
+		assertViolation("IC-4", STRUCTURE.replace("ex:time a qb:DimensionProperty ; rdfs:range rdfs:Literal .", "ex:time a qb:DimensionProperty ."), DATA);
+	}
+
+	@Test
+	public void testIC5() {
+		assertViolation("IC-5", STRUCTURE.replace("ex:geo qb:codeList ex:geoList .", ""), DATA);
+	}
+
+	@Test
+	public void testIC6() {
+		assertViolation("IC-6", STRUCTURE.replace("ex:measureSpec qb:measure ex:value .", "ex:measureSpec qb:measure ex:value ; qb:componentRequired false ."), DATA);
+	}
+
+	@Test
+	public void testIC7() {
+		assertViolation("IC-7", STRUCTURE.replace("ex:dsd a qb:DataStructureDefinition ; qb:sliceKey ex:key .", "ex:dsd a qb:DataStructureDefinition ."), DATA);
+	}
+
+	@Test
+	public void testIC8() {
+		// The slice has no value for the attribute added to the slice key either
+		Map<String, Long> violations = validate(STRUCTURE.replace("qb:componentProperty ex:geo .", "qb:componentProperty ex:geo, ex:status ."), DATA);
+		assertEquals(Long.valueOf(1), violations.get("IC-8"));
+		assertEquals(Long.valueOf(1), violations.get("IC-10"));
+	}
+
+	@Test
+	public void testIC9() {
+		assertViolation("IC-9", STRUCTURE, DATA.replace("ex:slice qb:sliceStructure ex:key .", ""));
+	}
+
+	@Test
+	public void testIC10() {
+		assertViolation("IC-10", STRUCTURE, DATA.replace("ex:slice ex:geo ex:BE .", ""));
+	}
+
+	@Test
+	public void testIC11() {
+		assertViolation("IC-11", STRUCTURE, DATA.replace("ex:o2 ex:time \"2012\" .", ""));
+	}
+
+	@Test
+	public void testIC12() {
+		// ex:o3 has the same key as ex:o1 in another data set, which is not a violation
+		assertViolation("IC-12", STRUCTURE, DATA.replace("ex:o2 ex:time \"2012\" .", "ex:o2 ex:time \"2011\" ."));
+	}
+
+	@Test
+	public void testIC13() {
+		assertViolation("IC-13", STRUCTURE, DATA.replace("ex:o1 ex:status \"A\" .", ""));
+	}
+
+	@Test
+	public void testIC14() {
+		assertViolation("IC-14", STRUCTURE, DATA.replace("ex:o2 a qb:Observation ; qb:dataSet ex:ds ; ex:geo ex:BE ; ex:value 2 ;", "ex:o2 a qb:Observation ; qb:dataSet ex:ds ; ex:geo ex:BE ;"));
+	}
+
+	@Test
+	public void testIC18() {
+		assertViolation("IC-18", STRUCTURE, DATA.replace("ex:o2 a qb:Observation ; qb:dataSet ex:ds ;", "ex:o2 a qb:Observation ; qb:dataSet ex:ds2 ;"));
+	}
+
+	@Test
+	public void testIC19() {
+		// ex:XX is neither in the scheme nor in the hierarchy
+		Map<String, Long> violations = validate(STRUCTURE, DATA.replace("ex:o2 ex:time \"2012\" .", "ex:o2 ex:time \"2012\" ; ex:geo ex:XX ."));
+		assertEquals(Long.valueOf(1), violations.get("IC-19"));
+		assertEquals(Long.valueOf(1), violations.get("IC-20"));
+	}
+
+	@Test
+	public void testIC20() {
+		// ex:FR is in the scheme but not reachable from the root
+		assertViolation("IC-20", STRUCTURE, DATA.replace("ex:o2 ex:time \"2012\" .", "ex:o2 ex:time \"2012\" ; ex:geo ex:FR ."));
+	}
+
+	@Test
+	public void testIC21() {
+
+		String structure = STRUCTURE.replace("ex:geoList qb:parentChildProperty skos:narrower .", "ex:geoList qb:parentChildProperty [ owl:inverseOf skos:broader ] .")
+				.replace("ex:EU skos:narrower ex:BE .", "");
+		assertEquals("{}", validate(structure, DATA).toString());
+		assertViolation("IC-21", structure, DATA.replace("ex:o2 ex:time \"2012\" .", "ex:o2 ex:time \"2012\" ; ex:geo ex:FR ."));
+	}
+
+	/**
+	 * Checks that a constraint is violated once, and that no other constraint is violated.
+	 */
+	private static void assertViolation(String constraint, String structure, String data) {
+		assertEquals("{" + constraint + "=1}", validate(structure, data).toString());
+	}
+
+	private static Map<String, Long> validate(String structure, String data) {
+
+		DataCubeValidator validator = new DataCubeValidator(parse(structure), violation -> {});
+		validator.validateStructure();
+		stream(validator, parse(data));
+		return validator.getViolationCounts();
+	}
+
+	private static Graph parse(String turtle) {
+
+		Graph graph = GraphFactory.createDefaultGraph();
+		RDFDataMgr.read(graph, new ByteArrayInputStream(turtle.getBytes(StandardCharsets.UTF_8)), Lang.TURTLE);
+		return graph;
+	}
+
+	/**
+	 * Sends the triples of a graph to the validator grouped by subject, as the validator requires.
+	 */
+	static void stream(DataCubeValidator validator, Graph data) {
+
+		List<Triple> triples = data.find(Node.ANY, Node.ANY, Node.ANY).toList();
+		triples.sort(Comparator.comparing(triple -> triple.getSubject().toString()));
+		StreamRDF stream = validator.stream();
+		stream.start();
+		for (Triple triple : triples) stream.triple(triple);
+		stream.finish();
+	}
+}
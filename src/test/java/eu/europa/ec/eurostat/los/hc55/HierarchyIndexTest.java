@@ -0,0 +1,144 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.jena.graph.Triple;
+import org.apache.jena.vocabulary.SKOS;
+import org.junit.Test;
+
+/**
+ * Tests the closures computed by the <code>HierarchyIndex</code> and its handling of unordered, dangling and cyclic parents.
+ *
+ * @author Franck
+ */
+public class HierarchyIndexTest {
+
+	@Test
+	public void testForwardReference() {
+
+		// Children are added before their parents
+		HierarchyIndex index = build("C", "B", "B", "A", "A", null);
+		assertEquals(3, index.size());
+		assertEquals(0, index.getDepth("A"));
+		assertEquals(1, index.getDepth("B"));
+		assertEquals(2, index.getDepth("C"));
+		assertEquals(Arrays.asList("B", "A"), index.ancestorsOf("C"));
+		assertEquals(Arrays.asList("C", "B"), index.descendantsOf("A"));
+		assertEquals(Collections.singletonList("A"), index.getRoots());
+		assertTrue(index.getDanglingParents().isEmpty());
+		assertTrue(index.getCycles().isEmpty());
+	}
+
+	@Test
+	public void testDescendants() {
+
+		HierarchyIndex index = build("A", null, "B", "A", "C", "A", "D", "B", "E", "D");
+		assertEquals(Arrays.asList("B", "C", "D", "E"), index.descendantsOf("A"));
+		assertEquals(Arrays.asList("D", "E"), index.descendantsOf("B"));
+		assertEquals(Collections.emptyList(), index.descendantsOf("C"));
+		assertEquals(Collections.emptyList(), index.descendantsOf("X"));
+		assertEquals(Arrays.asList("D", "B", "A"), index.ancestorsOf("E"));
+		assertEquals(Collections.emptyList(), index.ancestorsOf("A"));
+
+		// Closure arrays, identifiers being given in the order of addition
+		assertArrayEquals(new int[] {1, 2, 3, 4}, index.descendantIds(index.getId("A")));
+		assertArrayEquals(new int[] {3, 1, 0}, index.ancestorIds(index.getId("E")));
+		assertArrayEquals(new int[0], index.ancestorIds(index.getId("A")));
+	}
+
+	@Test
+	public void testIsAncestor() {
+
+		HierarchyIndex index = build("A", null, "B", "A", "C", "A", "D", "B", "E", "D");
+		assertTrue(index.isAncestor("A", "E"));
+		assertTrue(index.isAncestor("B", "E"));
+		assertTrue(index.isAncestor("D", "E"));
+		assertFalse(index.isAncestor("C", "E"));
+		assertFalse(index.isAncestor("E", "A"));
+		assertFalse(index.isAncestor("A", "A"));
+		assertFalse(index.isAncestor("C", "D"));
+		assertFalse(index.isAncestor("X", "E"));
+	}
+
+	@Test
+	public void testDanglingParent() {
+
+		HierarchyIndex index = build("X", "Z", "Y", "X");
+		assertEquals(2, index.size());
+		assertEquals(Collections.singletonMap("X", "Z"), index.getDanglingParents());
+		assertEquals(-1, index.getId("Z"));
+		assertEquals(-1, index.getDepth("Z"));
+		assertEquals(Collections.singletonList("X"), index.getRoots());
+		assertEquals(Collections.singletonList("X"), index.ancestorsOf("Y"));
+		assertEquals(Collections.emptyList(), index.descendantsOf("Z"));
+	}
+
+	@Test
+	public void testCycle() {
+
+		HierarchyIndex index = build("A", "B", "B", "A", "C", "A");
+		assertEquals(Collections.singletonList(Arrays.asList("A", "B")), index.getCycles());
+
+		// The last code reached in the cycle becomes a root
+		assertEquals(Collections.singletonList("B"), index.getRoots());
+		assertEquals(1, index.getDepth("A"));
+		assertEquals(2, index.getDepth("C"));
+		assertEquals(Arrays.asList("A", "B"), index.ancestorsOf("C"));
+		assertEquals(Arrays.asList("A", "C"), index.descendantsOf("B"));
+		assertFalse(index.isAncestor("A", "B"));
+	}
+
+	@Test
+	public void testFlatList() {
+
+		HierarchyIndex index = build("A", null, "B", null);
+		assertFalse(index.isHierarchical());
+		assertEquals(Arrays.asList("A", "B"), index.getRoots());
+		List<Triple> triples = new ArrayList<Triple>();
+		index.codeListTriples(triples::add);
+		assertTrue(triples.isEmpty());
+	}
+
+	@Test
+	public void testRegistryCodeList() throws Exception {
+
+		SDMXStructureRegistry registry = SDMXStructureRegistry.load("src/cli/codelists.xml", "src/cli/concepts.xml", "src/cli/keyfamilies.xml");
+		HierarchyIndex index = HierarchyIndex.load(registry, "CL_SEX");
+		assertTrue(index.isHierarchical());
+		assertEquals(Collections.singletonList("T"), index.getRoots());
+		assertTrue(index.isAncestor("T", "F"));
+		List<Triple> triples = new ArrayList<Triple>();
+		index.closureTriples(triples::add);
+		assertEquals(2, triples.stream().filter(triple -> triple.getPredicate().equals(SKOS.broaderTransitive.asNode())).count());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testAddAfterBuild() {
+		build("A", null).add("B", "A");
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testNotBuilt() {
+
+		HierarchyIndex index = new HierarchyIndex("CL_TEST");
+		index.add("A", null);
+		index.getDepth("A");
+	}
+
+	/** Builds an index from pairs of code and parent code values. */
+	private static HierarchyIndex build(String... codesAndParents) {
+
+		HierarchyIndex index = new HierarchyIndex("CL_TEST");
+		for (int position = 0; position < codesAndParents.length; position += 2) index.add(codesAndParents[position], codesAndParents[position + 1]);
+		index.build();
+		return index;
+	}
+}
@@ -0,0 +1,78 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.apache.jena.vocabulary.RDF;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import eu.europa.ec.eurostat.los.utils.DataCube;
+
+/**
+ * Tests the <code>ObservationConverter</code> on the training key family.
+ *
+ * @author Franck
+ */
+public class ObservationConverterTest {
+
+	private static SDMXStructureRegistry registry = null;
+
+	@BeforeClass
+	public static void loadRegistry() throws Exception {
+		registry = SDMXStructureRegistry.load("src/cli/codelists.xml", "src/cli/concepts.xml", "src/cli/keyfamilies.xml");
+	}
+
+	@Test
+	public void testGenericMessage() throws Exception {
+
+		Set<String> observations = observationURIs(convert(SDMXDataReaderTest.GENERIC_MESSAGE));
+		String dataSetURI = Configuration.dataSetURI("TRAINING");
+		assertEquals(3, observations.size());
+		assertTrue(observations.contains(dataSetURI + "/F.2011"));
+		assertTrue(observations.contains(dataSetURI + "/M.2011"));
+	}
+
+	@Test
+	public void testEncodedValues() throws Exception {
+
+		String message = SDMXDataReaderTest.COMPACT_MESSAGE.replace("SEX=\"F\"", "SEX=\"A.B c/\u00e9\"").replace("SEX=\"M\"", "SEX=\"A\" TIME=\"B.c\"");
+		Set<String> observations = observationURIs(convert(message));
+		String dataSetURI = Configuration.dataSetURI("TRAINING");
+		assertEquals(3, observations.size());
+		assertTrue(observations.contains(dataSetURI + "/A%2EB%20c%2F%C3%A9.2011"));
+		assertTrue(observations.contains(dataSetURI + "/A.B%2Ec"));
+	}
+
+	@Test
+	public void testIncompleteObservations() throws Exception {
+
+		// The second series has no value for the sex dimension
+		String message = SDMXDataReaderTest.COMPACT_MESSAGE.replace(" SEX=\"M\"", "");
+		assertEquals(2, observationURIs(convert(message)).size());
+	}
+
+	private static Graph convert(String message) throws Exception {
+
+		Graph graph = GraphFactory.createDefaultGraph();
+		new ObservationConverter(registry, "TRAINING", 2).convert(new ByteArrayInputStream(message.getBytes(StandardCharsets.UTF_8)), StreamRDFLib.graph(graph));
+		return graph;
+	}
+
+	private static Set<String> observationURIs(Graph graph) {
+
+		Set<String> uris = new TreeSet<String>();
+		for (Triple triple : graph.find(Node.ANY, RDF.type.asNode(), DataCube.Observation.asNode()).toList()) uris.add(triple.getSubject().getURI());
+		return uris;
+	}
+}
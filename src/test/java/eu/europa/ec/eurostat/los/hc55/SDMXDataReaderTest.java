@@ -0,0 +1,102 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import eu.europa.ec.eurostat.los.hc55.SDMXDataReader.Observation;
+import eu.europa.ec.eurostat.los.hc55.SDMXDataReader.Series;
+
+/**
+ * Tests the <code>SDMXDataReader</code> on standard SDMX 2.0 Generic and Compact messages.
+ *
+ * @author Franck
+ */
+public class SDMXDataReaderTest {
+
+	/** Generic message where, as in the SDMX 2.0 schemas, the DataSet element is in the message namespace and its children in the generic namespace */
+	static final String GENERIC_MESSAGE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+			+ "<GenericData xmlns=\"http://www.SDMX.org/resources/SDMXML/schemas/v2_0/message\" xmlns:generic=\"http://www.SDMX.org/resources/SDMXML/schemas/v2_0/generic\">\n"
+			+ "<Header><ID>TEST</ID><Test>true</Test></Header>\n"
+			+ "<DataSet>\n"
+			+ "<generic:KeyFamilyRef>TRAINING</generic:KeyFamilyRef>\n"
+			+ "<generic:Series>\n"
+			+ "<generic:SeriesKey><generic:Value concept=\"SEX\" value=\"F\"/></generic:SeriesKey>\n"
+			+ "<generic:Obs><generic:Time>2011</generic:Time><generic:ObsValue value=\"12.5\"/></generic:Obs>\n"
+			+ "<generic:Obs><generic:Time>2012</generic:Time><generic:ObsValue value=\"13\"/>"
+			+ "<generic:Attributes><generic:Value concept=\"OBS_STATUS\" value=\"p\"/></generic:Attributes></generic:Obs>\n"
+			+ "</generic:Series>\n"
+			+ "<generic:Series>\n"
+			+ "<generic:SeriesKey><generic:Value concept=\"SEX\" value=\"M\"/></generic:SeriesKey>\n"
+			+ "<generic:Obs><generic:Time>2011</generic:Time><generic:ObsValue value=\"11\"/></generic:Obs>\n"
+			+ "</generic:Series>\n"
+			+ "</DataSet>\n"
+			+ "</GenericData>\n";
+
+	static final String COMPACT_MESSAGE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+			+ "<CompactData xmlns=\"http://www.SDMX.org/resources/SDMXML/schemas/v2_0/message\" xmlns:training=\"urn:estat:training\">\n"
+			+ "<Header><ID>TEST</ID><Test>true</Test></Header>\n"
+			+ "<training:DataSet>\n"
+			+ "<training:Series SEX=\"F\"><training:Obs TIME=\"2011\" OBS_VALUE=\"12.5\"/><training:Obs TIME=\"2012\" OBS_VALUE=\"13\"/></training:Series>\n"
+			+ "<training:Series SEX=\"M\"><training:Obs TIME=\"2011\" OBS_VALUE=\"11\"/></training:Series>\n"
+			+ "</training:DataSet>\n"
+			+ "</CompactData>\n";
+
+	@Test
+	public void testGenericMessage() throws Exception {
+
+		Collector collector = read(GENERIC_MESSAGE);
+		assertEquals("TRAINING", collector.keyFamilyId);
+		assertEquals(2, collector.series.size());
+		Series series = collector.series.get(0);
+		assertEquals("F", series.values.get("SEX"));
+		assertEquals(2, series.observations.size());
+		Observation observation = series.observations.get(1);
+		assertEquals("2012", observation.time);
+		assertEquals("13", observation.value);
+		assertEquals("p", observation.values.get("OBS_STATUS"));
+		assertEquals("M", collector.series.get(1).values.get("SEX"));
+	}
+
+	@Test
+	public void testCompactMessage() throws Exception {
+
+		Collector collector = read(COMPACT_MESSAGE);
+		assertNull(collector.keyFamilyId);
+		assertEquals(2, collector.series.size());
+		Observation observation = collector.series.get(0).observations.get(0);
+		assertNull(observation.time);
+		assertEquals("2011", observation.values.get("TIME"));
+		assertEquals("12.5", observation.values.get("OBS_VALUE"));
+		assertEquals(1, collector.series.get(1).observations.size());
+	}
+
+	private static Collector read(String message) throws Exception {
+
+		Collector collector = new Collector();
+		new SDMXDataReader().read(new ByteArrayInputStream(message.getBytes(StandardCharsets.UTF_8)), collector);
+		return collector;
+	}
+
+	private static class Collector implements SDMXDataHandler {
+
+		String keyFamilyId = null;
+		List<Series> series = new ArrayList<Series>();
+
+		@Override
+		public void startDataSet(String keyFamilyId) {
+			this.keyFamilyId = keyFamilyId;
+		}
+
+		@Override
+		public void series(Series series) {
+			this.series.add(series);
+		}
+	}
+}
@@ -0,0 +1,176 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jena.rdf.model.Literal;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests the <code>SDMXSourceResolver</code> against a stub HTTP server which answers with an <code>ETag</code> and honors
+ * <code>If-None-Match</code>.
+ *
+ * @author Franck
+ */
+public class SDMXSourceResolverTest {
+
+	private static final String CONCEPTS = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+			+ "<Structure xmlns=\"http://www.SDMX.org/resources/SDMXML/schemas/v2_0/message\" xmlns:structure=\"http://www.SDMX.org/resources/SDMXML/schemas/v2_0/structure\">\n"
+			+ "<Concepts><structure:ConceptScheme id=\"CENSUSHUB_CONCEPTS\" agencyID=\"ESTAT\"><structure:Name xml:lang=\"en\">Census Hub concepts</structure:Name>\n"
+			+ "<structure:Concept id=\"SEX\" coreRepresentation=\"CL_SEX\"><structure:Name xml:lang=\"en\">LABEL</structure:Name></structure:Concept>\n"
+			+ "<structure:Concept id=\"TIME\"><structure:Name xml:lang=\"en\">Time</structure:Name></structure:Concept>\n"
+			+ "</structure:ConceptScheme></Concepts></Structure>\n";
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private HttpServer server = null;
+	private URI uri = null;
+	private SDMXSourceResolver resolver = null;
+
+	/** Content and entity tag currently served, and number of complete and not modified responses */
+	private volatile byte[] body = null;
+	private volatile String etag = null;
+	private AtomicInteger fullResponses = new AtomicInteger();
+	private AtomicInteger notModifiedResponses = new AtomicInteger();
+
+	@Before
+	public void startServer() throws IOException {
+
+		serve("Sex", "\"v1\"");
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/concepts.xml", exchange -> {
+			if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+				notModifiedResponses.incrementAndGet();
+				exchange.sendResponseHeaders(304, -1);
+				exchange.close();
+				return;
+			}
+			fullResponses.incrementAndGet();
+			exchange.getResponseHeaders().add("ETag", etag);
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream output = exchange.getResponseBody()) {
+				output.write(body);
+			}
+		});
+		server.start();
+		uri = URI.create("http://localhost:" + server.getAddress().getPort() + "/concepts.xml");
+		resolver = new SDMXSourceResolver(temporaryFolder.newFolder("cache"));
+	}
+
+	@After
+	public void stopServer() {
+
+		server.stop(0);
+		// Catalogues of the test server must not be served to other tests
+		ConceptCatalogue.clearCache();
+	}
+
+	@Test
+	public void testRetrieval() throws IOException {
+
+		File cached = resolver.resolve(uri);
+		assertEquals(1, fullResponses.get());
+		assertArrayEquals(body, Files.readAllBytes(cached.toPath()));
+	}
+
+	@Test
+	public void testNotModified() throws IOException {
+
+		File cached = resolver.resolve(uri);
+		assertEquals(cached, resolver.resolve(uri));
+		assertEquals(1, fullResponses.get());
+		assertEquals(1, notModifiedResponses.get());
+	}
+
+	@Test
+	public void testChangedContent() throws IOException {
+
+		File cached = resolver.resolve(uri);
+		serve("Gender", "\"v2\"");
+		File changed = resolver.resolve(uri);
+		assertNotEquals(cached, changed);
+		assertEquals(2, fullResponses.get());
+		assertArrayEquals(body, Files.readAllBytes(changed.toPath()));
+	}
+
+	@Test
+	public void testOffline() throws IOException {
+
+		File cached = resolver.resolve(uri);
+		server.stop(0);
+		assertEquals(cached, resolver.resolve(uri));
+	}
+
+	@Test(expected = IOException.class)
+	public void testOfflineWithoutCache() throws IOException {
+
+		server.stop(0);
+		resolver.resolve(uri);
+	}
+
+	@Test
+	public void testReadWhileRetrieving() throws Exception {
+
+		List<String> concepts = new ArrayList<String>();
+		SDMXStructureHandler handler = new SDMXStructureHandler() {
+			@Override
+			public void concept(String conceptSchemeId, String conceptId, String coreRepresentation, List<Literal> names) {
+				concepts.add(conceptId);
+			}
+		};
+		File cached = resolver.read(uri, handler);
+		assertEquals(2, concepts.size());
+		assertArrayEquals(body, Files.readAllBytes(cached.toPath()));
+
+		// The second read parses the cached copy
+		resolver.read(uri, handler);
+		assertEquals(4, concepts.size());
+		assertEquals(1, notModifiedResponses.get());
+	}
+
+	@Test
+	public void testConceptCatalogue() throws Exception {
+
+		ConceptCatalogue catalogue = ConceptCatalogue.get(uri.toString(), resolver);
+		assertEquals("Sex", catalogue.getLabel("CENSUSHUB_CONCEPTS", "SEX", "en"));
+		assertSame(catalogue, ConceptCatalogue.get(uri.toString(), resolver));
+
+		// The catalogue is not revalidated within the revalidation interval
+		serve("Gender", "\"v2\"");
+		assertSame(catalogue, ConceptCatalogue.get(uri.toString(), resolver));
+		assertEquals(1, fullResponses.get());
+		assertEquals(0, notModifiedResponses.get());
+
+		ConceptCatalogue.revalidate();
+		ConceptCatalogue changed = ConceptCatalogue.get(uri.toString(), resolver);
+		assertNotSame(catalogue, changed);
+		assertEquals("Gender", changed.getLabel("CENSUSHUB_CONCEPTS", "SEX", "en"));
+	}
+
+	private void serve(String label, String etag) {
+
+		this.body = CONCEPTS.replace("LABEL", label).getBytes(StandardCharsets.UTF_8);
+		this.etag = etag;
+	}
+}
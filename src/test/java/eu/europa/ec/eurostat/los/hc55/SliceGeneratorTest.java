@@ -0,0 +1,106 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import eu.europa.ec.eurostat.los.utils.DataCube;
+
+/**
+ * Tests the <code>SliceGenerator</code> in memory and when spilling to partition files, on the training key family.
+ *
+ * @author Franck
+ */
+public class SliceGeneratorTest {
+
+	/** Compact message with four series, one of them having a sex value containing a dot, and an observation without sex */
+	private static final String MESSAGE = SDMXDataReaderTest.COMPACT_MESSAGE.replace("</training:DataSet>",
+			"<training:Series SEX=\"T\"><training:Obs TIME=\"2011\" OBS_VALUE=\"23.5\"/><training:Obs TIME=\"2012\" OBS_VALUE=\"25\"/><training:Obs TIME=\"2013\" OBS_VALUE=\"26\"/></training:Series>\n"
+			+ "<training:Series SEX=\"A.B\"><training:Obs TIME=\"2011\" OBS_VALUE=\"1\"/><training:Obs TIME=\"2012\" OBS_VALUE=\"2\"/></training:Series>\n"
+			+ "<training:Series><training:Obs TIME=\"2011\" OBS_VALUE=\"1\"/></training:Series>\n"
+			+ "</training:DataSet>");
+
+	private static DataStructure structure = null;
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private File dataFile = null;
+
+	@BeforeClass
+	public static void loadStructure() throws Exception {
+		structure = new DataStructure(SDMXStructureRegistry.load("src/cli/codelists.xml", "src/cli/concepts.xml", "src/cli/keyfamilies.xml"), "TRAINING");
+	}
+
+	@Before
+	public void writeData() throws Exception {
+
+		dataFile = temporaryFolder.newFile("data.xml");
+		Files.write(dataFile.toPath(), MESSAGE.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testInMemory() throws Exception {
+
+		Graph graph = GraphFactory.createDefaultGraph();
+		assertEquals(4, new SliceGenerator(structure, Collections.singletonList("SEX")).generate(dataFile.getPath(), StreamRDFLib.graph(graph)));
+		Node slice = sliceNode("SEX", "T");
+		assertEquals(3, graph.find(slice, DataCube.observation.asNode(), Node.ANY).toList().size());
+		assertTrue(graph.contains(slice, DataCube.observation.asNode(), NodeFactory.createURI(structure.observationURI(new String[] {"T", "2013"}))));
+
+		// Observations without sex belong to no slice
+		assertEquals(8, graph.find(Node.ANY, DataCube.observation.asNode(), Node.ANY).toList().size());
+	}
+
+	@Test
+	public void testSpill() throws Exception {
+
+		for (String fixedDimensions : Arrays.asList("SEX", "TIME", "SEX,TIME")) {
+			Graph inMemory = GraphFactory.createDefaultGraph();
+			long slices = new SliceGenerator(structure, Arrays.asList(fixedDimensions.split(","))).generate(dataFile.getPath(), StreamRDFLib.graph(inMemory));
+
+			// Two observations in memory and three partitions, so that groups are spilled several times and partitions hold several groups
+			File workDirectory = temporaryFolder.newFolder();
+			Graph spilled = GraphFactory.createDefaultGraph();
+			SliceGenerator generator = new SliceGenerator(structure, Arrays.asList(fixedDimensions.split(",")), 2, 3, workDirectory);
+			assertEquals(slices, generator.generate(dataFile.getPath(), StreamRDFLib.graph(spilled)));
+			assertEquals(inMemory.size(), spilled.size());
+			assertTrue(inMemory.isIsomorphicWith(spilled));
+			assertEquals(0, workDirectory.list().length);
+		}
+	}
+
+	@Test
+	public void testSliceIdentifiers() throws Exception {
+
+		assertEquals("A%2EB", SliceGenerator.sliceId(new String[] {"A.B"}));
+		assertEquals("A%2EB.2011", SliceGenerator.sliceId(new String[] {"A.B", "2011"}));
+		assertEquals("A.B%2E2011", SliceGenerator.sliceId(new String[] {"A", "B.2011"}));
+
+		Graph graph = GraphFactory.createDefaultGraph();
+		new SliceGenerator(structure, Arrays.asList("SEX", "TIME"), 2, 3, temporaryFolder.newFolder()).generate(dataFile.getPath(), StreamRDFLib.graph(graph));
+		Node slice = sliceNode("SEX_TIME", "A%2EB.2011");
+		assertEquals(Collections.singletonList(NodeFactory.createURI(structure.observationURI(new String[] {"A.B", "2011"}))),
+				graph.find(slice, DataCube.observation.asNode(), Node.ANY).mapWith(triple -> triple.getObject()).toList());
+	}
+
+	private static Node sliceNode(String sliceKeyId, String sliceId) {
+		return NodeFactory.createURI(Configuration.sliceURI(structure.getDsdId(), sliceKeyId, sliceId));
+	}
+}
@@ -0,0 +1,96 @@
+package eu.europa.ec.eurostat.los.hc55;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.vocabulary.RDF;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import eu.europa.ec.eurostat.los.utils.DataCube;
+
+/**
+ * Tests the sorting, the merge of the spilled runs and the skolemization of the <code>SortedTriples</code>.
+ *
+ * @author Franck
+ */
+public class SortedTriplesTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void testSpilledRuns() throws Exception {
+
+		File directory = temporaryFolder.newFolder("runs");
+		SortedTriples triples = new SortedTriples(3, directory);
+		// Duplicates within a run and across runs
+		for (int index : new int[] {7, 2, 9, 2, 4, 7, 1, 8, 3, 9, 5, 0, 6, 4, 1}) triples.triple(triple("s" + index, "p", "o"));
+		assertEquals(5, directory.list().length);
+
+		List<String> lines = readLines(triples);
+		assertEquals(10, lines.size());
+		for (int index = 0; index < 10; index++) assertEquals("<http://example.org/s" + index + "> <http://example.org/p> <http://example.org/o>", lines.get(index));
+		triples.close();
+		assertEquals(0, directory.list().length);
+	}
+
+	@Test
+	public void testComponentSpecification() throws Exception {
+
+		Node dsd = uri("dsd");
+		Node dimension = uri("geo");
+		Node specification = NodeFactory.createBlankNode();
+		SortedTriples triples = new SortedTriples();
+		triples.triple(Triple.create(dsd, DataCube.component.asNode(), specification));
+		triples.triple(Triple.create(specification, RDF.type.asNode(), DataCube.ComponentSpecification.asNode()));
+		triples.triple(Triple.create(specification, DataCube.dimension.asNode(), dimension));
+
+		String skolem = "<" + Configuration.componentSpecificationURI(dsd.getURI(), dimension.getURI()) + ">";
+		assertTrue(skolem.startsWith("<" + SortedTriples.SKOLEM_PREFIX));
+		List<String> lines = readLines(triples);
+		assertEquals(3, lines.size());
+		assertTrue(lines.contains("<http://example.org/dsd> <" + DataCube.component.getURI() + "> " + skolem));
+		assertTrue(lines.contains(skolem + " <" + DataCube.dimension.getURI() + "> <http://example.org/geo>"));
+	}
+
+	@Test
+	public void testBlankNodeLabels() throws Exception {
+
+		// Other blank nodes get IRIs depending on their referencing resource and on their description, not on their labels
+		List<List<String>> versions = new ArrayList<List<String>>();
+		for (int version = 0; version < 2; version++) {
+			Node blank = NodeFactory.createBlankNode("b" + version);
+			SortedTriples triples = new SortedTriples();
+			triples.triple(Triple.create(uri("s"), uri("p"), blank));
+			triples.triple(Triple.create(blank, uri("q"), NodeFactory.createLiteral("value")));
+			versions.add(readLines(triples));
+		}
+		assertEquals(versions.get(0), versions.get(1));
+	}
+
+	private static List<String> readLines(SortedTriples triples) throws Exception {
+
+		List<String> lines = new ArrayList<String>();
+		try (SortedTriples.LineIterator iterator = triples.iterator()) {
+			while (iterator.hasNext()) lines.add(iterator.next());
+		}
+		return lines;
+	}
+
+	static Triple triple(String subject, String predicate, String object) {
+		return Triple.create(uri(subject), uri(predicate), uri(object));
+	}
+
+	static Node uri(String name) {
+		return NodeFactory.createURI("http://example.org/" + name);
+	}
+}